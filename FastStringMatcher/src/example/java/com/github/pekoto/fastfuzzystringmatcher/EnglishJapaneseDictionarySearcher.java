@@ -1,13 +1,13 @@
 package com.github.pekoto.fastfuzzystringmatcher;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 
 
 /**
  * An English --> Japanese dictionary with fuzzy lookup.
- * Built using the StringMatcher class.
+ * Built using the StringMatcher class. Terms with several translations keep all of them on one keyword.
+ * The dictionary is read from the classpath with a DictionaryLoader, so it can be loaded from inside a jar.
  * 
  * @author Graham McRobbie
  *
@@ -15,49 +15,41 @@ import java.io.IOException;
 public class EnglishJapaneseDictionarySearcher {
 
 	private StringMatcher<String> stringMatcher;
+	private FuzzyPrefixIndex<String> prefixIndex;
 	private String fileName = "JMDict_po.txt";
 	private long size;
+	private LoadStats loadStats = new LoadStats();
 	
 	public EnglishJapaneseDictionarySearcher() throws IOException {
-		 stringMatcher = new StringMatcher<String>();
 		 loadDataFromPoFile();
+		 prefixIndex = new FuzzyPrefixIndex<String>(stringMatcher);
 	}
 	
 	public long getSize() {
 		return size;
 	}
 	
-	private void loadDataFromPoFile() throws IOException {
-		String path = getClass().getClassLoader().getResource(fileName).getPath();
-		BufferedReader br = new BufferedReader(new FileReader(path));
-		
-		String englishTerm = "";
-		String line;
-		
-		while ((line = br.readLine()) != null) {
-	        if(line == null || line.isEmpty()) {
-	        		continue;
-	        }
-	        
-	        if(line.startsWith("msgid")) {
-	        		englishTerm = getParsedTerm(line);
-	        } else if (line.startsWith("msgstr")) {
-	        		stringMatcher.add(englishTerm, getParsedTerm(line));
-	        		size++;
-	        }
-	     }
-	    
-	    br.close();
+	public LoadStats getLoadStats() {
+		return loadStats;
 	}
 	
-	private String getParsedTerm(String line) {
-		int beginIndex = line.indexOf('"') + 1;
-		int endIndex = line.lastIndexOf('"');
-		
-		return line.substring(beginIndex, endIndex);
+	private void loadDataFromPoFile() throws IOException {
+		try(InputStream stream = getClass().getClassLoader().getResourceAsStream(fileName)) {
+			if(stream == null) {
+				throw new IOException("Dictionary file not found: " + fileName);
+			}
+			
+			stringMatcher = new DictionaryLoader(DictionaryFormat.PO).load(stream, new BuildOptions().setCollectingValues(true), loadStats);
+			size = loadStats.getEntriesRead();
+		}
 	}
 	
 	public SearchResultList<String> search(CharSequence word, float matchPercentage) {
 		return stringMatcher.search(word, matchPercentage);
 	}
+	
+	// Terms starting with something within distanceThreshold edits of the prefix, e.g., for autocomplete
+	public SearchResultList<String> searchPrefix(CharSequence prefix, int distanceThreshold, int maxResults) {
+		return prefixIndex.startSearch(distanceThreshold).append(prefix).getResults(maxResults);
+	}
 }
\ No newline at end of file
@@ -24,6 +24,8 @@ public class SearchDriver {
 		try {
 			EnglishJapaneseDictionarySearcher engJpnDict = new EnglishJapaneseDictionarySearcher();
 			System.out.println(String.format("Finished loading %d terms", engJpnDict.getSize()));
+			System.out.println(String.format("Read at %.1f MB/s, %.1f MB/s including building the tree", 
+											 engJpnDict.getLoadStats().getReadMegabytesPerSecond(), engJpnDict.getLoadStats().getMegabytesPerSecond()));
 			
 			System.out.println("Search for \"Diplomat\", matching at 80%:");
 			SearchResultList<String> results = engJpnDict.search("Diplomat", 80.0f);
@@ -37,6 +39,11 @@ public class SearchDriver {
 			System.out.println("Search for \"ock\", matching at 75%");
 			results = engJpnDict.search("ock", 75.0f);
 			results.print();
+			
+			// Search for terms starting with something close to a partial word, as autocomplete would
+			System.out.println("First 10 terms starting within 1 edit of \"ock\"");
+			results = engJpnDict.searchPrefix("ock", 1, 10);
+			results.print();
 		}
 		catch(IOException ioe) {
 			System.out.println("Failed to load dictionary file.");
@@ -0,0 +1,100 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The data associated with a keyword, held as compactly as possible.
+ * <p>
+ * Almost every keyword has a single value, so that's held inline as the value itself, with no wrapper.
+ * A keyword with more than one value holds a {@link Multiple}, which is an array and a count.
+ * Everything here works on the plain <code>Object</code> that's held, whichever of the two it is.
+ * <p>
+ * Values are appended by writing past the end of the array and publishing a new {@link Multiple} with the new count,
+ * so a reader holding an older instance only ever sees the values it was published with.
+ * Appends must be serialised, but reads don't need any locking.
+ *
+ * @author Graham McRobbie
+ *
+ */
+final class AssociatedValues {
+	private static final int INITIAL_CAPACITY = 4;
+	
+	private AssociatedValues() { }
+	
+	// Held data with the value appended
+	static Object append(Object data, Object value) {
+		if(!(data instanceof Multiple)) {
+			Object[] values = new Object[INITIAL_CAPACITY];
+			values[0] = data;
+			values[1] = value;
+			
+			return new Multiple(values, 2);
+		}
+		
+		Multiple multiple = (Multiple)data;
+		Object[] values = multiple.values;
+		
+		if(multiple.count == values.length) {
+			values = Arrays.copyOf(values, values.length * 2);
+		}
+		
+		values[multiple.count] = value;
+		
+		return new Multiple(values, multiple.count + 1);
+	}
+	
+	static int count(Object data) {
+		return (data instanceof Multiple) ? ((Multiple)data).count : 1;
+	}
+	
+	// The value at the index, where the index is less than count(data)
+	static Object get(Object data, int index) {
+		return (data instanceof Multiple) ? ((Multiple)data).values[index] : data;
+	}
+	
+	@SuppressWarnings("unchecked")
+	static <T> T first(Object data) {
+		return (T) get(data, 0);
+	}
+	
+	// A read-only view of all of the values
+	@SuppressWarnings("unchecked")
+	static <T> List<T> all(Object data) {
+		if(data instanceof Multiple) {
+			return (List<T>) data;
+		}
+		
+		return Collections.singletonList((T) data);
+	}
+	
+	/**
+	 * More than one value. Also serves as the read-only list view of its values.
+	 */
+	static final class Multiple extends AbstractList<Object> implements RandomAccess {
+		private final Object[] values;		// Only the first count are this instance's
+		private final int count;
+		
+		private Multiple(Object[] values, int count) {
+			this.values = values;
+			this.count = count;
+		}
+		
+		@Override
+		public Object get(int index) {
+			if(index < 0 || index >= count) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", size: " + count);
+			}
+			
+			return values[index];
+		}
+		
+		@Override
+		public int size() {
+			return count;
+		}
+	}
+}
@@ -0,0 +1,344 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.util.Arrays;
+
+/**
+ * Calculates the Levenshtein distance using Myers' bit-vector algorithm,
+ * in the form given by Hyyrö for global edit distance.
+ * Gives the same results as {@link EditDistanceCalculator}, case insensitive.
+ * <p>
+ * Rather than filling in the matrix one cell at a time, a whole column of the
+ * matrix is held as bit vectors of vertical +1/-1 deltas, and each character of
+ * the text updates the whole column with a handful of word operations.
+ * Patterns of 64 characters or fewer fit in a single <code>long</code>. Longer patterns
+ * are split into blocks of 64 characters and the deltas are carried from one block to the next.
+ * <p>
+ * The pattern's match masks are only built once by {@link #compile(CharSequence)}, so
+ * when one string is compared against many others (e.g., a search keyword against the nodes of a tree),
+ * compile it once and reuse the {@link Pattern}, or recompile an existing one with {@link Pattern#reset(CharSequence)}.
+ * Texts that are already case folded (see {@link Normalizer#foldCase()}) can be compared as char arrays, 
+ * without lowercasing them again.
+ * <p>
+ * See <a href="https://doi.org/10.1145/316542.316550">Myers, 1999</a> and
+ * <a href="https://www.researchgate.net/publication/2839291">Hyyrö, 2003</a>.
+ *
+ * @author Graham McRobbie
+ *
+ */
+public class BitParallelEditDistanceCalculator {
+
+	private static final int WORD_SIZE = 64;
+	private static final int ASCII_SIZE = 128;
+
+	public int calculateEditDistance(CharSequence str1, CharSequence str2) {
+		if (str1 == null || str2 == null) {
+			throw new IllegalArgumentException("Argument cannot be null.");
+		}
+
+		return calculateEditDistance(compile(str1), str2);
+	}
+
+	public Pattern compile(CharSequence pattern) {
+		if (pattern == null) {
+			throw new IllegalArgumentException("Argument cannot be null.");
+		}
+
+		return new Pattern(pattern);
+	}
+
+	public int calculateEditDistance(Pattern pattern, CharSequence text) {
+		return calculateEditDistance(pattern, text, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Calculates the edit distance, giving up as soon as it is known to be greater than maxDistance.
+	 *
+	 * @return The edit distance if it is less than or equal to maxDistance, otherwise maxDistance + 1.
+	 */
+	public int calculateEditDistance(Pattern pattern, CharSequence text, int maxDistance) {
+		if (pattern == null || text == null) {
+			throw new IllegalArgumentException("Argument cannot be null.");
+		}
+
+		return calculateEditDistance(pattern, pattern.foldText(text), text.length(), maxDistance);
+	}
+
+	/**
+	 * Calculates the edit distance to a text that's already case folded, giving up as soon as it is known to be greater than maxDistance.
+	 *
+	 * @return The edit distance if it is less than or equal to maxDistance, otherwise maxDistance + 1.
+	 */
+	int calculateEditDistance(Pattern pattern, char[] foldedText, int maxDistance) {
+		if (pattern == null || foldedText == null) {
+			throw new IllegalArgumentException("Argument cannot be null.");
+		}
+
+		return calculateEditDistance(pattern, foldedText, foldedText.length, maxDistance);
+	}
+
+	private int calculateEditDistance(Pattern pattern, char[] text, int textLength, int maxDistance) {
+		if (maxDistance < 0) {
+			throw new IllegalArgumentException("Maximum distance cannot be negative.");
+		}
+
+		int outOfBounds = (maxDistance == Integer.MAX_VALUE) ? maxDistance : maxDistance + 1;
+		pattern.columnCount = 0;
+
+		// Each character of length difference needs at least one insertion/deletion
+		if (Math.abs(pattern.length - textLength) > maxDistance) {
+			return outOfBounds;
+		}
+
+		if (pattern.length == 0) {
+			return textLength;
+		}
+
+		if (textLength == 0) {
+			return pattern.length;
+		}
+
+		int distance = (pattern.blocks == 1) ? calculateSingleWord(pattern, text, textLength, maxDistance)
+											  : calculateBlocked(pattern, text, textLength, maxDistance);
+
+		return Math.min(distance, outOfBounds);
+	}
+
+	private int calculateSingleWord(Pattern pattern, char[] text, int textLength, int maxDistance) {
+		long verticalPositive = -1L;
+		long verticalNegative = 0L;
+		long lastBit = 1L << (pattern.length - 1);
+		int distance = pattern.length;
+
+		for (int i = 0; i < textLength; i++) {
+			long match = pattern.getMask(0, text[i]);
+
+			long diagonalZero = (((match & verticalPositive) + verticalPositive) ^ verticalPositive) | match | verticalNegative;
+			long horizontalPositive = verticalNegative | ~(diagonalZero | verticalPositive);
+			long horizontalNegative = diagonalZero & verticalPositive;
+
+			if ((horizontalPositive & lastBit) != 0) {
+				distance++;
+			} else if ((horizontalNegative & lastBit) != 0) {
+				distance--;
+			}
+
+			// Shift in a +1 for the top row, which always counts up (0, 1, 2...)
+			horizontalPositive = (horizontalPositive << 1) | 1L;
+			horizontalNegative = horizontalNegative << 1;
+
+			verticalPositive = horizontalNegative | ~(diagonalZero | horizontalPositive);
+			verticalNegative = horizontalPositive & diagonalZero;
+
+			// Each remaining character can take at most one off the distance
+			if (distance - (textLength - i - 1) > maxDistance) {
+				pattern.columnCount = i + 1;
+				return distance;
+			}
+		}
+
+		pattern.columnCount = textLength;
+		return distance;
+	}
+
+	private int calculateBlocked(Pattern pattern, char[] text, int textLength, int maxDistance) {
+		long[] verticalPositive = pattern.verticalPositive;
+		long[] verticalNegative = pattern.verticalNegative;
+		int lastBlock = pattern.blocks - 1;
+		long lastBit = 1L << ((pattern.length - 1) % WORD_SIZE);
+		int distance = pattern.length;
+
+		Arrays.fill(verticalPositive, 0, pattern.blocks, -1L);
+		Arrays.fill(verticalNegative, 0, pattern.blocks, 0L);
+
+		for (int i = 0; i < textLength; i++) {
+			char textChar = text[i];
+
+			// Horizontal deltas carried out of the top of each block into the next one
+			long positiveCarry = 1L;
+			long negativeCarry = 0L;
+
+			for (int block = 0; block <= lastBlock; block++) {
+				long match = pattern.getMask(block, textChar) | negativeCarry;
+				long blockPositive = verticalPositive[block];
+				long blockNegative = verticalNegative[block];
+
+				long diagonalZero = (((match & blockPositive) + blockPositive) ^ blockPositive) | match | blockNegative;
+				long horizontalPositive = blockNegative | ~(diagonalZero | blockPositive);
+				long horizontalNegative = diagonalZero & blockPositive;
+
+				long positiveCarryIn = positiveCarry;
+				long negativeCarryIn = negativeCarry;
+
+				if (block < lastBlock) {
+					positiveCarry = horizontalPositive >>> (WORD_SIZE - 1);
+					negativeCarry = horizontalNegative >>> (WORD_SIZE - 1);
+				} else {
+					positiveCarry = (horizontalPositive & lastBit) != 0 ? 1L : 0L;
+					negativeCarry = (horizontalNegative & lastBit) != 0 ? 1L : 0L;
+				}
+
+				horizontalPositive = (horizontalPositive << 1) | positiveCarryIn;
+				horizontalNegative = (horizontalNegative << 1) | negativeCarryIn;
+
+				verticalPositive[block] = horizontalNegative | ~(diagonalZero | horizontalPositive);
+				verticalNegative[block] = horizontalPositive & diagonalZero;
+			}
+
+			distance += (int)(positiveCarry - negativeCarry);
+
+			if (distance - (textLength - i - 1) > maxDistance) {
+				pattern.columnCount = i + 1;
+				return distance;
+			}
+		}
+
+		pattern.columnCount = textLength;
+		return distance;
+	}
+
+	/**
+	 * A pattern string compiled into per-character match masks.
+	 * <p>
+	 * Bit i of a character's mask in block b is set if the character appears at position (b * 64) + i
+	 * in the lowercased pattern. ASCII characters are looked up directly, anything else is binary searched.
+	 * <p>
+	 * A pattern can be recompiled in place with {@link #reset(CharSequence)}, which only allocates
+	 * if the new pattern is longer than any it has held before. Patterns also hold the working vectors
+	 * for the calculation, and space to case fold texts into, so a pattern should only be used by one thread at a time.
+	 */
+	public static class Pattern {
+		private int length;
+		private int blocks;
+		private char[] foldedChars = new char[0];	// The lowercased pattern, the first length are in use
+		private char[] foldedText = new char[0];
+		private long[] asciiMasks = new long[ASCII_SIZE];
+		private char[] otherChars = new char[0];	// Sorted, the first otherCharCount are in use
+		private int otherCharCount;
+		private long[] otherMasks = new long[0];
+		private long[] verticalPositive = new long[1];
+		private long[] verticalNegative = new long[1];
+		private int columnCount;		// Text characters processed by the last calculation
+
+		private Pattern(CharSequence pattern) {
+			reset(pattern);
+		}
+
+		/**
+		 * Recompiles this pattern for a new string, reusing the existing mask arrays where possible.
+		 */
+		public Pattern reset(CharSequence pattern) {
+			if (pattern == null) {
+				throw new IllegalArgumentException("Argument cannot be null.");
+			}
+
+			length = pattern.length();
+			blocks = Math.max(1, (length + WORD_SIZE - 1) / WORD_SIZE);
+
+			if (asciiMasks.length < ASCII_SIZE * blocks) {
+				asciiMasks = new long[ASCII_SIZE * blocks];
+				verticalPositive = new long[blocks];
+				verticalNegative = new long[blocks];
+			} else {
+				Arrays.fill(asciiMasks, 0, ASCII_SIZE * blocks, 0L);
+			}
+
+			if (foldedChars.length < length) {
+				foldedChars = new char[length];
+			}
+
+			for (int i = 0; i < length; i++) {
+				foldedChars[i] = Character.toLowerCase(pattern.charAt(i));
+			}
+
+			collectOtherChars();
+
+			for (int i = 0; i < length; i++) {
+				char patternChar = foldedChars[i];
+				int block = i / WORD_SIZE;
+				long bit = 1L << (i % WORD_SIZE);
+
+				if (patternChar < ASCII_SIZE) {
+					asciiMasks[patternChar * blocks + block] |= bit;
+				} else {
+					otherMasks[Arrays.binarySearch(otherChars, 0, otherCharCount, patternChar) * blocks + block] |= bit;
+				}
+			}
+
+			return this;
+		}
+
+		// Builds the sorted set of distinct non-ASCII chars by insertion, so no sorting buffers are needed
+		private void collectOtherChars() {
+			otherCharCount = 0;
+
+			for (int i = 0; i < length; i++) {
+				char patternChar = foldedChars[i];
+
+				if (patternChar < ASCII_SIZE) {
+					continue;
+				}
+
+				int index = Arrays.binarySearch(otherChars, 0, otherCharCount, patternChar);
+
+				if (index >= 0) {
+					continue;
+				}
+
+				if (otherCharCount == otherChars.length) {
+					otherChars = Arrays.copyOf(otherChars, Math.max(8, otherCharCount * 2));
+				}
+
+				int insertionPoint = -(index + 1);
+				System.arraycopy(otherChars, insertionPoint, otherChars, insertionPoint + 1, otherCharCount - insertionPoint);
+				otherChars[insertionPoint] = patternChar;
+				otherCharCount++;
+			}
+
+			if (otherMasks.length < otherCharCount * blocks) {
+				otherMasks = new long[otherChars.length * blocks];
+			} else {
+				Arrays.fill(otherMasks, 0, otherCharCount * blocks, 0L);
+			}
+		}
+
+		private long getMask(int block, char textChar) {
+			if (textChar < ASCII_SIZE) {
+				return asciiMasks[textChar * blocks + block];
+			}
+
+			int index = Arrays.binarySearch(otherChars, 0, otherCharCount, textChar);
+			return (index < 0) ? 0L : otherMasks[index * blocks + block];
+		}
+
+		// Lowercases the text into this pattern's scratch space, which is only valid until the next call
+		private char[] foldText(CharSequence text) {
+			if (foldedText.length < text.length()) {
+				foldedText = new char[Math.max(text.length(), foldedText.length * 2)];
+			}
+
+			for (int i = 0; i < text.length(); i++) {
+				foldedText[i] = Character.toLowerCase(text.charAt(i));
+			}
+
+			return foldedText;
+		}
+
+		public int length() {
+			return length;
+		}
+
+		// The lowercased pattern, of which the first length() chars are in use. Not a copy, so don't change it
+		char[] getFoldedChars() {
+			return foldedChars;
+		}
+
+		public int getBlockCount() {
+			return blocks;
+		}
+
+		// Number of matrix cells covered by the last calculation with this pattern (each word operation covers up to 64)
+		long getLastCellCount() {
+			return (long)columnCount * length;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Options for building a string matcher all at once with {@link StringMatcher#build(Iterable, BuildOptions)}.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+public class BuildOptions {
+	private static final int DEFAULT_PARALLEL_THRESHOLD = 1024;
+	
+	private MatchingOption matchingOption = MatchingOption.NONE;
+	private DistanceMetric distanceMetric = DistanceMetric.levenshtein();
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	private Random random = new Random();
+	private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+	private boolean collectingValues;
+	
+	public MatchingOption getMatchingOption() {
+		return matchingOption;
+	}
+	
+	public BuildOptions setMatchingOption(MatchingOption matchingOption) {
+		if(matchingOption == null) {
+			throw new IllegalArgumentException("Matching option must not be null");
+		}
+		
+		this.matchingOption = matchingOption;
+		return this;
+	}
+	
+	public DistanceMetric getDistanceMetric() {
+		return distanceMetric;
+	}
+	
+	// The distance the tree is built on. Defaults to Levenshtein distance
+	public BuildOptions setDistanceMetric(DistanceMetric distanceMetric) {
+		if(distanceMetric == null) {
+			throw new IllegalArgumentException("Distance metric must not be null");
+		}
+		
+		this.distanceMetric = distanceMetric;
+		return this;
+	}
+	
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+	
+	// The pool the tree is built on. Defaults to the common pool
+	public BuildOptions setPool(ForkJoinPool pool) {
+		if(pool == null) {
+			throw new IllegalArgumentException("Pool must not be null");
+		}
+		
+		this.pool = pool;
+		return this;
+	}
+	
+	public Random getRandom() {
+		return random;
+	}
+	
+	// Used to shuffle the keywords before choosing the pivots. Seed it for a repeatable tree
+	public BuildOptions setRandom(Random random) {
+		if(random == null) {
+			throw new IllegalArgumentException("Random must not be null");
+		}
+		
+		this.random = random;
+		return this;
+	}
+	
+	public int getParallelThreshold() {
+		return parallelThreshold;
+	}
+	
+	// Subtrees with fewer keywords than this are built by a single thread
+	public BuildOptions setParallelThreshold(int parallelThreshold) {
+		if(parallelThreshold < 1) {
+			throw new IllegalArgumentException("Parallel threshold must be at least 1");
+		}
+		
+		this.parallelThreshold = parallelThreshold;
+		return this;
+	}
+	
+	public boolean isCollectingValues() {
+		return collectingValues;
+	}
+	
+	// Whether duplicate keywords have their values collected on one keyword, as with addValue, 
+	// rather than only the first being kept, as with add. Off by default
+	public BuildOptions setCollectingValues(boolean collectingValues) {
+		this.collectingValues = collectingValues;
+		return this;
+	}
+}
@@ -0,0 +1,357 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.pekoto.fastfuzzystringmatcher.BitParallelEditDistanceCalculator.Pattern;
+import com.github.pekoto.fastfuzzystringmatcher.StringMatcher.Children;
+import com.github.pekoto.fastfuzzystringmatcher.StringMatcher.Node;
+
+/**
+ * A read-only copy of a {@link StringMatcher}'s tree, packed into a few flat arrays.
+ * <p>
+ * Each node in a string matcher is several objects: the node itself, its keywords, and its children.
+ * That's a lot of overhead per keyword, and a lot of objects for the garbage collector to trace on large trees.
+ * Here the nodes are numbered in breadth-first order, so each node's children are a contiguous run of nodes,
+ * and the tree is stored as:
+ * <ul>
+ * <li>One char heap holding all of the keywords, with an array of start offsets into it
+ * <li>An array of where each node's children start (compressed sparse row style)
+ * <li>An array of each node's edit distance from its parent, sorted within each run of children
+ * <li>An array of the associated data
+ * </ul>
+ * With {@link StorageOption#OFF_HEAP}, everything but the associated data is held in direct buffers outside of the heap.
+ * <p>
+ * Searches give the same results as the string matcher the copy was made from. Keywords can't be added,
+ * so searches can safely run on any number of threads.
+ * 
+ * @author Graham McRobbie
+ *
+ * @param <T> The type of data associated with each string keyword.
+ */
+public class CompactStringMatcher<T> {
+	private static final int INITIAL_STACK_SIZE = 64;
+	private static final Object REMOVED = new Object();		// Associated data of removed keywords, which are kept for routing
+	
+	private final MatchingOption matchingOption;
+	private final DistanceMetric distanceMetric;
+	private final StorageOption storageOption;
+	private final int size;
+	private final CharBuffer keywordHeap;			// Original keywords, followed by the normalized keywords if they differ
+	private final IntBuffer keywordStarts;			// Node i's keyword is [keywordStarts[i], keywordStarts[i + 1])
+	private final IntBuffer normalizedStarts;		// Same as keywordStarts if keywords aren't normalized
+	private final IntBuffer childStarts;			// Node i's children are nodes [childStarts[i], childStarts[i + 1])
+	private final IntBuffer distancesToParent;
+	private final Object[] associatedData;			// Each node's values, as held by its node (see AssociatedValues)
+	
+	private EditDistanceCalculator distanceCalculator = new EditDistanceCalculator();
+	private BitParallelEditDistanceCalculator bitParallelCalculator = new BitParallelEditDistanceCalculator();
+	private ThreadLocal<SearchState> searchStates = ThreadLocal.withInitial(SearchState::new);
+	
+	public CompactStringMatcher(StringMatcher<T> stringMatcher) {
+		this(stringMatcher, StorageOption.ON_HEAP);
+	}
+	
+	public CompactStringMatcher(StringMatcher<T> stringMatcher, StorageOption storageOption) {
+		if(stringMatcher == null || storageOption == null) {
+			throw new IllegalArgumentException("String matcher and storage option must not be null");
+		}
+		
+		this.matchingOption = stringMatcher.getMatchingOption();
+		this.distanceMetric = stringMatcher.getDistanceMetric();
+		this.storageOption = storageOption;
+		
+		// Take each node's children once, so the copy is consistent even if keywords are being added
+		List<Node<T>> nodes = new ArrayList<Node<T>>();
+		List<Children<T>> nodeChildren = new ArrayList<Children<T>>();
+		Node<T> root = stringMatcher.getRoot();
+		
+		if(root != null) {
+			nodes.add(root);
+		}
+		
+		for(int i = 0; i < nodes.size(); i++) {
+			Children<T> children = nodes.get(i).getChildren();
+			nodeChildren.add(children);
+			
+			for(int child = 0; child < children.size(); child++) {
+				nodes.add(children.getNode(child));
+			}
+		}
+		
+		size = nodes.size();
+		
+		// Without a matching option, the normalized keywords only differ by case, which the Levenshtein calculators ignore.
+		// Other metrics compare chars as they are, so they need the case folded keywords
+		boolean storeNormalizedKeywords = (matchingOption != MatchingOption.NONE || distanceMetric != DistanceMetric.levenshtein());
+		long keywordHeapSize = 0;
+		
+		for(Node<T> node : nodes) {
+			keywordHeapSize += node.getOriginalKeyword().length();
+			
+			if(storeNormalizedKeywords) {
+				keywordHeapSize += node.getNormalizedKeyword().length();
+			}
+		}
+		
+		keywordHeap = allocateChars(keywordHeapSize);
+		keywordStarts = allocateInts(size + 1);
+		normalizedStarts = storeNormalizedKeywords ? allocateInts(size + 1) : keywordStarts;
+		childStarts = allocateInts(size + 1);
+		distancesToParent = allocateInts(size);
+		associatedData = new Object[size];
+		
+		int nextChild = 1;
+		
+		for(int i = 0; i < size; i++) {
+			Node<T> node = nodes.get(i);
+			Children<T> children = nodeChildren.get(i);
+			
+			keywordStarts.put(i, keywordHeap.position());
+			keywordHeap.append(node.getOriginalKeyword());
+			
+			childStarts.put(i, nextChild);
+			
+			for(int child = 0; child < children.size(); child++) {
+				distancesToParent.put(nextChild++, children.getDistance(child));
+			}
+			
+			associatedData[i] = node.isRemoved() ? REMOVED : node.getAssociatedValues();
+		}
+		
+		keywordStarts.put(size, keywordHeap.position());
+		childStarts.put(size, nextChild);
+		
+		if(storeNormalizedKeywords) {
+			for(int i = 0; i < size; i++) {
+				normalizedStarts.put(i, keywordHeap.position());
+				keywordHeap.append(nodes.get(i).getNormalizedKeyword());
+			}
+			
+			normalizedStarts.put(size, keywordHeap.position());
+		}
+	}
+	
+	private CharBuffer allocateChars(long size) {
+		if(size > Integer.MAX_VALUE / Character.BYTES) {
+			throw new IllegalArgumentException("Too many keyword characters to store: " + size);
+		}
+		
+		if(storageOption == StorageOption.OFF_HEAP) {
+			return ByteBuffer.allocateDirect((int)size * Character.BYTES).order(ByteOrder.nativeOrder()).asCharBuffer();
+		} else {
+			return CharBuffer.allocate((int)size);
+		}
+	}
+	
+	private IntBuffer allocateInts(int size) {
+		if(storageOption == StorageOption.OFF_HEAP) {
+			return ByteBuffer.allocateDirect(size * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+		} else {
+			return IntBuffer.allocate(size);
+		}
+	}
+	
+	public MatchingOption getMatchingOption() {
+		return matchingOption;
+	}
+	
+	public DistanceMetric getDistanceMetric() {
+		return distanceMetric;
+	}
+	
+	public StorageOption getStorageOption() {
+		return storageOption;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	// Search using % matching.
+	public SearchResultList<T> search(CharSequence keyword, float matchPercentage) {
+		keyword = StringMatcher.getNormalizedKeyword(keyword, matchingOption);
+		int distanceThreshold = StringMatcher.convertPercentageToEditDistance(keyword, matchPercentage, distanceMetric);
+		
+		return searchTree(keyword, distanceThreshold);
+	}
+	
+	// Search using edit distance (chars different).
+	public SearchResultList<T> search(CharSequence keyword, int distanceThreshold) {
+		keyword = StringMatcher.getNormalizedKeyword(keyword, matchingOption);
+		return searchTree(keyword, distanceThreshold);
+	}
+	
+	// Depth-first, with the node numbers held on a per-thread int stack.
+	// Each node is visited just like StringMatcher.visitNode, reading the node's keyword through a reusable view of the heap.
+	private SearchResultList<T> searchTree(CharSequence keyword, int distanceThreshold) {
+		SearchResultList<T> results = new SearchResultList<T>();
+		
+		if(size == 0 || distanceThreshold < 0) {
+			return results;
+		}
+		
+		SearchState state = searchStates.get();
+		state.keywordPattern.reset(keyword);
+		KeywordView nodeKeyword = state.nodeKeyword;
+		int[] stack = state.stack;
+		int stackSize = 0;
+		
+		stack[stackSize++] = 0;
+		
+		while(stackSize > 0) {
+			int node = stack[--stackSize];
+			int firstChild = childStarts.get(node);
+			int endChild = childStarts.get(node + 1);
+			
+			// Children are sorted by distance, so the last one is the furthest
+			int maxChildDistance = (endChild > firstChild) ? distancesToParent.get(endChild - 1) : 0;
+			int distanceCap = StringMatcher.saturatedAdd(maxChildDistance, distanceThreshold);
+			
+			nodeKeyword.reset(normalizedStarts.get(node), normalizedStarts.get(node + 1));
+			int currentDistance = calculateEditDistance(state, keyword, distanceCap);
+			
+			if(currentDistance > distanceCap) {
+				continue;
+			}
+			
+			if(currentDistance <= distanceThreshold && associatedData[node] != REMOVED) {
+				float percentageDifference = StringMatcher.getPercentageDifference(nodeKeyword.length(), keyword.length(), currentDistance, distanceMetric);
+				results.add(SearchResult.fromAssociatedValues(getKeyword(node), associatedData[node], percentageDifference));
+			}
+			
+			int minDistance = currentDistance - distanceThreshold;
+			int maxDistance = StringMatcher.saturatedAdd(currentDistance, distanceThreshold);
+			
+			for(int child = getFirstChild(firstChild, endChild, minDistance); child < endChild && distancesToParent.get(child) <= maxDistance; child++) {
+				if(stackSize == stack.length) {
+					stack = state.stack = Arrays.copyOf(stack, stackSize * 2);
+				}
+				
+				stack[stackSize++] = child;
+			}
+		}
+		
+		results.sortByClosestMatch();
+		
+		return results;
+	}
+	
+	// Index of the first child at least minDistance from the parent (binary search)
+	private int getFirstChild(int firstChild, int endChild, int minDistance) {
+		int low = firstChild;
+		int high = endChild;
+		
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			
+			if(distancesToParent.get(mid) < minDistance) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		
+		return low;
+	}
+	
+	// Same engine choice as StringMatcher, between the state's current node keyword and search keyword.
+	// Other metrics take char arrays, so the node's keyword is copied out of the heap into scratch space first.
+	private int calculateEditDistance(SearchState state, CharSequence keyword, int distanceCap) {
+		KeywordView nodeKeyword = state.nodeKeyword;
+		Pattern keywordPattern = state.keywordPattern;
+		
+		if(distanceMetric != DistanceMetric.levenshtein()) {
+			char[] nodeChars = state.getNodeChars(nodeKeyword);
+			return distanceMetric.calculateDistance(nodeChars, nodeKeyword.length(), keywordPattern.getFoldedChars(), keywordPattern.length(), distanceCap);
+		} else if(distanceCap < keywordPattern.getBlockCount()) {
+			return distanceCalculator.calculateEditDistance(nodeKeyword, keyword, distanceCap);
+		} else {
+			return bitParallelCalculator.calculateEditDistance(keywordPattern, nodeKeyword, distanceCap);
+		}
+	}
+	
+	private String getKeyword(int node) {
+		int start = keywordStarts.get(node);
+		char[] keyword = new char[keywordStarts.get(node + 1) - start];
+		
+		for(int i = 0; i < keyword.length; i++) {
+			keyword[i] = keywordHeap.get(start + i);
+		}
+		
+		return new String(keyword);
+	}
+	
+	/**
+	 * Scratch space for one thread's searches.
+	 */
+	private class SearchState {
+		private final Pattern keywordPattern = bitParallelCalculator.compile("");
+		private final KeywordView nodeKeyword = new KeywordView(keywordHeap);
+		private int[] stack = new int[INITIAL_STACK_SIZE];
+		private char[] nodeChars = new char[0];
+		
+		// The chars of the keyword in view, in scratch space that may be longer than the keyword
+		public char[] getNodeChars(KeywordView keyword) {
+			if(nodeChars.length < keyword.length()) {
+				nodeChars = new char[keyword.length()];
+			}
+			
+			for(int i = 0; i < keyword.length(); i++) {
+				nodeChars[i] = keyword.charAt(i);
+			}
+			
+			return nodeChars;
+		}
+	}
+	
+	/**
+	 * A reusable window onto one keyword in the heap, so keywords can be compared without copying them out.
+	 * Only uses absolute gets, so any number of views can share the heap.
+	 */
+	private static class KeywordView implements CharSequence {
+		private final CharBuffer keywordHeap;
+		private int start;
+		private int length;
+		
+		public KeywordView(CharBuffer keywordHeap) {
+			this.keywordHeap = keywordHeap;
+		}
+		
+		public void reset(int start, int end) {
+			this.start = start;
+			this.length = end - start;
+		}
+		
+		@Override
+		public int length() {
+			return length;
+		}
+		
+		@Override
+		public char charAt(int index) {
+			return keywordHeap.get(start + index);
+		}
+		
+		@Override
+		public CharSequence subSequence(int startIndex, int endIndex) {
+			return toString().subSequence(startIndex, endIndex);
+		}
+		
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder(length);
+			
+			for(int i = 0; i < length; i++) {
+				sb.append(charAt(i));
+			}
+			
+			return sb.toString();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A {@link StringMatcher} that can be searched and added to from multiple threads at once.
+ * <p>
+ * Searches never block. Each node's children are held in an immutable snapshot, and adding a keyword
+ * copies the snapshot of the node it's added under and publishes the copy through a volatile write.
+ * A search reads each snapshot once, so it sees every node either before or after a concurrent add, 
+ * never halfway through. A keyword added while a search is running may or may not be found by that search.
+ * <p>
+ * Writers are serialised with a single lock. Each add, addValue, put or remove only holds it while walking one path down the tree,
+ * and a rebuild or compaction holds it until the new tree or subtrees have replaced the old ones.
+ * 
+ * @author Graham McRobbie
+ *
+ * @param <T> The type of data associated with each string keyword.
+ */
+public class ConcurrentStringMatcher<T> extends StringMatcher<T> {
+	private final Object writeLock = new Object();
+	
+	public ConcurrentStringMatcher() { }
+	
+	public ConcurrentStringMatcher(MatchingOption matchingOption) {
+		super(matchingOption);
+	}
+	
+	public ConcurrentStringMatcher(MatchingOption matchingOption, DistanceMetric distanceMetric) {
+		super(matchingOption, distanceMetric);
+	}
+	
+	// Load a tree saved with save(...) into a concurrent string matcher.
+	public static <T> ConcurrentStringMatcher<T> load(Path path, DataCodec<T> codec) throws IOException {
+		return load(path, codec, DistanceMetric.levenshtein());
+	}
+	
+	// Load a tree that was built on another distance metric into a concurrent string matcher.
+	public static <T> ConcurrentStringMatcher<T> load(Path path, DataCodec<T> codec, DistanceMetric distanceMetric) throws IOException {
+		return StringMatcherSnapshot.load(path, codec, matchingOption -> new ConcurrentStringMatcher<T>(matchingOption, distanceMetric));
+	}
+	
+	// Build a concurrent string matcher from all of its keywords at once.
+	public static <T> ConcurrentStringMatcher<T> build(Iterable<? extends Map.Entry<? extends CharSequence, ? extends T>> entries, BuildOptions options) {
+		return TreeBuilder.build(entries, options, matchingOption -> new ConcurrentStringMatcher<T>(matchingOption, options.getDistanceMetric()));
+	}
+	
+	@Override
+	public void add(CharSequence keyword, T associatedData) {
+		synchronized(writeLock) {
+			super.add(keyword, associatedData);
+		}
+	}
+	
+	@Override
+	public void addValue(CharSequence keyword, T associatedData) {
+		synchronized(writeLock) {
+			super.addValue(keyword, associatedData);
+		}
+	}
+	
+	@Override
+	public T put(CharSequence keyword, T associatedData) {
+		synchronized(writeLock) {
+			return super.put(keyword, associatedData);
+		}
+	}
+	
+	@Override
+	public boolean remove(CharSequence keyword) {
+		synchronized(writeLock) {
+			return super.remove(keyword);
+		}
+	}
+	
+	@Override
+	public int compact() {
+		synchronized(writeLock) {
+			return super.compact();
+		}
+	}
+	
+	@Override
+	public void rebuild(Random random) {
+		synchronized(writeLock) {
+			super.rebuild(random);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.util.Arrays;
+
+/**
+ * Damerau-Levenshtein distance as a {@link DistanceMetric}: insertions, deletions, substitutions and
+ * transpositions of adjacent chars, each costing 1, with no limit on editing between transposed chars.
+ * <p>
+ * This is Lowrance and Wagner's algorithm. For each cell, a transposition is looked for between the current chars and the last
+ * row and column where each of them appeared in the other keyword, so the whole matrix is kept, along with the last row each char was seen in.
+ * Chars are numbered by their position in the sorted set of chars in the two keywords, so that table only needs one slot per distinct char.
+ * The matrix and tables are reused between calls on the same thread.
+ * <p>
+ * See <a href="https://doi.org/10.1145/321879.321880">Lowrance and Wagner, 1975</a>.
+ *
+ * @author Graham McRobbie
+ *
+ */
+final class DamerauLevenshteinDistance implements DistanceMetric {
+	static final DamerauLevenshteinDistance INSTANCE = new DamerauLevenshteinDistance();
+	
+	private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+	
+	private DamerauLevenshteinDistance() { }
+	
+	@Override
+	public int calculateDistance(char[] keyword1, int length1, char[] keyword2, int length2, int maxDistance) {
+		int outOfBounds = (maxDistance == Integer.MAX_VALUE) ? maxDistance : maxDistance + 1;
+		
+		// Each character of length difference needs at least one insertion/deletion
+		if(Math.abs(length1 - length2) > maxDistance) {
+			return outOfBounds;
+		}
+		
+		if(length1 == 0 || length2 == 0) {
+			return Math.max(length1, length2);
+		}
+		
+		Scratch rows = scratch.get().ensureCapacity(length1, length2);
+		rows.numberChars(keyword1, length1, keyword2, length2);
+		
+		// Cell (i, j) is at matrix[(i + 1) * width + j + 1], so row and column -1 are sentinels
+		// that are too large to ever be used, which saves checking for chars that haven't been seen yet
+		int[] matrix = rows.matrix;
+		int[] lastRows = rows.lastRows;
+		int width = length2 + 2;
+		int sentinel = length1 + length2;
+		
+		Arrays.fill(lastRows, 0, rows.alphabetSize, 0);
+		matrix[0] = sentinel;
+		
+		for(int j = 0; j <= length2; j++) {
+			matrix[j + 1] = sentinel;
+			matrix[width + j + 1] = j;
+		}
+		
+		for(int i = 1; i <= length1; i++) {
+			int row = (i + 1) * width;
+			int lastMatchingColumn = 0;
+			int rowMinimum = i;
+			
+			matrix[row] = sentinel;
+			matrix[row + 1] = i;
+			
+			for(int j = 1; j <= length2; j++) {
+				int lastMatchingRow = lastRows[rows.charNumbers2[j - 1]];
+				int transposedColumn = lastMatchingColumn;
+				int substitutionCost = 1;
+				
+				if(keyword1[i - 1] == keyword2[j - 1]) {
+					substitutionCost = 0;
+					lastMatchingColumn = j;
+				}
+				
+				int substitution = matrix[row - width + j] + substitutionCost;
+				int insertion = matrix[row + j] + 1;
+				int deletion = matrix[row - width + j + 1] + 1;
+				int transposition = matrix[lastMatchingRow * width + transposedColumn] + (i - lastMatchingRow - 1) + 1 + (j - transposedColumn - 1);
+				
+				int distance = Math.min(Math.min(substitution, insertion), Math.min(deletion, transposition));
+				matrix[row + j + 1] = distance;
+				rowMinimum = Math.min(rowMinimum, distance);
+			}
+			
+			lastRows[rows.charNumbers1[i - 1]] = i;
+			
+			// Each row's minimum is at most one more than the last's, and no later cell is smaller than it
+			if(rowMinimum > maxDistance) {
+				return outOfBounds;
+			}
+		}
+		
+		return Math.min(matrix[(length1 + 1) * width + length2 + 1], outOfBounds);
+	}
+	
+	@Override
+	public String toString() {
+		return "Damerau-Levenshtein";
+	}
+	
+	/**
+	 * Scratch space for one thread's calculations, grown as longer keywords are seen.
+	 */
+	private static class Scratch {
+		private int[] matrix = new int[0];
+		private char[] alphabet = new char[0];		// Sorted distinct chars of both keywords, the first alphabetSize are in use
+		private int alphabetSize;
+		private int[] charNumbers1 = new int[0];	// Each char's index in the alphabet
+		private int[] charNumbers2 = new int[0];
+		private int[] lastRows = new int[0];		// By char number, the last row of the matrix where the char was in keyword1
+		
+		public Scratch ensureCapacity(int length1, int length2) {
+			int matrixSize = (length1 + 2) * (length2 + 2);
+			
+			if(matrix.length < matrixSize) {
+				matrix = new int[matrixSize];
+			}
+			
+			if(alphabet.length < length1 + length2) {
+				alphabet = new char[length1 + length2];
+				lastRows = new int[length1 + length2];
+			}
+			
+			if(charNumbers1.length < length1) {
+				charNumbers1 = new int[length1];
+			}
+			
+			if(charNumbers2.length < length2) {
+				charNumbers2 = new int[length2];
+			}
+			
+			return this;
+		}
+		
+		public void numberChars(char[] keyword1, int length1, char[] keyword2, int length2) {
+			System.arraycopy(keyword1, 0, alphabet, 0, length1);
+			System.arraycopy(keyword2, 0, alphabet, length1, length2);
+			Arrays.sort(alphabet, 0, length1 + length2);
+			
+			alphabetSize = 0;
+			
+			for(int i = 0; i < length1 + length2; i++) {
+				if(alphabetSize == 0 || alphabet[alphabetSize - 1] != alphabet[i]) {
+					alphabet[alphabetSize++] = alphabet[i];
+				}
+			}
+			
+			for(int i = 0; i < length1; i++) {
+				charNumbers1[i] = Arrays.binarySearch(alphabet, 0, alphabetSize, keyword1[i]);
+			}
+			
+			for(int i = 0; i < length2; i++) {
+				charNumbers2[i] = Arrays.binarySearch(alphabet, 0, alphabetSize, keyword2[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts the data associated with each keyword to and from bytes, 
+ * so that a string matcher can be saved to and loaded from a file.
+ * 
+ * @author Graham McRobbie
+ *
+ * @param <T> The type of data associated with each string keyword.
+ */
+public interface DataCodec<T> {
+	
+	/**
+	 * @param data The data to encode. Never null (nulls are recorded separately).
+	 */
+	byte[] encode(T data);
+	
+	/**
+	 * @param buffer A buffer holding exactly the bytes returned by {@link #encode(Object)},
+	 * from its position to its limit.
+	 */
+	T decode(ByteBuffer buffer);
+}
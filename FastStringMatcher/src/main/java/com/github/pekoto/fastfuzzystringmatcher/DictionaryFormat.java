@@ -0,0 +1,28 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+
+/**
+ * The formats a {@link DictionaryLoader} can read. All of them are read as UTF-8.
+ *
+ * @author Graham McRobbie
+ *
+ */
+public enum DictionaryFormat {
+	/**
+	 * Gettext .po files: each msgid is a keyword, and each msgstr after it is one of its values.
+	 * Strings can carry on over several quoted lines, and the usual backslash escapes are understood.
+	 * Comments, msgctxt and msgid_plural are ignored, as is the header entry, since its msgid is empty.
+	 */
+	PO,
+	
+	/**
+	 * Tab separated values, one record per line, with no quoting.
+	 */
+	TSV,
+	
+	/**
+	 * Comma separated values as in RFC 4180: fields may be quoted, with "" for a quote, and quoted fields may hold commas and line breaks.
+	 * A quote that doesn't start a field is kept as it is.
+	 */
+	CSV
+}
@@ -0,0 +1,480 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a dictionary of keywords and their values from a .po, TSV or CSV file or stream, and builds a string matcher from it.
+ * <p>
+ * Large term bases spend much of their loading time just reading and parsing, so the input is read in blocks:
+ * files are memory-mapped a block at a time, and streams, such as classpath resources, are read into one array per block.
+ * Each block is cut on record boundaries, with any partial record at its end carried over to the next, and the whole records
+ * are decoded from UTF-8 and parsed on the pool while the next block is read. Decoding goes through a small reusable char buffer,
+ * and only the keyword and value of each record are made into strings. The entries come back in the order they were read,
+ * so duplicates are kept or collected just as if they'd been added one by one, and are passed straight to
+ * {@link StringMatcher#build(Iterable, BuildOptions)}.
+ * <p>
+ * Finding record boundaries only needs the bytes: \n and the other ASCII chars they're found by never appear inside
+ * a UTF-8 multi-byte char. In .po files, records start at lines beginning with msgid and a space. In CSV files, quoting is
+ * followed from the start, by the same rules as the parser, so line breaks in quoted fields aren't taken for the ends of records.
+ * <p>
+ * A {@link LoadStats} gives the throughput in MB per second.
+ *
+ * @author Graham McRobbie
+ *
+ */
+public class DictionaryLoader {
+	private static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+	private static final int CHAR_BUFFER_SIZE = 65536;
+	private static final char BYTE_ORDER_MARK = '\uFEFF';
+	private static final byte[] PO_RECORD_START = "msgid".getBytes(StandardCharsets.US_ASCII);
+	
+	private final DictionaryFormat format;
+	private int keywordColumn = 0;
+	private int valueColumn = 1;
+	private boolean skippingHeader;
+	private int blockSize = DEFAULT_BLOCK_SIZE;
+	
+	public DictionaryLoader(DictionaryFormat format) {
+		if(format == null) {
+			throw new IllegalArgumentException("Format must not be null");
+		}
+		
+		this.format = format;
+	}
+	
+	public DictionaryFormat getFormat() {
+		return format;
+	}
+	
+	public int getKeywordColumn() {
+		return keywordColumn;
+	}
+	
+	// The field of each TSV or CSV record that's the keyword, counting from 0. Defaults to 0
+	public DictionaryLoader setKeywordColumn(int keywordColumn) {
+		if(keywordColumn < 0) {
+			throw new IllegalArgumentException("Keyword column must not be negative");
+		}
+		
+		this.keywordColumn = keywordColumn;
+		return this;
+	}
+	
+	public int getValueColumn() {
+		return valueColumn;
+	}
+	
+	// The field of each TSV or CSV record that's the value, counting from 0. Defaults to 1.
+	// Records without it get an empty value
+	public DictionaryLoader setValueColumn(int valueColumn) {
+		if(valueColumn < 0) {
+			throw new IllegalArgumentException("Value column must not be negative");
+		}
+		
+		this.valueColumn = valueColumn;
+		return this;
+	}
+	
+	public boolean isSkippingHeader() {
+		return skippingHeader;
+	}
+	
+	// Whether the first record of a TSV or CSV file is a header row rather than an entry. Off by default
+	public DictionaryLoader setSkippingHeader(boolean skippingHeader) {
+		this.skippingHeader = skippingHeader;
+		return this;
+	}
+	
+	public int getBlockSize() {
+		return blockSize;
+	}
+	
+	// Bytes read or mapped at a time, and so roughly how much each parallel task parses. Defaults to 1 MB
+	public DictionaryLoader setBlockSize(int blockSize) {
+		if(blockSize < 1) {
+			throw new IllegalArgumentException("Block size must be at least 1");
+		}
+		
+		this.blockSize = blockSize;
+		return this;
+	}
+	
+	// Build a string matcher from the dictionary file. The options say how to treat duplicate keywords and which pool to use
+	public StringMatcher<String> load(Path path, BuildOptions options) throws IOException {
+		return load(path, options, new LoadStats());
+	}
+	
+	// Build a string matcher from the dictionary file, recording how long it took in loadStats
+	public StringMatcher<String> load(Path path, BuildOptions options, LoadStats loadStats) throws IOException {
+		checkArguments(path, options, loadStats);
+		
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return load(new MappedBlockSource(channel, blockSize), options, loadStats);
+		}
+	}
+	
+	// Build a string matcher from a dictionary stream, e.g., a classpath resource. The stream isn't closed
+	public StringMatcher<String> load(InputStream stream, BuildOptions options) throws IOException {
+		return load(stream, options, new LoadStats());
+	}
+	
+	// Build a string matcher from a dictionary stream, recording how long it took in loadStats
+	public StringMatcher<String> load(InputStream stream, BuildOptions options, LoadStats loadStats) throws IOException {
+		checkArguments(stream, options, loadStats);
+		return load(new StreamBlockSource(stream, blockSize), options, loadStats);
+	}
+	
+	// Read the dictionary file's entries in order, without building anything, e.g., for a ConcurrentStringMatcher
+	public List<Map.Entry<String, String>> read(Path path) throws IOException {
+		if(path == null) {
+			throw new IllegalArgumentException("Path must not be null");
+		}
+		
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return read(new MappedBlockSource(channel, blockSize), ForkJoinPool.commonPool(), new LoadStats());
+		}
+	}
+	
+	// Read the dictionary stream's entries in order. The stream isn't closed
+	public List<Map.Entry<String, String>> read(InputStream stream) throws IOException {
+		if(stream == null) {
+			throw new IllegalArgumentException("Stream must not be null");
+		}
+		
+		return read(new StreamBlockSource(stream, blockSize), ForkJoinPool.commonPool(), new LoadStats());
+	}
+	
+	private static void checkArguments(Object source, BuildOptions options, LoadStats loadStats) {
+		if(source == null || options == null || loadStats == null) {
+			throw new IllegalArgumentException("Source, options and load stats must not be null");
+		}
+	}
+	
+	private StringMatcher<String> load(BlockSource source, BuildOptions options, LoadStats loadStats) throws IOException {
+		List<Map.Entry<String, String>> entries = read(source, options.getPool(), loadStats);
+		
+		long buildStart = System.nanoTime();
+		StringMatcher<String> stringMatcher = StringMatcher.build(entries, options);
+		loadStats.recordBuild(System.nanoTime() - buildStart);
+		
+		return stringMatcher;
+	}
+	
+	private List<Map.Entry<String, String>> read(BlockSource source, ForkJoinPool pool, LoadStats loadStats) throws IOException {
+		loadStats.reset();
+		long start = System.nanoTime();
+		long bytesRead = 0;
+		
+		List<Future<List<Map.Entry<String, String>>>> tasks = new ArrayList<Future<List<Map.Entry<String, String>>>>();
+		RecordSplitter splitter = new RecordSplitter();
+		byte[] carry = new byte[0];		// The start of a record that carries on into the next block
+		int carryLength = 0;
+		ByteBuffer block;
+		
+		while((block = source.nextBlock()) != null) {
+			bytesRead += block.remaining();
+			block = block.slice();
+			splitter.findBoundaries(block);
+			
+			// Without a carried over record, the block starts with a new record
+			int firstBoundary = (carryLength == 0) ? 0 : splitter.firstBoundary;
+			int lastBoundary = (carryLength == 0) ? Math.max(splitter.lastBoundary, 0) : splitter.lastBoundary;
+			
+			if(firstBoundary < 0) {
+				carry = append(carry, carryLength, block, 0, block.limit());
+				carryLength += block.limit();
+				continue;
+			}
+			
+			if(carryLength > 0) {
+				carry = append(carry, carryLength, block, 0, firstBoundary);
+				carryLength += firstBoundary;
+				tasks.add(submit(pool, ByteBuffer.wrap(Arrays.copyOf(carry, carryLength)), tasks.isEmpty()));
+				carryLength = 0;
+			}
+			
+			if(lastBoundary > firstBoundary) {
+				tasks.add(submit(pool, slice(block, firstBoundary, lastBoundary), tasks.isEmpty()));
+			}
+			
+			carry = append(carry, 0, block, lastBoundary, block.limit());
+			carryLength = block.limit() - lastBoundary;
+		}
+		
+		if(carryLength > 0) {
+			tasks.add(submit(pool, ByteBuffer.wrap(Arrays.copyOf(carry, carryLength)), tasks.isEmpty()));
+		}
+		
+		List<Map.Entry<String, String>> entries = new ArrayList<Map.Entry<String, String>>();
+		
+		for(Future<List<Map.Entry<String, String>>> task : tasks) {
+			entries.addAll(join(task));
+		}
+		
+		loadStats.recordRead(bytesRead, entries.size(), System.nanoTime() - start);
+		
+		return entries;
+	}
+	
+	private Future<List<Map.Entry<String, String>>> submit(ForkJoinPool pool, ByteBuffer records, boolean firstRecords) {
+		return pool.submit(() -> parse(records, firstRecords));
+	}
+	
+	// Decodes and parses whole records, a char buffer at a time.
+	// The first records may start with a byte order mark, which is dropped, and a header, which is skipped if asked for
+	private List<Map.Entry<String, String>> parse(ByteBuffer records, boolean firstRecords) throws IOException {
+		List<Map.Entry<String, String>> entries = new ArrayList<Map.Entry<String, String>>();
+		RecordParser parser = RecordParser.forFormat(format, keywordColumn, valueColumn, firstRecords && skippingHeader, entries);
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+		CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+		CoderResult result;
+		
+		do {
+			result = decoder.decode(records, chars, true);
+			
+			if(result.isError()) {
+				result.throwException();
+			}
+			
+			int from = (firstRecords && chars.position() > 0 && chars.get(0) == BYTE_ORDER_MARK) ? 1 : 0;
+			parser.parse(chars.array(), from, chars.position());
+			chars.clear();
+			firstRecords = false;
+		} while(result.isOverflow());
+		
+		decoder.flush(chars);
+		parser.parse(chars.array(), 0, chars.position());
+		parser.finish();
+		
+		return entries;
+	}
+	
+	private static List<Map.Entry<String, String>> join(Future<List<Map.Entry<String, String>>> task) throws IOException {
+		try {
+			return task.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading dictionary");
+		} catch(ExecutionException e) {
+			// The pool wraps checked exceptions, so the decoding error may be a few causes down
+			for(Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+				if(cause instanceof IOException) {
+					throw (IOException)cause;
+				}
+			}
+			
+			throw new IllegalStateException("Failed to parse dictionary", e.getCause());
+		}
+	}
+	
+	// Appends block[from, to) to the first length bytes of array, growing it if needed
+	private static byte[] append(byte[] array, int length, ByteBuffer block, int from, int to) {
+		if(length + (to - from) > array.length) {
+			array = Arrays.copyOf(array, Math.max(length + (to - from), array.length * 2));
+		}
+		
+		slice(block, from, to).get(array, length, to - from);
+		
+		return array;
+	}
+	
+	private static ByteBuffer slice(ByteBuffer block, int from, int to) {
+		ByteBuffer slice = block.duplicate();
+		slice.position(from);
+		slice.limit(to);
+		
+		return slice.slice();
+	}
+	
+	/**
+	 * Finds where records start in each block, in order.
+	 * The first and last boundaries are -1 if no record starts in the block (other than at its very start).
+	 */
+	private class RecordSplitter {
+		// CSV quoting carries on from one block to the next, and follows the parser's rules
+		private boolean inQuotes;
+		private boolean afterClosingQuote;
+		private boolean atFieldStart = true;
+		private int firstBoundary;
+		private int lastBoundary;
+		
+		public void findBoundaries(ByteBuffer block) {
+			firstBoundary = -1;
+			lastBoundary = -1;
+			
+			if(format == DictionaryFormat.CSV) {
+				findQuotedBoundaries(block);
+				return;
+			}
+			
+			for(int i = 1; i <= block.limit() && firstBoundary < 0; i++) {
+				if(isRecordStart(block, i)) {
+					firstBoundary = i;
+				}
+			}
+			
+			for(int i = block.limit(); i > Math.max(firstBoundary, 0) && lastBoundary < 0; i--) {
+				if(isRecordStart(block, i)) {
+					lastBoundary = i;
+				}
+			}
+			
+			if(lastBoundary < 0) {
+				lastBoundary = firstBoundary;
+			}
+		}
+		
+		// Whether a record starts at the given offset, just after a line break.
+		// The end of the block counts, for TSV, but a .po record needs its msgid and the space after it in the same block to be seen.
+		// The space is what tells it from msgid_plural, which belongs to the record before it
+		private boolean isRecordStart(ByteBuffer block, int offset) {
+			if(block.get(offset - 1) != '\n') {
+				return false;
+			}
+			
+			if(format != DictionaryFormat.PO) {
+				return true;
+			}
+			
+			if(offset + PO_RECORD_START.length >= block.limit()) {
+				return false;
+			}
+			
+			for(int i = 0; i < PO_RECORD_START.length; i++) {
+				if(block.get(offset + i) != PO_RECORD_START[i]) {
+					return false;
+				}
+			}
+			
+			byte separator = block.get(offset + PO_RECORD_START.length);
+			
+			return separator == ' ' || separator == '\t';
+		}
+		
+		// Every byte is looked at, so line breaks in quoted fields are passed over.
+		// Quotes open and close fields just as they do in the parser, so the two always agree on where records end
+		private void findQuotedBoundaries(ByteBuffer block) {
+			for(int i = 0; i < block.limit(); i++) {
+				byte b = block.get(i);
+				
+				if(inQuotes) {
+					if(b == '"') {
+						inQuotes = false;
+						afterClosingQuote = true;
+					}
+					
+					continue;
+				}
+				
+				if(afterClosingQuote) {
+					afterClosingQuote = false;
+					
+					// An escaped "" carries on with the quoted field
+					if(b == '"') {
+						inQuotes = true;
+						continue;
+					}
+				}
+				
+				if(b == '"' && atFieldStart) {
+					inQuotes = true;
+					atFieldStart = false;
+				} else if(b == ',') {
+					atFieldStart = true;
+				} else if(b == '\n') {
+					atFieldStart = true;
+					
+					if(firstBoundary < 0) {
+						firstBoundary = i + 1;
+					}
+					
+					lastBoundary = i + 1;
+				} else if(b != '\r') {
+					atFieldStart = false;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Where the blocks of input come from.
+	 */
+	private interface BlockSource {
+		
+		// The next block, from its position to its limit, or null at the end of the input
+		ByteBuffer nextBlock() throws IOException;
+	}
+	
+	/**
+	 * Maps a file a block at a time, so nothing is copied onto the heap except the records that cross from one block to the next.
+	 * Mappings stay valid after the channel is closed.
+	 */
+	private static class MappedBlockSource implements BlockSource {
+		private final FileChannel channel;
+		private final long size;
+		private final int blockSize;
+		private long position;
+		
+		public MappedBlockSource(FileChannel channel, int blockSize) throws IOException {
+			this.channel = channel;
+			this.size = channel.size();
+			this.blockSize = blockSize;
+		}
+		
+		@Override
+		public ByteBuffer nextBlock() throws IOException {
+			if(position >= size) {
+				return null;
+			}
+			
+			long length = Math.min(blockSize, size - position);
+			ByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			position += length;
+			
+			return block;
+		}
+	}
+	
+	/**
+	 * Reads a stream into a new array per block, since each block is parsed while the next one is read.
+	 */
+	private static class StreamBlockSource implements BlockSource {
+		private final InputStream stream;
+		private final int blockSize;
+		
+		public StreamBlockSource(InputStream stream, int blockSize) {
+			this.stream = stream;
+			this.blockSize = blockSize;
+		}
+		
+		@Override
+		public ByteBuffer nextBlock() throws IOException {
+			byte[] block = new byte[blockSize];
+			int length = 0;
+			int bytesRead;
+			
+			while(length < blockSize && (bytesRead = stream.read(block, length, blockSize - length)) >= 0) {
+				length += bytesRead;
+			}
+			
+			return (length == 0) ? null : ByteBuffer.wrap(block, 0, length);
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+/**
+ * The distance a {@link StringMatcher}'s tree is built and searched on. Levenshtein distance by default.
+ * <p>
+ * A BK tree only finds every match if the distance is a metric:
+ * <ul>
+ * <li>The distance between two keywords is 0 if and only if they're the same
+ * <li>It's the same in both directions
+ * <li>It obeys the triangle inequality: d(a, c) &lt;= d(a, b) + d(b, c)
+ * </ul>
+ * Distances are calculated between normalized keywords, which are already case folded, so metrics compare chars as they are.
+ * They're given as char arrays with lengths, since the arrays can be scratch space with more room than the keyword needs.
+ * <p>
+ * Thresholds are given in the metric's own units. A metric whose insertions and deletions cost more than 1
+ * says so with {@link #getUnitCost()}, so that % thresholds are scaled to match.
+ * <p>
+ * Metrics may be called from several threads at once.
+ *
+ * @author Graham McRobbie
+ *
+ */
+public interface DistanceMetric {
+
+	// The distance between the first length1 chars of keyword1 and the first length2 chars of keyword2,
+	// giving up as soon as it's known to be greater than maxDistance.
+	// Returns the distance if it's less than or equal to maxDistance, otherwise maxDistance + 1 (or Integer.MAX_VALUE, if that's maxDistance).
+	int calculateDistance(char[] keyword1, int length1, char[] keyword2, int length2, int maxDistance);
+
+	// The distance between two normalized keywords
+	default int calculateDistance(CharSequence keyword1, CharSequence keyword2) {
+		if(keyword1 == null || keyword2 == null) {
+			throw new IllegalArgumentException("Argument cannot be null.");
+		}
+
+		char[] chars1 = keyword1.toString().toCharArray();
+		char[] chars2 = keyword2.toString().toCharArray();
+
+		return calculateDistance(chars1, chars1.length, chars2, chars2.length, Integer.MAX_VALUE);
+	}
+
+	// The cost of inserting or deleting one char. A % threshold is the number of chars allowed to differ times this
+	default int getUnitCost() {
+		return 1;
+	}
+
+	// A lower bound on the distance between two keywords, knowing only that their lengths differ by lengthDifference,
+	// and that missingChars of the distinct chars in one of them don't appear in the other. Used by the search prefilter.
+	// By default, each char of length difference costs one insertion or deletion, and each missing char costs at least one edit.
+	default int getLowerBound(int lengthDifference, int missingChars) {
+		return Math.max(lengthDifference, missingChars);
+	}
+
+	// Insertions, deletions and substitutions, each costing 1
+	static DistanceMetric levenshtein() {
+		return LevenshteinDistance.INSTANCE;
+	}
+
+	// Levenshtein distance plus transpositions of adjacent chars, each costing 1.
+	// This is the unrestricted (Lowrance-Wagner) distance, which is a metric. The cheaper optimal string alignment
+	// distance isn't (e.g., "ca" to "abc" is 3, but "ca" to "ac" to "abc" is 2), so a tree built on it could miss matches.
+	static DistanceMetric damerauLevenshtein() {
+		return DamerauLevenshteinDistance.INSTANCE;
+	}
+
+	// The number of positions at which the chars differ, in linear time. For keywords of one fixed length, like codes or IDs.
+	// Keywords of different lengths are compared as if the shorter one were padded out with chars that match nothing,
+	// so each char of length difference also counts as 1, which keeps it a metric.
+	static DistanceMetric hamming() {
+		return HammingDistance.INSTANCE;
+	}
+
+	// Levenshtein distance where substituting a key for one next to it on a QWERTY keyboard costs half as much,
+	// for matching typing mistakes. Insertions, deletions and other substitutions cost 2, and adjacent substitutions cost 1.
+	static DistanceMetric keyboard() {
+		return KeyboardDistance.INSTANCE;
+	}
+}
@@ -1,11 +1,15 @@
 package com.github.pekoto.fastfuzzystringmatcher;
 
+import java.util.Arrays;
+
 /**
  * Calculates the number of operations it takes to turn one string into another.
  * Also known as the Levenshtein distance.  
  * 
  * This implementation uses the iterative approach with two matrix rows.
- * Case insensitive.
+ * The rows are reused between calls on the same thread, so calculations don't allocate.
+ * Case insensitive: both strings are lowercased into the same reusable space before they're compared,
+ * rather than lowercasing the characters of every cell.
  * 
  * See <a href="https://en.wikipedia.org/wiki/Levenshtein_distance">Wikipedia</a>.
  * 
@@ -31,6 +35,8 @@ package com.github.pekoto.fastfuzzystringmatcher;
  * 
  */
 public class EditDistanceCalculator {
+	
+	private final ThreadLocal<MatrixRows> matrixRows = ThreadLocal.withInitial(MatrixRows::new);
 
 	public int calculateEditDistance(CharSequence str1, CharSequence str2) {                          
 	    
@@ -38,19 +44,27 @@ public class EditDistanceCalculator {
 			throw new IllegalArgumentException("Argument cannot be null.");
 		}
 		
-		if (str1.length() == 0) {
-			return str2.length();
+		MatrixRows rows = matrixRows.get();
+		return calculateEditDistance(rows, rows.foldStr1(str1), str1.length(), rows.foldStr2(str2), str2.length());
+	}
+	
+	private int calculateEditDistance(MatrixRows rows, char[] str1, int str1Length, char[] str2, int str2Length) {
+		rows.cellCount = (long)str1Length * str2Length;
+		
+		if (str1Length == 0) {
+			return str2Length;
 		}
 		
-		if (str2.length() == 0) {
-			return str1.length();
+		if (str2Length == 0) {
+			return str1Length;
 		}
 		
-		int str1RowLength = str1.length() + 1;                                                     
-	    int str2RowLength = str2.length() + 1;                                                     
+		int str1RowLength = str1Length + 1;                                                     
+	    int str2RowLength = str2Length + 1;                                                     
 	                                                                                    
-	    int[] previousRow = new int[str1RowLength];                                                     
-	    int[] currentRow = new int[str1RowLength];                                                  
+	    rows.ensureCapacity(str1RowLength);
+	    int[] previousRow = rows.previousRow;                                                     
+	    int[] currentRow = rows.currentRow;                                                  
 	                                                                                    
 	    // Initialise the first row of the distance matrix.
 	    for (int i = 0; i < str1RowLength; i++) {
@@ -62,8 +76,8 @@ public class EditDistanceCalculator {
 	        currentRow[0] = rowIndex;                                                             
 	                                                                                    
 	        for(int colIndex = 1; colIndex < str1RowLength; colIndex++) {
-	        		char str1Char = Character.toLowerCase(str1.charAt(colIndex-1));
-	        		char str2Char = Character.toLowerCase(str2.charAt(rowIndex-1));
+	        		char str1Char = str1[colIndex-1];
+	        		char str2Char = str2[rowIndex-1];
 	        	
 	            int swapCharsCost = (str1Char == str2Char) ? 0 : 1;
 	            
@@ -84,7 +98,156 @@ public class EditDistanceCalculator {
 	    return previousRow[str1RowLength-1];                                                          
 	}
 	
+	/**
+	 * Calculates the edit distance, giving up as soon as it is known to be greater than maxDistance.
+	 * <p>
+	 * Only the diagonal band of cells within maxDistance of the main diagonal is evaluated (Ukkonen's cut-off),
+	 * so the cost is O(maxDistance * length) rather than O(length^2). Calculation stops early if every cell 
+	 * in a row is already over the bound.
+	 * 
+	 * @return The edit distance if it is less than or equal to maxDistance, otherwise maxDistance + 1.
+	 */
+	public int calculateEditDistance(CharSequence str1, CharSequence str2, int maxDistance) {
+		
+		if (str1 == null || str2 == null) {
+			throw new IllegalArgumentException("Argument cannot be null.");
+		}
+		
+		MatrixRows rows = matrixRows.get();
+		return calculateEditDistance(rows.foldStr1(str1), str1.length(), rows.foldStr2(str2), str2.length(), maxDistance);
+	}
+	
+	/**
+	 * Calculates the bounded edit distance between strings that are already case folded, 
+	 * the first str1Length chars of str1 and the first str2Length chars of str2.
+	 * 
+	 * @return The edit distance if it is less than or equal to maxDistance, otherwise maxDistance + 1.
+	 */
+	int calculateEditDistance(char[] foldedStr1, int str1Length, char[] foldedStr2, int str2Length, int maxDistance) {
+		if (maxDistance < 0) {
+			throw new IllegalArgumentException("Maximum distance cannot be negative.");
+		}
+		
+		MatrixRows rows = matrixRows.get();
+		
+		// The distance can never be greater than the longest string, so the band would cover everything
+		if (maxDistance >= Math.max(str1Length, str2Length)) {
+			return calculateEditDistance(rows, foldedStr1, str1Length, foldedStr2, str2Length);
+		}
+		
+		rows.cellCount = 0;
+		
+		// Each character of length difference needs at least one insertion/deletion
+		if (Math.abs(str1Length - str2Length) > maxDistance) {
+			return maxDistance + 1;
+		}
+		
+		int outOfBounds = maxDistance + 1;
+		int str1RowLength = str1Length + 1;
+		int str2RowLength = str2Length + 1;
+		long cellCount = 0;
+		
+		rows.ensureCapacity(str1RowLength);
+		int[] previousRow = rows.previousRow;
+		int[] currentRow = rows.currentRow;
+		
+		// Cells outside of the band are treated as already being over the bound
+		Arrays.fill(previousRow, 0, str1RowLength, outOfBounds);
+		Arrays.fill(currentRow, 0, str1RowLength, outOfBounds);
+		
+		for (int i = 0; i < str1RowLength && i <= maxDistance; i++) {
+			previousRow[i] = i;
+		}
+		
+		for (int rowIndex = 1; rowIndex < str2RowLength; rowIndex++) {
+			int firstColIndex = Math.max(1, rowIndex - maxDistance);
+			int lastColIndex = Math.min(str1RowLength - 1, rowIndex + maxDistance);
+			
+			// The cell just to the left of the band is either the first column or outside of the band
+			currentRow[firstColIndex-1] = (firstColIndex == 1) ? Math.min(rowIndex, outOfBounds) : outOfBounds;
+			int rowMinimum = currentRow[firstColIndex-1];
+			
+			char str2Char = foldedStr2[rowIndex-1];
+			
+			for (int colIndex = firstColIndex; colIndex <= lastColIndex; colIndex++) {
+				char str1Char = foldedStr1[colIndex-1];
+				
+				int swapCharsCost = (str1Char == str2Char) ? 0 : 1;
+				
+				int substitutionCost = previousRow[colIndex-1] + swapCharsCost;
+				int insertionCost = previousRow[colIndex] + 1;
+				int deletionCost = currentRow[colIndex-1] + 1;
+				
+				currentRow[colIndex] = min(insertionCost, deletionCost, substitutionCost);
+				rowMinimum = Math.min(rowMinimum, currentRow[colIndex]);
+			}
+			
+			cellCount += lastColIndex - firstColIndex + 1;
+			
+			// Distances never decrease from one row to the next, so there's no way back under the bound
+			if (rowMinimum > maxDistance) {
+				rows.cellCount = cellCount;
+				return outOfBounds;
+			}
+			
+			int[] swap = previousRow;
+			previousRow = currentRow;
+			currentRow = swap;
+		}
+		
+		rows.cellCount = cellCount;
+		return Math.min(previousRow[str1RowLength-1], outOfBounds);
+	}
+	
+	// Number of matrix cells evaluated by the last calculation on this thread
+	long getLastCellCount() {
+		return matrixRows.get().cellCount;
+	}
+	
 	private int min(int a, int b, int c) {
 		return Math.min(Math.min(a, b), c);
 	}
+	
+	/**
+	 * Scratch space for the two matrix rows and the two lowercased strings, grown as longer strings are seen.
+	 */
+	private static class MatrixRows {
+		private int[] previousRow = new int[0];
+		private int[] currentRow = new int[0];
+		private char[] foldedStr1 = new char[0];
+		private char[] foldedStr2 = new char[0];
+		private long cellCount;
+		
+		public char[] foldStr1(CharSequence str) {
+			foldedStr1 = fold(str, foldedStr1);
+			return foldedStr1;
+		}
+		
+		public char[] foldStr2(CharSequence str) {
+			foldedStr2 = fold(str, foldedStr2);
+			return foldedStr2;
+		}
+		
+		// Lowercases the string into the buffer, or into a bigger one if it doesn't fit
+		private static char[] fold(CharSequence str, char[] buffer) {
+			if(buffer.length < str.length()) {
+				buffer = new char[Math.max(str.length(), buffer.length * 2)];
+			}
+			
+			for(int i = 0; i < str.length(); i++) {
+				buffer[i] = Character.toLowerCase(str.charAt(i));
+			}
+			
+			return buffer;
+		}
+		
+		public MatrixRows ensureCapacity(int rowLength) {
+			if(previousRow.length < rowLength) {
+				previousRow = new int[rowLength];
+				currentRow = new int[rowLength];
+			}
+			
+			return this;
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,404 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+import com.github.pekoto.fastfuzzystringmatcher.StringMatcher.KeywordEntry;
+import com.github.pekoto.fastfuzzystringmatcher.StringMatcher.Node;
+
+/**
+ * An index of a {@link StringMatcher}'s keywords for fuzzy prefix searches, e.g., for autocomplete:
+ * finding the keywords that start with something within a given edit distance of what's been typed so far.
+ * <p>
+ * A BK tree can only compare whole keywords, so it can't answer these. Here the normalized keywords are held in a compressed trie
+ * (a radix tree), where each node's edge is a run of chars rather than one char, stored as a few flat arrays:
+ * <ul>
+ * <li>One char heap holding every node's edge label, in depth-first order
+ * <li>An array of where each node's label starts, with the label lengths
+ * <li>An array of where each node's subtree ends, since a subtree is a contiguous run of nodes in depth-first order
+ * <li>An array of where each node's keywords start, since the keywords are sorted, so they come in the same order as their nodes
+ * </ul>
+ * <p>
+ * A search is a Levenshtein automaton run over the trie. Its state is the set of places in the trie whose prefix is within
+ * the threshold of the query, with their distances. Each char typed moves each of those places on to the places after it,
+ * so a prefix shared by many keywords is only looked at once, and a {@link PrefixSearch} keeps the state for each prefix typed,
+ * so typing a char, or deleting one, doesn't start the search again.
+ * See <a href="https://doi.org/10.1145/1526709.1526760">Ji et al., 2009</a>.
+ * <p>
+ * A keyword matches with the smallest distance between the query and any of its prefixes, as Levenshtein distance,
+ * whatever the string matcher's metric is. The match percentage is out of the query's length.
+ * <p>
+ * The index is immutable, and is a copy of the keywords and their data as they were when it was built.
+ * Keywords added, removed or given new data afterwards aren't seen, so the index needs to be built again to pick them up.
+ * Searches can safely run on any number of threads, although each prefix search is only for one thread.
+ *
+ * @author Graham McRobbie
+ *
+ * @param <T> The type of data associated with each string keyword.
+ */
+public class FuzzyPrefixIndex<T> {
+	private final MatchingOption matchingOption;
+	private final KeywordEntry[] keywords;		// Sorted by normalized keyword
+	private final char[] labels;				// Every node's label, one after another
+	private final int[] labelStarts;			// Node i's label is [labelStarts[i], labelStarts[i] + labelLengths[i])
+	private final int[] labelLengths;
+	private final int[] subtreeEnds;			// Node i's subtree is nodes [i, subtreeEnds[i])
+	private final int[] keywordStarts;			// Node i's keywords are [keywordStarts[i], keywordStarts[i + 1])
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public FuzzyPrefixIndex(StringMatcher<T> stringMatcher) {
+		if(stringMatcher == null) {
+			throw new IllegalArgumentException("String matcher must not be null");
+		}
+		
+		this.matchingOption = stringMatcher.getMatchingOption();
+		
+		List<Node<T>> nodes = new ArrayList<Node<T>>();
+		stringMatcher.walkTree((node, depth) -> nodes.add(node));
+		nodes.sort(Comparator.comparing(node -> new String(node.getNormalizedChars())));
+		
+		// Each entry is read once, and the index keeps it rather than the node,
+		// since the node's entry can change and the node itself can be replaced when the tree is compacted or rebuilt
+		Node<T>[] keywordNodes = (Node<T>[]) new Node[nodes.size()];
+		KeywordEntry[] entries = new KeywordEntry[nodes.size()];
+		int keywordCount = 0;
+		
+		for(Node<T> node : nodes) {
+			KeywordEntry entry = node.getEntry();
+			
+			if(!entry.isRemoved()) {
+				keywordNodes[keywordCount] = node;
+				entries[keywordCount++] = entry;
+			}
+		}
+		
+		keywords = Arrays.copyOf(entries, keywordCount);
+		
+		// Every node but the root ends a keyword or branches, so there are at most two per keyword
+		int maxNodes = 2 * keywords.length + 1;
+		int labelHeapSize = 0;
+		
+		for(int i = 0; i < keywordCount; i++) {
+			labelHeapSize += keywordNodes[i].getNormalizedChars().length;
+		}
+		
+		char[] labelHeap = new char[labelHeapSize];
+		int[] starts = new int[maxNodes];
+		int[] lengths = new int[maxNodes];
+		int[] ends = new int[maxNodes];
+		int[] parents = new int[maxNodes];
+		int[] firstKeywords = new int[maxNodes + 1];
+		int nodeCount = 0;
+		int labelCount = 0;
+		
+		// Built in depth-first order from the sorted keywords, each node covering a range of them,
+		// iteratively so long keywords can't overflow the stack. Each frame is (first keyword, end keyword, label start depth, parent)
+		List<int[]> stack = new ArrayList<int[]>();
+		stack.add(new int[] { 0, keywordCount, 0, -1 });
+		
+		while(!stack.isEmpty()) {
+			int[] frame = stack.remove(stack.size() - 1);
+			int first = frame[0];
+			int end = frame[1];
+			int depth = frame[2];
+			int node = nodeCount++;
+			int labelEnd = (first < end) ? getCommonPrefixLength(keywordNodes[first].getNormalizedChars(), keywordNodes[end - 1].getNormalizedChars()) : depth;
+			
+			starts[node] = labelCount;
+			lengths[node] = labelEnd - depth;
+			parents[node] = frame[3];
+			firstKeywords[node] = first;
+			
+			if(first < end) {
+				System.arraycopy(keywordNodes[first].getNormalizedChars(), depth, labelHeap, labelCount, labelEnd - depth);
+				labelCount += labelEnd - depth;
+			}
+			
+			// Sorted, so the keywords that end here come first
+			while(first < end && keywordNodes[first].getNormalizedChars().length == labelEnd) {
+				first++;
+			}
+			
+			// One child per next char, pushed in reverse so the first comes off the stack first
+			for(int childEnd = end; childEnd > first; ) {
+				char nextChar = keywordNodes[childEnd - 1].getNormalizedChars()[labelEnd];
+				int childFirst = childEnd - 1;
+				
+				while(childFirst > first && keywordNodes[childFirst - 1].getNormalizedChars()[labelEnd] == nextChar) {
+					childFirst--;
+				}
+				
+				stack.add(new int[] { childFirst, childEnd, labelEnd, node });
+				childEnd = childFirst;
+			}
+		}
+		
+		firstKeywords[nodeCount] = keywordCount;
+		
+		// Children come after their parents, so going backwards finishes each subtree before its parent's
+		for(int node = nodeCount - 1; node >= 0; node--) {
+			ends[node] = Math.max(ends[node], node + 1);
+			
+			if(parents[node] >= 0) {
+				ends[parents[node]] = Math.max(ends[parents[node]], ends[node]);
+			}
+		}
+		
+		labels = Arrays.copyOf(labelHeap, labelCount);
+		labelStarts = Arrays.copyOf(starts, nodeCount);
+		labelLengths = Arrays.copyOf(lengths, nodeCount);
+		subtreeEnds = Arrays.copyOf(ends, nodeCount);
+		keywordStarts = Arrays.copyOf(firstKeywords, nodeCount + 1);
+	}
+	
+	private static int getCommonPrefixLength(char[] keyword1, char[] keyword2) {
+		int length = Math.min(keyword1.length, keyword2.length);
+		int i = 0;
+		
+		while(i < length && keyword1[i] == keyword2[i]) {
+			i++;
+		}
+		
+		return i;
+	}
+	
+	// Number of keywords in the index
+	public int size() {
+		return keywords.length;
+	}
+	
+	// Number of nodes in the trie
+	public int getNodeCount() {
+		return labelStarts.length;
+	}
+	
+	// Keywords with a prefix within distanceThreshold edits of the given prefix, closest first
+	public SearchResultList<T> search(CharSequence prefix, int distanceThreshold) {
+		return startSearch(distanceThreshold).append(prefix).getResults();
+	}
+	
+	// Keywords with a prefix that matches the given prefix by at least matchPercentage, closest first
+	public SearchResultList<T> search(CharSequence prefix, float matchPercentage) {
+		CharSequence normalizedPrefix = StringMatcher.getNormalizedKeyword(prefix, matchingOption);
+		int distanceThreshold = StringMatcher.convertPercentageToEditDistance(normalizedPrefix, matchPercentage);
+		
+		return new PrefixSearch(distanceThreshold).appendNormalized(normalizedPrefix).getResults();
+	}
+	
+	// Start a search that's typed a char at a time. The threshold is fixed, since a percentage would change with every char
+	public PrefixSearch startSearch(int distanceThreshold) {
+		return new PrefixSearch(distanceThreshold);
+	}
+	
+	// The trie node a place in the trie is in. Place 0 is the start of the root's label,
+	// and place p is just after the char at labels[p - 1], so every other place is in the node whose label holds that char
+	private int getNode(int place) {
+		if(place == 0) {
+			return 0;
+		}
+		
+		// Last node with a label starting before the place. Only the root's label can be empty, so it's the one holding the char
+		int low = 0;
+		int high = labelStarts.length - 1;
+		
+		while(low < high) {
+			int middle = (low + high + 1) >>> 1;
+			
+			if(labelStarts[middle] < place) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		
+		return low;
+	}
+	
+	/**
+	 * A fuzzy prefix search that's typed a char at a time, keeping the automaton's state after each append,
+	 * so each char only moves on from the last state, and {@link #undo()} goes back to the one before.
+	 * <p>
+	 * Each state is the places in the trie within the threshold of the query, as longs of (place << 32 | distance), sorted by place.
+	 */
+	public class PrefixSearch {
+		private final int distanceThreshold;
+		private final StringBuilder query = new StringBuilder();
+		private final List<long[]> states = new ArrayList<long[]>();	// One per append, after the initial one
+		private final List<Integer> queryLengths = new ArrayList<Integer>();
+		private long[] nextState = new long[16];
+		private int nextStateSize;
+		
+		private PrefixSearch(int distanceThreshold) {
+			this.distanceThreshold = distanceThreshold;
+			
+			// The empty query is at distance 0 from the root. Deeper places are reached by insertions when the first char is typed
+			states.add(distanceThreshold >= 0 ? new long[] { 0L } : new long[0]);
+			queryLengths.add(0);
+		}
+		
+		// Type the given char, normalized on its own
+		public PrefixSearch append(char c) {
+			return append(String.valueOf(c));
+		}
+		
+		// Type the given chars, normalized together
+		public PrefixSearch append(CharSequence chars) {
+			if(chars == null) {
+				throw new IllegalArgumentException("Chars must not be null");
+			}
+			
+			return appendNormalized(StringMatcher.getNormalizedKeyword(chars, matchingOption));
+		}
+		
+		private PrefixSearch appendNormalized(CharSequence normalizedChars) {
+			long[] state = getState();
+			
+			for(int i = 0; i < normalizedChars.length(); i++) {
+				state = step(state, normalizedChars.charAt(i));
+			}
+			
+			query.append(normalizedChars);
+			states.add(state);
+			queryLengths.add(query.length());
+			
+			return this;
+		}
+		
+		// Go back to before the last append, e.g., for a backspace, without recalculating anything
+		public PrefixSearch undo() {
+			if(states.size() > 1) {
+				states.remove(states.size() - 1);
+				queryLengths.remove(queryLengths.size() - 1);
+				query.setLength(queryLengths.get(queryLengths.size() - 1));
+			}
+			
+			return this;
+		}
+		
+		// The query as it's matched, i.e., normalized
+		public CharSequence getQuery() {
+			return query.toString();
+		}
+		
+		public int getDistanceThreshold() {
+			return distanceThreshold;
+		}
+		
+		public SearchResultList<T> getResults() {
+			return getResults(Integer.MAX_VALUE);
+		}
+		
+		// The closest maxResults matches, closest first, with ties in the keywords' order
+		public SearchResultList<T> getResults(int maxResults) {
+			SearchResultList<T> results = new SearchResultList<T>();
+			long[] state = getState();
+			long[] byDistance = new long[state.length];
+			
+			for(int i = 0; i < state.length; i++) {
+				byDistance[i] = (getDistance(state[i]) << 32) | getPlace(state[i]);
+			}
+			
+			Arrays.sort(byDistance);
+			
+			// Every keyword under a place matches with its distance. Going from the closest places,
+			// the first time a keyword is seen is with its smallest distance
+			BitSet seenKeywords = new BitSet(keywords.length);
+			
+			for(long placeAndDistance : byDistance) {
+				int node = getNode((int)placeAndDistance);
+				int distance = (int)(placeAndDistance >>> 32);
+				int keywordsEnd = keywordStarts[subtreeEnds[node]];
+				float matchPercentage = (query.length() == 0) ? 100.0f : StringMatcher.getPercentageDifference(query.length(), query.length(), distance);
+				
+				for(int keyword = seenKeywords.nextClearBit(keywordStarts[node]); keyword < keywordsEnd; keyword = seenKeywords.nextClearBit(keyword + 1)) {
+					if(results.size() >= maxResults) {
+						return results;
+					}
+					
+					seenKeywords.set(keyword);
+					results.add(SearchResult.fromAssociatedValues(keywords[keyword].getOriginalKeyword(), keywords[keyword].getAssociatedValues(), matchPercentage));
+				}
+			}
+			
+			return results;
+		}
+		
+		private long[] getState() {
+			return states.get(states.size() - 1);
+		}
+		
+		// The state after typing queryChar. From a place at distance d, the char can be deleted, at d + 1, or matched or substituted
+		// for the char at any place k chars further on, after inserting the k - 1 chars before it, at d + k - 1 or d + k
+		private long[] step(long[] state, char queryChar) {
+			nextStateSize = 0;
+			
+			for(long placeAndDistance : state) {
+				int place = getPlace(placeAndDistance);
+				int distance = (int)getDistance(placeAndDistance);
+				
+				if(distance + 1 <= distanceThreshold) {
+					addPlace(place, distance + 1);
+				}
+				
+				addPlacesAfter(place, 1, distanceThreshold - distance + 1, distance, queryChar);
+			}
+			
+			// A place may be reached several ways, so keep its smallest distance
+			Arrays.sort(nextState, 0, nextStateSize);
+			int size = 0;
+			
+			for(int i = 0; i < nextStateSize; i++) {
+				if(size == 0 || getPlace(nextState[size - 1]) != getPlace(nextState[i])) {
+					nextState[size++] = nextState[i];
+				}
+			}
+			
+			return Arrays.copyOf(nextState, size);
+		}
+		
+		// Adds the places that are charsOn chars after the given place, and so on up to maxCharsOn
+		private void addPlacesAfter(int place, int charsOn, int maxCharsOn, int distance, char queryChar) {
+			int node = getNode(place);
+			
+			if(place - labelStarts[node] < labelLengths[node]) {
+				visitPlace(place + 1, charsOn, maxCharsOn, distance, queryChar);
+			} else {
+				for(int child = node + 1; child < subtreeEnds[node]; child = subtreeEnds[child]) {
+					visitPlace(labelStarts[child] + 1, charsOn, maxCharsOn, distance, queryChar);
+				}
+			}
+		}
+		
+		// The char before the place is either the query char, or a substitution for it
+		private void visitPlace(int place, int charsOn, int maxCharsOn, int distance, char queryChar) {
+			int placeDistance = distance + (charsOn - 1) + (labels[place - 1] == queryChar ? 0 : 1);
+			
+			if(placeDistance <= distanceThreshold) {
+				addPlace(place, placeDistance);
+			}
+			
+			if(charsOn < maxCharsOn) {
+				addPlacesAfter(place, charsOn + 1, maxCharsOn, distance, queryChar);
+			}
+		}
+		
+		private void addPlace(int place, int distance) {
+			if(nextStateSize == nextState.length) {
+				nextState = Arrays.copyOf(nextState, nextState.length * 2);
+			}
+			
+			nextState[nextStateSize++] = ((long)place << 32) | distance;
+		}
+		
+		private int getPlace(long placeAndDistance) {
+			return (int)(placeAndDistance >>> 32);
+		}
+		
+		private long getDistance(long placeAndDistance) {
+			return placeAndDistance & 0xFFFFFFFFL;
+		}
+	}
+}
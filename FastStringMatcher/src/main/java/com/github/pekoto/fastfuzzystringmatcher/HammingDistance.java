@@ -0,0 +1,40 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+/**
+ * Hamming distance as a {@link DistanceMetric}: the number of positions at which two keywords differ.
+ * Keywords of different lengths also differ by one for each char of length difference.
+ * <p>
+ * A single pass with no scratch space, so it's much cheaper than any edit distance.
+ *
+ * @author Graham McRobbie
+ *
+ */
+final class HammingDistance implements DistanceMetric {
+	static final HammingDistance INSTANCE = new HammingDistance();
+
+	private HammingDistance() { }
+
+	@Override
+	public int calculateDistance(char[] keyword1, int length1, char[] keyword2, int length2, int maxDistance) {
+		int outOfBounds = (maxDistance == Integer.MAX_VALUE) ? maxDistance : maxDistance + 1;
+		int distance = Math.abs(length1 - length2);
+		int overlap = Math.min(length1, length2);
+
+		if(distance > maxDistance) {
+			return outOfBounds;
+		}
+
+		for(int i = 0; i < overlap; i++) {
+			if(keyword1[i] != keyword2[i] && ++distance > maxDistance) {
+				return outOfBounds;
+			}
+		}
+
+		return distance;
+	}
+
+	@Override
+	public String toString() {
+		return "Hamming";
+	}
+}
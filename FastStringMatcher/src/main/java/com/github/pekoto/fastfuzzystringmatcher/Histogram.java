@@ -0,0 +1,142 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative values, for recording from many threads at once.
+ * <p>
+ * Values are counted in log-linear buckets, in the style of HdrHistogram: each power of two is split into
+ * 8 equal sub-buckets, so a value read back from the histogram is within 12.5% of the values recorded in its bucket.
+ * Values under 8 are counted exactly. Every bucket is a {@link LongAdder}, so recording never blocks.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+public class Histogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+	
+	private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+	
+	public Histogram() {
+		for(int i = 0; i < BUCKET_COUNT; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+	
+	public void record(long value) {
+		if(value < 0) {
+			throw new IllegalArgumentException("Values must not be negative");
+		}
+		
+		buckets[getBucketIndex(value)].increment();
+		count.increment();
+		total.add(value);
+		max.accumulate(value);
+	}
+	
+	// Index of the power of two, then the sub-bucket from the next 3 bits
+	private static int getBucketIndex(long value) {
+		if(value < SUB_BUCKET_COUNT) {
+			return (int)value;
+		}
+		
+		int exponent = (Long.SIZE - 1) - Long.numberOfLeadingZeros(value);
+		int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+		
+		return ((exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT) + subBucket;
+	}
+	
+	// Largest value that falls into the bucket
+	private static long getBucketLimit(int index) {
+		if(index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		
+		int exponent = (index / SUB_BUCKET_COUNT) + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKET_COUNT;
+		long bucketStart = (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+		
+		return bucketStart + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+	
+	public long getCount() {
+		return count.sum();
+	}
+	
+	public long getTotal() {
+		return total.sum();
+	}
+	
+	public long getMax() {
+		return max.get();
+	}
+	
+	public double getMean() {
+		long currentCount = count.sum();
+		return (currentCount == 0) ? 0.0 : (double)total.sum() / currentCount;
+	}
+	
+	public long getP50() {
+		return getValueAtPercentile(50.0);
+	}
+	
+	public long getP90() {
+		return getValueAtPercentile(90.0);
+	}
+	
+	public long getP99() {
+		return getValueAtPercentile(99.0);
+	}
+	
+	/**
+	 * @return The upper limit of the bucket holding the value at the percentile, capped at the largest value recorded.
+	 * 0 if nothing has been recorded.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if(percentile < 0.0 || percentile > 100.0) {
+			throw new IllegalArgumentException("Percentile must be between 0 and 100");
+		}
+		
+		long currentCount = count.sum();
+		
+		if(currentCount == 0) {
+			return 0;
+		}
+		
+		long rank = Math.max(1, (long)Math.ceil((percentile / 100.0) * currentCount));
+		long seen = 0;
+		
+		for(int i = 0; i < BUCKET_COUNT; i++) {
+			seen += buckets[i].sum();
+			
+			if(seen >= rank) {
+				return Math.min(getBucketLimit(i), getMax());
+			}
+		}
+		
+		return getMax();
+	}
+	
+	// Not atomic with respect to concurrent recording
+	public void reset() {
+		for(LongAdder bucket : buckets) {
+			bucket.reset();
+		}
+		
+		count.reset();
+		total.reset();
+		max.reset();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("count=%d, mean=%.1f, p50=%d, p90=%d, p99=%d, max=%d", 
+							 getCount(), getMean(), getP50(), getP90(), getP99(), getMax());
+	}
+}
@@ -0,0 +1,134 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+/**
+ * Weighted Levenshtein distance as a {@link DistanceMetric}, where substituting a key for one next to it on a QWERTY keyboard
+ * costs 1, and every other insertion, deletion or substitution costs 2.
+ * <p>
+ * Costs are doubled rather than halved so they stay whole numbers. An adjacent substitution costs more than 0, and no more
+ * than the 2 + 2 of the deletion and insertion it replaces, so this is still a metric.
+ * <p>
+ * Keys are adjacent if they're next to each other in the same row, or touching in the rows above or below,
+ * allowing for each row being staggered half a key to the right of the one above.
+ * Only unshifted letters and digits are on the keyboard. Any other char only matches itself.
+ *
+ * @author Graham McRobbie
+ *
+ */
+final class KeyboardDistance implements DistanceMetric {
+	static final KeyboardDistance INSTANCE = new KeyboardDistance();
+	
+	private static final int UNIT_COST = 2;
+	private static final int ADJACENT_COST = 1;
+	private static final String[] KEYBOARD_ROWS = { "1234567890", "qwertyuiop", "asdfghjkl", "zxcvbnm" };
+	private static final boolean[][] ADJACENT_KEYS = buildAdjacentKeys();
+	
+	private final ThreadLocal<int[][]> scratchRows = ThreadLocal.withInitial(() -> new int[2][0]);
+	
+	private KeyboardDistance() { }
+	
+	@Override
+	public int calculateDistance(char[] keyword1, int length1, char[] keyword2, int length2, int maxDistance) {
+		int outOfBounds = (maxDistance == Integer.MAX_VALUE) ? maxDistance : maxDistance + 1;
+		
+		if(Math.abs(length1 - length2) > maxDistance / UNIT_COST) {
+			return outOfBounds;
+		}
+		
+		int[][] rows = scratchRows.get();
+		
+		if(rows[0].length <= length2) {
+			rows[0] = new int[length2 + 1];
+			rows[1] = new int[length2 + 1];
+		}
+		
+		int[] previousRow = rows[0];
+		int[] currentRow = rows[1];
+		
+		for(int j = 0; j <= length2; j++) {
+			previousRow[j] = j * UNIT_COST;
+		}
+		
+		for(int i = 1; i <= length1; i++) {
+			currentRow[0] = i * UNIT_COST;
+			int rowMinimum = currentRow[0];
+			
+			for(int j = 1; j <= length2; j++) {
+				int substitution = previousRow[j - 1] + getSubstitutionCost(keyword1[i - 1], keyword2[j - 1]);
+				int insertion = currentRow[j - 1] + UNIT_COST;
+				int deletion = previousRow[j] + UNIT_COST;
+				
+				currentRow[j] = Math.min(substitution, Math.min(insertion, deletion));
+				rowMinimum = Math.min(rowMinimum, currentRow[j]);
+			}
+			
+			// Costs are never negative, so a row's minimum never goes down
+			if(rowMinimum > maxDistance) {
+				return outOfBounds;
+			}
+			
+			int[] temp = previousRow;
+			previousRow = currentRow;
+			currentRow = temp;
+		}
+		
+		return Math.min(previousRow[length2], outOfBounds);
+	}
+	
+	@Override
+	public int getUnitCost() {
+		return UNIT_COST;
+	}
+	
+	@Override
+	public int getLowerBound(int lengthDifference, int missingChars) {
+		// A missing char might only be one adjacent substitution away
+		return Math.max(lengthDifference * UNIT_COST, missingChars * ADJACENT_COST);
+	}
+	
+	@Override
+	public String toString() {
+		return "Keyboard";
+	}
+	
+	private static int getSubstitutionCost(char c1, char c2) {
+		if(c1 == c2) {
+			return 0;
+		}
+		
+		if(c1 < ADJACENT_KEYS.length && c2 < ADJACENT_KEYS.length && ADJACENT_KEYS[c1][c2]) {
+			return ADJACENT_COST;
+		}
+		
+		return UNIT_COST;
+	}
+	
+	// Which ASCII chars are next to each other on the keyboard
+	private static boolean[][] buildAdjacentKeys() {
+		boolean[][] adjacentKeys = new boolean[128][128];
+		
+		for(int row = 0; row < KEYBOARD_ROWS.length; row++) {
+			for(int column = 0; column < KEYBOARD_ROWS[row].length(); column++) {
+				char key = KEYBOARD_ROWS[row].charAt(column);
+				
+				setAdjacent(adjacentKeys, key, row, column - 1);
+				setAdjacent(adjacentKeys, key, row, column + 1);
+				setAdjacent(adjacentKeys, key, row - 1, column);
+				setAdjacent(adjacentKeys, key, row - 1, column + 1);
+				setAdjacent(adjacentKeys, key, row + 1, column - 1);
+				setAdjacent(adjacentKeys, key, row + 1, column);
+			}
+		}
+		
+		return adjacentKeys;
+	}
+	
+	private static void setAdjacent(boolean[][] adjacentKeys, char key, int row, int column) {
+		if(row < 0 || row >= KEYBOARD_ROWS.length || column < 0 || column >= KEYBOARD_ROWS[row].length()) {
+			return;
+		}
+		
+		char neighbour = KEYBOARD_ROWS[row].charAt(column);
+		adjacentKeys[key][neighbour] = true;
+		adjacentKeys[neighbour][key] = true;
+	}
+}
@@ -0,0 +1,52 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+/**
+ * A 64-bit summary of which characters appear in a keyword, case insensitive.
+ * <p>
+ * Each lowercased character sets one bit, chosen by its low 6 bits. A bit set in one signature but not the other
+ * means that one keyword has a character the other doesn't have at all, which takes at least one edit to fix.
+ * Different characters can share a bit, but that only ever makes the bound lower, never wrong.
+ * <p>
+ * OR-ing the signatures of a subtree's keywords gives a signature for the whole subtree. Any character of a search keyword
+ * missing from that is missing from every keyword in the subtree.
+ *
+ * @author Graham McRobbie
+ *
+ */
+final class KeywordSignature {
+	
+	private KeywordSignature() { }
+	
+	static long of(CharSequence keyword) {
+		long signature = 0L;
+		
+		for(int i = 0; i < keyword.length(); i++) {
+			signature |= 1L << Character.toLowerCase(keyword.charAt(i));	// Shifts only use the low 6 bits
+		}
+		
+		return signature;
+	}
+	
+	// Same as of(keyword), for a keyword that's already case folded
+	static long of(char[] foldedKeyword) {
+		long signature = 0L;
+		
+		for(char keywordChar : foldedKeyword) {
+			signature |= 1L << keywordChar;
+		}
+		
+		return signature;
+	}
+	
+	// Lower bound on the edit distance between two keywords.
+	// A substitution can put right a missing character on each side, so it's the larger of the two sides, not the sum.
+	static int getLowerBound(long signature1, long signature2) {
+		return Math.max(Long.bitCount(signature1 & ~signature2), Long.bitCount(signature2 & ~signature1));
+	}
+	
+	// Lower bound on the edit distance from a keyword to anything in a subtree.
+	// Only the keyword's missing characters count, since each keyword in the subtree may only have some of the subtree's characters.
+	static int getSubtreeLowerBound(long keywordSignature, long subtreeSignature) {
+		return Long.bitCount(keywordSignature & ~subtreeSignature);
+	}
+}
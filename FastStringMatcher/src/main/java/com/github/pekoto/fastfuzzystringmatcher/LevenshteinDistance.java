@@ -0,0 +1,29 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+/**
+ * Levenshtein distance as a {@link DistanceMetric}, using the banded calculation of {@link EditDistanceCalculator}.
+ * <p>
+ * String matchers don't go through this for their own searches. They recognise it, and use a compiled
+ * {@link BitParallelEditDistanceCalculator.Pattern} of the search keyword instead, which is faster when one keyword is
+ * compared against many. This is for one-off comparisons, such as checking cached results.
+ *
+ * @author Graham McRobbie
+ *
+ */
+final class LevenshteinDistance implements DistanceMetric {
+	static final LevenshteinDistance INSTANCE = new LevenshteinDistance();
+
+	private final EditDistanceCalculator distanceCalculator = new EditDistanceCalculator();
+
+	private LevenshteinDistance() { }
+
+	@Override
+	public int calculateDistance(char[] keyword1, int length1, char[] keyword2, int length2, int maxDistance) {
+		return distanceCalculator.calculateEditDistance(keyword1, length1, keyword2, length2, maxDistance);
+	}
+
+	@Override
+	public String toString() {
+		return "Levenshtein";
+	}
+}
@@ -0,0 +1,77 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+
+/**
+ * How long a {@link DictionaryLoader} took to read and build a dictionary, and how fast that was.
+ * <p>
+ * The same object can be reused for several loads (it's reset at the start of each one),
+ * but it must only be used by one load at a time.
+ *
+ * @author Graham McRobbie
+ *
+ */
+public class LoadStats {
+	private static final double BYTES_PER_MEGABYTE = 1000.0 * 1000.0;
+	private static final double NANOS_PER_SECOND = 1000.0 * 1000.0 * 1000.0;
+	
+	private long bytesRead;
+	private long entriesRead;
+	private long readNanos;
+	private long buildNanos;
+	
+	public void reset() {
+		bytesRead = 0;
+		entriesRead = 0;
+		readNanos = 0;
+		buildNanos = 0;
+	}
+	
+	public long getBytesRead() {
+		return bytesRead;
+	}
+	
+	// Keyword and value pairs read, before duplicates are merged
+	public long getEntriesRead() {
+		return entriesRead;
+	}
+	
+	// Reading, decoding and parsing
+	public long getReadNanos() {
+		return readNanos;
+	}
+	
+	// Building the tree from the entries
+	public long getBuildNanos() {
+		return buildNanos;
+	}
+	
+	// MB (10^6 bytes) read, decoded and parsed per second
+	public double getReadMegabytesPerSecond() {
+		return getMegabytesPerSecond(readNanos);
+	}
+	
+	// MB per second for the whole load, including building the tree
+	public double getMegabytesPerSecond() {
+		return getMegabytesPerSecond(readNanos + buildNanos);
+	}
+	
+	private double getMegabytesPerSecond(long nanos) {
+		return (nanos == 0) ? 0.0 : (bytesRead / BYTES_PER_MEGABYTE) / (nanos / NANOS_PER_SECOND);
+	}
+	
+	void recordRead(long bytesRead, long entriesRead, long readNanos) {
+		this.bytesRead = bytesRead;
+		this.entriesRead = entriesRead;
+		this.readNanos = readNanos;
+	}
+	
+	void recordBuild(long buildNanos) {
+		this.buildNanos = buildNanos;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("bytesRead=%d, entriesRead=%d, readNanos=%d, buildNanos=%d, readMBPerSecond=%.1f, MBPerSecond=%.1f",
+							 bytesRead, entriesRead, readNanos, buildNanos, getReadMegabytesPerSecond(), getMegabytesPerSecond());
+	}
+}
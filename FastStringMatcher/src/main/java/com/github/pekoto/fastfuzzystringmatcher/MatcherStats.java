@@ -0,0 +1,151 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Cumulative statistics for the searches run on a string matcher.
+ * <p>
+ * Statistics are off by default. Turn them on with {@link StringMatcher#setStats(MatcherStats)}.
+ * Each search counts its work in a {@link QueryStats} and adds it to the totals and histograms here when it finishes.
+ * Everything is held in {@link LongAdder}s, so searches on different threads never contend on a lock.
+ * <p>
+ * Call {@link #register(String)} to export the statistics as a JMX MBean.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+public class MatcherStats implements MatcherStatsMXBean {
+	private static final String OBJECT_NAME_FORMAT = "com.github.pekoto.fastfuzzystringmatcher:type=MatcherStats,name=%s";
+	
+	private final LongAdder searches = new LongAdder();
+	private final LongAdder nodesVisited = new LongAdder();
+	private final LongAdder distanceCalculations = new LongAdder();
+	private final LongAdder cellsEvaluated = new LongAdder();
+	private final LongAdder childrenPruned = new LongAdder();
+	private final LongAdder resultsReturned = new LongAdder();
+	private final Histogram nodesVisitedPerSearch = new Histogram();
+	private final Histogram cellsEvaluatedPerSearch = new Histogram();
+	private final Histogram resultsPerSearch = new Histogram();
+	private final Histogram searchTimeNanos = new Histogram();
+	
+	void record(QueryStats queryStats) {
+		searches.increment();
+		nodesVisited.add(queryStats.getNodesVisited());
+		distanceCalculations.add(queryStats.getDistanceCalculations());
+		cellsEvaluated.add(queryStats.getCellsEvaluated());
+		childrenPruned.add(queryStats.getChildrenPruned());
+		resultsReturned.add(queryStats.getResultsReturned());
+		nodesVisitedPerSearch.record(queryStats.getNodesVisited());
+		cellsEvaluatedPerSearch.record(queryStats.getCellsEvaluated());
+		resultsPerSearch.record(queryStats.getResultsReturned());
+		searchTimeNanos.record(queryStats.getElapsedNanos());
+	}
+	
+	@Override
+	public long getSearches() {
+		return searches.sum();
+	}
+	
+	@Override
+	public long getNodesVisited() {
+		return nodesVisited.sum();
+	}
+	
+	@Override
+	public long getDistanceCalculations() {
+		return distanceCalculations.sum();
+	}
+	
+	@Override
+	public long getCellsEvaluated() {
+		return cellsEvaluated.sum();
+	}
+	
+	@Override
+	public long getChildrenPruned() {
+		return childrenPruned.sum();
+	}
+	
+	@Override
+	public long getResultsReturned() {
+		return resultsReturned.sum();
+	}
+	
+	// Fraction of the children reached that were pruned rather than visited
+	@Override
+	public double getPruningRatio() {
+		long pruned = childrenPruned.sum();
+		long visited = nodesVisited.sum() - searches.sum();		// Every node visited but the root was reached as a child
+		long reached = pruned + Math.max(0, visited);
+		
+		return (reached == 0) ? 0.0 : (double)pruned / reached;
+	}
+	
+	@Override
+	public Histogram getNodesVisitedPerSearch() {
+		return nodesVisitedPerSearch;
+	}
+	
+	@Override
+	public Histogram getCellsEvaluatedPerSearch() {
+		return cellsEvaluatedPerSearch;
+	}
+	
+	@Override
+	public Histogram getResultsPerSearch() {
+		return resultsPerSearch;
+	}
+	
+	@Override
+	public Histogram getSearchTimeNanos() {
+		return searchTimeNanos;
+	}
+	
+	// Not atomic with respect to searches running at the same time
+	@Override
+	public void reset() {
+		searches.reset();
+		nodesVisited.reset();
+		distanceCalculations.reset();
+		cellsEvaluated.reset();
+		childrenPruned.reset();
+		resultsReturned.reset();
+		nodesVisitedPerSearch.reset();
+		cellsEvaluatedPerSearch.reset();
+		resultsPerSearch.reset();
+		searchTimeNanos.reset();
+	}
+	
+	/**
+	 * Registers these statistics with the platform MBean server.
+	 * 
+	 * @param name Distinguishes this matcher's statistics from any others, e.g., "dictionary".
+	 * @return The name the MBean was registered under, to pass to {@link #unregister(ObjectName)}.
+	 */
+	public ObjectName register(String name) throws JMException {
+		if(name == null) {
+			throw new IllegalArgumentException("Name must not be null");
+		}
+		
+		ObjectName objectName = new ObjectName(String.format(OBJECT_NAME_FORMAT, ObjectName.quote(name)));
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.registerMBean(this, objectName);
+		
+		return objectName;
+	}
+	
+	public void unregister(ObjectName objectName) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("searches=%d, nodesVisited=%d, distanceCalculations=%d, cellsEvaluated=%d, childrenPruned=%d, resultsReturned=%d, pruningRatio=%.3f",
+							 getSearches(), getNodesVisited(), getDistanceCalculations(), getCellsEvaluated(), getChildrenPruned(), getResultsReturned(), getPruningRatio());
+	}
+}
@@ -0,0 +1,23 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+
+/**
+ * The JMX view of {@link MatcherStats}.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+public interface MatcherStatsMXBean {
+	long getSearches();
+	long getNodesVisited();
+	long getDistanceCalculations();
+	long getCellsEvaluated();
+	long getChildrenPruned();
+	long getResultsReturned();
+	double getPruningRatio();
+	Histogram getNodesVisitedPerSearch();
+	Histogram getCellsEvaluatedPerSearch();
+	Histogram getResultsPerSearch();
+	Histogram getSearchTimeNanos();
+	void reset();
+}
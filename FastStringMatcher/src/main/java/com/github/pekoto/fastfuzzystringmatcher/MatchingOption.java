@@ -3,11 +3,26 @@ package com.github.pekoto.fastfuzzystringmatcher;
 
 /**
  * Options that can be used when searching/comparing strings.
- * 
+ * <p>
+ * Each option is a {@link Normalizer} pipeline that keywords and queries go through before they're compared.
+ * Matching is always case insensitive. Saved trees record their option, so new options are only ever added to the end.
+ *
  * @author Graham McRobbie
  *
  */
 public enum MatchingOption {
-	NONE,
-	REMOVE_SPACING_AND_LINEBREAKS
+	NONE(Normalizer.foldCase()),
+	REMOVE_SPACING_AND_LINEBREAKS(Normalizer.removeSpacingAndLinebreaks().andThen(Normalizer.foldCase())),
+	FOLD_WIDTH(Normalizer.foldWidth().andThen(Normalizer.foldCase())),
+	FOLD_WIDTH_AND_REMOVE_SPACING(Normalizer.foldWidth().andThen(Normalizer.removeSpacingAndLinebreaks()).andThen(Normalizer.foldCase()));
+	
+	private final Normalizer normalizer;
+	
+	private MatchingOption(Normalizer normalizer) {
+		this.normalizer = normalizer;
+	}
+	
+	public Normalizer getNormalizer() {
+		return normalizer;
+	}
 }
@@ -0,0 +1,69 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+/**
+ * Turns a keyword into the form it's matched in.
+ * <p>
+ * Each keyword is normalized once when it's added, and each query once when it's searched for,
+ * so the edit distance calculations in between can compare plain chars.
+ * Stages are chained with {@link #andThen(Normalizer)}. Each {@link MatchingOption} is a chain of the stages here,
+ * always ending in {@link #foldCase()}.
+ * <p>
+ * A normalizer must always give the same result for the same keyword, and normalizing a normalized keyword
+ * must leave it as it is, since saved trees renormalize their keywords when they're loaded.
+ *
+ * @author Graham McRobbie
+ *
+ */
+@FunctionalInterface
+public interface Normalizer {
+	
+	String normalize(CharSequence keyword);
+	
+	// This normalizer followed by the next one
+	default Normalizer andThen(Normalizer next) {
+		if(next == null) {
+			throw new IllegalArgumentException("Normalizer must not be null");
+		}
+		
+		return keyword -> next.normalize(normalize(keyword));
+	}
+	
+	// Lowercases each char, which is what makes matching case insensitive.
+	// Char by char, so unlike String.toLowerCase, it never changes the keyword's length or depends on the locale.
+	static Normalizer foldCase() {
+		return keyword -> {
+			char[] chars = new char[keyword.length()];
+			
+			for(int i = 0; i < chars.length; i++) {
+				chars[i] = Character.toLowerCase(keyword.charAt(i));
+			}
+			
+			return new String(chars);
+		};
+	}
+	
+	// Removes spaces, tabs and line breaks, so only the text itself is compared
+	static Normalizer removeSpacingAndLinebreaks() {
+		return keyword -> {
+			StringBuilder sb = new StringBuilder(keyword.length());
+			
+			for(int i = 0; i < keyword.length(); i++) {
+				char keywordChar = keyword.charAt(i);
+				
+				// Space, then tab, line feed, vertical tab, form feed and carriage return
+				if(keywordChar != ' ' && (keywordChar < '\t' || keywordChar > '\r')) {
+					sb.append(keywordChar);
+				}
+			}
+			
+			return sb.toString();
+		};
+	}
+	
+	// Folds full width Latin letters, digits and punctuation to ASCII, and half width katakana to full width,
+	// so Japanese text typed either way matches. This is Unicode compatibility normalization (NFKC),
+	// so other compatibility characters, such as ligatures and circled digits, are folded to their plain forms too.
+	static Normalizer foldWidth() {
+		return keyword -> java.text.Normalizer.normalize(keyword, java.text.Normalizer.Form.NFKC);
+	}
+}
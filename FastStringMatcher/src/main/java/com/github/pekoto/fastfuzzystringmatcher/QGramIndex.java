@@ -0,0 +1,292 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.pekoto.fastfuzzystringmatcher.StringMatcher.Node;
+
+/**
+ * An inverted index from each q-gram (run of q chars) of the normalized keywords to the keywords it appears in,
+ * for finding the candidate matches for a long search keyword without walking the tree.
+ * <p>
+ * BK tree pruning relies on the distances from the search keyword to the nodes being spread out. Between long keywords,
+ * like translation memory segments, they're all large and similar, so a search ends up calculating the distance to most of the tree.
+ * The index uses the count filter instead: each edit changes at most q of a keyword's q-grams, so anything within distance d of a keyword
+ * of length n still shares at least (n - q + 1) - q*d of its q-grams, counting repeats. Only the keywords that share that many, and are
+ * close enough in length, are candidates, and only they have their distances calculated.
+ * See <a href="https://doi.org/10.1016/0304-3975(92)90143-4">Ukkonen, 1992</a>.
+ * <p>
+ * Each q-gram's posting list holds the numbers of the nodes it appears in, with how many times it appears in each,
+ * as variable length ints. Node numbers are stored as the gap from the previous one, so most take a byte.
+ * <p>
+ * The index is immutable, and is built for one version of the tree's nodes. It shares the nodes with the tree,
+ * so removed keywords and changed data are seen straight away, but new or replaced nodes need a new index.
+ * <p>
+ * Searches count the shared q-grams in a per-thread hash map, shared by every index, so the scratch space grows with 
+ * the number of nodes a search touches rather than the size of the tree.
+ *
+ * @author Graham McRobbie
+ *
+ * @param <T> The type of data associated with each string keyword.
+ */
+final class QGramIndex<T> {
+	static final int GRAM_LENGTH = 3;
+	
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+	
+	private final int version;
+	private final Node<T>[] nodes;
+	private final long[] grams;			// Every distinct q-gram, sorted
+	private final byte[][] postings;	// Each q-gram's posting list, in the same order
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	QGramIndex(List<Node<T>> nodeList, int version) {
+		this.version = version;
+		this.nodes = nodeList.toArray((Node<T>[]) new Node[nodeList.size()]);
+		
+		Map<Long, PostingListBuilder> postingLists = new HashMap<Long, PostingListBuilder>();
+		long[] keywordGrams = new long[0];
+		
+		for(int node = 0; node < nodes.length; node++) {
+			char[] keyword = nodes[node].getNormalizedChars();
+			
+			if(keywordGrams.length < keyword.length) {
+				keywordGrams = new long[keyword.length];
+			}
+			
+			int gramCount = getSortedGrams(keyword, keyword.length, keywordGrams);
+			
+			for(int start = 0, end; start < gramCount; start = end) {
+				end = getRunEnd(keywordGrams, start, gramCount);
+				postingLists.computeIfAbsent(keywordGrams[start], gram -> new PostingListBuilder()).add(node, end - start);
+			}
+		}
+		
+		grams = new long[postingLists.size()];
+		postings = new byte[grams.length][];
+		int index = 0;
+		
+		for(long gram : postingLists.keySet()) {
+			grams[index++] = gram;
+		}
+		
+		Arrays.sort(grams);
+		
+		for(int i = 0; i < grams.length; i++) {
+			postings[i] = postingLists.get(grams[i]).toArray();
+		}
+	}
+	
+	// The version of the tree's nodes this index was built for
+	int getVersion() {
+		return version;
+	}
+	
+	Node<T> getNode(int node) {
+		return nodes[node];
+	}
+	
+	// Whether the count filter can rule anything out for a keyword of this length and threshold.
+	// Short keywords and loose thresholds might not need to share any q-grams at all.
+	static boolean canFilter(int keywordLength, int distanceThreshold) {
+		return getRequiredGrams(keywordLength, distanceThreshold) > 0;
+	}
+	
+	// Minimum number of the keyword's q-grams that anything within the threshold shares with it
+	private static long getRequiredGrams(int keywordLength, int distanceThreshold) {
+		return (keywordLength - GRAM_LENGTH + 1) - ((long)GRAM_LENGTH * distanceThreshold);
+	}
+	
+	// Numbers of the nodes that pass the count and length filters for the first length folded chars of the keyword.
+	// The keyword must be one that canFilter(...) is true for.
+	int[] findCandidates(char[] keyword, int length, int distanceThreshold) {
+		Scratch state = SCRATCH.get().ensureCapacity(length);
+		long requiredGrams = getRequiredGrams(length, distanceThreshold);
+		int gramCount = getSortedGrams(keyword, length, state.keywordGrams);
+		
+		for(int start = 0, end; start < gramCount; start = end) {
+			end = getRunEnd(state.keywordGrams, start, gramCount);
+			int index = Arrays.binarySearch(grams, state.keywordGrams[start]);
+			
+			if(index < 0) {
+				continue;
+			}
+			
+			byte[] posting = postings[index];
+			int node = -1;
+			state.position = 0;
+			
+			while(state.position < posting.length) {
+				node += state.readVarInt(posting);
+				int occurrences = state.readVarInt(posting);
+				
+				// Repeated q-grams are only shared as many times as they appear on both sides
+				state.addSharedGrams(node, Math.min(end - start, occurrences));
+			}
+		}
+		
+		int[] candidates = state.filled;
+		int candidateCount = 0;
+		
+		// Nodes in the order they were first touched. Each slot is read before any candidate is written over it
+		for(int i = 0; i < state.size; i++) {
+			int slot = state.filled[i];
+			int node = state.nodes[slot] - 1;
+			
+			if(state.sharedGrams[slot] >= requiredGrams && Math.abs(nodes[node].getNormalizedChars().length - length) <= distanceThreshold) {
+				candidates[candidateCount++] = node;
+			}
+			
+			state.nodes[slot] = 0;
+			state.sharedGrams[slot] = 0;
+		}
+		
+		state.size = 0;
+		
+		return Arrays.copyOf(candidates, candidateCount);
+	}
+	
+	// Fills grams with the keyword's q-grams, each packed into a long, sorted so repeats are next to each other.
+	// Returns how many there are
+	private static int getSortedGrams(char[] keyword, int length, long[] grams) {
+		int gramCount = Math.max(0, length - GRAM_LENGTH + 1);
+		
+		for(int i = 0; i < gramCount; i++) {
+			grams[i] = ((long)keyword[i] << 32) | ((long)keyword[i + 1] << 16) | keyword[i + 2];
+		}
+		
+		Arrays.sort(grams, 0, gramCount);
+		
+		return gramCount;
+	}
+	
+	// End of the run of repeats of grams[start]
+	private static int getRunEnd(long[] grams, int start, int gramCount) {
+		int end = start + 1;
+		
+		while(end < gramCount && grams[end] == grams[start]) {
+			end++;
+		}
+		
+		return end;
+	}
+	
+	/**
+	 * A posting list as it's built: pairs of (gap from the last node number, occurrences) as variable length ints.
+	 */
+	private static class PostingListBuilder {
+		private byte[] bytes = new byte[4];
+		private int size;
+		private int lastNode = -1;
+		
+		public void add(int node, int occurrences) {
+			writeVarInt(node - lastNode);
+			writeVarInt(occurrences);
+			lastNode = node;
+		}
+		
+		// 7 bits per byte, low bits first, with the top bit set on every byte but the last
+		private void writeVarInt(int value) {
+			if(size + 5 > bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+			
+			while(value >= 0x80) {
+				bytes[size++] = (byte)((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			
+			bytes[size++] = (byte)value;
+		}
+		
+		public byte[] toArray() {
+			return Arrays.copyOf(bytes, size);
+		}
+	}
+	
+	/**
+	 * Scratch space for one thread's searches: an open addressing hash map from each node touched to its shared q-gram count, 
+	 * and the slots that have been filled, so they can be cleared again without going through the whole table.
+	 * The table is kept at most half full, and grows with the largest search, not the tree.
+	 */
+	private static class Scratch {
+		private static final int INITIAL_CAPACITY = 64;
+		
+		private int[] nodes = new int[INITIAL_CAPACITY];		// Node number + 1 in each slot, or 0 if it's empty
+		private int[] sharedGrams = new int[INITIAL_CAPACITY];
+		private int[] filled = new int[INITIAL_CAPACITY / 2];	// Filled slots, in the order they were filled
+		private int size;
+		private long[] keywordGrams = new long[0];
+		private int position;		// Read position in the current posting list
+		
+		public void addSharedGrams(int node, int count) {
+			int slot = findSlot(nodes, node);
+			
+			if(nodes[slot] == 0) {
+				if(size == filled.length) {
+					grow();
+					slot = findSlot(nodes, node);
+				}
+				
+				nodes[slot] = node + 1;
+				filled[size++] = slot;
+			}
+			
+			sharedGrams[slot] += count;
+		}
+		
+		// The node's slot, or the empty slot it would go in
+		private static int findSlot(int[] nodes, int node) {
+			int mask = nodes.length - 1;
+			int hash = node * 0x9E3779B9;	// Fibonacci hashing, since node numbers are dense
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			
+			while(nodes[slot] != 0 && nodes[slot] != node + 1) {
+				slot = (slot + 1) & mask;
+			}
+			
+			return slot;
+		}
+		
+		private void grow() {
+			int[] newNodes = new int[nodes.length * 2];
+			int[] newSharedGrams = new int[newNodes.length];
+			
+			for(int i = 0; i < size; i++) {
+				int slot = filled[i];
+				int newSlot = findSlot(newNodes, nodes[slot] - 1);
+				newNodes[newSlot] = nodes[slot];
+				newSharedGrams[newSlot] = sharedGrams[slot];
+				filled[i] = newSlot;
+			}
+			
+			nodes = newNodes;
+			sharedGrams = newSharedGrams;
+			filled = Arrays.copyOf(filled, newNodes.length / 2);
+		}
+		
+		public Scratch ensureCapacity(int keywordLength) {
+			if(keywordGrams.length < keywordLength) {
+				keywordGrams = new long[keywordLength];
+			}
+			
+			return this;
+		}
+		
+		public int readVarInt(byte[] posting) {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			
+			do {
+				b = posting[position++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while(b < 0);
+			
+			return value;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+
+/**
+ * Counts of the work done by a single search.
+ * <p>
+ * Pass one to {@link StringMatcher#search(CharSequence, float, QueryStats)} to see why a particular query was fast or slow.
+ * The same object can be reused for several searches (it's reset at the start of each one), 
+ * but it must only be used by one search at a time.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+public class QueryStats {
+	private long nodesVisited;
+	private long distanceCalculations;
+	private long cellsEvaluated;
+	private long childrenPruned;
+	private long resultsReturned;
+	private long elapsedNanos;
+	
+	public void reset() {
+		nodesVisited = 0;
+		distanceCalculations = 0;
+		cellsEvaluated = 0;
+		childrenPruned = 0;
+		resultsReturned = 0;
+		elapsedNanos = 0;
+	}
+	
+	public long getNodesVisited() {
+		return nodesVisited;
+	}
+	
+	// Currently one per node visited, but kept separate in case nodes can be ruled out without a calculation
+	public long getDistanceCalculations() {
+		return distanceCalculations;
+	}
+	
+	// Cells of the edit distance matrices evaluated. Bit-parallel calculations count every cell in each column they process
+	public long getCellsEvaluated() {
+		return cellsEvaluated;
+	}
+	
+	// Children skipped because the triangle inequality or the prefilter ruled out everything under them
+	public long getChildrenPruned() {
+		return childrenPruned;
+	}
+	
+	public long getResultsReturned() {
+		return resultsReturned;
+	}
+	
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+	
+	void recordDistanceCalculation(long cells) {
+		nodesVisited++;
+		distanceCalculations++;
+		cellsEvaluated += cells;
+	}
+	
+	void recordChildrenPruned(int children) {
+		childrenPruned += children;
+	}
+	
+	void recordSearch(long results, long elapsedNanos) {
+		this.resultsReturned = results;
+		this.elapsedNanos = elapsedNanos;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("nodesVisited=%d, distanceCalculations=%d, cellsEvaluated=%d, childrenPruned=%d, resultsReturned=%d, elapsedNanos=%d",
+							 nodesVisited, distanceCalculations, cellsEvaluated, childrenPruned, resultsReturned, elapsedNanos);
+	}
+}
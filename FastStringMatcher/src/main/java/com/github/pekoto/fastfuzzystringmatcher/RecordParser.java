@@ -0,0 +1,310 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses the decoded chars of a run of whole records into (keyword, value) entries, a chunk of chars at a time.
+ * <p>
+ * Records can be split anywhere between chunks, so each parser is a state machine over single chars.
+ * Only the chars of the keyword and value are copied, into reusable buffers, and the only objects made per record
+ * are the keyword and value strings and their entry.
+ *
+ * @author Graham McRobbie
+ *
+ */
+abstract class RecordParser {
+	protected final List<Map.Entry<String, String>> entries;
+	
+	protected RecordParser(List<Map.Entry<String, String>> entries) {
+		this.entries = entries;
+	}
+	
+	static RecordParser forFormat(DictionaryFormat format, int keywordColumn, int valueColumn, boolean skippingHeader,
+								  List<Map.Entry<String, String>> entries) {
+		switch(format) {
+			case PO:
+				return new PoParser(entries);
+			case TSV:
+				return new DelimitedParser(entries, '\t', false, keywordColumn, valueColumn, skippingHeader);
+			case CSV:
+				return new DelimitedParser(entries, ',', true, keywordColumn, valueColumn, skippingHeader);
+			default:
+				throw new IllegalArgumentException("Unknown format: " + format);
+		}
+	}
+	
+	abstract void parse(char[] chars, int from, int to);
+	
+	// The chars have all been parsed, so anything left over is a whole record
+	abstract void finish();
+	
+	// Empty keywords can't go in a tree, so they're skipped, e.g., blank lines
+	protected void addEntry(FieldBuffer keyword, FieldBuffer value) {
+		if(keyword.length > 0) {
+			entries.add(new AbstractMap.SimpleImmutableEntry<String, String>(keyword.toString(), value.toString()));
+		}
+	}
+	
+	/**
+	 * A field's chars as they're parsed, reused from one record to the next.
+	 */
+	static class FieldBuffer {
+		private char[] chars = new char[64];
+		private int length;
+		
+		public void append(char c) {
+			if(length == chars.length) {
+				chars = Arrays.copyOf(chars, chars.length * 2);
+			}
+			
+			chars[length++] = c;
+		}
+		
+		public void append(char[] source, int from, int to) {
+			if(length + (to - from) > chars.length) {
+				chars = Arrays.copyOf(chars, Math.max(length + (to - from), chars.length * 2));
+			}
+			
+			System.arraycopy(source, from, chars, length, to - from);
+			length += to - from;
+		}
+		
+		public void clear() {
+			length = 0;
+		}
+		
+		@Override
+		public String toString() {
+			return new String(chars, 0, length);
+		}
+	}
+	
+	/**
+	 * TSV and CSV: one field of each record is the keyword, and another is the value.
+	 * Line endings may be \n or \r\n. With quoting, a quote at the start of a field quotes it up to the next lone quote.
+	 */
+	private static class DelimitedParser extends RecordParser {
+		private final char delimiter;
+		private final boolean quoting;
+		private final int keywordColumn;
+		private final int valueColumn;
+		private final FieldBuffer keyword = new FieldBuffer();
+		private final FieldBuffer value = new FieldBuffer();
+		private boolean skippingHeader;
+		private int column;
+		private boolean atFieldStart = true;
+		private boolean inQuotes;
+		private boolean afterClosingQuote;		// Which may turn out to be the first of an escaped ""
+		private boolean recordStarted;
+		
+		public DelimitedParser(List<Map.Entry<String, String>> entries, char delimiter, boolean quoting,
+							   int keywordColumn, int valueColumn, boolean skippingHeader) {
+			super(entries);
+			this.delimiter = delimiter;
+			this.quoting = quoting;
+			this.keywordColumn = keywordColumn;
+			this.valueColumn = valueColumn;
+			this.skippingHeader = skippingHeader;
+		}
+		
+		@Override
+		void parse(char[] chars, int from, int to) {
+			for(int i = from; i < to; i++) {
+				char c = chars[i];
+				recordStarted = true;
+				
+				if(inQuotes) {
+					if(c == '"') {
+						inQuotes = false;
+						afterClosingQuote = true;
+					} else {
+						append(c);
+					}
+					
+					continue;
+				}
+				
+				if(afterClosingQuote) {
+					afterClosingQuote = false;
+					
+					if(c == '"') {
+						append(c);
+						inQuotes = true;
+						continue;
+					}
+				}
+				
+				if(quoting && c == '"' && atFieldStart) {
+					inQuotes = true;
+					atFieldStart = false;
+				} else if(c == delimiter) {
+					column++;
+					atFieldStart = true;
+				} else if(c == '\n') {
+					endRecord();
+				} else if(c != '\r') {
+					append(c);
+					atFieldStart = false;
+				}
+			}
+		}
+		
+		@Override
+		void finish() {
+			if(recordStarted) {
+				endRecord();
+			}
+		}
+		
+		private void append(char c) {
+			if(column == keywordColumn) {
+				keyword.append(c);
+			} else if(column == valueColumn) {
+				value.append(c);
+			}
+		}
+		
+		private void endRecord() {
+			if(skippingHeader) {
+				skippingHeader = false;
+			} else {
+				addEntry(keyword, value);
+			}
+			
+			keyword.clear();
+			value.clear();
+			column = 0;
+			atFieldStart = true;
+			recordStarted = false;
+		}
+	}
+	
+	/**
+	 * Gettext .po entries, a line at a time: msgid "keyword" followed by one or more msgstr "value" (or msgstr[n] "value") lines,
+	 * where any string can carry on over the following lines that start with a quote.
+	 * Lines are parsed where they are in the decoded chars, unless they're split between chunks, when they're gathered into a reusable buffer.
+	 * Only the text between each line's quotes is copied out, unescaped.
+	 */
+	private static class PoParser extends RecordParser {
+		private final FieldBuffer keyword = new FieldBuffer();
+		private final FieldBuffer value = new FieldBuffer();
+		private final FieldBuffer line = new FieldBuffer();
+		private FieldBuffer currentString;		// The string that continuation lines add to, if any
+		private boolean valuePending;
+		
+		public PoParser(List<Map.Entry<String, String>> entries) {
+			super(entries);
+		}
+		
+		@Override
+		void parse(char[] chars, int from, int to) {
+			int lineStart = from;
+			
+			for(int i = from; i < to; i++) {
+				if(chars[i] != '\n') {
+					continue;
+				}
+				
+				if(line.length == 0) {
+					parseLine(chars, lineStart, i);
+				} else {
+					line.append(chars, lineStart, i);
+					parseLine(line.chars, 0, line.length);
+					line.clear();
+				}
+				
+				lineStart = i + 1;
+			}
+			
+			line.append(chars, lineStart, to);
+		}
+		
+		@Override
+		void finish() {
+			parseLine(line.chars, 0, line.length);
+			line.clear();
+			endValue();
+		}
+		
+		// Parses the line chars[start, end)
+		private void parseLine(char[] chars, int start, int end) {
+			if(startsWith(chars, start, end, "msgid_plural")) {
+				currentString = null;
+			} else if(startsWith(chars, start, end, "msgid")) {
+				endValue();
+				keyword.clear();
+				currentString = keyword;
+				appendQuoted(chars, start, end, keyword);
+			} else if(startsWith(chars, start, end, "msgstr")) {
+				endValue();
+				value.clear();
+				valuePending = true;
+				currentString = value;
+				appendQuoted(chars, start, end, value);
+			} else if(startsWith(chars, start, end, "\"")) {
+				if(currentString != null) {
+					appendQuoted(chars, start, end, currentString);
+				}
+			} else {
+				// Blank lines, comments and msgctxt
+				currentString = null;
+			}
+		}
+		
+		private void endValue() {
+			if(valuePending) {
+				addEntry(keyword, value);
+				valuePending = false;
+			}
+		}
+		
+		private static boolean startsWith(char[] chars, int start, int end, String prefix) {
+			if(end - start < prefix.length()) {
+				return false;
+			}
+			
+			for(int i = 0; i < prefix.length(); i++) {
+				if(chars[start + i] != prefix.charAt(i)) {
+					return false;
+				}
+			}
+			
+			return true;
+		}
+		
+		// Appends the line's text between its first and last quotes, unescaping \n, \t, \r, and anything else after a backslash as itself
+		private static void appendQuoted(char[] chars, int start, int end, FieldBuffer string) {
+			int openingQuote = start;
+			int closingQuote = end - 1;
+			
+			while(openingQuote < end && chars[openingQuote] != '"') {
+				openingQuote++;
+			}
+			
+			while(closingQuote > openingQuote && chars[closingQuote] != '"') {
+				closingQuote--;
+			}
+			
+			for(int i = openingQuote + 1; i < closingQuote; i++) {
+				char c = chars[i];
+				
+				if(c == '\\' && i + 1 < closingQuote) {
+					c = chars[++i];
+					
+					if(c == 'n') {
+						c = '\n';
+					} else if(c == 't') {
+						c = '\t';
+					} else if(c == 'r') {
+						c = '\r';
+					}
+				}
+				
+				string.append(c);
+			}
+		}
+	}
+}
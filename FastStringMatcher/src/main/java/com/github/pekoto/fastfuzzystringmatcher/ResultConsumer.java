@@ -0,0 +1,19 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+/**
+ * Receives search results one at a time, as soon as the search finds them.
+ * See {@link StringMatcher#search(CharSequence, float, ResultConsumer)}.
+ * 
+ * @author Graham McRobbie
+ *
+ * @param <T> The type of data associated with each string keyword.
+ */
+@FunctionalInterface
+public interface ResultConsumer<T> {
+	
+	/**
+	 * @param result A matching keyword. Results arrive in the order the tree is searched, not sorted by how close they are.
+	 * @return True to carry on searching, or false to stop the search here.
+	 */
+	boolean accept(SearchResult<T> result);
+}
@@ -0,0 +1,341 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.github.pekoto.fastfuzzystringmatcher.BitParallelEditDistanceCalculator.Pattern;
+
+/**
+ * A cache of search results, for traffic where the same queries come up again and again.
+ * <p>
+ * Turn it on with {@link StringMatcher#setCache(SearchCache)}. Only {@link StringMatcher#search(CharSequence, float)}
+ * and {@link StringMatcher#search(CharSequence, int)} use it. Results are cached by normalized keyword (case insensitive)
+ * and edit distance threshold, so a % search and a distance search that come to the same threshold share an entry.
+ * <p>
+ * <strong>Eviction</strong>: approximate segmented LRU, bounded by the estimated size of the cached results. New entries are on probation,
+ * and are protected once they're asked for again, so a burst of one-off queries can only push out
+ * other one-off queries, not the ones that keep coming back. Once the cache is full, the least recently used entries are evicted 
+ * in one go, probation first, until there's room for a tenth of the cache again. Recency is only counted in puts, 
+ * so entries used between the same two puts are equally recent. The estimate counts the result objects and lists,
+ * not the keywords or data, which belong to the tree.
+ * <p>
+ * <strong>Invalidation</strong>: whenever a keyword is added, removed, or has its data changed, the entries it could affect are dropped.
+ * With precise invalidation (the default), those are the entries whose keyword is within their threshold of the changed keyword,
+ * under the matcher's {@link DistanceMetric},
+ * which costs a bounded distance calculation per entry. With coarse invalidation, every write starts a new epoch and drops everything.
+ * Rebuilding or compacting the tree doesn't change any results, so neither does anything here.
+ * <p>
+ * Lookups never lock, so cached searches never wait for each other, or for writes. Puts, evictions and invalidations take a lock,
+ * but a put that would have to wait for it is skipped, so a search that misses just doesn't cache its results while an invalidation runs.
+ * A cache must only be used by one string matcher at a time.
+ *
+ * @author Graham McRobbie
+ *
+ * @param <T> The type of data associated with each string keyword.
+ */
+public class SearchCache<T> {
+	private static final float PROTECTED_SHARE = 0.8f;	// Fraction of the bytes that entries which have been hit can hold
+	private static final int ENTRY_BYTES = 128;			// Key, entry, list and map overheads
+	private static final int RESULT_BYTES = 40;			// Result object plus its slot in the list
+	private static final float EVICTION_TARGET = 0.9f;	// Fraction of the bytes to evict down to once the cache is full
+	
+	private final long maxBytes;
+	private final long maxProtectedBytes;
+	private final boolean preciseInvalidation;
+	private final ConcurrentHashMap<Key, Entry<T>> entries = new ConcurrentHashMap<Key, Entry<T>>();
+	private final ReentrantLock writeLock = new ReentrantLock();	// Held to change the entries, but never to look them up
+	private final BitParallelEditDistanceCalculator distanceCalculator = new BitParallelEditDistanceCalculator();
+	private final Pattern invalidationPattern = distanceCalculator.compile("");
+	private DistanceMetric invalidationMetric = DistanceMetric.levenshtein();
+	private char[] invalidationChars = new char[0];		// The changed keyword, for metrics other than Levenshtein
+	private char[] keyChars = new char[0];				// Scratch space for each entry's keyword
+	private volatile long bytes;
+	private volatile long clock;		// Advanced by every put, and stamped on entries as they're used
+	private volatile long epoch;		// Advanced by every write, so searches that overlap a write don't cache their results
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private volatile long evictions;
+	private volatile long invalidations;
+	
+	public SearchCache(long maxBytes) {
+		this(maxBytes, true);
+	}
+	
+	public SearchCache(long maxBytes, boolean preciseInvalidation) {
+		if(maxBytes < 1) {
+			throw new IllegalArgumentException("Maximum bytes must be at least 1");
+		}
+		
+		this.maxBytes = maxBytes;
+		this.maxProtectedBytes = (long)(maxBytes * PROTECTED_SHARE);
+		this.preciseInvalidation = preciseInvalidation;
+	}
+	
+	// The cached results, or null on a miss. The list is the cache's own, so callers must copy it before handing it out
+	SearchResultList<T> get(CharSequence normalizedKeyword, int distanceThreshold) {
+		Entry<T> entry = entries.get(new Key(normalizedKeyword, distanceThreshold));
+		
+		if(entry == null) {
+			misses.increment();
+			return null;
+		}
+		
+		// Only written when they change, so searches for the same popular keyword don't keep writing to the same entry
+		long now = clock;
+		
+		if(entry.lastUsed != now) {
+			entry.lastUsed = now;
+		}
+		
+		if(!entry.isProtected) {
+			entry.isProtected = true;
+		}
+		
+		hits.increment();
+		
+		return entry.results;
+	}
+	
+	// The epoch to pass to put(...) for a search that's about to start
+	long getEpoch() {
+		return epoch;
+	}
+	
+	// Cache a search's results, unless there's been a write since it started, which it might have missed.
+	// Skipped if another put or an invalidation holds the lock, rather than waiting for it.
+	// The cache keeps the list, so callers mustn't change it afterwards.
+	void put(CharSequence normalizedKeyword, int distanceThreshold, SearchResultList<T> results, long searchEpoch) {
+		if(searchEpoch != epoch || !writeLock.tryLock()) {
+			return;
+		}
+		
+		try {
+			// Checked again under the lock, since invalidations advance it under the lock
+			if(searchEpoch != epoch) {
+				return;
+			}
+			
+			Key key = new Key(normalizedKeyword, distanceThreshold);
+			Entry<T> entry = new Entry<T>(results, ENTRY_BYTES + (2L * key.keyword.length()) + ((long)RESULT_BYTES * results.size()), ++clock);
+			
+			if(entry.bytes > maxBytes || entries.putIfAbsent(key, entry) != null) {
+				return;		// Too large to cache, or another search got there first
+			}
+			
+			bytes += entry.bytes;
+			
+			if(bytes > maxBytes) {
+				evict();
+			}
+		} finally {
+			writeLock.unlock();
+		}
+	}
+	
+	// Evict the least recently used entries until the cache is down to its eviction target.
+	// Protected entries past the protected share, least recently used first, are put back on probation first
+	private void evict() {
+		List<Map.Entry<Key, Entry<T>>> protectedEntries = new ArrayList<Map.Entry<Key, Entry<T>>>();
+		List<Map.Entry<Key, Entry<T>>> probation = new ArrayList<Map.Entry<Key, Entry<T>>>();
+		Comparator<Map.Entry<Key, Entry<T>>> leastRecentlyUsedFirst = Comparator.comparingLong(mapEntry -> mapEntry.getValue().lastUsed);
+		
+		for(Map.Entry<Key, Entry<T>> mapEntry : entries.entrySet()) {
+			(mapEntry.getValue().isProtected ? protectedEntries : probation).add(mapEntry);
+		}
+		
+		protectedEntries.sort(leastRecentlyUsedFirst.reversed());
+		long protectedBytes = 0;
+		
+		for(Map.Entry<Key, Entry<T>> mapEntry : protectedEntries) {
+			protectedBytes += mapEntry.getValue().bytes;
+			
+			if(protectedBytes > maxProtectedBytes) {
+				mapEntry.getValue().isProtected = false;
+				probation.add(mapEntry);
+			}
+		}
+		
+		protectedEntries.removeIf(mapEntry -> !mapEntry.getValue().isProtected);
+		probation.sort(leastRecentlyUsedFirst);
+		protectedEntries.sort(leastRecentlyUsedFirst);
+		probation.addAll(protectedEntries);
+		
+		long targetBytes = (long)(maxBytes * EVICTION_TARGET);
+		
+		for(int i = 0; i < probation.size() && bytes > targetBytes; i++) {
+			remove(probation.get(i).getKey(), probation.get(i).getValue());
+			evictions++;
+		}
+	}
+	
+	private void remove(Key key, Entry<T> entry) {
+		if(entries.remove(key, entry)) {
+			bytes -= entry.bytes;
+		}
+	}
+	
+	// Drop everything a write to the keyword could have changed, measuring distances with the matcher's metric.
+	// The epoch is advanced first, so searches that are running can't cache anything while the entries are checked
+	void invalidate(CharSequence normalizedKeyword, DistanceMetric distanceMetric) {
+		writeLock.lock();
+		
+		try {
+			epoch++;
+			
+			if(!preciseInvalidation) {
+				invalidateAll();
+				return;
+			}
+			
+			invalidationMetric = distanceMetric;
+			
+			if(distanceMetric == DistanceMetric.levenshtein()) {
+				invalidationPattern.reset(normalizedKeyword);
+			} else {
+				invalidationChars = normalizedKeyword.toString().toCharArray();
+			}
+			
+			for(Map.Entry<Key, Entry<T>> mapEntry : entries.entrySet()) {
+				Key key = mapEntry.getKey();
+				
+				// Nothing can be within a negative threshold (e.g., from a % over 100), so those are always empty
+				if(key.distanceThreshold < 0 || calculateDistance(key.keyword, key.distanceThreshold) > key.distanceThreshold) {
+					continue;
+				}
+				
+				remove(key, mapEntry.getValue());
+				invalidations++;
+			}
+		} finally {
+			writeLock.unlock();
+		}
+	}
+	
+	// Bounded distance from the keyword being invalidated to an entry's keyword
+	private int calculateDistance(String keyword, int distanceThreshold) {
+		if(invalidationMetric == DistanceMetric.levenshtein()) {
+			return distanceCalculator.calculateEditDistance(invalidationPattern, keyword, distanceThreshold);
+		}
+		
+		if(keyChars.length < keyword.length()) {
+			keyChars = new char[keyword.length()];
+		}
+		
+		keyword.getChars(0, keyword.length(), keyChars, 0);
+		return invalidationMetric.calculateDistance(invalidationChars, invalidationChars.length, keyChars, keyword.length(), distanceThreshold);
+	}
+	
+	// Drop every entry, e.g., after changing the tree in a way the cache can't see
+	public void invalidateAll() {
+		writeLock.lock();
+		
+		try {
+			epoch++;
+			invalidations += entries.size();
+			entries.clear();
+			bytes = 0;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+	
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+	
+	public boolean isPreciseInvalidation() {
+		return preciseInvalidation;
+	}
+	
+	// Estimated size of the cached results
+	public long getBytes() {
+		return bytes;
+	}
+	
+	public int getSize() {
+		return entries.size();
+	}
+	
+	public long getHits() {
+		return hits.sum();
+	}
+	
+	public long getMisses() {
+		return misses.sum();
+	}
+	
+	// Entries dropped to make room for new ones
+	public long getEvictions() {
+		return evictions;
+	}
+	
+	// Entries dropped because a write could have changed their results
+	public long getInvalidations() {
+		return invalidations;
+	}
+	
+	public double getHitRatio() {
+		long hitCount = getHits();
+		long lookups = hitCount + getMisses();
+		
+		return (lookups == 0) ? 0.0 : (double)hitCount / lookups;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("size=%d, bytes=%d, maxBytes=%d, hits=%d, misses=%d, hitRatio=%.3f, evictions=%d, invalidations=%d",
+							 getSize(), bytes, maxBytes, getHits(), getMisses(), getHitRatio(), evictions, invalidations);
+	}
+	
+	/**
+	 * A normalized keyword, lowercased to match the case insensitive searches, and a threshold.
+	 */
+	private static final class Key {
+		private final String keyword;
+		private final int distanceThreshold;
+		
+		public Key(CharSequence normalizedKeyword, int distanceThreshold) {
+			StringBuilder sb = new StringBuilder(normalizedKeyword.length());
+			
+			for(int i = 0; i < normalizedKeyword.length(); i++) {
+				sb.append(Character.toLowerCase(normalizedKeyword.charAt(i)));
+			}
+			
+			this.keyword = sb.toString();
+			this.distanceThreshold = distanceThreshold;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			if(!(other instanceof Key)) {
+				return false;
+			}
+			
+			Key otherKey = (Key)other;
+			return distanceThreshold == otherKey.distanceThreshold && keyword.equals(otherKey.keyword);
+		}
+		
+		@Override
+		public int hashCode() {
+			return 31 * keyword.hashCode() + distanceThreshold;
+		}
+	}
+	
+	private static final class Entry<T> {
+		private final SearchResultList<T> results;
+		private final long bytes;
+		private volatile long lastUsed;			// The clock when it was last put or hit
+		private volatile boolean isProtected;	// Hit since it was put, and not put back on probation since
+		
+		public Entry(SearchResultList<T> results, long bytes, long lastUsed) {
+			this.results = results;
+			this.bytes = bytes;
+			this.lastUsed = lastUsed;
+		}
+	}
+}
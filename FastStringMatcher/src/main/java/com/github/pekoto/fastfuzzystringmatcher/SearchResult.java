@@ -1,7 +1,11 @@
 package com.github.pekoto.fastfuzzystringmatcher;
 
+import java.util.List;
+
 /**
  * A result returned after searching using the string matcher.
+ * <p>
+ * A keyword with several values gives a single result holding all of them.
  * 
  * @author Graham McRobbie
  *
@@ -9,21 +13,34 @@ package com.github.pekoto.fastfuzzystringmatcher;
  */
 public class SearchResult<T> {
 	private CharSequence keyword;
-	private T associatedData;
+	private Object associatedValues;		// One value, or several. See AssociatedValues
 	private float matchPercentage;
 		
 	public SearchResult(CharSequence keyword, T associatedData, float matchPercentage) {
 		this.keyword = keyword;
-		this.associatedData = associatedData;
+		this.associatedValues = associatedData;
 		this.matchPercentage = matchPercentage;
 	}
+	
+	// Takes a node's values as they're held, so they're only unpacked if they're asked for
+	static <T> SearchResult<T> fromAssociatedValues(CharSequence keyword, Object associatedValues, float matchPercentage) {
+		SearchResult<T> result = new SearchResult<T>(keyword, null, matchPercentage);
+		result.associatedValues = associatedValues;
+		
+		return result;
+	}
 
 	public CharSequence getKeyword() {
 		return keyword;
 	}
 
+	// The first value, if the keyword has several
 	public T getAssociatedData() {
-		return associatedData;
+		return AssociatedValues.first(associatedValues);
+	}
+	
+	public List<T> getAllAssociatedData() {
+		return AssociatedValues.all(associatedValues);
 	}
 
 	public float getMatchPercentage() {
@@ -32,6 +49,10 @@ public class SearchResult<T> {
 	
 	@Override
 	public String toString() {
-		return String.format("%s/%s/%f", keyword, associatedData, matchPercentage);
+		if(AssociatedValues.count(associatedValues) == 1) {
+			return String.format("%s/%s/%f", keyword, getAssociatedData(), matchPercentage);
+		}
+		
+		return String.format("%s/%s/%f", keyword, getAllAssociatedData(), matchPercentage);
 	}
 }
@@ -0,0 +1,44 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+/**
+ * Decides which shard of a {@link ShardedStringMatcher} each keyword goes in.
+ * <p>
+ * Routers are given the normalized keyword. Matching is case insensitive, so keywords that only differ by case
+ * must go to the same shard, or they'll be held as separate keywords in different shards.
+ *
+ * @author Graham McRobbie
+ *
+ */
+@FunctionalInterface
+public interface ShardRouter {
+	
+	// The keyword's shard, from 0 to shardCount - 1
+	int getShard(CharSequence normalizedKeyword, int shardCount);
+	
+	// Spreads keywords evenly over the shards, by a case insensitive hash
+	static ShardRouter byHash() {
+		return (normalizedKeyword, shardCount) -> {
+			int hash = 0;
+			
+			for(int i = 0; i < normalizedKeyword.length(); i++) {
+				hash = 31 * hash + Character.toLowerCase(normalizedKeyword.charAt(i));
+			}
+			
+			// Mix the bits, so keywords that only differ at the end don't land in neighbouring shards
+			hash *= 0x9E3779B9;
+			hash ^= hash >>> 16;
+			
+			return Math.floorMod(hash, shardCount);
+		};
+	}
+	
+	// Puts keywords of similar lengths together: lengths [0, bandWidth) go in shard 0, [bandWidth, 2 * bandWidth) in shard 1, and so on.
+	// Anything longer than the last band goes in the last shard.
+	static ShardRouter byLengthBand(int bandWidth) {
+		if(bandWidth < 1) {
+			throw new IllegalArgumentException("Band width must be at least 1");
+		}
+		
+		return (normalizedKeyword, shardCount) -> Math.min(normalizedKeyword.length() / bandWidth, shardCount - 1);
+	}
+}
@@ -0,0 +1,418 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+import com.github.pekoto.fastfuzzystringmatcher.StringMatcher.Node;
+
+/**
+ * Splits the keywords over several {@link StringMatcher} trees (shards), and searches them all at once.
+ * <p>
+ * Each keyword goes in one shard, chosen by a {@link ShardRouter}: by hash, by length band, or by a function of your own.
+ * A search runs on every shard in parallel on the executor, and the shards' results are merged.
+ * The results are the same as a single tree holding all of the keywords would give,
+ * but each tree is smaller, so it takes less time to search, rebuild, save or load.
+ * <p>
+ * Shards whose keywords can't possibly match, judging by the prefilter summary at the root (see {@link StringMatcher#setPrefiltering(boolean)}),
+ * aren't searched at all. With {@link ShardRouter#byLengthBand(int)}, that skips every shard outside the query's range of lengths.
+ * <p>
+ * Each shard can be rebuilt, saved and loaded on its own. As with {@link StringMatcher}, this class isn't synchronised:
+ * keywords shouldn't be added or removed while it's being searched.
+ *
+ * @author Graham McRobbie
+ *
+ * @param <T> The type of data associated with each string keyword.
+ */
+public class ShardedStringMatcher<T> {
+	private static final String SHARD_FILE_FORMAT = "shard-%d.bktr";
+	
+	private final StringMatcher<T>[] shards;
+	private final ShardRouter router;
+	private final MatchingOption matchingOption;
+	private final DistanceMetric distanceMetric;
+	private final Executor executor;
+	private BitParallelEditDistanceCalculator distanceCalculator = new BitParallelEditDistanceCalculator();
+	
+	// Routes by hash, and searches on the common pool
+	public ShardedStringMatcher(int shardCount) {
+		this(shardCount, ShardRouter.byHash());
+	}
+	
+	public ShardedStringMatcher(int shardCount, ShardRouter router) {
+		this(shardCount, router, MatchingOption.NONE, ForkJoinPool.commonPool());
+	}
+	
+	public ShardedStringMatcher(int shardCount, ShardRouter router, MatchingOption matchingOption, Executor executor) {
+		this(shardCount, router, matchingOption, DistanceMetric.levenshtein(), executor);
+	}
+	
+	// Every shard is built and searched on the distance metric
+	public ShardedStringMatcher(int shardCount, ShardRouter router, MatchingOption matchingOption, DistanceMetric distanceMetric, Executor executor) {
+		this(newShards(shardCount, matchingOption, distanceMetric), router, matchingOption, distanceMetric, executor);
+	}
+	
+	private ShardedStringMatcher(StringMatcher<T>[] shards, ShardRouter router, MatchingOption matchingOption, DistanceMetric distanceMetric, Executor executor) {
+		if(router == null || matchingOption == null || distanceMetric == null || executor == null) {
+			throw new IllegalArgumentException("Router, matching option, distance metric and executor must not be null");
+		}
+		
+		this.shards = shards;
+		this.router = router;
+		this.matchingOption = matchingOption;
+		this.distanceMetric = distanceMetric;
+		this.executor = executor;
+	}
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <T> StringMatcher<T>[] newShards(int shardCount, MatchingOption matchingOption, DistanceMetric distanceMetric) {
+		if(shardCount < 1) {
+			throw new IllegalArgumentException("Shard count must be at least 1");
+		}
+		
+		StringMatcher<T>[] shards = (StringMatcher<T>[]) new StringMatcher[shardCount];
+		
+		for(int i = 0; i < shardCount; i++) {
+			shards[i] = new StringMatcher<T>(matchingOption, distanceMetric);
+		}
+		
+		return shards;
+	}
+	
+	public int getShardCount() {
+		return shards.length;
+	}
+	
+	// The shard's own string matcher, e.g., to change its traversal order, turn on its statistics, or look at the shape of its tree.
+	// Keywords shouldn't be added to it directly, since they might belong in a different shard.
+	public StringMatcher<T> getShard(int shard) {
+		checkShard(shard);
+		return shards[shard];
+	}
+	
+	public MatchingOption getMatchingOption() {
+		return matchingOption;
+	}
+	
+	public DistanceMetric getDistanceMetric() {
+		return distanceMetric;
+	}
+	
+	public ShardRouter getRouter() {
+		return router;
+	}
+	
+	public void add(CharSequence keyword, T associatedData) {
+		getShardFor(keyword).add(keyword, associatedData);
+	}
+	
+	public void addValue(CharSequence keyword, T associatedData) {
+		getShardFor(keyword).addValue(keyword, associatedData);
+	}
+	
+	public T put(CharSequence keyword, T associatedData) {
+		return getShardFor(keyword).put(keyword, associatedData);
+	}
+	
+	public boolean remove(CharSequence keyword) {
+		return getShardFor(keyword).remove(keyword);
+	}
+	
+	private StringMatcher<T> getShardFor(CharSequence keyword) {
+		StringMatcher.checkKeyword(keyword);
+		
+		int shard = router.getShard(StringMatcher.getNormalizedKeyword(keyword, matchingOption), shards.length);
+		
+		if(shard < 0 || shard >= shards.length) {
+			throw new IllegalStateException("Shard router returned " + shard + " for " + shards.length + " shards");
+		}
+		
+		return shards[shard];
+	}
+	
+	// Search every shard using % matching, merging the results closest match first.
+	public SearchResultList<T> search(CharSequence keyword, float matchPercentage) {
+		return search(keyword, matchPercentage, Integer.MAX_VALUE);
+	}
+	
+	// Search using % matching, returning only the maxResults closest matches.
+	// Each shard's results are already sorted, so the merge stops as soon as it has enough.
+	public SearchResultList<T> search(CharSequence keyword, float matchPercentage, int maxResults) {
+		checkMaxResults(maxResults);
+		
+		CharSequence normalizedKeyword = StringMatcher.getNormalizedKeyword(keyword, matchingOption);
+		int distanceThreshold = StringMatcher.convertPercentageToEditDistance(normalizedKeyword, matchPercentage, distanceMetric);
+		
+		return mergeClosestMatches(scatter(normalizedKeyword, distanceThreshold, shard -> shard.search(keyword, matchPercentage)), maxResults);
+	}
+	
+	// Search every shard using edit distance, merging the results closest match first.
+	public SearchResultList<T> search(CharSequence keyword, int distanceThreshold) {
+		return search(keyword, distanceThreshold, Integer.MAX_VALUE);
+	}
+	
+	// Search using edit distance, returning only the maxResults closest matches.
+	public SearchResultList<T> search(CharSequence keyword, int distanceThreshold, int maxResults) {
+		checkMaxResults(maxResults);
+		
+		CharSequence normalizedKeyword = StringMatcher.getNormalizedKeyword(keyword, matchingOption);
+		
+		return mergeClosestMatches(scatter(normalizedKeyword, distanceThreshold, shard -> shard.search(keyword, distanceThreshold)), maxResults);
+	}
+	
+	// Search for the k keywords with the smallest edit distance to the keyword, across all of the shards.
+	public SearchResultList<T> searchNearest(CharSequence keyword, int k) {
+		return searchNearest(keyword, k, Integer.MAX_VALUE);
+	}
+	
+	// Search for the k closest keywords, ignoring anything further than maxDistance.
+	// Each shard finds its own k closest, and only the k closest of those are kept as they're merged.
+	public SearchResultList<T> searchNearest(CharSequence keyword, int k, int maxDistance) {
+		if(k < 1) {
+			throw new IllegalArgumentException("Number of results must be at least 1");
+		}
+		
+		if(maxDistance < 0) {
+			throw new IllegalArgumentException("Maximum distance must not be negative");
+		}
+		
+		CharSequence normalizedKeyword = StringMatcher.getNormalizedKeyword(keyword, matchingOption);
+		List<SearchResultList<T>> shardResults = scatter(normalizedKeyword, maxDistance, shard -> shard.searchNearest(keyword, k, maxDistance));
+		
+		// The k best so far, with the furthest on top (priorities are negated distances)
+		TraversalQueue<SearchResult<T>> nearest = new TraversalQueue<SearchResult<T>>().reset(TraversalOrder.BEST_FIRST);
+		BitParallelEditDistanceCalculator.Pattern keywordPattern = distanceCalculator.compile(normalizedKeyword);
+		
+		for(SearchResultList<T> results : shardResults) {
+			for(SearchResult<T> result : results) {
+				int distance = calculateDistance(normalizedKeyword, keywordPattern, StringMatcher.getNormalizedKeyword(result.getKeyword(), matchingOption));
+				
+				// Each shard's results are closest first, so once one can't get in, none of the rest of that shard's can
+				if(nearest.size() == k && distance >= -nearest.peekPriority()) {
+					break;
+				}
+				
+				nearest.push(result, -distance);
+				
+				if(nearest.size() > k) {
+					nearest.pop();
+				}
+			}
+		}
+		
+		SearchResultList<T> mergedResults = new SearchResultList<T>();
+		
+		while(!nearest.isEmpty()) {
+			mergedResults.add(nearest.pop());
+		}
+		
+		Collections.reverse(mergedResults);
+		
+		return mergedResults;
+	}
+	
+	// The distance each shard measured to one of its results, measured again, since results only hold match percentages
+	private int calculateDistance(CharSequence normalizedKeyword, BitParallelEditDistanceCalculator.Pattern keywordPattern, CharSequence normalizedResultKeyword) {
+		if(distanceMetric == DistanceMetric.levenshtein()) {
+			return distanceCalculator.calculateEditDistance(keywordPattern, normalizedResultKeyword);
+		} else {
+			return distanceMetric.calculateDistance(normalizedKeyword, normalizedResultKeyword);
+		}
+	}
+	
+	// Run the search on each shard that could hold a match, in parallel, returning each shard's results.
+	private List<SearchResultList<T>> scatter(CharSequence normalizedKeyword, int distanceThreshold, Function<StringMatcher<T>, SearchResultList<T>> search) {
+		int keywordLength = normalizedKeyword.length();
+		long keywordSignature = KeywordSignature.of(normalizedKeyword);
+		List<StringMatcher<T>> searchedShards = new ArrayList<StringMatcher<T>>();
+		
+		for(StringMatcher<T> shard : shards) {
+			Node<T> shardRoot = shard.getRoot();
+			
+			if(shardRoot == null) {
+				continue;
+			}
+			
+			if(shard.isPrefiltering() && shardRoot.getSubtreeLowerBound(keywordLength, keywordSignature, distanceMetric) > distanceThreshold) {
+				continue;
+			}
+			
+			searchedShards.add(shard);
+		}
+		
+		// Not worth handing a single search to another thread
+		if(searchedShards.size() <= 1) {
+			List<SearchResultList<T>> results = new ArrayList<SearchResultList<T>>();
+			
+			for(StringMatcher<T> shard : searchedShards) {
+				results.add(search.apply(shard));
+			}
+			
+			return results;
+		}
+		
+		List<CompletableFuture<SearchResultList<T>>> futures = new ArrayList<CompletableFuture<SearchResultList<T>>>();
+		
+		for(StringMatcher<T> shard : searchedShards) {
+			futures.add(CompletableFuture.supplyAsync(() -> search.apply(shard), executor));
+		}
+		
+		return joinAll(futures);
+	}
+	
+	// Rethrows a task's unchecked exception as itself, rather than wrapped in a CompletionException
+	private static <R> List<R> joinAll(List<CompletableFuture<R>> futures) {
+		List<R> results = new ArrayList<R>();
+		
+		try {
+			for(CompletableFuture<R> future : futures) {
+				results.add(future.join());
+			}
+		} catch(CompletionException e) {
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			
+			throw e;
+		}
+		
+		return results;
+	}
+	
+	// Merge lists that are each sorted closest match first into one, up to maxResults long
+	private SearchResultList<T> mergeClosestMatches(List<SearchResultList<T>> shardResults, int maxResults) {
+		SearchResultList<T> mergedResults = new SearchResultList<T>();
+		int[] positions = new int[shardResults.size()];
+		
+		while(mergedResults.size() < maxResults) {
+			int bestShard = -1;
+			float bestMatchPercentage = Float.NEGATIVE_INFINITY;
+			
+			// There are only a few shards, so just look at the head of each
+			for(int i = 0; i < positions.length; i++) {
+				SearchResultList<T> results = shardResults.get(i);
+				
+				if(positions[i] < results.size() && results.get(positions[i]).getMatchPercentage() > bestMatchPercentage) {
+					bestShard = i;
+					bestMatchPercentage = results.get(positions[i]).getMatchPercentage();
+				}
+			}
+			
+			if(bestShard < 0) {
+				break;
+			}
+			
+			mergedResults.add(shardResults.get(bestShard).get(positions[bestShard]++));
+		}
+		
+		return mergedResults;
+	}
+	
+	// Rebuild every shard's tree from scratch, in parallel. See StringMatcher.rebuild().
+	public void rebuild() {
+		List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+		
+		for(StringMatcher<T> shard : shards) {
+			futures.add(CompletableFuture.runAsync(shard::rebuild, executor));
+		}
+		
+		joinAll(futures);
+	}
+	
+	// Rebuild one shard's tree, leaving the others as they are.
+	public void rebuild(int shard, Random random) {
+		checkShard(shard);
+		shards[shard].rebuild(random);
+	}
+	
+	// Save each shard to its own file in the directory, which must already exist.
+	public void save(Path directory, DataCodec<T> codec) throws IOException {
+		if(directory == null) {
+			throw new IllegalArgumentException("Directory must not be null");
+		}
+		
+		for(int i = 0; i < shards.length; i++) {
+			save(i, getShardPath(directory, i), codec);
+		}
+	}
+	
+	// Save one shard, e.g., after rebuilding just that shard.
+	public void save(int shard, Path path, DataCodec<T> codec) throws IOException {
+		checkShard(shard);
+		shards[shard].save(path, codec);
+	}
+	
+	// Replace one shard with a tree saved from the same shard, by save(...) here or by StringMatcher.save(...).
+	// The saved keywords must belong in the shard according to this matcher's router, otherwise they could be added again in another shard.
+	public void load(int shard, Path path, DataCodec<T> codec) throws IOException {
+		checkShard(shard);
+		StringMatcher<T> loadedShard = StringMatcher.load(path, codec, distanceMetric);
+		
+		if(loadedShard.getMatchingOption() != matchingOption) {
+			throw new IOException("Shard was saved with matching option " + loadedShard.getMatchingOption() + ", expected " + matchingOption);
+		}
+		
+		shards[shard] = loadedShard;
+	}
+	
+	// Load shards saved with save(directory, ...). The router must be the one they were saved with.
+	public static <T> ShardedStringMatcher<T> load(Path directory, DataCodec<T> codec, ShardRouter router, Executor executor) throws IOException {
+		return load(directory, codec, router, DistanceMetric.levenshtein(), executor);
+	}
+	
+	// Load shards that were built on another distance metric, which must be the one they were built with.
+	public static <T> ShardedStringMatcher<T> load(Path directory, DataCodec<T> codec, ShardRouter router, DistanceMetric distanceMetric, Executor executor) throws IOException {
+		if(directory == null || distanceMetric == null) {
+			throw new IllegalArgumentException("Directory and distance metric must not be null");
+		}
+		
+		List<StringMatcher<T>> loadedShards = new ArrayList<StringMatcher<T>>();
+		Path shardPath;
+		
+		while(Files.exists(shardPath = getShardPath(directory, loadedShards.size()))) {
+			loadedShards.add(StringMatcher.load(shardPath, codec, distanceMetric));
+		}
+		
+		if(loadedShards.isEmpty()) {
+			throw new IOException("No shards found in " + directory);
+		}
+		
+		MatchingOption matchingOption = loadedShards.get(0).getMatchingOption();
+		
+		for(StringMatcher<T> shard : loadedShards) {
+			if(shard.getMatchingOption() != matchingOption) {
+				throw new IOException("Shards were saved with different matching options");
+			}
+		}
+		
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		StringMatcher<T>[] shards = loadedShards.toArray((StringMatcher<T>[]) new StringMatcher[loadedShards.size()]);
+		
+		return new ShardedStringMatcher<T>(shards, router, matchingOption, distanceMetric, executor);
+	}
+	
+	private static Path getShardPath(Path directory, int shard) {
+		return directory.resolve(String.format(SHARD_FILE_FORMAT, shard));
+	}
+	
+	private static void checkMaxResults(int maxResults) {
+		if(maxResults < 0) {
+			throw new IllegalArgumentException("Maximum number of results must not be negative");
+		}
+	}
+	
+	private void checkShard(int shard) {
+		if(shard < 0 || shard >= shards.length) {
+			throw new IllegalArgumentException("Shard must be between 0 and " + (shards.length - 1));
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+
+/**
+ * Where a {@link CompactStringMatcher} keeps its arrays.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+public enum StorageOption {
+	/**
+	 * Plain Java arrays on the heap. Only a handful of objects, however many keywords there are.
+	 */
+	ON_HEAP,
+	
+	/**
+	 * Direct buffers outside of the heap, so the keywords and tree structure aren't scanned or copied by the garbage collector.
+	 * The associated data still lives on the heap.
+	 */
+	OFF_HEAP
+}
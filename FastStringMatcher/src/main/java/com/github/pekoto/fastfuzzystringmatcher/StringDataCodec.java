@@ -0,0 +1,23 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stores String data as UTF-8.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+public class StringDataCodec implements DataCodec<String> {
+
+	@Override
+	public byte[] encode(String data) {
+		return data.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String decode(ByteBuffer buffer) {
+		return StandardCharsets.UTF_8.decode(buffer).toString();
+	}
+}
@@ -1,9 +1,26 @@
 package com.github.pekoto.fastfuzzystringmatcher;
 
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.github.pekoto.fastfuzzystringmatcher.BitParallelEditDistanceCalculator.Pattern;
 
 /**
  * Builds a tree based on edit distance that allows quick fuzzy searching of string keywords, case insensitive.
@@ -26,6 +43,9 @@ import java.util.stream.Collectors;
  * You can store some associated data with each string keyword.
  * The generic parameter refers to this data type.
  * <p>
+ * A keyword can have several values, added with {@link #addValue(CharSequence, Object)}.
+ * They're all held on the keyword's one node, and returned together in its {@link SearchResult}.
+ * <p>
  * <strong>Example uses:</strong>
  * <ul>
  * <li>Search for file name --> Return associated paths of files that match 70%
@@ -37,7 +57,21 @@ import java.util.stream.Collectors;
  * <dd>
  * Large chunks of text can appear different due to line break/white space differences. In most cases,
  * we only want to compare the text itself, so the class allows you to ignore line breaks and spaces
- * for comparison purposes.
+ * for comparison purposes. Keywords and queries are normalized once, by the {@link MatchingOption}'s {@link Normalizer},
+ * and each node keeps its normalized keyword, so nothing is normalized again during the distance calculations.
+ * </dd>
+ * <dt><span class="strong">Traversal</span></dt>
+ * <dd>
+ * The tree is searched iteratively with an explicit work queue rather than by recursion, so deep or skewed
+ * trees can't overflow the stack. The order nodes are visited in can be tuned with {@link TraversalOrder}.
+ * </dd>
+ * <dt><span class="strong">Removal</span></dt>
+ * <dd>
+ * Every node is a waypoint for the keywords under it, so a removed keyword's node can't simply be unlinked.
+ * Instead it's marked as removed (a tombstone): searches still route through it, but never return it.
+ * Once removed keywords make up too much of the tree, or of one of its subtrees, {@link #compact()} rebuilds 
+ * those subtrees without them. This happens automatically on {@link #remove(CharSequence)} once the ratio for
+ * the whole tree passes the compaction threshold.
  * </dd>
  * </dl>
  *
@@ -46,9 +80,41 @@ import java.util.stream.Collectors;
  * @param <T> The type of data associated with each string keyword.
  */
 public class StringMatcher<T> {
-	private Node<T> root;
+	// Subtrees smaller than this are searched by the task that finds them, rather than being forked
+	private static final int MIN_PARALLEL_SUBTREE_SIZE = 1024;
+	
+	// Number of keywords that walk the tree together in searchAll
+	private static final int SEARCH_BATCH_SIZE = 256;
+	
+	// When rebuilding, the root is the candidate with the smallest total distance to a sample of the keywords
+	private static final int ROOT_CANDIDATES = 32;
+	private static final int ROOT_SAMPLE_SIZE = 256;
+	
+	// Keywords shorter than this are always searched on the tree, even with q-gram indexing on
+	private static final int MIN_QGRAM_KEYWORD_LENGTH = 32;
+	
+	// Subtrees where more than this fraction of the keywords have been removed are rebuilt when compacting
+	private static final float DEFAULT_COMPACTION_THRESHOLD = 0.25f;
+	
+	private volatile Node<T> root;
 	private EditDistanceCalculator distanceCalculator = new EditDistanceCalculator();
+	private BitParallelEditDistanceCalculator bitParallelCalculator = new BitParallelEditDistanceCalculator();
+	private ThreadLocal<Pattern> keywordPatterns = ThreadLocal.withInitial(() -> bitParallelCalculator.compile(""));
+	private ThreadLocal<TraversalQueue<Node<T>>> traversalQueues = ThreadLocal.withInitial(TraversalQueue::new);
+	private ThreadLocal<QueryStats> queryStatsScratch = ThreadLocal.withInitial(QueryStats::new);
 	private MatchingOption matchingOption = MatchingOption.NONE;
+	private DistanceMetric distanceMetric = DistanceMetric.levenshtein();
+	private TraversalOrder traversalOrder = TraversalOrder.DEPTH_FIRST;
+	private boolean prefiltering = true;
+	private volatile MatcherStats stats;		// Null unless statistics have been turned on
+	private volatile SearchCache<T> cache;		// Null unless caching has been turned on
+	private volatile int tombstoneCount;		// Removed keywords still in the tree
+	private float compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+	private volatile boolean qGramIndexing;
+	private volatile QGramIndex<T> qGramIndex;	// Null until a search needs it, and rebuilt if it's for an older version of the nodes
+	private volatile int nodeVersion;			// Advanced whenever nodes are added to the tree or replaced
+	private final Object qGramIndexLock = new Object();
+	private final AtomicBoolean qGramIndexBuilding = new AtomicBoolean();	// Whether a background build has been started
 	
 	public StringMatcher() { }
 	
@@ -56,179 +122,1705 @@ public class StringMatcher<T> {
 		this.matchingOption = matchingOption;
 	}
 	
-	public void add(CharSequence keyword, T associatedData) {
-		if(keyword == null) {
-			throw new IllegalArgumentException("Strings must not be null");
+	// Build and search the tree on a distance other than Levenshtein distance. See DistanceMetric.
+	public StringMatcher(MatchingOption matchingOption, DistanceMetric distanceMetric) {
+		if(distanceMetric == null) {
+			throw new IllegalArgumentException("Distance metric must not be null");
 		}
 		
-		if(keyword.length() == 0) {
-			throw new IllegalArgumentException("Strings must not be empty");
+		this.matchingOption = matchingOption;
+		this.distanceMetric = distanceMetric;
+	}
+	
+	public MatchingOption getMatchingOption() {
+		return matchingOption;
+	}
+	
+	public DistanceMetric getDistanceMetric() {
+		return distanceMetric;
+	}
+	
+	public TraversalOrder getTraversalOrder() {
+		return traversalOrder;
+	}
+	
+	public void setTraversalOrder(TraversalOrder traversalOrder) {
+		if(traversalOrder == null) {
+			throw new IllegalArgumentException("Traversal order must not be null");
 		}
 		
-		CharSequence normalizedKeyword = getNormalizedKeyword(keyword);
-				
-		if(root == null) {
-			root = new Node<T>(keyword, normalizedKeyword, associatedData);
-		} else {
-			// Traverse through the tree, adding the string as a leaf related by edit distance
-			Node<T> current = root;
-			int editDistance = distanceCalculator.calculateEditDistance(current.normalizedKeyword, keyword);
+		this.traversalOrder = traversalOrder;
+	}
+	
+	public boolean isPrefiltering() {
+		return prefiltering;
+	}
+	
+	// Turn the search prefilter on or off (it's on by default).
+	// The prefilter skips children whose subtrees can't hold a match, judging by the lengths and characters of their 
+	// keywords alone, before any distances are calculated for them. It never changes the results, only the work done.
+	public void setPrefiltering(boolean prefiltering) {
+		this.prefiltering = prefiltering;
+	}
+	
+	public MatcherStats getStats() {
+		return stats;
+	}
+	
+	// Start collecting statistics for searches, or stop if null.
+	// Only search(keyword, float) and search(keyword, int) are counted, with or without a result consumer.
+	// Searches answered by the cache aren't counted, since they don't search the tree.
+	public void setStats(MatcherStats stats) {
+		this.stats = stats;
+	}
+	
+	public SearchCache<T> getCache() {
+		return cache;
+	}
+	
+	// Start caching the results of search(keyword, float) and search(keyword, int), or stop if null.
+	// Writes through this string matcher drop the cached results they could change. See SearchCache.
+	public void setCache(SearchCache<T> cache) {
+		this.cache = cache;
+	}
+	
+	public boolean isQGramIndexing() {
+		return qGramIndexing;
+	}
+	
+	// Whether long keywords are searched using a q-gram index, rather than by walking the tree. Off by default.
+	// Between long keywords, like translation memory segments, distances are all large and similar, so the tree prunes very little.
+	// The index finds the keywords that share enough q-grams with the search keyword to be within the threshold, 
+	// and only calculates the distances to those. Results are the same either way. See QGramIndex.
+	// The index is built in the background when a search first needs it, and again after keywords have been added. 
+	// Searches walk the tree until it's ready, so it suits trees that are searched far more often than they're added to.
+	// It takes roughly 2-3 bytes per keyword char. Each searching thread also keeps 20-40 bytes of scratch space 
+	// for each keyword that shared a q-gram with the keyword of its largest search so far.
+	// Only applies to search(keyword, threshold) with Levenshtein distance, when the keyword is long enough and the threshold tight enough
+	// for the filter to rule anything out. Other searches always walk the tree.
+	public void setQGramIndexing(boolean qGramIndexing) {
+		this.qGramIndexing = qGramIndexing;
+		
+		if(!qGramIndexing) {
+			qGramIndex = null;
+		}
+	}
+	
+	// Build the q-gram index for the current keywords now, if q-gram indexing is on and the index is out of date, 
+	// rather than leaving searches to walk the tree until the background build is done. Useful after loading a tree.
+	public void buildQGramIndex() {
+		// Only one thread builds it, and the rest wait for it rather than building their own
+		synchronized(qGramIndexLock) {
+			int version = nodeVersion;
+			QGramIndex<T> index = qGramIndex;
 			
-			while(current.containsChildWithDistance(editDistance)) {				
-				current = current.getChild(editDistance);
-				editDistance = distanceCalculator.calculateEditDistance(current.normalizedKeyword, keyword);
-				
-				if(editDistance == 0) {
-					return;	// Duplicate (string already exists in tree)
-				}
+			if(!qGramIndexing || (index != null && index.getVersion() == version)) {
+				return;
 			}
 			
-			current.addChild(editDistance, keyword, normalizedKeyword, associatedData);
+			List<Node<T>> nodes = new ArrayList<Node<T>>();
+			walkTree((node, depth) -> nodes.add(node));		// Removed keywords too, since they can be restored in place
+			index = new QGramIndex<T>(nodes, version);
+			
+			// Don't bring back an index that was turned off during the build
+			if(qGramIndexing) {
+				qGramIndex = index;
+			}
 		}
 	}
 	
-	private CharSequence getNormalizedKeyword(CharSequence str) {
-		if(matchingOption == MatchingOption.REMOVE_SPACING_AND_LINEBREAKS) {
-			return removeSpacesAndLinebreaks(str);
+	// Add a keyword. If the keyword is already in the tree, the existing data is kept,
+	// unless the keyword had been removed, in which case it's restored with the new keyword and data.
+	public void add(CharSequence keyword, T associatedData) {
+		checkKeyword(keyword);
+		
+		CharSequence normalizedKeyword = getNormalizedKeyword(keyword);
+		Node<T> node = new Node<T>(keyword, normalizedKeyword, associatedData);
+				
+		if(root == null) {
+			root = node;
+			nodesChanged();
+			keywordChanged(normalizedKeyword);
+			return;
+		}
+		
+		Node<T> existingNode = insert(root, normalizedKeyword, node);
+		
+		if(existingNode == null) {
+			keywordChanged(normalizedKeyword);
+		} else if(existingNode.isRemoved()) {
+			restore(existingNode, keyword, associatedData);
+		}
+	}
+	
+	// Add a keyword, or add another value to it if it's already in the tree.
+	// All of a keyword's values are returned in its one search result, so no extra nodes are added or searched.
+	public void addValue(CharSequence keyword, T associatedData) {
+		checkKeyword(keyword);
+		
+		CharSequence normalizedKeyword = getNormalizedKeyword(keyword);
+		Node<T> node = new Node<T>(keyword, normalizedKeyword, associatedData);
+		
+		if(root == null) {
+			root = node;
+			nodesChanged();
+			keywordChanged(normalizedKeyword);
+			return;
+		}
+		
+		Node<T> existingNode = insert(root, normalizedKeyword, node);
+		
+		if(existingNode == null) {
+			keywordChanged(normalizedKeyword);
+			return;
+		}
+		
+		if(existingNode.isRemoved()) {
+			restore(existingNode, keyword, associatedData);
 		} else {
-			return str;			
+			existingNode.addAssociatedData(associatedData);
+			keywordChanged(normalizedKeyword);
 		}
 	}
 	
-	private CharSequence removeSpacesAndLinebreaks(CharSequence str) {
-		return str.toString().replaceAll("[\\t\\n\\r\\s]", "");
+	// Add a keyword, or replace its data if it's already in the tree.
+	// Returns the data it replaced (the first value, if it had several), or null if the keyword wasn't in the tree.
+	// A replaced keyword keeps the original keyword it was first added with.
+	public T put(CharSequence keyword, T associatedData) {
+		checkKeyword(keyword);
+		
+		CharSequence normalizedKeyword = getNormalizedKeyword(keyword);
+		Node<T> node = new Node<T>(keyword, normalizedKeyword, associatedData);
+		
+		if(root == null) {
+			root = node;
+			nodesChanged();
+			keywordChanged(normalizedKeyword);
+			return null;
+		}
+		
+		Node<T> existingNode = insert(root, normalizedKeyword, node);
+		
+		if(existingNode == null) {
+			keywordChanged(normalizedKeyword);
+			return null;
+		}
+		
+		if(existingNode.isRemoved()) {
+			restore(existingNode, keyword, associatedData);
+			return null;
+		}
+		
+		T replacedData = existingNode.getAssociatedData();
+		existingNode.setAssociatedData(associatedData);
+		keywordChanged(normalizedKeyword);
+		
+		return replacedData;
 	}
 	
-	// Search using % matching.
-	// More user-friendly and robust when searching strings of variable length,
-	// but may lead to strings slightly less than the matchPercentage being returned due to rounding.
-	public SearchResultList<T> search(CharSequence keyword, float matchPercentage) {
-		keyword = getNormalizedKeyword(keyword);
-		int distanceThreshold = convertPercentageToEditDistance(keyword, matchPercentage);
+	// Remove a keyword, returning false if it wasn't in the tree.
+	// The keyword's node stays in the tree as a waypoint for the keywords under it, but is never returned by searches.
+	// If that takes the tombstone ratio past the compaction threshold, the tree is compacted.
+	public boolean remove(CharSequence keyword) {
+		checkKeyword(keyword);
+		
+		Node<T> node = findNode(getNormalizedKeyword(keyword));
+		
+		if(node == null || node.isRemoved()) {
+			return false;
+		}
+		
+		node.markRemoved();
+		tombstoneCount++;
+		keywordChanged(node.getNormalizedKeyword());
+		
+		if(getTombstoneRatio() > compactionThreshold) {
+			compact();
+		}
 		
-		return searchTree(keyword, distanceThreshold);
+		return true;
 	}
 	
-	// Edit distance threshold from % = Keyword length - (keyword length * matchPercentage)/100
-	private int convertPercentageToEditDistance(CharSequence keyword, float matchPercentage) {
-		return keyword.length() - (Math.round((keyword.length() * matchPercentage)/100.0f));
+	// A restored keyword looks just like a newly added one, whether or not its tombstone had been compacted away in the meantime
+	private void restore(Node<T> removedNode, CharSequence keyword, T associatedData) {
+		removedNode.restore(keyword, associatedData);
+		tombstoneCount--;
+		keywordChanged(removedNode.getNormalizedKeyword());
 	}
 	
-	// Search using edit distance (chars different).
-	// Less user-friendly and less robust when strings are of variable length,
-	// but ensures only strings with a precise number of edits will be returned.
-	public SearchResultList<T> search(CharSequence keyword, int distanceThreshold) {
-		keyword = getNormalizedKeyword(keyword);
-		return searchTree(keyword, distanceThreshold);
+	// Nodes have been added to the tree or replaced, so any q-gram index is out of date.
+	// Called after the nodes are published, so an index built for this version or later has them all
+	private void nodesChanged() {
+		nodeVersion++;
 	}
 	
-	private SearchResultList<T> searchTree(CharSequence keyword, int distanceThreshold) {
-		SearchResultList<T> results = new SearchResultList<T>();
+	// Drop any cached results that a write to the keyword could have changed. Called after the write, 
+	// so a search that could have missed it either has its results dropped here, or sees the new epoch and doesn't cache them
+	private void keywordChanged(CharSequence normalizedKeyword) {
+		SearchCache<T> searchCache = cache;
 		
-		searchTree(root, keyword, distanceThreshold, results);
-		results.sortByClosestMatch();
+		if(searchCache != null) {
+			searchCache.invalidate(normalizedKeyword, distanceMetric);
+		}
+	}
+	
+	static void checkKeyword(CharSequence keyword) {
+		if(keyword == null) {
+			throw new IllegalArgumentException("Strings must not be null");
+		}
 		
-		return results;
+		if(keyword.length() == 0) {
+			throw new IllegalArgumentException("Strings must not be empty");
+		}
 	}
 	
-	// Recursively search the tree, adding any data from nodes within the edit distance threshold.
-	// Results are stored in the "results" parameter. This is a bit functionally dirty, but since this
-	// method is recursive, it saves a new collection being created/copied with every call.
-	private void searchTree(Node<T> node, CharSequence keyword, int distanceThreshold, SearchResultList<T> results) {
-		int currentDistance = distanceCalculator.calculateEditDistance(node.normalizedKeyword, keyword);
+	// Traverse through the tree, adding the node as a leaf related by edit distance.
+	// Distances are calculated against patternKeyword. 
+	// Returns the node already holding the keyword if it's in the tree (nothing is added), otherwise null.
+	// The subtree summaries on the way down are widened before the node is published, so searches never prefilter it out.
+	// If the keyword turns out to be a duplicate, it was already covered by them.
+	private Node<T> insert(Node<T> treeRoot, CharSequence patternKeyword, Node<T> node) {
+		Node<T> current = treeRoot;
+		Node<T> child;
+		Pattern keywordPattern = keywordPatterns.get().reset(patternKeyword);
+		TraversalQueue<Node<T>> path = traversalQueues.get().reset(TraversalOrder.DEPTH_FIRST);
+		int editDistance = calculateEditDistance(current.normalizedKeyword, keywordPattern, Integer.MAX_VALUE);
 		
-		if(currentDistance <= distanceThreshold) {
-			// Match found
-			float percentageDifference = getPercentageDifference(node.normalizedKeyword, keyword, currentDistance);
-			SearchResult<T> result = new SearchResult<T>(node.originalKeyword, node.associatedData, percentageDifference);
-			results.add(result);
+		if(editDistance == 0) {
+			return current;	// Duplicate of the root
 		}
 		
-		// Get the children to search next
-		int minDistance = currentDistance - distanceThreshold;
-		int maxDistance = currentDistance + distanceThreshold;
+		while((child = current.getChild(editDistance)) != null) {
+			current.includeInSubtree(node);
+			path.push(current, 0);
+			current = child;
+			editDistance = calculateEditDistance(current.normalizedKeyword, keywordPattern, Integer.MAX_VALUE);
+			
+			if(editDistance == 0) {
+				return current;	// Duplicate (string already exists in tree)
+			}
+		}
+		
+		current.addChild(editDistance, node);
+		current.incrementSubtreeSize();
+		nodesChanged();
+		
+		while(!path.isEmpty()) {
+			path.pop().incrementSubtreeSize();
+		}
 		
-		List<Integer> childKeysWithinDistanceThreshold = node.getChildKeysWithinDistance(minDistance, maxDistance);
+		return null;
+	}
+	
+	// The node holding the keyword, removed or not, or null if it isn't in the tree.
+	// Follows the single path an insert of the keyword would take.
+	private Node<T> findNode(CharSequence normalizedKeyword) {
+		Node<T> current = root;
+		Pattern keywordPattern = keywordPatterns.get().reset(normalizedKeyword);
 		
-		for(Integer childKey: childKeysWithinDistanceThreshold) {
-			Node<T> child = node.getChild(childKey);
-			searchTree(child, keyword, distanceThreshold, results);
+		while(current != null) {
+			int editDistance = calculateEditDistance(current.normalizedKeyword, keywordPattern, Integer.MAX_VALUE);
+			
+			if(editDistance == 0) {
+				return current;
+			}
+			
+			current = current.getChild(editDistance);
 		}
+		
+		return null;
 	}
 	
-	private float getPercentageDifference(CharSequence keyword, CharSequence wordToMatch, int editDistance) {
-		int longestWordLength = Math.max(keyword.length(), wordToMatch.length());
-		return 100.0f - (((float)editDistance/longestWordLength) * 100.0f);
+	// Fraction of the nodes in the tree that are removed keywords
+	public float getTombstoneRatio() {
+		Node<T> treeRoot = root;
+		return (treeRoot == null) ? 0.0f : (float)tombstoneCount / treeRoot.getSubtreeSize();
 	}
 	
-	public void printTree() {
-		root.printHierarchy(0);
+	public float getCompactionThreshold() {
+		return compactionThreshold;
 	}
 	
-	/**
-	 * A node in the BK Tree.
-	 *
-	 * @param <T> The type of data associated with each string keyword.
-	 */
-	private static class Node<T> {
-		private CharSequence originalKeyword;
-		private CharSequence normalizedKeyword;		// Used for matching
-		private T associatedData;
-		private HashMap<Integer, Node<T>> children;	// Children are keyed on edit distance
+	// Set the tombstone ratio a subtree has to pass to be rebuilt by compact().
+	// 0 rebuilds anything with a removed keyword in it, 1 turns compaction off.
+	public void setCompactionThreshold(float compactionThreshold) {
+		if(!(compactionThreshold >= 0.0f && compactionThreshold <= 1.0f)) {
+			throw new IllegalArgumentException("Compaction threshold must be between 0 and 1");
+		}
 		
-		public Node(CharSequence keyword, CharSequence normalizedKeyword, T associatedData) {
-			this.originalKeyword = keyword;
-			this.normalizedKeyword = normalizedKeyword;
-			this.associatedData = associatedData;
+		this.compactionThreshold = compactionThreshold;
+	}
+	
+	// Rebuild each of the largest subtrees whose tombstone ratio passes the compaction threshold, without its removed keywords.
+	// Returns the number of removed keywords dropped from the tree.
+	// Every keyword in a subtree is the same distance from the subtree's parent, so any of them can root the rebuilt subtree.
+	// Searches can carry on during a compaction, and see each old subtree until its replacement is finished.
+	public int compact() {
+		Node<T> compactRoot = root;
+		
+		if(compactRoot == null || tombstoneCount == 0) {
+			return 0;
 		}
 		
-		public Node<T> getChild(int key) {
-			if(containsChildWithDistance(key)) {
-				return children.get(key);
-			} else {
-				return null;
+		// Number the nodes in preorder, so each node's subtree is the run of nodes starting at it
+		List<Node<T>> nodes = new ArrayList<Node<T>>();
+		int[] parents = new int[compactRoot.getSubtreeSize()];
+		TraversalQueue<Node<T>> stack = new TraversalQueue<Node<T>>().reset(TraversalOrder.DEPTH_FIRST);
+		stack.push(compactRoot, -1);	// Parent indices are held as the priorities
+		
+		while(!stack.isEmpty()) {
+			int parent = stack.peekPriority();
+			Node<T> node = stack.pop();
+			
+			if(nodes.size() == parents.length) {
+				parents = Arrays.copyOf(parents, Math.max(16, parents.length * 2));
+			}
+			
+			parents[nodes.size()] = parent;
+			nodes.add(node);
+			
+			Children<T> children = node.getChildren();
+			
+			for(int i = children.size() - 1; i >= 0; i--) {
+				stack.push(children.getNode(i), nodes.size() - 1);
 			}
 		}
 		
-		public List<Integer> getChildKeysWithinDistance(int minDistance, int maxDistance) {
-			if(children == null) {
-				return new ArrayList<Integer>(0);
-			} else {
-				return children.keySet().stream().filter(n -> n >= minDistance && n <= maxDistance)
-												 .collect(Collectors.toList());
+		// Children come after their parents, so working backwards, each subtree is counted before it's added to its parent
+		int nodeCount = nodes.size();
+		int[] subtreeSizes = new int[nodeCount];
+		int[] subtreeTombstones = new int[nodeCount];
+		
+		for(int i = nodeCount - 1; i >= 0; i--) {
+			subtreeSizes[i]++;
+			
+			if(nodes.get(i).isRemoved()) {
+				subtreeTombstones[i]++;
+			}
+			
+			if(i > 0) {
+				subtreeSizes[parents[i]] += subtreeSizes[i];
+				subtreeTombstones[parents[i]] += subtreeTombstones[i];
 			}
 		}
 		
-		public boolean containsChildWithDistance(int key) {
-			return children != null && children.containsKey(key);
-		}
+		Random random = new Random();
+		int droppedTombstones = 0;
+		int i = 0;
 		
-		public void addChild(int key, CharSequence keyword, CharSequence normalizedKeyword, T associatedData) {
-			if(children == null) {
-				children = new HashMap<Integer, Node<T>>();
+		while(i < nodeCount) {
+			if(subtreeTombstones[i] == 0 || (float)subtreeTombstones[i] / subtreeSizes[i] <= compactionThreshold) {
+				i++;
+				continue;
+			}
+			
+			List<Node<T>> liveNodes = new ArrayList<Node<T>>();
+			
+			for(int member = i; member < i + subtreeSizes[i]; member++) {
+				if(!nodes.get(member).isRemoved()) {
+					liveNodes.add(nodes.get(member).withoutChildren());
+				}
+			}
+			
+			Node<T> subtreeRoot = buildTree(liveNodes, random);
+			
+			if(i == 0) {
+				root = subtreeRoot;
+			} else {
+				nodes.get(parents[i]).replaceChild(nodes.get(i), subtreeRoot);
+				
+				for(int ancestor = parents[i]; ancestor >= 0; ancestor = parents[ancestor]) {
+					subtreeSizes[ancestor] -= subtreeTombstones[i];
+					nodes.get(ancestor).setSubtreeSize(subtreeSizes[ancestor]);
+				}
 			}
 			
-			Node<T> child = new Node<T>(keyword, normalizedKeyword, associatedData);
-			children.put(key, child);
+			droppedTombstones += subtreeTombstones[i];
+			i += subtreeSizes[i];
 		}
 		
-		@Override
-		public String toString() {
-			return String.format("%s/%s/%s", originalKeyword, normalizedKeyword, associatedData);
+		tombstoneCount -= droppedTombstones;
+		nodesChanged();
+		
+		return droppedTombstones;
+	}
+	
+	// Build a string matcher from all of its keywords at once, on the common pool.
+	public static <T> StringMatcher<T> build(Iterable<? extends Map.Entry<? extends CharSequence, ? extends T>> entries) {
+		return build(entries, new BuildOptions());
+	}
+	
+	// Build a string matcher from all of its keywords at once.
+	// Much faster than calling add for each keyword on a multicore machine, since the tree's subtrees are built in parallel.
+	// As with add, only the first of any duplicate keywords is kept, unless the options say to collect their values.
+	public static <T> StringMatcher<T> build(Iterable<? extends Map.Entry<? extends CharSequence, ? extends T>> entries, BuildOptions options) {
+		return TreeBuilder.build(entries, options, matchingOption -> new StringMatcher<T>(matchingOption, options.getDistanceMetric()));
+	}
+	
+	// Rebuild the tree from scratch, to make it shallower and better at pruning.
+	// The shape of the tree depends on the order keywords were added in: sorted or clustered input 
+	// gives deep, narrow trees where searches visit far more nodes. 
+	// This picks a central keyword as the root, then adds everything else in random order.
+	// Searches can carry on while the tree is rebuilt, and see the old tree until the new one is finished.
+	public void rebuild() {
+		rebuild(new Random());
+	}
+	
+	// Rebuild with the given source of randomness, e.g., seeded for a repeatable tree.
+	public void rebuild(Random random) {
+		if(random == null) {
+			throw new IllegalArgumentException("Random must not be null");
 		}
 		
-		public void printHierarchy(int level) {
-			for(int i = 0; i < level; i++) {
-				System.out.print("\t");
+		List<Node<T>> nodes = new ArrayList<Node<T>>();
+		
+		walkTree((node, depth) -> {
+			if(!node.isRemoved()) {
+				nodes.add(node.withoutChildren());
 			}
+		});
+		
+		root = buildTree(nodes, random);
+		tombstoneCount = 0;
+		nodesChanged();
+	}
+	
+	// Builds a new tree out of childless nodes, which are shuffled in place
+	Node<T> buildTree(List<Node<T>> nodes, Random random) {
+		if(nodes.isEmpty()) {
+			return null;
+		}
+		
+		Collections.shuffle(nodes, random);
+		Collections.swap(nodes, 0, chooseRoot(nodes));
+		
+		Node<T> treeRoot = nodes.get(0);
+		
+		for(int i = 1; i < nodes.size(); i++) {
+			Node<T> node = nodes.get(i);
+			insert(treeRoot, node.getNormalizedKeyword(), node);
+		}
+		
+		return treeRoot;
+	}
+	
+	// A medoid-like root: of the first few (shuffled) nodes, the one with the smallest total distance to a sample of the others.
+	// A central root spreads the rest of the keywords over more of its children, which keeps the tree shallow.
+	int chooseRoot(List<Node<T>> shuffledNodes) {
+		int candidates = Math.min(ROOT_CANDIDATES, shuffledNodes.size());
+		int sampleSize = Math.min(ROOT_SAMPLE_SIZE, shuffledNodes.size());
+		int bestCandidate = 0;
+		long bestTotalDistance = Long.MAX_VALUE;
+		
+		for(int candidate = 0; candidate < candidates; candidate++) {
+			Pattern candidatePattern = keywordPatterns.get().reset(shuffledNodes.get(candidate).getNormalizedKeyword());
+			long totalDistance = 0;
 			
-			System.out.println(String.format("-- %s", originalKeyword));
+			for(int i = 0; i < sampleSize; i++) {
+				totalDistance += calculateEditDistance(shuffledNodes.get(i).normalizedKeyword, candidatePattern, Integer.MAX_VALUE);
+			}
 			
-			if(children != null) {
-				for(Node<T> child: children.values()) {
-					child.printHierarchy(level+1);
-				}
+			if(totalDistance < bestTotalDistance) {
+				bestTotalDistance = totalDistance;
+				bestCandidate = candidate;
 			}
 		}
+		
+		return bestCandidate;
+	}
+	
+	// Measure the shape of the tree: how deep it is, and how widely it branches at each level.
+	public TreeStats getTreeStats() {
+		TreeStats.Builder builder = new TreeStats.Builder();
+		walkTree((node, depth) -> builder.addNode(depth, node.getChildren().size(), node.isRemoved()));
+		
+		return builder.build();
+	}
+	
+	private CharSequence getNormalizedKeyword(CharSequence str) {
+		return getNormalizedKeyword(str, matchingOption);
+	}
+	
+	// The keyword in the form it's matched in: put through the matching option's normalizer, which always case folds it
+	static CharSequence getNormalizedKeyword(CharSequence str, MatchingOption matchingOption) {
+		return matchingOption.getNormalizer().normalize(str);
+	}
+	
+	// Search using % matching.
+	// More user-friendly and robust when searching strings of variable length,
+	// but may lead to strings slightly less than the matchPercentage being returned due to rounding.
+	public SearchResultList<T> search(CharSequence keyword, float matchPercentage) {
+		keyword = getNormalizedKeyword(keyword);
+		int distanceThreshold = convertPercentageToEditDistance(keyword, matchPercentage, distanceMetric);
+		
+		return searchCached(keyword, distanceThreshold);
+	}
+	
+	// Search using % matching, counting the work done by the search in queryStats.
+	public SearchResultList<T> search(CharSequence keyword, float matchPercentage, QueryStats queryStats) {
+		if(queryStats == null) {
+			throw new IllegalArgumentException("Query stats must not be null");
+		}
+		
+		keyword = getNormalizedKeyword(keyword);
+		int distanceThreshold = convertPercentageToEditDistance(keyword, matchPercentage, distanceMetric);
+		
+		return searchTree(keyword, distanceThreshold, queryStats);
+	}
+	
+	// Edit distance threshold from % = Keyword length - (keyword length * matchPercentage)/100
+	static int convertPercentageToEditDistance(CharSequence keyword, float matchPercentage) {
+		return keyword.length() - (Math.round((keyword.length() * matchPercentage)/100.0f));
+	}
+	
+	// The same, in the units of the metric: each char allowed to differ is worth one insertion or deletion
+	static int convertPercentageToEditDistance(CharSequence keyword, float matchPercentage, DistanceMetric distanceMetric) {
+		return convertPercentageToEditDistance(keyword, matchPercentage) * distanceMetric.getUnitCost();
+	}
+	
+	// Search using edit distance (chars different).
+	// Less user-friendly and less robust when strings are of variable length,
+	// but ensures only strings with a precise number of edits will be returned.
+	public SearchResultList<T> search(CharSequence keyword, int distanceThreshold) {
+		keyword = getNormalizedKeyword(keyword);
+		return searchCached(keyword, distanceThreshold);
+	}
+	
+	// Search using edit distance, counting the work done by the search in queryStats.
+	public SearchResultList<T> search(CharSequence keyword, int distanceThreshold, QueryStats queryStats) {
+		if(queryStats == null) {
+			throw new IllegalArgumentException("Query stats must not be null");
+		}
+		
+		keyword = getNormalizedKeyword(keyword);
+		return searchTree(keyword, distanceThreshold, queryStats);
+	}
+	
+	// Search using % matching, passing each result to the consumer as soon as it's found, rather than collecting them all.
+	// The consumer can stop the search early by returning false, e.g., once it has enough results.
+	// Results aren't sorted. With TraversalOrder.BEST_FIRST, closer matches tend to come first.
+	public void search(CharSequence keyword, float matchPercentage, ResultConsumer<T> consumer) {
+		keyword = getNormalizedKeyword(keyword);
+		int distanceThreshold = convertPercentageToEditDistance(keyword, matchPercentage, distanceMetric);
+		
+		searchTreeInto(keyword, distanceThreshold, consumer);
+	}
+	
+	// Search using edit distance, passing each result to the consumer as soon as it's found.
+	public void search(CharSequence keyword, int distanceThreshold, ResultConsumer<T> consumer) {
+		keyword = getNormalizedKeyword(keyword);
+		searchTreeInto(keyword, distanceThreshold, consumer);
+	}
+	
+	// A lazy stream of the results of a % matching search.
+	// The tree is only searched as far as is needed to produce the results the stream asks for, 
+	// so e.g., findAny() or limit(n) stop searching once they have what they need. Results aren't sorted.
+	public Stream<SearchResult<T>> searchStream(CharSequence keyword, float matchPercentage) {
+		keyword = getNormalizedKeyword(keyword);
+		int distanceThreshold = convertPercentageToEditDistance(keyword, matchPercentage, distanceMetric);
+		
+		return StreamSupport.stream(new SearchSpliterator(root, keyword, distanceThreshold), false);
+	}
+	
+	// A lazy stream of the results of an edit distance search.
+	public Stream<SearchResult<T>> searchStream(CharSequence keyword, int distanceThreshold) {
+		keyword = getNormalizedKeyword(keyword);
+		return StreamSupport.stream(new SearchSpliterator(root, keyword, distanceThreshold), false);
+	}
+	
+	// Search using % matching, splitting large subtrees across the pool.
+	// Worth it for large trees with loose thresholds, where a single search visits a lot of nodes.
+	public SearchResultList<T> search(CharSequence keyword, float matchPercentage, ForkJoinPool pool) {
+		keyword = getNormalizedKeyword(keyword);
+		int distanceThreshold = convertPercentageToEditDistance(keyword, matchPercentage, distanceMetric);
+		
+		return searchTreeInParallel(keyword, distanceThreshold, pool);
+	}
+	
+	// Search using edit distance, splitting large subtrees across the pool.
+	public SearchResultList<T> search(CharSequence keyword, int distanceThreshold, ForkJoinPool pool) {
+		keyword = getNormalizedKeyword(keyword);
+		return searchTreeInParallel(keyword, distanceThreshold, pool);
+	}
+	
+	// The cached results if there's a cache and they're in it, otherwise the results of searching the tree.
+	// Callers get their own copy of the results either way, since the lists can be changed.
+	private SearchResultList<T> searchCached(CharSequence keyword, int distanceThreshold) {
+		SearchCache<T> searchCache = cache;
+		
+		if(searchCache == null) {
+			return searchTree(keyword, distanceThreshold, null);
+		}
+		
+		SearchResultList<T> cachedResults = searchCache.get(keyword, distanceThreshold);
+		SearchResultList<T> results = new SearchResultList<T>();
+		
+		if(cachedResults != null) {
+			results.addAll(cachedResults);
+			return results;
+		}
+		
+		long epoch = searchCache.getEpoch();
+		cachedResults = searchTree(keyword, distanceThreshold, null);
+		results.addAll(cachedResults);
+		searchCache.put(keyword, distanceThreshold, cachedResults, epoch);
+		
+		return results;
+	}
+	
+	private SearchResultList<T> searchTree(CharSequence keyword, int distanceThreshold, QueryStats queryStats) {
+		SearchResultList<T> results = new SearchResultList<T>();
+		
+		// The results list never calls back into the matcher, so the per-thread scratch space is safe to use
+		searchTree(keyword, distanceThreshold, queryStats, results::add, keywordPatterns.get(), traversalQueues.get());
+		results.sortByClosestMatch();
+		
+		return results;
+	}
+	
+	// The consumer could start another search on this thread, so this search needs its own pattern, queue and stats
+	private void searchTreeInto(CharSequence keyword, int distanceThreshold, ResultConsumer<T> consumer) {
+		if(consumer == null) {
+			throw new IllegalArgumentException("Consumer must not be null");
+		}
+		
+		QueryStats queryStats = (stats != null) ? new QueryStats() : null;
+		searchTree(keyword, distanceThreshold, queryStats, consumer, bitParallelCalculator.compile(""), new TraversalQueue<Node<T>>());
+	}
+	
+	// Statistics are only counted if they've been asked for (queryStats or matcher stats not null),
+	// so searches without them don't pay for the counting.
+	private void searchTree(CharSequence keyword, int distanceThreshold, QueryStats queryStats, ResultConsumer<T> consumer,
+							Pattern keywordPattern, TraversalQueue<Node<T>> queue) {
+		MatcherStats matcherStats = stats;
+		int resultCount = 0;
+		long startTime = 0;
+		
+		if(queryStats == null && matcherStats != null) {
+			queryStats = queryStatsScratch.get();
+		}
+		
+		if(queryStats != null) {
+			queryStats.reset();
+			startTime = System.nanoTime();
+		}
+		
+		// Read the root once, since it could be replaced during the search
+		Node<T> searchRoot = root;
+		
+		// Nothing can be closer than no edits at all, e.g., with a match percentage over 100
+		if(searchRoot != null && distanceThreshold >= 0) {
+			// Build the keyword's match masks and signature once and reuse them at every node
+			keywordPattern.reset(keyword);
+			QGramIndex<T> index = getQGramIndex(keyword, distanceThreshold);
+			
+			if(index != null) {
+				resultCount = searchIndex(index, keyword, distanceThreshold, queryStats, consumer, keywordPattern);
+			} else {
+				long keywordSignature = KeywordSignature.of(keyword);
+				queue.reset(traversalOrder);
+				queue.push(searchRoot, 0);
+				
+				while(!queue.isEmpty()) {
+					SearchResult<T> result = visitNode(queue.pop(), keyword, keywordPattern, keywordSignature, distanceThreshold, queue, queryStats);
+					
+					if(result != null) {
+						resultCount++;
+						
+						if(!consumer.accept(result)) {
+							break;
+						}
+					}
+				}
+			}
+		}
+		
+		if(queryStats != null) {
+			queryStats.recordSearch(resultCount, System.nanoTime() - startTime);
+			
+			if(matcherStats != null) {
+				matcherStats.record(queryStats);
+			}
+		}
+	}
+	
+	// The q-gram index, if it's turned on and can rule out anything for the keyword, otherwise null.
+	// If there isn't one for the current version of the nodes, starts building it in the background and returns null, 
+	// so the search walks the tree instead of waiting.
+	private QGramIndex<T> getQGramIndex(CharSequence keyword, int distanceThreshold) {
+		if(!qGramIndexing || distanceMetric != DistanceMetric.levenshtein() || keyword.length() < MIN_QGRAM_KEYWORD_LENGTH || 
+		   !QGramIndex.canFilter(keyword.length(), distanceThreshold)) {
+			return null;
+		}
+		
+		QGramIndex<T> index = qGramIndex;
+		
+		if(index != null && index.getVersion() == nodeVersion) {
+			return index;
+		}
+		
+		// Keywords added during the build leave the new index out of date too, and the next search starts another
+		if(qGramIndexBuilding.compareAndSet(false, true)) {
+			ForkJoinPool.commonPool().execute(() -> {
+				try {
+					buildQGramIndex();
+				} finally {
+					qGramIndexBuilding.set(false);
+				}
+			});
+		}
+		
+		return null;
+	}
+	
+	// Calculate the distances to just the q-gram index's candidates, rather than walking the tree.
+	// Returns the number of results passed to the consumer.
+	private int searchIndex(QGramIndex<T> index, CharSequence keyword, int distanceThreshold, QueryStats queryStats,
+							ResultConsumer<T> consumer, Pattern keywordPattern) {
+		int[] candidates = index.findCandidates(keywordPattern.getFoldedChars(), keywordPattern.length(), distanceThreshold);
+		int resultCount = 0;
+		
+		for(int candidate : candidates) {
+			Node<T> node = index.getNode(candidate);
+			int currentDistance = calculateEditDistance(node.normalizedKeyword, keywordPattern, distanceThreshold);
+			
+			if(queryStats != null) {
+				queryStats.recordDistanceCalculation(getLastCellCount(node.normalizedKeyword, keywordPattern, distanceThreshold));
+			}
+			
+			if(currentDistance <= distanceThreshold && !node.isRemoved()) {
+				float percentageDifference = getPercentageDifference(node.normalizedKeyword.length, keyword.length(), currentDistance, distanceMetric);
+				SearchResult<T> result = node.toSearchResult(percentageDifference);
+				
+				if(result == null) {
+					continue;
+				}
+				
+				resultCount++;
+				
+				if(!consumer.accept(result)) {
+					break;
+				}
+			}
+		}
+		
+		return resultCount;
+	}
+	
+	// Search for many keywords at once using % matching.
+	// Returns one result list per keyword, in the same order as the keywords.
+	public List<SearchResultList<T>> searchAll(Collection<? extends CharSequence> keywords, float matchPercentage) {
+		return searchAll(keywords, matchPercentage, ForkJoinPool.commonPool());
+	}
+	
+	// Search for many keywords at once using % matching, running the batches on the given executor.
+	// The keywords are split into batches which walk the tree together: each node visited by a batch is
+	// compared against every keyword in the batch that reaches it, in one go.
+	public List<SearchResultList<T>> searchAll(Collection<? extends CharSequence> keywords, float matchPercentage, Executor executor) {
+		if(keywords == null) {
+			throw new IllegalArgumentException("Keywords must not be null");
+		}
+		
+		if(executor == null) {
+			throw new IllegalArgumentException("Executor must not be null");
+		}
+		
+		CharSequence[] normalizedKeywords = new CharSequence[keywords.size()];
+		int[] distanceThresholds = new int[keywords.size()];
+		int index = 0;
+		
+		for(CharSequence keyword : keywords) {
+			normalizedKeywords[index] = getNormalizedKeyword(keyword);
+			distanceThresholds[index] = convertPercentageToEditDistance(normalizedKeywords[index], matchPercentage, distanceMetric);
+			index++;
+		}
+		
+		SearchResultList<T>[] results = newResultListArray(normalizedKeywords.length);
+		List<CompletableFuture<Void>> batches = new ArrayList<CompletableFuture<Void>>();
+		
+		for(int start = 0; start < normalizedKeywords.length; start += SEARCH_BATCH_SIZE) {
+			int end = Math.min(start + SEARCH_BATCH_SIZE, normalizedKeywords.length);
+			BatchSearch batch = new BatchSearch(normalizedKeywords, distanceThresholds, results, start, end);
+			batches.add(CompletableFuture.runAsync(batch::search, executor));
+		}
+		
+		CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[batches.size()])).join();
+		
+		return Arrays.asList(results);
+	}
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private SearchResultList<T>[] newResultListArray(int size) {
+		return (SearchResultList<T>[]) new SearchResultList[size];
+	}
+	
+	private SearchResultList<T> searchTreeInParallel(CharSequence keyword, int distanceThreshold, ForkJoinPool pool) {
+		if(pool == null) {
+			throw new IllegalArgumentException("Pool must not be null");
+		}
+		
+		Node<T> searchRoot = root;
+		
+		if(searchRoot == null || distanceThreshold < 0) {
+			return new SearchResultList<T>();
+		}
+		
+		SearchResultList<T> results = pool.invoke(new ParallelSearchTask(searchRoot, keyword, distanceThreshold));
+		results.sortByClosestMatch();
+		
+		return results;
+	}
+	
+	// Queue up any of the node's children that could be within the threshold, 
+	// then return the node as a result if it's within the edit distance threshold itself, otherwise null.
+	// Nothing is allocated per node apart from results: distance calculations use the caller's scratch space,
+	// and the children are scanned straight out of the node's sorted arrays.
+	private SearchResult<T> visitNode(Node<T> node, CharSequence keyword, Pattern keywordPattern, long keywordSignature, int distanceThreshold,
+									  TraversalQueue<Node<T>> queue, QueryStats queryStats) {
+		// We only need the exact distance if it can lead to a match or to one of the children.
+		// Anything over the largest child key + threshold can't do either, so stop calculating there.
+		Children<T> children = node.getChildren();
+		int distanceCap = saturatedAdd(children.getMaxDistance(), distanceThreshold);
+		int currentDistance = calculateEditDistance(node.normalizedKeyword, keywordPattern, distanceCap);
+		
+		if(queryStats != null) {
+			queryStats.recordDistanceCalculation(getLastCellCount(node.normalizedKeyword, keywordPattern, distanceCap));
+		}
+		
+		if(currentDistance > distanceCap) {
+			if(queryStats != null) {
+				queryStats.recordChildrenPruned(children.size());
+			}
+			
+			return null;
+		}
+		
+		
+		// Get the children to search next
+		int minDistance = currentDistance - distanceThreshold;
+		int maxDistance = saturatedAdd(currentDistance, distanceThreshold);
+		
+		int childCount = children.size();
+		int childrenQueued = 0;
+		
+		// Each child is prioritised by how close it could possibly be to the keyword (triangle inequality)
+		for(int child = children.getFirstIndex(minDistance); child < childCount && children.getDistance(child) <= maxDistance; child++) {
+			Node<T> childNode = children.getNode(child);
+			
+			if(prefiltering && isRuledOut(childNode, keyword.length(), keywordSignature, distanceThreshold)) {
+				continue;
+			}
+			
+			queue.push(childNode, Math.abs(currentDistance - children.getDistance(child)));
+			childrenQueued++;
+		}
+		
+		if(queryStats != null) {
+			queryStats.recordChildrenPruned(childCount - childrenQueued);
+		}
+		
+		if(currentDistance <= distanceThreshold && !node.isRemoved()) {
+			// Match found, unless it's been removed since the check
+			float percentageDifference = getPercentageDifference(node.normalizedKeyword.length, keyword.length(), currentDistance, distanceMetric);
+			return node.toSearchResult(percentageDifference);
+		}
+		
+		return null;
+	}
+	
+	// Whether the prefilter can rule out everything the search would do under the node, without calculating any distances.
+	// Either nothing in its subtree is close enough in length or characters to match, 
+	// or the node itself is too far away to match or to lead to any of its children.
+	private boolean isRuledOut(Node<T> node, int keywordLength, long keywordSignature, int distanceThreshold) {
+		if(node.getSubtreeLowerBound(keywordLength, keywordSignature, distanceMetric) > distanceThreshold) {
+			return true;
+		}
+		
+		int distanceCap = saturatedAdd(node.getChildren().getMaxDistance(), distanceThreshold);
+		return node.getLowerBound(keywordLength, keywordSignature, distanceMetric) > distanceCap;
+	}
+	
+	// Search for the k keywords with the smallest edit distance to the keyword.
+	// Ties at the k-th distance are broken arbitrarily.
+	// Results are ordered by edit distance, closest first.
+	public SearchResultList<T> searchNearest(CharSequence keyword, int k) {
+		return searchNearest(keyword, k, Integer.MAX_VALUE);
+	}
+	
+	// Search for the k closest keywords, ignoring anything further than maxDistance.
+	public SearchResultList<T> searchNearest(CharSequence keyword, int k, int maxDistance) {
+		if(k < 1) {
+			throw new IllegalArgumentException("Number of results must be at least 1");
+		}
+		
+		if(maxDistance < 0) {
+			throw new IllegalArgumentException("Maximum distance must not be negative");
+		}
+		
+		keyword = getNormalizedKeyword(keyword);
+		SearchResultList<T> results = new SearchResultList<T>();
+		
+		Node<T> searchRoot = root;
+		
+		if(searchRoot == null) {
+			return results;
+		}
+		
+		Pattern keywordPattern = keywordPatterns.get().reset(keyword);
+		long keywordSignature = KeywordSignature.of(keyword);
+		TraversalQueue<Node<T>> queue = traversalQueues.get().reset(TraversalOrder.BEST_FIRST);
+		
+		// The k best so far, with the furthest on top (priorities are negated distances)
+		TraversalQueue<Node<T>> nearest = new TraversalQueue<Node<T>>().reset(TraversalOrder.BEST_FIRST);
+		int radius = maxDistance;
+		
+		queue.push(searchRoot, 0);
+		
+		// Nodes come off the queue in order of how close they could possibly be, 
+		// so once that's outside of the radius, nothing left can get into the k best
+		while(!queue.isEmpty() && queue.peekPriority() <= radius) {
+			int lowerBound = queue.peekPriority();
+			Node<T> node = queue.pop();
+			
+			Children<T> children = node.getChildren();
+			int distanceCap = saturatedAdd(children.getMaxDistance(), radius);
+			int currentDistance = calculateEditDistance(node.normalizedKeyword, keywordPattern, distanceCap);
+			
+			if(currentDistance > distanceCap) {
+				continue;
+			}
+			
+			if(currentDistance <= radius && !node.isRemoved()) {
+				nearest.push(node, -currentDistance);
+				
+				if(nearest.size() > k) {
+					nearest.pop();
+				}
+				
+				// Once we have k, only strictly closer keywords can improve the results
+				if(nearest.size() == k) {
+					radius = Math.min(radius, -nearest.peekPriority() - 1);
+				}
+			}
+			
+			int childCount = children.size();
+			
+			for(int i = children.getFirstIndex(currentDistance - radius); i < childCount && children.getDistance(i) <= saturatedAdd(currentDistance, radius); i++) {
+				// The radius only shrinks, so anything ruled out now stays ruled out
+				if(prefiltering && isRuledOut(children.getNode(i), keyword.length(), keywordSignature, radius)) {
+					continue;
+				}
+				
+				// Everything under the child is at least this far away, and so is everything under this node
+				int childLowerBound = Math.max(lowerBound, Math.abs(currentDistance - children.getDistance(i)));
+				queue.push(children.getNode(i), childLowerBound);
+			}
+		}
+		
+		// The heap gives up the furthest first
+		while(!nearest.isEmpty()) {
+			int distance = -nearest.peekPriority();
+			Node<T> node = nearest.pop();
+			float percentageDifference = getPercentageDifference(node.normalizedKeyword.length, keyword.length(), distance, distanceMetric);
+			SearchResult<T> result = node.toSearchResult(percentageDifference);
+			
+			if(result != null) {
+				results.add(result);
+			}
+		}
+		
+		Collections.reverse(results);
+		
+		return results;
+	}
+	
+	static int saturatedAdd(int a, int b) {
+		long sum = (long)a + b;
+		return (sum > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int)sum;
+	}
+	
+	// Picks the cheaper engine for the comparison.
+	// The bit-parallel engine costs one word per 64 characters of keyword for every character of the node,
+	// the banded engine costs one cell per unit of band width, so very narrow bands on long keywords favour the latter.
+	// Both sides are already case folded, so either engine compares the chars as they are.
+	// Other metrics have no compiled form, so they're given the pattern's folded chars.
+	private int calculateEditDistance(char[] nodeKeyword, Pattern keywordPattern, int distanceCap) {
+		if(distanceMetric != DistanceMetric.levenshtein()) {
+			return distanceMetric.calculateDistance(nodeKeyword, nodeKeyword.length, keywordPattern.getFoldedChars(), keywordPattern.length(), distanceCap);
+		} else if(distanceCap < keywordPattern.getBlockCount()) {
+			return distanceCalculator.calculateEditDistance(nodeKeyword, nodeKeyword.length, keywordPattern.getFoldedChars(), keywordPattern.length(), distanceCap);
+		} else {
+			return bitParallelCalculator.calculateEditDistance(keywordPattern, nodeKeyword, distanceCap);
+		}
+	}
+	
+	// Cells evaluated by the last calculateEditDistance(...), from whichever engine it picked.
+	// Other metrics don't count theirs, so it's taken to be the whole matrix.
+	private long getLastCellCount(char[] nodeKeyword, Pattern keywordPattern, int distanceCap) {
+		if(distanceMetric != DistanceMetric.levenshtein()) {
+			return (long)nodeKeyword.length * keywordPattern.length();
+		} else if(distanceCap < keywordPattern.getBlockCount()) {
+			return distanceCalculator.getLastCellCount();
+		} else {
+			return keywordPattern.getLastCellCount();
+		}
+	}
+	
+	static float getPercentageDifference(CharSequence keyword, CharSequence wordToMatch, int editDistance) {
+		return getPercentageDifference(keyword.length(), wordToMatch.length(), editDistance);
+	}
+	
+	static float getPercentageDifference(int keywordLength, int wordToMatchLength, int editDistance) {
+		return getPercentageDifference(keywordLength, wordToMatchLength, (float)editDistance);
+	}
+	
+	// The same, for a distance in the units of the metric
+	static float getPercentageDifference(int keywordLength, int wordToMatchLength, int distance, DistanceMetric distanceMetric) {
+		return getPercentageDifference(keywordLength, wordToMatchLength, (float)distance / distanceMetric.getUnitCost());
+	}
+	
+	private static float getPercentageDifference(int keywordLength, int wordToMatchLength, float editDistance) {
+		int longestWordLength = Math.max(keywordLength, wordToMatchLength);
+		return 100.0f - ((editDistance/longestWordLength) * 100.0f);
+	}
+	
+	public void printTree() {
+		walkTree((node, depth) -> {
+			for(int i = 0; i < depth; i++) {
+				System.out.print("\t");
+			}
+			
+			System.out.println(String.format("-- %s%s", node.getOriginalKeyword(), node.isRemoved() ? " (removed)" : ""));
+		});
+	}
+	
+	// Save the tree to a file, so it can be loaded again without recalculating any edit distances.
+	// The codec converts each keyword's associated data to bytes.
+	public void save(Path path, DataCodec<T> codec) throws IOException {
+		StringMatcherSnapshot.save(this, path, codec);
+	}
+	
+	// Load a tree saved with save(...), using the same kind of codec it was saved with.
+	public static <T> StringMatcher<T> load(Path path, DataCodec<T> codec) throws IOException {
+		return load(path, codec, DistanceMetric.levenshtein());
+	}
+	
+	// Load a tree that was built on another distance metric. Saved trees don't record their metric, 
+	// since it could be any implementation, so this must be the one the tree was built with.
+	public static <T> StringMatcher<T> load(Path path, DataCodec<T> codec, DistanceMetric distanceMetric) throws IOException {
+		return StringMatcherSnapshot.load(path, codec, matchingOption -> new StringMatcher<T>(matchingOption, distanceMetric));
+	}
+	
+	// Visit every node in the tree, parents before children and children in ascending key order.
+	// Iterative, so it's safe to use for whole-tree operations on trees of any depth.
+	void walkTree(NodeVisitor<T> visitor) {
+		Node<T> walkRoot = root;
+		
+		if(walkRoot == null) {
+			return;
+		}
+		
+		// Depths are held as the priorities
+		TraversalQueue<Node<T>> stack = new TraversalQueue<Node<T>>().reset(TraversalOrder.DEPTH_FIRST);
+		stack.push(walkRoot, 0);
+		
+		while(!stack.isEmpty()) {
+			int depth = stack.peekPriority();
+			Node<T> node = stack.pop();
+			
+			visitor.visit(node, depth);
+			
+			Children<T> children = node.getChildren();
+			
+			// Push in reverse so the smallest key comes off the stack first
+			for(int i = children.size() - 1; i >= 0; i--) {
+				stack.push(children.getNode(i), depth + 1);
+			}
+		}
+	}
+	
+	Node<T> getRoot() {
+		return root;
+	}
+	
+	void setRoot(Node<T> root) {
+		this.root = root;
+		nodesChanged();
+	}
+	
+	void setTombstoneCount(int tombstoneCount) {
+		this.tombstoneCount = tombstoneCount;
+	}
+	
+	/**
+	 * Searches a subtree, forking a new task for any child subtree that is big enough to be
+	 * worth handing to another thread. Each task collects its own results, 
+	 * which are merged as the tasks are joined, so there's no contention on the result list.
+	 * <p>
+	 * Tasks don't use the per-thread scratch patterns or queues, since a worker thread may
+	 * run other tasks while it waits on a join.
+	 */
+	private class ParallelSearchTask extends RecursiveTask<SearchResultList<T>> {
+		private static final long serialVersionUID = -3185125383245541766L;
+		
+		private final Node<T> subtreeRoot;
+		private final CharSequence keyword;
+		private final int distanceThreshold;
+		
+		public ParallelSearchTask(Node<T> subtreeRoot, CharSequence keyword, int distanceThreshold) {
+			this.subtreeRoot = subtreeRoot;
+			this.keyword = keyword;
+			this.distanceThreshold = distanceThreshold;
+		}
+		
+		@Override
+		protected SearchResultList<T> compute() {
+			SearchResultList<T> results = new SearchResultList<T>();
+			List<ParallelSearchTask> forkedTasks = new ArrayList<ParallelSearchTask>();
+			Pattern keywordPattern = bitParallelCalculator.compile(keyword);
+			long keywordSignature = KeywordSignature.of(keyword);
+			TraversalQueue<Node<T>> queue = new TraversalQueue<Node<T>>().reset(traversalOrder);
+			
+			queue.push(subtreeRoot, 0);
+			
+			while(!queue.isEmpty()) {
+				Node<T> node = queue.pop();
+				
+				if(node != subtreeRoot && node.getSubtreeSize() >= MIN_PARALLEL_SUBTREE_SIZE) {
+					ParallelSearchTask task = new ParallelSearchTask(node, keyword, distanceThreshold);
+					task.fork();
+					forkedTasks.add(task);
+				} else {
+					SearchResult<T> result = visitNode(node, keyword, keywordPattern, keywordSignature, distanceThreshold, queue, null);
+					
+					if(result != null) {
+						results.add(result);
+					}
+				}
+			}
+			
+			for(ParallelSearchTask task : forkedTasks) {
+				results.addAll(task.join());
+			}
+			
+			return results;
+		}
+	}
+	
+	/**
+	 * Searches the tree one result at a time, as a stream asks for them.
+	 * The traversal queue holds the search's place in the tree between results.
+	 * <p>
+	 * The stream could be consumed at any pace, interleaved with other searches on the same thread,
+	 * so it has its own pattern and queue rather than using the per-thread ones. 
+	 * Doesn't split, since each node's children are only known once it's been visited.
+	 */
+	private class SearchSpliterator implements Spliterator<SearchResult<T>> {
+		private final CharSequence keyword;
+		private final int distanceThreshold;
+		private final Pattern keywordPattern;
+		private final long keywordSignature;
+		private final TraversalQueue<Node<T>> queue = new TraversalQueue<Node<T>>().reset(traversalOrder);
+		
+		public SearchSpliterator(Node<T> searchRoot, CharSequence keyword, int distanceThreshold) {
+			this.keyword = keyword;
+			this.distanceThreshold = distanceThreshold;
+			this.keywordPattern = bitParallelCalculator.compile(keyword);
+			this.keywordSignature = KeywordSignature.of(keyword);
+			
+			if(searchRoot != null && distanceThreshold >= 0) {
+				queue.push(searchRoot, 0);
+			}
+		}
+		
+		@Override
+		public boolean tryAdvance(Consumer<? super SearchResult<T>> action) {
+			while(!queue.isEmpty()) {
+				SearchResult<T> result = visitNode(queue.pop(), keyword, keywordPattern, keywordSignature, distanceThreshold, queue, null);
+				
+				if(result != null) {
+					action.accept(result);
+					return true;
+				}
+			}
+			
+			return false;
+		}
+		
+		@Override
+		public Spliterator<SearchResult<T>> trySplit() {
+			return null;
+		}
+		
+		@Override
+		public long estimateSize() {
+			return Long.MAX_VALUE;
+		}
+		
+		@Override
+		public int characteristics() {
+			return Spliterator.NONNULL;
+		}
+	}
+	
+	/**
+	 * Searches the tree for a batch of keywords together.
+	 * <p>
+	 * Rather than each keyword walking the tree from the root on its own, the batch keeps a frontier of
+	 * nodes, each paired with the keywords from the batch that need to visit it. 
+	 * So each node is loaded once per batch, and compared against all of those keywords while it's hot.
+	 * Each batch writes only to its own slots in the shared results array.
+	 */
+	private class BatchSearch {
+		private final CharSequence[] keywords;
+		private final int[] distanceThresholds;
+		private final SearchResultList<T>[] results;
+		private final int start;
+		private final int end;
+		
+		public BatchSearch(CharSequence[] keywords, int[] distanceThresholds, SearchResultList<T>[] results, int start, int end) {
+			this.keywords = keywords;
+			this.distanceThresholds = distanceThresholds;
+			this.results = results;
+			this.start = start;
+			this.end = end;
+		}
+		
+		public void search() {
+			int batchSize = end - start;
+			Pattern[] keywordPatterns = new Pattern[batchSize];
+			long[] keywordSignatures = new long[batchSize];
+			int[] allKeywords = new int[batchSize];
+			int searchedCount = 0;
+			
+			for(int i = 0; i < batchSize; i++) {
+				results[start + i] = new SearchResultList<T>();
+				keywordPatterns[i] = bitParallelCalculator.compile(keywords[start + i]);
+				keywordSignatures[i] = KeywordSignature.of(keywords[start + i]);
+				
+				// Keywords with negative thresholds can't match anything, so they don't walk the tree
+				if(distanceThresholds[start + i] >= 0) {
+					allKeywords[searchedCount++] = start + i;
+				}
+			}
+			
+			Node<T> searchRoot = root;
+			
+			if(searchRoot == null || searchedCount == 0) {
+				return;
+			}
+			
+			// Frontier of nodes, with the indices of the keywords that reach each one
+			TraversalQueue<Node<T>> frontier = new TraversalQueue<Node<T>>().reset(TraversalOrder.DEPTH_FIRST);
+			TraversalQueue<int[]> frontierKeywords = new TraversalQueue<int[]>().reset(TraversalOrder.DEPTH_FIRST);
+			int[] currentDistances = new int[batchSize];
+			int[] childKeywords = new int[batchSize];
+			
+			frontier.push(searchRoot, searchedCount);
+			frontierKeywords.push(allKeywords, 0);
+			
+			while(!frontier.isEmpty()) {
+				int keywordCount = frontier.peekPriority();
+				Node<T> node = frontier.pop();
+				int[] nodeKeywords = frontierKeywords.pop();
+				
+				Children<T> children = node.getChildren();
+				
+				for(int i = 0; i < keywordCount; i++) {
+					int keywordIndex = nodeKeywords[i];
+					currentDistances[i] = visitNode(node, children, keywordIndex, keywordPatterns[keywordIndex - start]);
+				}
+				
+				// Send each child the keywords whose range of distances includes it
+				for(int child = 0; child < children.size(); child++) {
+					Node<T> childNode = children.getNode(child);
+					int childDistance = children.getDistance(child);
+					int childKeywordCount = 0;
+					
+					for(int i = 0; i < keywordCount; i++) {
+						int keywordIndex = nodeKeywords[i];
+						int distanceThreshold = distanceThresholds[keywordIndex];
+						
+						if(Math.abs(currentDistances[i] - childDistance) > distanceThreshold) {
+							continue;
+						}
+						
+						if(prefiltering && isRuledOut(childNode, keywords[keywordIndex].length(), keywordSignatures[keywordIndex - start], distanceThreshold)) {
+							continue;
+						}
+						
+						childKeywords[childKeywordCount++] = keywordIndex;
+					}
+					
+					if(childKeywordCount > 0) {
+						frontier.push(childNode, childKeywordCount);
+						frontierKeywords.push(Arrays.copyOf(childKeywords, childKeywordCount), 0);
+					}
+				}
+			}
+			
+			for(int i = start; i < end; i++) {
+				results[i].sortByClosestMatch();
+			}
+		}
+		
+		// Returns the distance to the node, or something past every child's range if the node can be ignored
+		private int visitNode(Node<T> node, Children<T> children, int keywordIndex, Pattern keywordPattern) {
+			CharSequence keyword = keywords[keywordIndex];
+			int distanceThreshold = distanceThresholds[keywordIndex];
+			int distanceCap = saturatedAdd(children.getMaxDistance(), distanceThreshold);
+			int currentDistance = calculateEditDistance(node.normalizedKeyword, keywordPattern, distanceCap);
+			
+			if(currentDistance <= distanceThreshold && !node.isRemoved()) {
+				float percentageDifference = getPercentageDifference(node.normalizedKeyword.length, keyword.length(), currentDistance, distanceMetric);
+				SearchResult<T> result = node.toSearchResult(percentageDifference);
+				
+				if(result != null) {
+					results[keywordIndex].add(result);
+				}
+			}
+			
+			return currentDistance;
+		}
+	}
+	
+	/**
+	 * Callback for {@link StringMatcher#walkTree(NodeVisitor)}.
+	 * 
+	 * @param <T> The type of data associated with each string keyword.
+	 */
+	interface NodeVisitor<T> {
+		void visit(Node<T> node, int depth);
+	}
+	
+	/**
+	 * A node in the BK Tree.
+	 * <p>
+	 * Children are keyed on edit distance and held in an immutable {@link Children} snapshot.
+	 * Adding a child copies the snapshot and publishes the copy through a volatile field, 
+	 * so a search can walk the tree while another thread adds to it.
+	 * The original keyword, associated data and removed flag are published together in the same way, as a {@link KeywordEntry},
+	 * so a search never sees one of them changed without the others. The subtree summary is volatile for the same reason.
+	 * <p>
+	 * The associated data is held as a single value, or as several values once there's more than one.
+	 * See {@link AssociatedValues}.
+	 * <p>
+	 * Each node also summarises its subtree for the search prefilter: the shortest and longest keywords in it,
+	 * and the characters in it (see {@link KeywordSignature}). The summary only ever widens as keywords are added,
+	 * so it can be looser than the subtree after a removal, but never tighter.
+	 *
+	 * @param <T> The type of data associated with each string keyword.
+	 */
+	static class Node<T> {
+		private volatile KeywordEntry entry;
+		private final char[] normalizedKeyword;			// Used for matching, so already case folded
+		private volatile Children<T> children = Children.empty();
+		private volatile int subtreeSize = 1;			// This node plus all of its descendants
+		private final long signature;					// Characters in the normalized keyword
+		private volatile int minSubtreeLength;			// The subtree summary is widened before a new child is published
+		private volatile int maxSubtreeLength;
+		private volatile long subtreeSignature;
+		
+		// The normalized keyword must come from the matcher's normalizer
+		public Node(CharSequence keyword, CharSequence normalizedKeyword, T associatedData) {
+			this(keyword, normalizedKeyword.toString().toCharArray(), associatedData);
+		}
+		
+		private Node(CharSequence keyword, char[] normalizedKeyword, T associatedData) {
+			this(new KeywordEntry(keyword, associatedData, false), normalizedKeyword);
+		}
+		
+		private Node(KeywordEntry entry, char[] normalizedKeyword) {
+			this.entry = entry;
+			this.normalizedKeyword = normalizedKeyword;
+			this.signature = KeywordSignature.of(normalizedKeyword);
+			this.minSubtreeLength = normalizedKeyword.length;
+			this.maxSubtreeLength = normalizedKeyword.length;
+			this.subtreeSignature = signature;
+		}
+		
+		// Read once and work from the snapshot, since the field may be replaced at any time
+		public Children<T> getChildren() {
+			return children;
+		}
+		
+		public Node<T> getChild(int key) {
+			return children.getNodeWithDistance(key);
+		}
+		
+		// Read once to get the keyword, data and removed flag as they were at the same moment
+		public KeywordEntry getEntry() {
+			return entry;
+		}
+		
+		public CharSequence getOriginalKeyword() {
+			return entry.getOriginalKeyword();
+		}
+		
+		// A read only view of the normalized keyword, rather than a copy
+		public CharSequence getNormalizedKeyword() {
+			return CharBuffer.wrap(normalizedKeyword).asReadOnlyBuffer();
+		}
+		
+		// The normalized keyword itself, for the distance calculators. Don't change it
+		public char[] getNormalizedChars() {
+			return normalizedKeyword;
+		}
+		
+		// The first value, if there are several
+		public T getAssociatedData() {
+			return AssociatedValues.first(entry.getAssociatedValues());
+		}
+		
+		public List<T> getAllAssociatedData() {
+			return AssociatedValues.all(entry.getAssociatedValues());
+		}
+		
+		// Replaces all of the values with this one.
+		// Writers must be serialised, as with addChild, since each change is made to a copy of the entry
+		public void setAssociatedData(T associatedData) {
+			KeywordEntry current = entry;
+			entry = new KeywordEntry(current.getOriginalKeyword(), associatedData, current.isRemoved());
+		}
+		
+		public void addAssociatedData(T associatedData) {
+			KeywordEntry current = entry;
+			entry = new KeywordEntry(current.getOriginalKeyword(), AssociatedValues.append(current.getAssociatedValues(), associatedData), current.isRemoved());
+		}
+		
+		// The values in their held form, for copying them elsewhere without unpacking them
+		public Object getAssociatedValues() {
+			return entry.getAssociatedValues();
+		}
+		
+		// Null if the keyword has been removed
+		public SearchResult<T> toSearchResult(float matchPercentage) {
+			KeywordEntry current = entry;
+			
+			if(current.isRemoved()) {
+				return null;
+			}
+			
+			return SearchResult.fromAssociatedValues(current.getOriginalKeyword(), current.getAssociatedValues(), matchPercentage);
+		}
+		
+		public boolean isRemoved() {
+			return entry.isRemoved();
+		}
+		
+		// Drops the data too, since it can't be found any more
+		public void markRemoved() {
+			entry = new KeywordEntry(entry.getOriginalKeyword(), null, true);
+		}
+		
+		// The keyword may be added back with different case or spacing
+		public void restore(CharSequence originalKeyword, T associatedData) {
+			entry = new KeywordEntry(originalKeyword, associatedData, false);
+		}
+		
+		// A fresh copy of this node to build a new tree from
+		public Node<T> withoutChildren() {
+			return new Node<T>(entry, normalizedKeyword);
+		}
+		
+		public int getSubtreeSize() {
+			return subtreeSize;
+		}
+		
+		public void setSubtreeSize(int subtreeSize) {
+			this.subtreeSize = subtreeSize;
+		}
+		
+		// Writers must be serialised, as with addChild
+		public void incrementSubtreeSize() {
+			subtreeSize++;
+		}
+		
+		// Widen the subtree summary to cover another node's subtree, which is being added under this one.
+		// Writers must be serialised, as with addChild. Each field only widens, so a search reading them part way through is never misled
+		public void includeInSubtree(Node<T> node) {
+			minSubtreeLength = Math.min(minSubtreeLength, node.minSubtreeLength);
+			maxSubtreeLength = Math.max(maxSubtreeLength, node.maxSubtreeLength);
+			subtreeSignature |= node.subtreeSignature;
+		}
+		
+		// Widen the subtree summary to cover all of the children, whose own summaries must already be complete
+		public void summariseChildren() {
+			Children<T> currentChildren = children;
+			
+			for(int i = 0; i < currentChildren.size(); i++) {
+				includeInSubtree(currentChildren.getNode(i));
+			}
+		}
+		
+		// Lower bound on the distance from the keyword to this node's keyword, from their lengths and characters alone
+		public int getLowerBound(int keywordLength, long keywordSignature, DistanceMetric distanceMetric) {
+			int lengthBound = Math.abs(normalizedKeyword.length - keywordLength);
+			return distanceMetric.getLowerBound(lengthBound, KeywordSignature.getLowerBound(signature, keywordSignature));
+		}
+		
+		// Lower bound on the distance from the keyword to anything in this node's subtree
+		public int getSubtreeLowerBound(int keywordLength, long keywordSignature, DistanceMetric distanceMetric) {
+			int lengthBound = Math.max(0, Math.max(minSubtreeLength - keywordLength, keywordLength - maxSubtreeLength));
+			return distanceMetric.getLowerBound(lengthBound, KeywordSignature.getSubtreeLowerBound(keywordSignature, subtreeSignature));
+		}
+		
+		// Replaces all of the children at once, e.g., when loading a saved tree
+		public void setChildren(Children<T> children) {
+			this.children = children;
+		}
+		
+		// Writers must be serialised, since two concurrent adds could each publish a copy missing the other's child
+		public Node<T> addChild(int key, CharSequence keyword, CharSequence normalizedKeyword, T associatedData) {
+			return addChild(key, new Node<T>(keyword, normalizedKeyword, associatedData));
+		}
+		
+		// Only this node's subtree summary is widened to cover the child's, not its ancestors'
+		public Node<T> addChild(int key, Node<T> child) {
+			includeInSubtree(child);
+			children = children.with(key, child);
+			return child;
+		}
+		
+		// Swap a child for a replacement at the same distance, or drop it if the replacement is null
+		public void replaceChild(Node<T> child, Node<T> replacement) {
+			Children<T> currentChildren = children;
+			
+			for(int i = 0; i < currentChildren.size(); i++) {
+				if(currentChildren.getNode(i) == child) {
+					children = currentChildren.withNodeAt(i, replacement);
+					return;
+				}
+			}
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("%s/%s/%s", getOriginalKeyword(), new String(normalizedKeyword), getAllAssociatedData());
+		}
+	}
+	
+	/**
+	 * A node's original keyword, associated data and removed flag.
+	 * <p>
+	 * Immutable, so a change to any of them replaces the whole entry with a single write,
+	 * and a search reading the entry once sees all three as they were at the same moment.
+	 */
+	static final class KeywordEntry {
+		private final CharSequence originalKeyword;
+		private final Object associatedValues;		// One value, or several. See AssociatedValues
+		private final boolean removed;
+		
+		public KeywordEntry(CharSequence originalKeyword, Object associatedValues, boolean removed) {
+			this.originalKeyword = originalKeyword;
+			this.associatedValues = associatedValues;
+			this.removed = removed;
+		}
+		
+		public CharSequence getOriginalKeyword() {
+			return originalKeyword;
+		}
+		
+		public Object getAssociatedValues() {
+			return associatedValues;
+		}
+		
+		public boolean isRemoved() {
+			return removed;
+		}
+	}
+	
+	/**
+	 * An immutable snapshot of a node's children.
+	 * <p>
+	 * The keys are held in a sorted primitive array, with the children in a parallel array,
+	 * so children within a range of distances can be found without boxing or hashing.
+	 *
+	 * @param <T> The type of data associated with each string keyword.
+	 */
+	static final class Children<T> {
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private static final Children EMPTY = new Children<Object>(new int[0], new Node[0]);
+		
+		private final int[] distances;		// Sorted ascending
+		private final Node<T>[] nodes;		// nodes[i] is at distances[i]
+		
+		private Children(int[] distances, Node<T>[] nodes) {
+			this.distances = distances;
+			this.nodes = nodes;
+		}
+		
+		@SuppressWarnings("unchecked")
+		public static <T> Children<T> empty() {
+			return (Children<T>) EMPTY;
+		}
+		
+		// The distances must already be sorted, with nodes[i] at distances[i]
+		public static <T> Children<T> of(int[] distances, Node<T>[] nodes) {
+			return new Children<T>(distances, nodes);
+		}
+		
+		public int size() {
+			return distances.length;
+		}
+		
+		public int getDistance(int index) {
+			return distances[index];
+		}
+		
+		public Node<T> getNode(int index) {
+			return nodes[index];
+		}
+		
+		public Node<T> getNodeWithDistance(int distance) {
+			int index = Arrays.binarySearch(distances, distance);
+			return (index >= 0) ? nodes[index] : null;
+		}
+		
+		// Index of the first child with a distance >= minDistance, or size() if there isn't one
+		public int getFirstIndex(int minDistance) {
+			int index = Arrays.binarySearch(distances, minDistance);
+			return (index >= 0) ? index : -(index + 1);
+		}
+		
+		// Largest key, used to bound distance calculations
+		public int getMaxDistance() {
+			return (distances.length == 0) ? 0 : distances[distances.length - 1];
+		}
+		
+		// Copy with the node inserted at the distance, keeping the keys sorted
+		public Children<T> with(int distance, Node<T> node) {
+			int insertionPoint = getFirstIndex(distance);
+			int[] newDistances = new int[distances.length + 1];
+			Node<T>[] newNodes = Arrays.copyOf(nodes, nodes.length + 1);
+			
+			System.arraycopy(distances, 0, newDistances, 0, insertionPoint);
+			System.arraycopy(distances, insertionPoint, newDistances, insertionPoint + 1, distances.length - insertionPoint);
+			System.arraycopy(nodes, insertionPoint, newNodes, insertionPoint + 1, nodes.length - insertionPoint);
+			
+			newDistances[insertionPoint] = distance;
+			newNodes[insertionPoint] = node;
+			
+			return new Children<T>(newDistances, newNodes);
+		}
+		
+		// Copy with the node at the index replaced, or removed if the new node is null
+		public Children<T> withNodeAt(int index, Node<T> node) {
+			if(node != null) {
+				Node<T>[] newNodes = nodes.clone();
+				newNodes[index] = node;
+				
+				return new Children<T>(distances, newNodes);
+			}
+			
+			int[] newDistances = new int[distances.length - 1];
+			Node<T>[] newNodes = Arrays.copyOf(nodes, nodes.length - 1);
+			
+			System.arraycopy(distances, 0, newDistances, 0, index);
+			System.arraycopy(distances, index + 1, newDistances, index, distances.length - index - 1);
+			System.arraycopy(nodes, index + 1, newNodes, index, nodes.length - index - 1);
+			
+			return new Children<T>(newDistances, newNodes);
+		}
 	}
-}
\ No newline at end of file
+}
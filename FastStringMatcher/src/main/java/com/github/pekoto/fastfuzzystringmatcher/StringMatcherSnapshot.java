@@ -0,0 +1,470 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import com.github.pekoto.fastfuzzystringmatcher.StringMatcher.Children;
+import com.github.pekoto.fastfuzzystringmatcher.StringMatcher.KeywordEntry;
+import com.github.pekoto.fastfuzzystringmatcher.StringMatcher.Node;
+
+/**
+ * Saves a string matcher's tree to a flat binary file, and loads it back again.
+ * <p>
+ * Loading just rebuilds the nodes from the file, so no edit distances are recalculated.
+ * The file is read through memory maps, so loading is close to the cost of reading the file.
+ * <p>
+ * <strong>Layout</strong> (big-endian):
+ * <ul>
+ * <li>Header: magic number, format version, matching option, node count, keyword heap size (chars), data heap size (bytes)
+ * <li>Node table: one fixed-size record per node, in breadth-first order, so each node's children are a contiguous run of nodes. 
+ * Each record holds the node's keyword offset/length into the keyword heap, its distance from its parent, 
+ * the index of its first child, its child count, its subtree size, and its data's offset/length into the data heap.
+ * Removed keywords are kept, since they route searches to the nodes under them, and are marked by their data length
+ * <li>Keyword heap: the original keywords as UTF-16 chars. Normalized keywords aren't saved, 
+ * since they're recomputed by the matching option's {@link Normalizer} on load
+ * <li>Data heap: the associated data, as encoded by a {@link DataCodec}. A keyword with several values is marked by its data length, 
+ * and its data is a count followed by each value's length and encoded bytes
+ * </ul>
+ * Each section is mapped separately, so each one is limited to 2GB.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+final class StringMatcherSnapshot {
+	private static final int MAGIC = 0x424B5452;	// "BKTR"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 32;
+	private static final int NODE_RECORD_SIZE = 32;
+	private static final int NO_DATA = -1;			// Data length recorded for null data
+	private static final int REMOVED = -2;			// Data length recorded for removed keywords
+	private static final int MULTIPLE_VALUES = -3;	// Data length recorded for keywords with several values
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+	private static final long MAX_SECTION_SIZE = Integer.MAX_VALUE;	// Each section is mapped on its own, and its offsets are ints
+	
+	private StringMatcherSnapshot() { }
+	
+	static <T> void save(StringMatcher<T> stringMatcher, Path path, DataCodec<T> codec) throws IOException {
+		if(path == null || codec == null) {
+			throw new IllegalArgumentException("Path and codec must not be null");
+		}
+		
+		// Take each node's children once, so the file is consistent even if keywords are being added
+		List<Node<T>> nodes = new ArrayList<Node<T>>();
+		List<Children<T>> nodeChildren = new ArrayList<Children<T>>();
+		Node<T> root = stringMatcher.getRoot();
+		
+		if(root != null) {
+			nodes.add(root);
+		}
+		
+		for(int i = 0; i < nodes.size(); i++) {
+			Children<T> children = nodes.get(i).getChildren();
+			nodeChildren.add(children);
+			
+			for(int child = 0; child < children.size(); child++) {
+				nodes.add(children.getNode(child));
+			}
+		}
+		
+		int[] distancesToParent = getDistancesToParent(nodeChildren);
+		int[] subtreeSizes = getSubtreeSizes(nodeChildren);
+		long keywordHeapSize = 0;
+		
+		// Likewise each node's keyword, data and removed flag, since a restored keyword can come back with a different length
+		List<KeywordEntry> entries = new ArrayList<KeywordEntry>(nodes.size());
+		
+		for(Node<T> node : nodes) {
+			KeywordEntry entry = node.getEntry();
+			entries.add(entry);
+			keywordHeapSize += entry.getOriginalKeyword().length();
+		}
+		
+		// Checked before anything is written, so a tree that can't be loaded again is never saved
+		checkSectionSize((long)nodes.size() * NODE_RECORD_SIZE, "Node table");
+		checkSectionSize(keywordHeapSize * Character.BYTES, "Keyword heap");
+		
+		long nodeTableStart = HEADER_SIZE;
+		long keywordHeapStart = nodeTableStart + ((long)nodes.size() * NODE_RECORD_SIZE);
+		long dataHeapStart = keywordHeapStart + (keywordHeapSize * Character.BYTES);
+		
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			SectionWriter nodeTable = new SectionWriter(channel, nodeTableStart);
+			SectionWriter keywordHeap = new SectionWriter(channel, keywordHeapStart);
+			SectionWriter dataHeap = new SectionWriter(channel, dataHeapStart);
+			int firstChild = 1;
+			
+			for(int i = 0; i < nodes.size(); i++) {
+				KeywordEntry entry = entries.get(i);
+				
+				CharSequence originalKeyword = entry.getOriginalKeyword();
+				int originalKeywordOffset = (int)(keywordHeap.getSize() / Character.BYTES);
+				keywordHeap.putChars(originalKeyword);
+				
+				int dataOffset = (int)dataHeap.getSize();
+				int dataLength = NO_DATA;
+				List<T> values = AssociatedValues.all(entry.getAssociatedValues());
+				
+				if(entry.isRemoved()) {
+					dataLength = REMOVED;
+				} else if(values.size() > 1) {
+					dataLength = MULTIPLE_VALUES;
+					dataHeap.putInt(values.size());
+					
+					for(T value : values) {
+						putValue(dataHeap, value, codec);
+					}
+				} else if(values.get(0) != null) {
+					byte[] data = codec.encode(values.get(0));
+					dataHeap.putBytes(data);
+					dataLength = data.length;
+				}
+				
+				// The data's size isn't known until it's encoded, so it's checked as it's written
+				checkSectionSize(dataHeap.getSize(), "Data heap");
+				
+				nodeTable.putInt(originalKeywordOffset);
+				nodeTable.putInt(originalKeyword.length());
+				nodeTable.putInt(distancesToParent[i]);
+				nodeTable.putInt(firstChild);
+				nodeTable.putInt(nodeChildren.get(i).size());
+				nodeTable.putInt(subtreeSizes[i]);
+				nodeTable.putInt(dataOffset);
+				nodeTable.putInt(dataLength);
+				
+				firstChild += nodeChildren.get(i).size();
+			}
+			
+			nodeTable.flush();
+			keywordHeap.flush();
+			dataHeap.flush();
+			
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(stringMatcher.getMatchingOption().ordinal());
+			header.putInt(nodes.size());
+			header.putLong(keywordHeapSize);
+			header.putLong(dataHeap.getSize());
+			header.flip();
+			
+			writeFully(channel, header, 0);
+		}
+	}
+	
+	// In breadth-first order, the children of each node follow on from the children of the node before
+	private static <T> int[] getDistancesToParent(List<Children<T>> nodeChildren) {
+		int[] distancesToParent = new int[nodeChildren.size()];
+		int nextChild = 1;
+		
+		for(Children<T> children : nodeChildren) {
+			for(int child = 0; child < children.size(); child++) {
+				distancesToParent[nextChild++] = children.getDistance(child);
+			}
+		}
+		
+		return distancesToParent;
+	}
+	
+	// Children always come after their parents, so add each node's size to its parent working backwards
+	private static <T> int[] getSubtreeSizes(List<Children<T>> nodeChildren) {
+		int[] parents = new int[nodeChildren.size()];
+		int[] subtreeSizes = new int[nodeChildren.size()];
+		int nextChild = 1;
+		
+		for(int i = 0; i < nodeChildren.size(); i++) {
+			for(int child = 0; child < nodeChildren.get(i).size(); child++) {
+				parents[nextChild++] = i;
+			}
+		}
+		
+		for(int i = nodeChildren.size() - 1; i >= 0; i--) {
+			subtreeSizes[i]++;
+			
+			if(i > 0) {
+				subtreeSizes[parents[i]] += subtreeSizes[i];
+			}
+		}
+		
+		return subtreeSizes;
+	}
+	
+	private static void checkSectionSize(long size, String section) throws IOException {
+		if(size > MAX_SECTION_SIZE) {
+			throw new IOException(section + " is too large to save: over " + MAX_SECTION_SIZE + " bytes");
+		}
+	}
+	
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+	
+	static <T, M extends StringMatcher<T>> M load(Path path, DataCodec<T> codec, Function<MatchingOption, M> stringMatcherFactory) throws IOException {
+		if(path == null || codec == null) {
+			throw new IllegalArgumentException("Path and codec must not be null");
+		}
+		
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if(channel.size() < HEADER_SIZE) {
+				throw new IOException("Not a string matcher snapshot: " + path);
+			}
+			
+			ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE);
+			
+			if(header.getInt() != MAGIC) {
+				throw new IOException("Not a string matcher snapshot: " + path);
+			}
+			
+			int version = header.getInt();
+			
+			if(version != VERSION) {
+				throw new IOException(String.format("Unsupported snapshot version %d (expected %d): %s", version, VERSION, path));
+			}
+			
+			int matchingOption = header.getInt();
+			int nodeCount = header.getInt();
+			long keywordHeapSize = header.getLong();
+			long dataHeapSize = header.getLong();
+			
+			long nodeTableStart = HEADER_SIZE;
+			long keywordHeapStart = nodeTableStart + ((long)nodeCount * NODE_RECORD_SIZE);
+			long dataHeapStart = keywordHeapStart + (keywordHeapSize * Character.BYTES);
+			
+			if(matchingOption < 0 || matchingOption >= MatchingOption.values().length || nodeCount < 0 ||
+			   channel.size() != dataHeapStart + dataHeapSize) {
+				throw new IOException("Corrupt string matcher snapshot: " + path);
+			}
+			
+			ByteBuffer nodeTable = map(channel, nodeTableStart, keywordHeapStart - nodeTableStart);
+			CharBuffer keywordHeap = map(channel, keywordHeapStart, dataHeapStart - keywordHeapStart).asCharBuffer();
+			ByteBuffer dataHeap = map(channel, dataHeapStart, dataHeapSize);
+			
+			M stringMatcher = stringMatcherFactory.apply(MatchingOption.values()[matchingOption]);
+			Node<T>[] nodes = readNodes(nodeTable, keywordHeap, dataHeap, nodeCount, stringMatcher.getMatchingOption().getNormalizer(), codec);
+			int tombstoneCount = 0;
+			
+			for(Node<T> node : nodes) {
+				if(node.isRemoved()) {
+					tombstoneCount++;
+				}
+			}
+			
+			stringMatcher.setRoot((nodeCount == 0) ? null : nodes[0]);
+			stringMatcher.setTombstoneCount(tombstoneCount);
+			
+			return stringMatcher;
+		}
+	}
+	
+	private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+		if(size > MAX_SECTION_SIZE) {
+			throw new IOException("Snapshot section is too large to map: " + size + " bytes");
+		}
+		
+		return channel.map(MapMode.READ_ONLY, position, size);
+	}
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <T> Node<T>[] readNodes(ByteBuffer nodeTable, CharBuffer keywordHeap, ByteBuffer dataHeap, int nodeCount, 
+										   Normalizer normalizer, DataCodec<T> codec) throws IOException {
+		Node<T>[] nodes = (Node<T>[]) new Node[nodeCount];
+		int[] distancesToParent = new int[nodeCount];
+		int[] firstChildren = new int[nodeCount];
+		int[] childCounts = new int[nodeCount];
+		char[] keywordChars = new char[0];
+		
+		try {
+			for(int i = 0; i < nodeCount; i++) {
+				int originalKeywordOffset = nodeTable.getInt();
+				int originalKeywordLength = nodeTable.getInt();
+				distancesToParent[i] = nodeTable.getInt();
+				firstChildren[i] = nodeTable.getInt();
+				childCounts[i] = nodeTable.getInt();
+				int subtreeSize = nodeTable.getInt();
+				int dataOffset = nodeTable.getInt();
+				int dataLength = nodeTable.getInt();
+				
+				keywordChars = ensureCapacity(keywordChars, originalKeywordLength);
+				String originalKeyword = readKeyword(keywordHeap, originalKeywordOffset, originalKeywordLength, keywordChars);
+				
+				if(dataLength < MULTIPLE_VALUES) {
+					throw new IOException("Corrupt string matcher snapshot: negative data length");
+				}
+				
+				// The same normalizer gives the same normalized keyword the tree was built with
+				nodes[i] = new Node<T>(originalKeyword, normalizer.normalize(originalKeyword), readValue(dataHeap, dataOffset, dataLength, codec));
+				
+				if(dataLength == MULTIPLE_VALUES) {
+					readValues(nodes[i], dataHeap, dataOffset, codec);
+				}
+				
+				nodes[i].setSubtreeSize(subtreeSize);
+				
+				if(dataLength == REMOVED) {
+					nodes[i].markRemoved();
+				}
+			}
+			
+			for(int i = 0; i < nodeCount; i++) {
+				if(childCounts[i] == 0) {
+					continue;
+				}
+				
+				int firstChild = firstChildren[i];
+				int lastChild = firstChild + childCounts[i];
+				
+				if(firstChild <= i || lastChild > nodeCount) {
+					throw new IOException("Corrupt string matcher snapshot: child index out of range");
+				}
+				
+				int[] childDistances = Arrays.copyOfRange(distancesToParent, firstChild, lastChild);
+				Node<T>[] childNodes = Arrays.copyOfRange(nodes, firstChild, lastChild);
+				nodes[i].setChildren(Children.of(childDistances, childNodes));
+			}
+			
+			// The prefilter summaries aren't saved, since they're cheap to work out again.
+			// Children come after their parents, so working backwards, each node's children are summarised before it is
+			for(int i = nodeCount - 1; i >= 0; i--) {
+				nodes[i].summariseChildren();
+			}
+		} catch(IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new IOException("Corrupt string matcher snapshot", e);
+		}
+		
+		return nodes;
+	}
+	
+	// Each of several values is written as its length then its bytes
+	private static <T> void putValue(SectionWriter dataHeap, T value, DataCodec<T> codec) throws IOException {
+		if(value == null) {
+			dataHeap.putInt(NO_DATA);
+			return;
+		}
+		
+		byte[] data = codec.encode(value);
+		dataHeap.putInt(data.length);
+		dataHeap.putBytes(data);
+	}
+	
+	// A single value, or null if there isn't one
+	private static <T> T readValue(ByteBuffer dataHeap, int dataOffset, int dataLength, DataCodec<T> codec) throws IOException {
+		if(dataLength < 0) {
+			return null;
+		}
+		
+		ByteBuffer data = dataHeap.duplicate();
+		data.position(dataOffset);
+		data.limit(dataOffset + dataLength);
+		
+		return codec.decode(data.slice());
+	}
+	
+	private static <T> void readValues(Node<T> node, ByteBuffer dataHeap, int dataOffset, DataCodec<T> codec) throws IOException {
+		int valueCount = dataHeap.getInt(dataOffset);
+		int valueOffset = dataOffset + Integer.BYTES;
+		
+		if(valueCount < 2) {
+			throw new IOException("Corrupt string matcher snapshot: bad value count");
+		}
+		
+		for(int value = 0; value < valueCount; value++) {
+			int valueLength = dataHeap.getInt(valueOffset);
+			valueOffset += Integer.BYTES;
+			
+			if(valueLength < NO_DATA) {
+				throw new IOException("Corrupt string matcher snapshot: negative data length");
+			}
+			
+			T associatedData = readValue(dataHeap, valueOffset, valueLength, codec);
+			valueOffset += Math.max(valueLength, 0);
+			
+			if(value == 0) {
+				node.setAssociatedData(associatedData);
+			} else {
+				node.addAssociatedData(associatedData);
+			}
+		}
+	}
+	
+	private static char[] ensureCapacity(char[] chars, int length) {
+		return (chars.length < length) ? new char[length] : chars;
+	}
+	
+	private static String readKeyword(CharBuffer keywordHeap, int offset, int length, char[] keywordChars) {
+		keywordHeap.position(offset);
+		keywordHeap.get(keywordChars, 0, length);
+		
+		return new String(keywordChars, 0, length);
+	}
+	
+	/**
+	 * Buffers writes to one section of the file, starting at a fixed position.
+	 */
+	private static class SectionWriter {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+		private long position;
+		private long size;
+		
+		public SectionWriter(FileChannel channel, long start) {
+			this.channel = channel;
+			this.position = start;
+		}
+		
+		public long getSize() {
+			return size;
+		}
+		
+		public void putInt(int value) throws IOException {
+			ensureRemaining(Integer.BYTES);
+			buffer.putInt(value);
+			size += Integer.BYTES;
+		}
+		
+		public void putChars(CharSequence chars) throws IOException {
+			for(int i = 0; i < chars.length(); i++) {
+				ensureRemaining(Character.BYTES);
+				buffer.putChar(chars.charAt(i));
+			}
+			
+			size += (long)chars.length() * Character.BYTES;
+		}
+		
+		public void putBytes(byte[] bytes) throws IOException {
+			int offset = 0;
+			
+			while(offset < bytes.length) {
+				ensureRemaining(1);
+				int length = Math.min(buffer.remaining(), bytes.length - offset);
+				buffer.put(bytes, offset, length);
+				offset += length;
+			}
+			
+			size += bytes.length;
+		}
+		
+		private void ensureRemaining(int bytes) throws IOException {
+			if(buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+		
+		public void flush() throws IOException {
+			buffer.flip();
+			int length = buffer.remaining();
+			writeFully(channel, buffer, position);
+			position += length;
+			buffer.clear();
+		}
+	}
+}
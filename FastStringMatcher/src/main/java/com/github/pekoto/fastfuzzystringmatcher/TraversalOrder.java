@@ -0,0 +1,22 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+
+/**
+ * The order in which the string matcher visits nodes when searching the tree.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+public enum TraversalOrder {
+	/**
+	 * Follow each branch to the bottom before backing up. Keeps the fewest nodes waiting to be visited.
+	 */
+	DEPTH_FIRST,
+	
+	/**
+	 * Visit the node that could be closest to the keyword next. A child with key k under a node at distance d
+	 * can be no closer than |d - k| to the keyword, so nodes are visited in order of that lower bound, 
+	 * and the closest matches tend to be found first.
+	 */
+	BEST_FIRST
+}
@@ -0,0 +1,131 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.util.Arrays;
+
+/**
+ * The nodes waiting to be visited during an iterative walk of the tree.
+ * <p>
+ * Used in place of recursion, so deep trees can't overflow the stack.
+ * Depending on the {@link TraversalOrder}, this is either a stack (depth-first) or a min-heap on
+ * each element's priority (best-first). Elements and priorities are held in parallel arrays which
+ * are reused after {@link #reset(TraversalOrder)}, so a walk doesn't allocate once the arrays have grown
+ * to the size of the walk.
+ * 
+ * @author Graham McRobbie
+ *
+ * @param <E> The type of element being visited.
+ */
+class TraversalQueue<E> {
+	private static final int INITIAL_CAPACITY = 64;
+	
+	private Object[] elements = new Object[INITIAL_CAPACITY];
+	private int[] priorities = new int[INITIAL_CAPACITY];
+	private int size;
+	private boolean heapOrdered;
+	
+	public TraversalQueue<E> reset(TraversalOrder traversalOrder) {
+		Arrays.fill(elements, 0, size, null);
+		size = 0;
+		heapOrdered = (traversalOrder == TraversalOrder.BEST_FIRST);
+		
+		return this;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public void push(E element, int priority) {
+		if(size == elements.length) {
+			elements = Arrays.copyOf(elements, size * 2);
+			priorities = Arrays.copyOf(priorities, size * 2);
+		}
+		
+		elements[size] = element;
+		priorities[size] = priority;
+		size++;
+		
+		if(heapOrdered) {
+			siftUp(size - 1);
+		}
+	}
+	
+	// Priority of the element that will be popped next
+	public int peekPriority() {
+		return heapOrdered ? priorities[0] : priorities[size - 1];
+	}
+	
+	@SuppressWarnings("unchecked")
+	public E pop() {
+		int last = size - 1;
+		E element;
+		
+		if(heapOrdered) {
+			element = (E)elements[0];
+			move(last, 0);
+			elements[last] = null;
+			size--;
+			siftDown(0);
+		} else {
+			element = (E)elements[last];
+			elements[last] = null;
+			size--;
+		}
+		
+		return element;
+	}
+	
+	private void siftUp(int index) {
+		while(index > 0) {
+			int parent = (index - 1) / 2;
+			
+			if(priorities[parent] <= priorities[index]) {
+				break;
+			}
+			
+			swap(parent, index);
+			index = parent;
+		}
+	}
+	
+	private void siftDown(int index) {
+		while(true) {
+			int smallest = index;
+			int left = (2 * index) + 1;
+			int right = left + 1;
+			
+			if(left < size && priorities[left] < priorities[smallest]) {
+				smallest = left;
+			}
+			
+			if(right < size && priorities[right] < priorities[smallest]) {
+				smallest = right;
+			}
+			
+			if(smallest == index) {
+				break;
+			}
+			
+			swap(smallest, index);
+			index = smallest;
+		}
+	}
+	
+	private void move(int from, int to) {
+		elements[to] = elements[from];
+		priorities[to] = priorities[from];
+	}
+	
+	private void swap(int i, int j) {
+		Object element = elements[i];
+		int priority = priorities[i];
+		
+		move(j, i);
+		elements[j] = element;
+		priorities[j] = priority;
+	}
+}
@@ -0,0 +1,360 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+import com.github.pekoto.fastfuzzystringmatcher.BitParallelEditDistanceCalculator.Pattern;
+import com.github.pekoto.fastfuzzystringmatcher.StringMatcher.Children;
+import com.github.pekoto.fastfuzzystringmatcher.StringMatcher.Node;
+
+/**
+ * Builds a whole tree at once, in parallel.
+ * <p>
+ * Rather than adding keywords one by one from the root, each pivot's keywords are compared against it in one go,
+ * bucketed by distance, and the first keyword in each bucket becomes the pivot for the rest of its bucket.
+ * Every bucket is independent of the others, so they can be built on different threads.
+ * The result is a valid BK tree over the same keywords, so it answers searches the same way as one built with add.
+ * <p>
+ * All of the nodes live in one array, and each pivot's bucket is sorted in place, so every subtree ends up
+ * in a contiguous range of the array with its pivot first. Jobs are just (pivot, end) index pairs.
+ * The tree is built one level of large jobs at a time, rather than by recursion, so deep trees can't overflow the stack.
+ * Jobs smaller than the parallel threshold are finished off by one thread.
+ * 
+ * @author Graham McRobbie
+ *
+ * @param <T> The type of data associated with each string keyword.
+ */
+final class TreeBuilder<T> {
+	private final BitParallelEditDistanceCalculator bitParallelCalculator = new BitParallelEditDistanceCalculator();
+	private final DistanceMetric distanceMetric;
+	private final Node<T>[] nodes;
+	private final Node<T>[] sortedNodes;		// Scratch space for sorting buckets. Each job only uses its own range
+	private final int[] distances;				// Each member's distance to its pivot
+	private final int parallelThreshold;
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private TreeBuilder(Node<T>[] nodes, DistanceMetric distanceMetric, int parallelThreshold) {
+		this.distanceMetric = distanceMetric;
+		this.nodes = nodes;
+		this.sortedNodes = (Node<T>[]) new Node[nodes.length];
+		this.distances = new int[nodes.length];
+		this.parallelThreshold = parallelThreshold;
+	}
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	static <T, M extends StringMatcher<T>> M build(Iterable<? extends Map.Entry<? extends CharSequence, ? extends T>> entries,
+												   BuildOptions options, Function<MatchingOption, M> stringMatcherFactory) {
+		if(entries == null || options == null) {
+			throw new IllegalArgumentException("Entries and options must not be null");
+		}
+		
+		M stringMatcher = stringMatcherFactory.apply(options.getMatchingOption());
+		List<Node<T>> nodeList = new ArrayList<Node<T>>();
+		Map<String, Node<T>> seenKeywords = new HashMap<String, Node<T>>();
+		
+		for(Map.Entry<? extends CharSequence, ? extends T> entry : entries) {
+			if(entry == null || entry.getKey() == null) {
+				throw new IllegalArgumentException("Strings must not be null");
+			}
+			
+			if(entry.getKey().length() == 0) {
+				throw new IllegalArgumentException("Strings must not be empty");
+			}
+			
+			CharSequence normalizedKeyword = StringMatcher.getNormalizedKeyword(entry.getKey(), options.getMatchingOption());
+			
+			// Like add, keep the first of any duplicates, or like addValue, collect their values on the first. 
+			// The bucket sort would keep whichever came first after shuffling.
+			// Normalized keywords are case folded, so duplicates are the keywords that normalize to the same string
+			String duplicateKey = normalizedKeyword.toString();
+			Node<T> existingNode = seenKeywords.get(duplicateKey);
+			
+			if(existingNode == null) {
+				Node<T> node = new Node<T>(entry.getKey(), normalizedKeyword, entry.getValue());
+				seenKeywords.put(duplicateKey, node);
+				nodeList.add(node);
+			} else if(options.isCollectingValues()) {
+				existingNode.addAssociatedData(entry.getValue());
+			}
+		}
+		
+		if(nodeList.isEmpty()) {
+			return stringMatcher;
+		}
+		
+		// Shuffled, so the first keyword in each bucket is a random pivot
+		Collections.shuffle(nodeList, options.getRandom());
+		Collections.swap(nodeList, 0, stringMatcher.chooseRoot(nodeList));
+		
+		Node<T>[] nodes = nodeList.toArray((Node<T>[]) new Node[nodeList.size()]);
+		nodeList = null;
+		seenKeywords = null;
+		
+		TreeBuilder<T> builder = new TreeBuilder<T>(nodes, stringMatcher.getDistanceMetric(), options.getParallelThreshold());
+		int[] level = { 0, nodes.length };
+		
+		while(level.length > 0) {
+			level = options.getPool().invoke(builder.new LevelTask(level, 0, level.length / 2));
+		}
+		
+		builder.summariseSubtrees();
+		stringMatcher.setRoot(nodes[0]);
+		
+		return stringMatcher;
+	}
+	
+	// Finishes off a job and everything under it on this thread
+	private void buildSubtree(int pivot, int end, Pattern pivotPattern) {
+		JobList stack = new JobList();
+		stack.add(pivot, end);
+		
+		while(!stack.isEmpty()) {
+			int jobEnd = stack.popEnd();
+			int jobPivot = stack.popPivot();
+			
+			calculateDistances(pivotPattern.reset(nodes[jobPivot].getNormalizedKeyword()), jobPivot + 1, jobEnd);
+			splitJob(jobPivot, jobEnd, stack);
+		}
+	}
+	
+	// Other metrics than Levenshtein are given the pattern's folded chars, as when searching
+	private void calculateDistances(Pattern pivotPattern, int from, int to) {
+		if(distanceMetric != DistanceMetric.levenshtein()) {
+			for(int i = from; i < to; i++) {
+				char[] member = nodes[i].getNormalizedChars();
+				distances[i] = distanceMetric.calculateDistance(pivotPattern.getFoldedChars(), pivotPattern.length(), member, member.length, Integer.MAX_VALUE);
+			}
+			
+			return;
+		}
+		
+		for(int i = from; i < to; i++) {
+			distances[i] = bitParallelCalculator.calculateEditDistance(pivotPattern, nodes[i].getNormalizedChars(), Integer.MAX_VALUE);
+		}
+	}
+	
+	// Once the distances to the pivot are known, sort the pivot's members into buckets by distance,
+	// make the first member of each bucket a child of the pivot, and queue up the rest of each bucket as a new job.
+	// Members at distance 0 would be duplicates of the pivot. They're filtered out up front, but are sorted to the end and dropped just in case.
+	private void splitJob(int pivot, int end, JobList jobs) {
+		int from = pivot + 1;
+		int maxDistance = 0;
+		
+		for(int i = from; i < end; i++) {
+			maxDistance = Math.max(maxDistance, distances[i]);
+		}
+		
+		int[] bucketStarts = new int[maxDistance + 1];
+		
+		for(int i = from; i < end; i++) {
+			bucketStarts[distances[i]]++;
+		}
+		
+		// Turn the counts into start positions, with the duplicates' bucket last
+		int childCount = 0;
+		int duplicates = bucketStarts[0];
+		int position = from;
+		
+		for(int distance = 1; distance <= maxDistance; distance++) {
+			int count = bucketStarts[distance];
+			bucketStarts[distance] = position;
+			position += count;
+			
+			if(count > 0) {
+				childCount++;
+			}
+		}
+		
+		bucketStarts[0] = position;
+		
+		int[] bucketPositions = bucketStarts.clone();
+		
+		for(int i = from; i < end; i++) {
+			sortedNodes[bucketPositions[distances[i]]++] = nodes[i];
+		}
+		
+		System.arraycopy(sortedNodes, from, nodes, from, end - from);
+		Arrays.fill(sortedNodes, from, end, null);
+		Arrays.fill(nodes, end - duplicates, end, null);
+		
+		int[] childDistances = new int[childCount];
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		Node<T>[] childNodes = (Node<T>[]) new Node[childCount];
+		int child = 0;
+		
+		for(int distance = 1; distance <= maxDistance; distance++) {
+			int bucketStart = bucketStarts[distance];
+			int bucketEnd = bucketPositions[distance];
+			
+			if(bucketEnd > bucketStart) {
+				childDistances[child] = distance;
+				childNodes[child] = nodes[bucketStart];
+				child++;
+				
+				if(bucketEnd - bucketStart > 1) {
+					jobs.add(bucketStart, bucketEnd);
+				}
+			}
+		}
+		
+		nodes[pivot].setChildren(Children.of(childDistances, childNodes));
+	}
+	
+	// Sets each node's subtree size and prefilter summary.
+	// Every node's subtree comes after it in the array, so working backwards, a node's children are always done before it
+	private void summariseSubtrees() {
+		for(int i = nodes.length - 1; i >= 0; i--) {
+			Node<T> node = nodes[i];
+			
+			if(node == null) {
+				continue;
+			}
+			
+			Children<T> children = node.getChildren();
+			int subtreeSize = 1;
+			
+			for(int child = 0; child < children.size(); child++) {
+				subtreeSize += children.getNode(child).getSubtreeSize();
+			}
+			
+			node.setSubtreeSize(subtreeSize);
+			node.summariseChildren();
+		}
+	}
+	
+	/**
+	 * Runs one level's worth of large jobs, returning the jobs for the next level.
+	 * Splits the level in half until it's down to a single large job, or a run of small jobs that one thread can finish off.
+	 */
+	private class LevelTask extends RecursiveTask<int[]> {
+		private static final long serialVersionUID = 4604934364718950353L;
+		
+		private final int[] level;		// (pivot, end) pairs
+		private final int firstJob;
+		private final int endJob;
+		
+		public LevelTask(int[] level, int firstJob, int endJob) {
+			this.level = level;
+			this.firstJob = firstJob;
+			this.endJob = endJob;
+		}
+		
+		@Override
+		protected int[] compute() {
+			if(endJob - firstJob == 1 || getMemberCount() < parallelThreshold) {
+				JobList nextLevel = new JobList();
+				Pattern pivotPattern = null;
+				
+				for(int job = firstJob; job < endJob; job++) {
+					int pivot = level[job * 2];
+					int end = level[(job * 2) + 1];
+					
+					if(end - pivot - 1 >= parallelThreshold) {
+						new DistanceTask(nodes[pivot].getNormalizedKeyword(), pivot + 1, end).invoke();
+						splitJob(pivot, end, nextLevel);
+					} else {
+						// Patterns aren't shared between tasks, since a worker may run other tasks while it waits on a join
+						if(pivotPattern == null) {
+							pivotPattern = bitParallelCalculator.compile("");
+						}
+						
+						buildSubtree(pivot, end, pivotPattern);
+					}
+				}
+				
+				return nextLevel.toArray();
+			}
+			
+			int middleJob = (firstJob + endJob) >>> 1;
+			LevelTask firstHalf = new LevelTask(level, firstJob, middleJob);
+			firstHalf.fork();
+			
+			int[] secondJobs = new LevelTask(level, middleJob, endJob).compute();
+			int[] firstJobs = firstHalf.join();
+			
+			int[] jobs = Arrays.copyOf(firstJobs, firstJobs.length + secondJobs.length);
+			System.arraycopy(secondJobs, 0, jobs, firstJobs.length, secondJobs.length);
+			
+			return jobs;
+		}
+		
+		private long getMemberCount() {
+			long members = 0;
+			
+			for(int job = firstJob; job < endJob; job++) {
+				members += level[(job * 2) + 1] - level[job * 2] - 1;
+			}
+			
+			return members;
+		}
+	}
+	
+	/**
+	 * Calculates the distances from one pivot to a large range of members, splitting the range across threads.
+	 */
+	private class DistanceTask extends RecursiveAction {
+		private static final long serialVersionUID = -2316436131569434052L;
+		
+		private final CharSequence pivotKeyword;
+		private final int from;
+		private final int to;
+		
+		public DistanceTask(CharSequence pivotKeyword, int from, int to) {
+			this.pivotKeyword = pivotKeyword;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if(to - from <= parallelThreshold) {
+				calculateDistances(bitParallelCalculator.compile(pivotKeyword), from, to);
+				return;
+			}
+			
+			int middle = (from + to) >>> 1;
+			invokeAll(new DistanceTask(pivotKeyword, from, middle), new DistanceTask(pivotKeyword, middle, to));
+		}
+	}
+	
+	/**
+	 * A growable list of (pivot, end) pairs, used as both a stack and a queue of jobs.
+	 */
+	private static class JobList {
+		private int[] jobs = new int[16];
+		private int size;
+		
+		public void add(int pivot, int end) {
+			if(size + 2 > jobs.length) {
+				jobs = Arrays.copyOf(jobs, jobs.length * 2);
+			}
+			
+			jobs[size++] = pivot;
+			jobs[size++] = end;
+		}
+		
+		public boolean isEmpty() {
+			return size == 0;
+		}
+		
+		// Pop the end first, then the pivot
+		public int popEnd() {
+			return jobs[--size];
+		}
+		
+		public int popPivot() {
+			return jobs[--size];
+		}
+		
+		public int[] toArray() {
+			return Arrays.copyOf(jobs, size);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import java.util.Arrays;
+
+/**
+ * The shape of a string matcher's tree, from {@link StringMatcher#getTreeStats()}.
+ * <p>
+ * A well-shaped tree is shallow and branches widely near the root, so a search can rule out 
+ * most of the tree after a few comparisons. A deep, narrow tree (e.g., from adding keywords in sorted order)
+ * makes searches visit many more nodes. See {@link StringMatcher#rebuild()}.
+ * <p>
+ * Removed keywords stay in the tree until it's compacted, so they're counted in the size,
+ * and separately as tombstones. See {@link StringMatcher#compact()}.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+public class TreeStats {
+	private final long size;
+	private final long[] nodesByDepth;			// Number of nodes at each depth (root = 0)
+	private final long[] childrenByDepth;		// Total children of the nodes at each depth
+	private final long totalDepth;
+	private final long leaves;
+	private final long tombstones;
+	
+	private TreeStats(long size, long[] nodesByDepth, long[] childrenByDepth, long totalDepth, long leaves, long tombstones) {
+		this.size = size;
+		this.nodesByDepth = nodesByDepth;
+		this.childrenByDepth = childrenByDepth;
+		this.totalDepth = totalDepth;
+		this.leaves = leaves;
+		this.tombstones = tombstones;
+	}
+	
+	public long getSize() {
+		return size;
+	}
+	
+	public long getLeafCount() {
+		return leaves;
+	}
+	
+	// Number of removed keywords still in the tree
+	public long getTombstoneCount() {
+		return tombstones;
+	}
+	
+	public double getTombstoneRatio() {
+		return (size == 0) ? 0.0 : (double)tombstones / size;
+	}
+	
+	// Depth of the deepest node, or -1 for an empty tree
+	public int getMaxDepth() {
+		return nodesByDepth.length - 1;
+	}
+	
+	public double getAverageDepth() {
+		return (size == 0) ? 0.0 : (double)totalDepth / size;
+	}
+	
+	// Number of nodes at each depth, from the root down
+	public long[] getDepthHistogram() {
+		return nodesByDepth.clone();
+	}
+	
+	// Average number of children of the nodes at each depth, from the root down
+	public double[] getFanOutByDepth() {
+		double[] fanOut = new double[nodesByDepth.length];
+		
+		for(int depth = 0; depth < fanOut.length; depth++) {
+			fanOut[depth] = (double)childrenByDepth[depth] / nodesByDepth[depth];
+		}
+		
+		return fanOut;
+	}
+	
+	// Average number of nodes in the subtree under (and including) each node.
+	// Each node is counted once in the subtree of every node above it, and once in its own.
+	public double getAverageSubtreeSize() {
+		return (size == 0) ? 0.0 : (double)(totalDepth + size) / size;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("size=%d, leaves=%d, tombstones=%d, maxDepth=%d, averageDepth=%.2f, averageSubtreeSize=%.2f, depthHistogram=%s, fanOutByDepth=%s",
+							 size, leaves, tombstones, getMaxDepth(), getAverageDepth(), getAverageSubtreeSize(), 
+							 Arrays.toString(nodesByDepth), Arrays.toString(getFanOutByDepth()));
+	}
+	
+	/**
+	 * Collects the statistics one node at a time during a walk of the tree.
+	 */
+	static class Builder {
+		private long size;
+		private long[] nodesByDepth = new long[16];
+		private long[] childrenByDepth = new long[16];
+		private int depthCount;
+		private long totalDepth;
+		private long leaves;
+		private long tombstones;
+		
+		public void addNode(int depth, int childCount, boolean removed) {
+			if(depth >= nodesByDepth.length) {
+				nodesByDepth = Arrays.copyOf(nodesByDepth, Math.max(depth + 1, nodesByDepth.length * 2));
+				childrenByDepth = Arrays.copyOf(childrenByDepth, nodesByDepth.length);
+			}
+			
+			size++;
+			nodesByDepth[depth]++;
+			childrenByDepth[depth] += childCount;
+			depthCount = Math.max(depthCount, depth + 1);
+			totalDepth += depth;
+			
+			if(childCount == 0) {
+				leaves++;
+			}
+			
+			if(removed) {
+				tombstones++;
+			}
+		}
+		
+		public TreeStats build() {
+			return new TreeStats(size, Arrays.copyOf(nodesByDepth, depthCount), Arrays.copyOf(childrenByDepth, depthCount), totalDepth, leaves, tombstones);
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.pekoto.fastfuzzystringmatcher.BitParallelEditDistanceCalculator.Pattern;
+
+public class BitParallelEditDistanceCalculatorTest {
+
+	private BitParallelEditDistanceCalculator distanceCalculator = new BitParallelEditDistanceCalculator();
+
+	@Test
+	public void testShortDistance() {
+		String s1 = "Hat";
+		String s2 = "Cat";
+
+		int distance = distanceCalculator.calculateEditDistance(s1, s2);
+
+		assertEquals(1, distance);
+	}
+
+	@Test
+	public void testLongDistance() {
+		String s1 = "This is a long string";
+		String s2 = "Th1s is a l0ng str1ng";
+
+		int distance = distanceCalculator.calculateEditDistance(s1, s2);
+
+		assertEquals(3, distance);
+	}
+
+	@Test
+	public void testStringOneLonger() {
+		String s1 = "This string is longer";
+		String s2 = "This is shorter";
+
+		int distance = distanceCalculator.calculateEditDistance(s1, s2);
+
+		assertEquals(10, distance);
+	}
+
+	@Test
+	public void testCaseInsensitive() {
+		String s1 = "Test";
+		String s2 = "test";
+
+		int distance = distanceCalculator.calculateEditDistance(s1, s2);
+
+		assertEquals(0, distance);
+	}
+
+	@Test
+	public void testNonAsciiCharacters() {
+		String s1 = "明白です";
+		String s2 = "明白でした";
+
+		int distance = distanceCalculator.calculateEditDistance(s1, s2);
+
+		assertEquals(2, distance);
+	}
+
+	@Test
+	public void testStringOneEmpty() {
+		String s1 = "";
+		String s2 = "Test";
+
+		int distance = distanceCalculator.calculateEditDistance(s1, s2);
+
+		assertEquals(4, distance);
+	}
+
+	@Test
+	public void testStringTwoEmpty() {
+		String s1 = "Test";
+		String s2 = "";
+
+		int distance = distanceCalculator.calculateEditDistance(s1, s2);
+
+		assertEquals(4, distance);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testStringOneNull() {
+		String s1 = null;
+		String s2 = "Test";
+
+		// Throws IllegalArgumentException
+		distanceCalculator.calculateEditDistance(s1, s2);
+	}
+
+	@Test
+	public void testBoundedDistanceOverBound() {
+		Pattern pattern = distanceCalculator.compile("This is a long string");
+
+		int distance = distanceCalculator.calculateEditDistance(pattern, "Something else entirely", 2);
+
+		assertEquals(3, distance);
+	}
+
+	@Test
+	public void testPatternReuse() {
+		Pattern pattern = distanceCalculator.compile("kitten");
+
+		assertEquals(3, distanceCalculator.calculateEditDistance(pattern, "sitting"));
+		assertEquals(1, distanceCalculator.calculateEditDistance(pattern, "mitten"));
+		assertEquals(0, distanceCalculator.calculateEditDistance(pattern, "KITTEN"));
+	}
+
+	@Test
+	public void testMatchesDynamicProgramming() {
+		EditDistanceCalculator dynamicProgrammingCalculator = new EditDistanceCalculator();
+		Random random = new Random(1);
+
+		// Lengths either side of the 64 character word boundary exercise the blocked path
+		for (int i = 0; i < 5000; i++) {
+			String s1 = getRandomString(random, 200);
+			String s2 = getRandomString(random, 200);
+
+			int expected = dynamicProgrammingCalculator.calculateEditDistance(s1, s2);
+			int maxDistance = random.nextInt(50);
+			Pattern pattern = distanceCalculator.compile(s1);
+
+			assertEquals(expected, distanceCalculator.calculateEditDistance(pattern, s2));
+			assertEquals(Math.min(expected, maxDistance + 1), distanceCalculator.calculateEditDistance(pattern, s2, maxDistance));
+		}
+	}
+
+	private String getRandomString(Random random, int maxLength) {
+		String alphabet = "abcABC 日本";
+		StringBuilder sb = new StringBuilder();
+		int length = random.nextInt(maxLength);
+
+		for (int i = 0; i < length; i++) {
+			sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+
+		return sb.toString();
+	}
+}
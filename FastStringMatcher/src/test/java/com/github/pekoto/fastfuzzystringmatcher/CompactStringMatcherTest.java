@@ -0,0 +1,105 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CompactStringMatcherTest {
+	
+	@Test
+	public void testSameResultsAsStringMatcher() {
+		StringMatcher<String> stringMatcher = new StringMatcher<String>();
+		Random random = new Random(11);
+		
+		for(int i = 0; i < 3000; i++) {
+			String keyword = getRandomString(random);
+			stringMatcher.add(keyword, "Data for " + keyword);
+		}
+		
+		for(StorageOption storageOption : StorageOption.values()) {
+			CompactStringMatcher<String> compactMatcher = new CompactStringMatcher<String>(stringMatcher, storageOption);
+			
+			for(int i = 0; i < 200; i++) {
+				String keyword = getRandomString(random);
+				SearchResultList<String> expectedResults = stringMatcher.search(keyword, 70.0f);
+				SearchResultList<String> compactResults = compactMatcher.search(keyword, 70.0f);
+				
+				assertEquals(expectedResults.size(), compactResults.size());
+				
+				for(SearchResult<String> result : compactResults) {
+					assertTrue(expectedResults.containsKeyword(result.getKeyword().toString()));
+					assertEquals("Data for " + result.getKeyword(), result.getAssociatedData());
+				}
+				
+				assertEquals(stringMatcher.search(keyword, 2).size(), compactMatcher.search(keyword, 2).size());
+			}
+		}
+	}
+	
+	@Test
+	public void testNormalizedKeywords() {
+		StringMatcher<String> stringMatcher = new StringMatcher<String>(MatchingOption.REMOVE_SPACING_AND_LINEBREAKS);
+		stringMatcher.add("Hello world", "Greeting");
+		stringMatcher.add("Hello\nthere", "Another greeting");
+		stringMatcher.add("Goodbye", null);
+		
+		CompactStringMatcher<String> compactMatcher = new CompactStringMatcher<String>(stringMatcher, StorageOption.OFF_HEAP);
+		
+		assertEquals(3, compactMatcher.size());
+		
+		SearchResultList<String> results = compactMatcher.search("Helloworld", 100.0f);
+		assertEquals(1, results.size());
+		assertEquals("Hello world", results.get(0).getKeyword());
+		assertEquals("Greeting", results.get(0).getAssociatedData());
+		
+		results = compactMatcher.search("Good bye", 0);
+		assertEquals(1, results.size());
+		assertNull(results.get(0).getAssociatedData());
+	}
+	
+	@Test
+	public void testEmptyTree() {
+		CompactStringMatcher<String> compactMatcher = new CompactStringMatcher<String>(new StringMatcher<String>());
+		
+		assertEquals(0, compactMatcher.size());
+		assertEquals(0, compactMatcher.search("Anything", 0.0f).size());
+	}
+	
+	@Test
+	public void testUnboundedAndNegativeThresholds() {
+		StringMatcher<String> stringMatcher = new StringMatcher<String>();
+		stringMatcher.add("cat", "Root");
+		CompactStringMatcher<String> singleMatcher = new CompactStringMatcher<String>(stringMatcher);
+		
+		stringMatcher.add("bats", "Child");
+		CompactStringMatcher<String> compactMatcher = new CompactStringMatcher<String>(stringMatcher);
+		
+		assertEquals(1, singleMatcher.search("dog", Integer.MAX_VALUE).size());
+		assertEquals(2, compactMatcher.search("dog", Integer.MAX_VALUE).size());
+		
+		for(CompactStringMatcher<String> searched : Arrays.asList(singleMatcher, compactMatcher)) {
+			assertEquals(0, searched.search("cat", -1).size());
+			assertEquals(0, searched.search("cat", 150.0f).size());
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullStringMatcher() {
+		// Throws IllegalArgumentException
+		new CompactStringMatcher<String>(null);
+	}
+	
+	private static String getRandomString(Random random) {
+		StringBuilder sb = new StringBuilder();
+		int length = 3 + random.nextInt(12);
+		
+		for(int i = 0; i < length; i++) {
+			sb.append("abcdefあい".charAt(random.nextInt(8)));
+		}
+		
+		return sb.toString();
+	}
+}
@@ -0,0 +1,176 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class ConcurrentStringMatcherTest {
+
+	private static final int READER_COUNT = 8;
+	private static final int WRITER_COUNT = 2;
+	private static final int KEYWORDS_PER_WRITER = 5000;
+	
+	@Test
+	public void testConcurrentSearchesAndAdds() throws Exception {
+		ConcurrentStringMatcher<String> stringMatcher = new ConcurrentStringMatcher<String>();
+		List<String> initialKeywords = new ArrayList<String>();
+		
+		// Prefixes keep every writer's keywords distinct from each other and from the initial keywords
+		for(int i = 0; i < 2000; i++) {
+			String keyword = "initial" + i;
+			initialKeywords.add(keyword);
+			stringMatcher.add(keyword, keyword);
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(READER_COUNT + WRITER_COUNT);
+		CountDownLatch startSignal = new CountDownLatch(1);
+		AtomicBoolean writersFinished = new AtomicBoolean();
+		List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+		List<Future<?>> writers = new ArrayList<Future<?>>();
+		
+		try {
+			for(int reader = 0; reader < READER_COUNT; reader++) {
+				long seed = reader;
+				
+				readers.add(executor.submit(() -> {
+					Random random = new Random(seed);
+					int searchCount = 0;
+					startSignal.await();
+					
+					// Keywords that were there before the writers started must always be found
+					while(!writersFinished.get()) {
+						String keyword = initialKeywords.get(random.nextInt(initialKeywords.size()));
+						SearchResultList<String> results = stringMatcher.search(keyword, 1);
+						
+						assertTrue(results.containsKeyword(keyword));
+						assertEquals(keyword, results.get(0).getAssociatedData());
+						searchCount++;
+					}
+					
+					return searchCount;
+				}));
+			}
+			
+			for(int writer = 0; writer < WRITER_COUNT; writer++) {
+				String prefix = "writer" + writer + "-";
+				
+				writers.add(executor.submit(() -> {
+					startSignal.await();
+					
+					for(int i = 0; i < KEYWORDS_PER_WRITER; i++) {
+						stringMatcher.add(prefix + i, prefix + i);
+					}
+					
+					return null;
+				}));
+			}
+			
+			startSignal.countDown();
+			
+			for(Future<?> writer : writers) {
+				writer.get(60, TimeUnit.SECONDS);
+			}
+			
+			writersFinished.set(true);
+			
+			for(Future<Integer> reader : readers) {
+				assertTrue(reader.get(60, TimeUnit.SECONDS) > 0);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		// Nothing was lost by concurrent writers
+		for(int writer = 0; writer < WRITER_COUNT; writer++) {
+			for(int i = 0; i < KEYWORDS_PER_WRITER; i++) {
+				String keyword = "writer" + writer + "-" + i;
+				assertTrue(stringMatcher.search(keyword, 0).containsKeyword(keyword));
+			}
+		}
+		
+		assertEquals(initialKeywords.size() + (WRITER_COUNT * KEYWORDS_PER_WRITER), stringMatcher.getRoot().getSubtreeSize());
+	}
+	
+	@Test
+	public void testSearchesWhileRemovingAndRestoring() throws Exception {
+		ConcurrentStringMatcher<String> stringMatcher = new ConcurrentStringMatcher<String>();
+		List<String> toggledKeywords = new ArrayList<String>();
+		
+		for(int i = 0; i < 2000; i++) {
+			stringMatcher.add("keyword" + i, "keyword" + i);
+		}
+		
+		// Each keyword's data is always its original keyword, which changes case each time it's restored
+		for(int i = 0; i < 20; i++) {
+			toggledKeywords.add("toggled" + i);
+			stringMatcher.add("toggled" + i, "toggled" + i);
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(READER_COUNT + 1);
+		CountDownLatch startSignal = new CountDownLatch(1);
+		AtomicBoolean writerFinished = new AtomicBoolean();
+		List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+		
+		try {
+			for(int reader = 0; reader < READER_COUNT; reader++) {
+				long seed = reader;
+				
+				readers.add(executor.submit(() -> {
+					Random random = new Random(seed);
+					int searchCount = 0;
+					startSignal.await();
+					
+					// A result is either the keyword as it was removed, or as it was restored, never a mix of the two
+					while(!writerFinished.get()) {
+						String keyword = toggledKeywords.get(random.nextInt(toggledKeywords.size()));
+						SearchResultList<String> results = random.nextBoolean() ? stringMatcher.search(keyword, 1) : stringMatcher.searchNearest(keyword, 3);
+						
+						for(SearchResult<String> result : results) {
+							assertEquals(result.getKeyword(), result.getAssociatedData());
+						}
+						
+						searchCount++;
+					}
+					
+					return searchCount;
+				}));
+			}
+			
+			Future<?> writer = executor.submit(() -> {
+				Random random = new Random(1);
+				startSignal.await();
+				
+				for(int i = 0; i < 20000; i++) {
+					String keyword = toggledKeywords.get(random.nextInt(toggledKeywords.size()));
+					
+					if(!stringMatcher.remove(keyword)) {
+						String restoredKeyword = random.nextBoolean() ? keyword.toUpperCase() : keyword;
+						stringMatcher.add(restoredKeyword, restoredKeyword);
+					}
+				}
+				
+				return null;
+			});
+			
+			startSignal.countDown();
+			writer.get(60, TimeUnit.SECONDS);
+			writerFinished.set(true);
+			
+			for(Future<Integer> reader : readers) {
+				assertTrue(reader.get(60, TimeUnit.SECONDS) > 0);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
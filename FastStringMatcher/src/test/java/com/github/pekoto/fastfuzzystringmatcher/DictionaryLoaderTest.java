@@ -0,0 +1,177 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DictionaryLoaderTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testPoMatchesLineByLine() throws IOException {
+		List<Map.Entry<String, String>> expected = new ArrayList<Map.Entry<String, String>>();
+		
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(getDictionaryStream(), StandardCharsets.UTF_8))) {
+			String keyword = "";
+			String line;
+			
+			while((line = reader.readLine()) != null) {
+				if(line.startsWith("msgid")) {
+					keyword = line.substring(line.indexOf('"') + 1, line.lastIndexOf('"'));
+				} else if(line.startsWith("msgstr") && !keyword.isEmpty()) {
+					expected.add(entry(keyword, line.substring(line.indexOf('"') + 1, line.lastIndexOf('"'))));
+				}
+			}
+		}
+		
+		// Small blocks, so plenty of records are split between them
+		try(InputStream stream = getDictionaryStream()) {
+			assertEquals(expected, new DictionaryLoader(DictionaryFormat.PO).setBlockSize(4096).read(stream));
+		}
+	}
+	
+	@Test
+	public void testSameEntriesWhateverTheBlockSize() throws IOException {
+		String csv = "\uFEFFplain,明白\r\n"
+				   + "\"quoted, with comma\",\"line\nbreak\"\r\n"
+				   + "\"a \"\"quote\"\"\",x\n"
+				   + "\n"
+				   + "no value\n"
+				   + "last,日本語";
+		
+		List<Map.Entry<String, String>> expected = Arrays.asList(entry("plain", "明白"), entry("quoted, with comma", "line\nbreak"),
+																  entry("a \"quote\"", "x"), entry("no value", ""), entry("last", "日本語"));
+		
+		File file = folder.newFile();
+		Files.write(file.toPath(), csv.getBytes(StandardCharsets.UTF_8));
+		
+		for(int blockSize = 1; blockSize < 40; blockSize++) {
+			DictionaryLoader loader = new DictionaryLoader(DictionaryFormat.CSV).setBlockSize(blockSize);
+			
+			assertEquals("Block size " + blockSize, expected, loader.read(file.toPath()));
+			assertEquals("Block size " + blockSize, expected, loader.read(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8))));
+		}
+	}
+	
+	@Test
+	public void testPoStrings() throws IOException {
+		String po = "msgid \"\"\n"
+				  + "msgstr \"Content-Type: text/plain; charset=UTF-8\\n\"\n"
+				  + "\n"
+				  + "# A comment\n"
+				  + "msgid \"multi\"\n"
+				  + "\"line \\\"keyword\\\"\"\n"
+				  + "msgstr \"first\"\n"
+				  + "msgstr[1] \"second\"\n";
+		
+		List<Map.Entry<String, String>> expected = Arrays.asList(entry("multiline \"keyword\"", "first"), entry("multiline \"keyword\"", "second"));
+		
+		for(int blockSize = 1; blockSize < 40; blockSize++) {
+			DictionaryLoader loader = new DictionaryLoader(DictionaryFormat.PO).setBlockSize(blockSize);
+			assertEquals("Block size " + blockSize, expected, loader.read(new ByteArrayInputStream(po.getBytes(StandardCharsets.UTF_8))));
+		}
+	}
+	
+	@Test
+	public void testPoPluralsWhateverTheBlockSize() throws IOException {
+		StringBuilder po = new StringBuilder();
+		List<Map.Entry<String, String>> expected = new ArrayList<Map.Entry<String, String>>();
+		
+		for(int i = 0; i < 200; i++) {
+			po.append("msgid \"file").append(i).append("\"\n")
+			  .append("msgid_plural \"files").append(i).append("\"\n")
+			  .append("msgstr[0] \"ファイル").append(i).append("\"\n")
+			  .append("msgstr[1] \"ファイル群").append(i).append("\"\n\n");
+			
+			expected.add(entry("file" + i, "ファイル" + i));
+			expected.add(entry("file" + i, "ファイル群" + i));
+		}
+		
+		byte[] bytes = po.toString().getBytes(StandardCharsets.UTF_8);
+		
+		for(int blockSize : new int[] { 1, 7, 30, 64, 100, 1000, 1 << 20 }) {
+			DictionaryLoader loader = new DictionaryLoader(DictionaryFormat.PO).setBlockSize(blockSize);
+			assertEquals("Block size " + blockSize, expected, loader.read(new ByteArrayInputStream(bytes)));
+		}
+	}
+	
+	@Test
+	public void testCsvQuotesInsideFields() throws IOException {
+		// Quotes that don't start a field are plain chars, so they mustn't be taken as opening a quoted line break
+		String csv = "5\" disk,\"a\nb\"\r\n"
+				   + "it's \"ok\",fine\n"
+				   + "last,\"x\"\"\"\n";
+		
+		List<Map.Entry<String, String>> expected = Arrays.asList(entry("5\" disk", "a\nb"), entry("it's \"ok\"", "fine"), entry("last", "x\""));
+		
+		for(int blockSize = 1; blockSize < 40; blockSize++) {
+			DictionaryLoader loader = new DictionaryLoader(DictionaryFormat.CSV).setBlockSize(blockSize);
+			assertEquals("Block size " + blockSize, expected, loader.read(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8))));
+		}
+	}
+	
+	@Test
+	public void testTsvColumns() throws IOException {
+		String tsv = "id\tkeyword\tvalue\n1\tcat\t猫\n2\tdog\t犬\n";
+		DictionaryLoader loader = new DictionaryLoader(DictionaryFormat.TSV).setKeywordColumn(1).setValueColumn(2).setSkippingHeader(true);
+		
+		assertEquals(Arrays.asList(entry("cat", "猫"), entry("dog", "犬")), loader.read(new ByteArrayInputStream(tsv.getBytes(StandardCharsets.UTF_8))));
+	}
+	
+	@Test
+	public void testLoad() throws IOException {
+		LoadStats loadStats = new LoadStats();
+		StringMatcher<String> stringMatcher;
+		
+		try(InputStream stream = getDictionaryStream()) {
+			stringMatcher = new DictionaryLoader(DictionaryFormat.PO).load(stream, new BuildOptions().setCollectingValues(true), loadStats);
+		}
+		
+		SearchResultList<String> results = stringMatcher.search("Diplomat", 80.0f);
+		
+		assertTrue(results.containsKeyword("diplomat"));
+		assertEquals(50000, loadStats.getEntriesRead());
+		assertTrue(loadStats.getBytesRead() > 0);
+		assertTrue(loadStats.getReadMegabytesPerSecond() > 0.0);
+		assertTrue(loadStats.getMegabytesPerSecond() <= loadStats.getReadMegabytesPerSecond());
+	}
+	
+	@Test(expected = CharacterCodingException.class)
+	public void testMalformedUtf8() throws IOException {
+		byte[] tsv = { 'a', '\t', (byte)0xC3, '\n' };
+		new DictionaryLoader(DictionaryFormat.TSV).read(new ByteArrayInputStream(tsv));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullFormat() {
+		// Throws IllegalArgumentException
+		new DictionaryLoader(null);
+	}
+	
+	private InputStream getDictionaryStream() {
+		return getClass().getClassLoader().getResourceAsStream("JMDict_po.txt");
+	}
+	
+	private static Map.Entry<String, String> entry(String keyword, String value) {
+		return new AbstractMap.SimpleImmutableEntry<String, String>(keyword, value);
+	}
+}
@@ -0,0 +1,135 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DistanceMetricTest {
+	
+	private static final List<DistanceMetric> METRICS = Arrays.asList(DistanceMetric.levenshtein(), DistanceMetric.damerauLevenshtein(),
+																	  DistanceMetric.hamming(), DistanceMetric.keyboard());
+	
+	@Test
+	public void testKnownDistances() {
+		assertEquals(3, DistanceMetric.levenshtein().calculateDistance("kitten", "sitting"));
+		assertEquals(1, DistanceMetric.damerauLevenshtein().calculateDistance("abcd", "abdc"));
+		assertEquals(2, DistanceMetric.damerauLevenshtein().calculateDistance("ca", "abc"));
+		assertEquals(3, DistanceMetric.hamming().calculateDistance("karolin", "kathrin"));
+		assertEquals(1, DistanceMetric.hamming().calculateDistance("cat", "ca"));
+		assertEquals(1, DistanceMetric.keyboard().calculateDistance("cat", "vat"));
+		assertEquals(2, DistanceMetric.keyboard().calculateDistance("cat", "pat"));
+		assertEquals(2, DistanceMetric.keyboard().calculateDistance("cat", "cart"));
+	}
+	
+	@Test
+	public void testMetricProperties() {
+		Random random = new Random(42);
+		
+		for(DistanceMetric metric : METRICS) {
+			for(int i = 0; i < 2000; i++) {
+				String a = randomKeyword(random);
+				String b = randomKeyword(random);
+				String c = randomKeyword(random);
+				
+				int ab = metric.calculateDistance(a, b);
+				int bc = metric.calculateDistance(b, c);
+				int ac = metric.calculateDistance(a, c);
+				
+				assertEquals(metric + ": " + a + ", " + b, ab, metric.calculateDistance(b, a));
+				assertEquals(metric + ": " + a, 0, metric.calculateDistance(a, a));
+				assertEquals(metric + ": " + a + ", " + b, a.equals(b), ab == 0);
+				assertTrue(metric + ": " + a + ", " + b + ", " + c, ac <= ab + bc);
+			}
+		}
+	}
+	
+	@Test
+	public void testBoundedDistances() {
+		Random random = new Random(7);
+		
+		for(DistanceMetric metric : METRICS) {
+			for(int i = 0; i < 2000; i++) {
+				char[] a = randomKeyword(random).toCharArray();
+				char[] b = randomKeyword(random).toCharArray();
+				int maxDistance = random.nextInt(8);
+				int distance = metric.calculateDistance(a, a.length, b, b.length, Integer.MAX_VALUE);
+				
+				assertEquals(metric.toString(), Math.min(distance, maxDistance + 1), metric.calculateDistance(a, a.length, b, b.length, maxDistance));
+			}
+		}
+	}
+	
+	@Test
+	public void testSearchMatchesBruteForce() {
+		Random random = new Random(3);
+		List<String> keywords = new ArrayList<String>();
+		
+		for(int i = 0; i < 500; i++) {
+			keywords.add(randomKeyword(random));
+		}
+		
+		for(DistanceMetric metric : METRICS) {
+			StringMatcher<String> stringMatcher = new StringMatcher<String>(MatchingOption.NONE, metric);
+			
+			for(String keyword : keywords) {
+				stringMatcher.add(keyword, keyword);
+			}
+			
+			for(int i = 0; i < 50; i++) {
+				String query = randomKeyword(random);
+				int distanceThreshold = random.nextInt(3) * metric.getUnitCost();
+				List<String> expected = new ArrayList<String>();
+				
+				for(String keyword : keywords) {
+					if(!expected.contains(keyword) && metric.calculateDistance(query, keyword) <= distanceThreshold) {
+						expected.add(keyword);
+					}
+				}
+				
+				List<String> found = new ArrayList<String>();
+				
+				for(SearchResult<String> result : stringMatcher.search(query, distanceThreshold)) {
+					found.add(result.getKeyword().toString());
+				}
+				
+				expected.sort(null);
+				found.sort(null);
+				assertEquals(metric + ": " + query, expected, found);
+			}
+		}
+	}
+	
+	@Test
+	public void testPercentageScaledByUnitCost() {
+		StringMatcher<String> stringMatcher = new StringMatcher<String>(MatchingOption.NONE, DistanceMetric.keyboard());
+		stringMatcher.add("cart", "cart");
+		stringMatcher.add("cat", "cat");
+		
+		SearchResultList<String> results = stringMatcher.search("vat", 60.0f);
+		
+		assertEquals(1, results.size());
+		assertEquals("cat", results.get(0).getKeyword());
+		assertEquals(83.33f, results.get(0).getMatchPercentage(), 0.01f);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testNullMetric() {
+		new StringMatcher<String>(MatchingOption.NONE, null);
+	}
+	
+	// Short keywords over a small alphabet, so there are plenty of close matches and transpositions
+	private static String randomKeyword(Random random) {
+		char[] keyword = new char[1 + random.nextInt(6)];
+		
+		for(int i = 0; i < keyword.length; i++) {
+			keyword[i] = "abcdvx".charAt(random.nextInt(6));
+		}
+		
+		return new String(keyword);
+	}
+}
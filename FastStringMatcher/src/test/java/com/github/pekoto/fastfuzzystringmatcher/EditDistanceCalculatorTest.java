@@ -107,4 +107,66 @@ public class EditDistanceCalculatorTest {
 		
 		assertEquals(0, distance);
 	}
+	
+	@Test
+	public void testBoundedDistanceWithinBound() {
+		String s1 = "kitten";
+		String s2 = "sitting";
+		
+		int distance = distanceCalculator.calculateEditDistance(s1, s2, 3);
+		
+		assertEquals(3, distance);
+	}
+	
+	@Test
+	public void testBoundedDistanceOverBound() {
+		String s1 = "This is a long string";
+		String s2 = "Something else entirely";
+		
+		int distance = distanceCalculator.calculateEditDistance(s1, s2, 2);
+		
+		assertEquals(3, distance);
+	}
+	
+	@Test
+	public void testBoundedDistanceLengthDifferenceOverBound() {
+		String s1 = "Test";
+		String s2 = "Test string";
+		
+		int distance = distanceCalculator.calculateEditDistance(s1, s2, 5);
+		
+		assertEquals(6, distance);
+	}
+	
+	@Test
+	public void testBoundedDistanceCaseInsensitive() {
+		String s1 = "TEST STRING";
+		String s2 = "test strong";
+		
+		int distance = distanceCalculator.calculateEditDistance(s1, s2, 1);
+		
+		assertEquals(1, distance);
+	}
+	
+	@Test
+	public void testBoundedDistanceMatchesUnbounded() {
+		String[] strings = { "", "a", "cat", "hat", "kate", "ball", "bat", "0123456789", "9876543210", "This is a test" };
+		
+		for (String s1 : strings) {
+			for (String s2 : strings) {
+				int distance = distanceCalculator.calculateEditDistance(s1, s2);
+				
+				for (int maxDistance = 0; maxDistance <= 15; maxDistance++) {
+					int expected = Math.min(distance, maxDistance + 1);
+					assertEquals(expected, distanceCalculator.calculateEditDistance(s1, s2, maxDistance));
+				}
+			}
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testBoundedDistanceNegativeBound() {
+		// Throws IllegalArgumentException
+		distanceCalculator.calculateEditDistance("Test", "Test", -1);
+	}
 }
@@ -0,0 +1,200 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class FuzzyPrefixIndexTest {
+	
+	@Test
+	public void testSearchMatchesBruteForce() {
+		Random random = new Random(5);
+		StringMatcher<String> stringMatcher = new StringMatcher<String>();
+		List<String> keywords = new ArrayList<String>();
+		
+		for(int i = 0; i < 400; i++) {
+			String keyword = randomKeyword(random, 1 + random.nextInt(8));
+			
+			if(!keywords.contains(keyword)) {
+				keywords.add(keyword);
+				stringMatcher.add(keyword, keyword);
+			}
+		}
+		
+		FuzzyPrefixIndex<String> index = new FuzzyPrefixIndex<String>(stringMatcher);
+		assertEquals(keywords.size(), index.size());
+		
+		for(int i = 0; i < 200; i++) {
+			String prefix = randomKeyword(random, random.nextInt(5));
+			int distanceThreshold = random.nextInt(3);
+			TreeMap<String, Integer> expected = new TreeMap<String, Integer>();
+			
+			for(String keyword : keywords) {
+				int distance = getPrefixDistance(prefix, keyword);
+				
+				if(distance <= distanceThreshold) {
+					expected.put(keyword, distance);
+				}
+			}
+			
+			assertEquals(prefix, expected, toDistances(index.search(prefix, distanceThreshold), prefix.length()));
+		}
+	}
+	
+	@Test
+	public void testTypingReusesState() {
+		Random random = new Random(9);
+		StringMatcher<String> stringMatcher = new StringMatcher<String>();
+		
+		for(int i = 0; i < 300; i++) {
+			stringMatcher.add(randomKeyword(random, 3 + random.nextInt(6)), "");
+		}
+		
+		FuzzyPrefixIndex<String> index = new FuzzyPrefixIndex<String>(stringMatcher);
+		FuzzyPrefixIndex<String>.PrefixSearch prefixSearch = index.startSearch(1);
+		String typed = randomKeyword(random, 6);
+		
+		for(int i = 0; i < typed.length(); i++) {
+			prefixSearch.append(typed.charAt(i));
+			assertSameResults(index.search(typed.substring(0, i + 1), 1), prefixSearch.getResults());
+		}
+		
+		prefixSearch.undo().undo();
+		
+		assertEquals(typed.substring(0, 4), prefixSearch.getQuery());
+		assertSameResults(index.search(typed.substring(0, 4), 1), prefixSearch.getResults());
+	}
+	
+	@Test
+	public void testClosestFirst() {
+		StringMatcher<String> stringMatcher = new StringMatcher<String>();
+		stringMatcher.add("Lock", "Lock");
+		stringMatcher.add("Locker", "Locker");
+		stringMatcher.add("Ockham", "Ockham");
+		stringMatcher.add("Stock", "Stock");
+		stringMatcher.add("Unlock", "Unlock");
+		
+		FuzzyPrefixIndex<String> index = new FuzzyPrefixIndex<String>(stringMatcher);
+		SearchResultList<String> results = index.search("ock", 1);
+		
+		assertEquals(3, results.size());
+		assertEquals("Ockham", results.get(0).getKeyword());
+		assertEquals(100.0f, results.get(0).getMatchPercentage(), 0.01f);
+		assertEquals("Lock", results.get(1).getKeyword());
+		assertEquals("Locker", results.get(2).getKeyword());
+		assertEquals(66.67f, results.get(2).getMatchPercentage(), 0.01f);
+		
+		assertEquals(1, index.startSearch(1).append("ock").getResults(1).size());
+	}
+	
+	@Test
+	public void testNormalizedAndRemovedKeywords() {
+		StringMatcher<String> stringMatcher = new StringMatcher<String>(MatchingOption.REMOVE_SPACING_AND_LINEBREAKS);
+		stringMatcher.add("Hello world", "Greeting");
+		stringMatcher.add("Help desk", "Support");
+		stringMatcher.add("Helicopter", "Aircraft");
+		stringMatcher.remove("Helicopter");
+		
+		FuzzyPrefixIndex<String> index = new FuzzyPrefixIndex<String>(stringMatcher);
+		
+		assertEquals(2, index.size());
+		assertTrue(index.search("HELLOW", 0).containsKeyword("Hello world"));
+		assertEquals(2, index.search("hel", 0).size());
+	}
+	
+	@Test
+	public void testIndexIsACopy() {
+		StringMatcher<String> stringMatcher = new StringMatcher<String>();
+		
+		for(String keyword : new String[] { "apple", "apply", "banana", "cherry", "damson", "elder", "fig", "grape" }) {
+			stringMatcher.add(keyword, "old-" + keyword);
+		}
+		
+		FuzzyPrefixIndex<String> index = new FuzzyPrefixIndex<String>(stringMatcher);
+		
+		// Enough removals to compact the tree, which replaces its nodes
+		stringMatcher.remove("banana");
+		stringMatcher.remove("cherry");
+		stringMatcher.remove("damson");
+		assertEquals(0.0f, stringMatcher.getTombstoneRatio(), 0.0f);
+		
+		stringMatcher.put("apple", "new-apple");
+		stringMatcher.remove("apply");
+		
+		// The index still holds the keywords as they were when it was built
+		SearchResultList<String> results = index.search("appl", 0);
+		assertEquals(2, results.size());
+		assertEquals("old-apple", results.get(0).getAssociatedData());
+		assertEquals("apply", results.get(1).getKeyword());
+		assertEquals(8, index.size());
+		
+		// A new index picks the changes up
+		results = new FuzzyPrefixIndex<String>(stringMatcher).search("appl", 0);
+		assertEquals(1, results.size());
+		assertEquals("new-apple", results.get(0).getAssociatedData());
+	}
+	
+	@Test
+	public void testEmptyIndex() {
+		FuzzyPrefixIndex<String> index = new FuzzyPrefixIndex<String>(new StringMatcher<String>());
+		
+		assertEquals(0, index.size());
+		assertTrue(index.search("abc", 2).isEmpty());
+		assertTrue(index.search("", 0).isEmpty());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullStringMatcher() {
+		// Throws IllegalArgumentException
+		new FuzzyPrefixIndex<String>(null);
+	}
+	
+	// Smallest edit distance between the prefix and any prefix of the keyword
+	private static int getPrefixDistance(String prefix, String keyword) {
+		EditDistanceCalculator calculator = new EditDistanceCalculator();
+		int distance = Integer.MAX_VALUE;
+		
+		for(int length = 0; length <= keyword.length(); length++) {
+			distance = Math.min(distance, calculator.calculateEditDistance(prefix, keyword.substring(0, length)));
+		}
+		
+		return distance;
+	}
+	
+	// Each result's keyword with its distance, worked back from the match percentage
+	private static TreeMap<String, Integer> toDistances(SearchResultList<String> results, int prefixLength) {
+		TreeMap<String, Integer> distances = new TreeMap<String, Integer>();
+		
+		for(SearchResult<String> result : results) {
+			int distance = (prefixLength == 0) ? 0 : Math.round((100.0f - result.getMatchPercentage()) * prefixLength / 100.0f);
+			assertNull("Duplicate result " + result.getKeyword(), distances.put(result.getKeyword().toString(), distance));
+		}
+		
+		return distances;
+	}
+	
+	private static void assertSameResults(SearchResultList<String> expected, SearchResultList<String> actual) {
+		assertEquals(expected.size(), actual.size());
+		
+		for(int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getKeyword(), actual.get(i).getKeyword());
+			assertEquals(expected.get(i).getMatchPercentage(), actual.get(i).getMatchPercentage(), 0.0f);
+		}
+	}
+	
+	// Keywords over a small alphabet, so there are plenty of shared prefixes and close matches
+	private static String randomKeyword(Random random, int length) {
+		char[] keyword = new char[length];
+		
+		for(int i = 0; i < keyword.length; i++) {
+			keyword[i] = "abcd".charAt(random.nextInt(4));
+		}
+		
+		return new String(keyword);
+	}
+}
@@ -0,0 +1,134 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class MatcherStatsTest {
+
+	@Test
+	public void testQueryStats() {
+		StringMatcher<String> stringMatcher = getRandomStringMatcher();
+		QueryStats queryStats = new QueryStats();
+		
+		SearchResultList<String> results = stringMatcher.search("abcdef", 1, queryStats);
+		
+		assertEquals(results.size(), queryStats.getResultsReturned());
+		assertEquals(queryStats.getNodesVisited(), queryStats.getDistanceCalculations());
+		assertTrue(queryStats.getNodesVisited() > 0);
+		assertTrue(queryStats.getNodesVisited() < 5000);
+		assertTrue(queryStats.getChildrenPruned() > 0);
+		assertTrue(queryStats.getCellsEvaluated() > 0);
+		
+		// Every child reached is either visited or pruned, and only the root isn't reached as a child
+		long childrenReached = queryStats.getNodesVisited() - 1 + queryStats.getChildrenPruned();
+		assertTrue(childrenReached <= stringMatcher.getRoot().getSubtreeSize() - 1);
+	}
+	
+	@Test
+	public void testQueryStatsResetBetweenSearches() {
+		StringMatcher<String> stringMatcher = getRandomStringMatcher();
+		QueryStats queryStats = new QueryStats();
+		
+		stringMatcher.search("abcdef", 60.0f, queryStats);
+		long nodesVisited = queryStats.getNodesVisited();
+		stringMatcher.search("abcdef", 60.0f, queryStats);
+		
+		assertEquals(nodesVisited, queryStats.getNodesVisited());
+	}
+	
+	@Test
+	public void testMatcherStats() {
+		StringMatcher<String> stringMatcher = getRandomStringMatcher();
+		MatcherStats stats = new MatcherStats();
+		QueryStats queryStats = new QueryStats();
+		
+		stringMatcher.setStats(stats);
+		stringMatcher.search("abcdef", 1, queryStats);
+		stringMatcher.search("bcdefa", 80.0f);
+		
+		assertEquals(2, stats.getSearches());
+		assertTrue(stats.getNodesVisited() >= queryStats.getNodesVisited());
+		assertEquals(stats.getNodesVisited(), stats.getDistanceCalculations());
+		assertEquals(2, stats.getNodesVisitedPerSearch().getCount());
+		assertEquals(stats.getNodesVisited(), stats.getNodesVisitedPerSearch().getTotal());
+		assertTrue(stats.getPruningRatio() > 0.0 && stats.getPruningRatio() < 1.0);
+		
+		stringMatcher.setStats(null);
+		stringMatcher.search("abcdef", 1);
+		
+		assertEquals(2, stats.getSearches());
+	}
+	
+	@Test
+	public void testRegisterMBean() throws JMException {
+		MatcherStats stats = new MatcherStats();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = stats.register("test");
+		
+		try {
+			assertTrue(server.isRegistered(objectName));
+			assertEquals(0L, server.getAttribute(objectName, "Searches"));
+		} finally {
+			stats.unregister(objectName);
+		}
+		
+		assertFalse(server.isRegistered(objectName));
+	}
+	
+	@Test
+	public void testHistogram() {
+		Histogram histogram = new Histogram();
+		
+		for(int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000, histogram.getMax());
+		assertEquals(500.5, histogram.getMean(), 0.001);
+		
+		// Within one sub-bucket (12.5%) of the exact value
+		assertEquals(500, histogram.getP50(), 500 * 0.125);
+		assertEquals(990, histogram.getP99(), 990 * 0.125);
+		assertTrue(histogram.getP99() >= 990);
+	}
+	
+	@Test
+	public void testHistogramSmallAndLargeValues() {
+		Histogram histogram = new Histogram();
+		
+		histogram.record(0);
+		histogram.record(7);
+		histogram.record(Long.MAX_VALUE);
+		
+		assertEquals(0, histogram.getValueAtPercentile(0.0));
+		assertEquals(7, histogram.getP50());
+		assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100.0));
+	}
+	
+	private static StringMatcher<String> getRandomStringMatcher() {
+		StringMatcher<String> stringMatcher = new StringMatcher<String>();
+		Random random = new Random(12);
+		
+		for(int i = 0; i < 5000; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = 4 + random.nextInt(8);
+			
+			for(int j = 0; j < length; j++) {
+				sb.append((char)('a' + random.nextInt(6)));
+			}
+			
+			stringMatcher.add(sb.toString(), "Random string");
+		}
+		
+		return stringMatcher;
+	}
+}
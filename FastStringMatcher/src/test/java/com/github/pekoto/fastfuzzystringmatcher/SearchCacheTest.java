@@ -0,0 +1,216 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SearchCacheTest {
+	
+	@Test
+	public void testHitsAndMisses() {
+		StringMatcher<String> stringMatcher = getStringMatcher();
+		SearchCache<String> cache = new SearchCache<String>(1024 * 1024);
+		stringMatcher.setCache(cache);
+		
+		SearchResultList<String> results = stringMatcher.search("Cat", 1);
+		SearchResultList<String> cachedResults = stringMatcher.search("cat", 1);
+		
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+		assertEquals(results, cachedResults);
+		assertNotSame(results, cachedResults);
+		
+		// Changing a returned list doesn't change the cached one
+		cachedResults.clear();
+		assertEquals(results, stringMatcher.search("Cat", 1));
+		
+		// A different threshold is a different entry
+		stringMatcher.search("Cat", 2);
+		assertEquals(2, cache.getMisses());
+		assertEquals(2, cache.getSize());
+	}
+	
+	@Test
+	public void testPreciseInvalidation() {
+		StringMatcher<String> stringMatcher = getStringMatcher();
+		SearchCache<String> cache = new SearchCache<String>(1024 * 1024);
+		stringMatcher.setCache(cache);
+		
+		stringMatcher.search("Cat", 1);
+		stringMatcher.search("Something else", 1);
+		
+		// Within 1 of "Cat", so only its results could have changed
+		stringMatcher.add("Cap", "Cap");
+		
+		assertEquals(1, cache.getInvalidations());
+		assertEquals(1, cache.getSize());
+		assertTrue(stringMatcher.search("Cat", 1).containsKeyword("Cap"));
+		
+		stringMatcher.put("Cap", "New data");
+		assertEquals("New data", getResult(stringMatcher.search("Cat", 1), "Cap").getAssociatedData());
+		
+		stringMatcher.addValue("Cap", "More data");
+		assertEquals(2, getResult(stringMatcher.search("Cat", 1), "Cap").getAllAssociatedData().size());
+		
+		stringMatcher.remove("Cap");
+		assertFalse(stringMatcher.search("Cat", 1).containsKeyword("Cap"));
+		
+		// Adding a keyword that's already there changes nothing
+		long invalidations = cache.getInvalidations();
+		stringMatcher.add("Cat", "Cat");
+		assertEquals(invalidations, cache.getInvalidations());
+	}
+	
+	@Test
+	public void testCoarseInvalidation() {
+		StringMatcher<String> stringMatcher = getStringMatcher();
+		SearchCache<String> cache = new SearchCache<String>(1024 * 1024, false);
+		stringMatcher.setCache(cache);
+		
+		stringMatcher.search("Cat", 1);
+		stringMatcher.search("Something else", 1);
+		stringMatcher.add("Unrelated keyword", "Unrelated keyword");
+		
+		assertEquals(0, cache.getSize());
+		assertEquals(2, cache.getInvalidations());
+	}
+	
+	@Test
+	public void testEvictionKeepsRepeatedQueries() {
+		StringMatcher<String> stringMatcher = getStringMatcher();
+		SearchCache<String> cache = new SearchCache<String>(4096);
+		Random random = new Random(5);
+		stringMatcher.setCache(cache);
+		
+		stringMatcher.search("Cat", 1);
+		stringMatcher.search("Cat", 1);
+		
+		// A long run of one-off queries only pushes out other one-off queries
+		for(int i = 0; i < 1000; i++) {
+			stringMatcher.search("Query " + random.nextInt(), 1);
+			assertTrue(cache.getBytes() <= cache.getMaxBytes());
+		}
+		
+		assertTrue(cache.getEvictions() > 0);
+		
+		long hits = cache.getHits();
+		stringMatcher.search("Cat", 1);
+		assertEquals(hits + 1, cache.getHits());
+	}
+	
+	@Test
+	public void testLookupsDontWaitForInvalidation() throws Exception {
+		SearchCache<String> cache = new SearchCache<String>(1024 * 1024);
+		CountDownLatch invalidating = new CountDownLatch(1);
+		CountDownLatch finishInvalidating = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		
+		// A metric that holds up the invalidation part way through
+		DistanceMetric slowMetric = (keyword1, length1, keyword2, length2, maxDistance) -> {
+			invalidating.countDown();
+			
+			try {
+				finishInvalidating.await();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			
+			return maxDistance + 1;
+		};
+		
+		cache.put("cat", 1, new SearchResultList<String>(), cache.getEpoch());
+		
+		try {
+			long epoch = cache.getEpoch();
+			Future<?> invalidation = executor.submit(() -> cache.invalidate("dog", slowMetric));
+			invalidating.await();
+			
+			// Lookups carry on while the invalidation runs, and searches that overlap it don't cache their results
+			assertNotNull(executor.submit(() -> cache.get("cat", 1)).get(10, TimeUnit.SECONDS));
+			cache.put("hat", 1, new SearchResultList<String>(), epoch);
+			assertEquals(1, cache.getSize());
+			
+			finishInvalidating.countDown();
+			invalidation.get(10, TimeUnit.SECONDS);
+		} finally {
+			finishInvalidating.countDown();
+			executor.shutdownNow();
+		}
+		
+		assertEquals(1, cache.getSize());
+		assertEquals(0, cache.getInvalidations());
+	}
+	
+	@Test
+	public void testSameResultsAsUncached() {
+		StringMatcher<String> cachedMatcher = new StringMatcher<String>();
+		StringMatcher<String> uncachedMatcher = new StringMatcher<String>();
+		Random random = new Random(11);
+		cachedMatcher.setCache(new SearchCache<String>(64 * 1024));
+		
+		for(int i = 0; i < 5000; i++) {
+			String keyword = getRandomString(random);
+			int operation = random.nextInt(8);
+			
+			if(operation == 0) {
+				cachedMatcher.remove(keyword);
+				uncachedMatcher.remove(keyword);
+			} else if(operation < 4) {
+				cachedMatcher.put(keyword, "Data " + i);
+				uncachedMatcher.put(keyword, "Data " + i);
+			}
+			
+			// Few enough different queries, and writes, that most of them are hits
+			String query = "q" + getRandomString(new Random(random.nextInt(50)));
+			SearchResultList<String> expected = uncachedMatcher.search(query, 2);
+			SearchResultList<String> actual = cachedMatcher.search(query, 2);
+			
+			assertEquals(expected.size(), actual.size());
+			
+			for(SearchResult<String> result : expected) {
+				assertEquals(result.getAssociatedData(), getResult(actual, result.getKeyword()).getAssociatedData());
+			}
+		}
+		
+		assertTrue(cachedMatcher.getCache().getHitRatio() > 0.5);
+	}
+	
+	private static SearchResult<String> getResult(SearchResultList<String> results, CharSequence keyword) {
+		for(SearchResult<String> result : results) {
+			if(result.getKeyword().equals(keyword)) {
+				return result;
+			}
+		}
+		
+		fail("No result for " + keyword);
+		return null;
+	}
+	
+	private static StringMatcher<String> getStringMatcher() {
+		StringMatcher<String> stringMatcher = new StringMatcher<String>();
+		
+		for(String keyword : new String[] {"Cat", "Bat", "Hat", "Dog", "Something", "Something else entirely"}) {
+			stringMatcher.add(keyword, keyword);
+		}
+		
+		return stringMatcher;
+	}
+	
+	private static String getRandomString(Random random) {
+		StringBuilder sb = new StringBuilder();
+		int length = 1 + random.nextInt(6);
+		
+		for(int i = 0; i < length; i++) {
+			sb.append((char)('a' + random.nextInt(8)));
+		}
+		
+		return sb.toString();
+	}
+}
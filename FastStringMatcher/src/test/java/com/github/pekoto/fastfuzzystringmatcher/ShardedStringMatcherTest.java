@@ -0,0 +1,202 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Property tests: for random keywords, operations, shard counts and routers,
+ * a sharded string matcher must give the same results as a single string matcher.
+ */
+public class ShardedStringMatcherTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private ExecutorService executor = Executors.newFixedThreadPool(4);
+	private EditDistanceCalculator distanceCalculator = new EditDistanceCalculator();
+	
+	@After
+	public void shutDown() {
+		executor.shutdown();
+	}
+	
+	@Test
+	public void testSameResultsAsSingleTree() {
+		for(int seed = 0; seed < 20; seed++) {
+			Random random = new Random(seed);
+			ShardRouter router = getRandomRouter(random);
+			ShardedStringMatcher<String> shardedMatcher = new ShardedStringMatcher<String>(1 + random.nextInt(8), router, MatchingOption.NONE, executor);
+			StringMatcher<String> singleMatcher = new StringMatcher<String>();
+			List<String> keywords = new ArrayList<String>();
+			
+			for(int i = 0; i < 2000; i++) {
+				String keyword = getRandomKeyword(random, keywords);
+				String data = "Data " + i;
+				int operation = random.nextInt(10);
+				
+				if(operation < 6) {
+					shardedMatcher.add(keyword, data);
+					singleMatcher.add(keyword, data);
+				} else if(operation < 7) {
+					shardedMatcher.addValue(keyword, data);
+					singleMatcher.addValue(keyword, data);
+				} else if(operation < 8) {
+					assertEquals(singleMatcher.put(keyword, data), shardedMatcher.put(keyword, data));
+				} else {
+					assertEquals(singleMatcher.remove(keyword), shardedMatcher.remove(keyword));
+				}
+				
+				keywords.add(keyword);
+			}
+			
+			if(random.nextBoolean()) {
+				shardedMatcher.rebuild();
+			}
+			
+			for(int i = 0; i < 50; i++) {
+				assertSameResults(singleMatcher, shardedMatcher, getRandomKeyword(random, keywords), random);
+			}
+		}
+	}
+	
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		Random random = new Random(3);
+		ShardedStringMatcher<String> shardedMatcher = new ShardedStringMatcher<String>(4, ShardRouter.byLengthBand(4), MatchingOption.NONE, executor);
+		StringMatcher<String> singleMatcher = new StringMatcher<String>();
+		List<String> keywords = new ArrayList<String>();
+		
+		for(int i = 0; i < 2000; i++) {
+			String keyword = getRandomKeyword(random, keywords);
+			shardedMatcher.add(keyword, keyword);
+			singleMatcher.add(keyword, keyword);
+			keywords.add(keyword);
+		}
+		
+		shardedMatcher.save(folder.getRoot().toPath(), new StringDataCodec());
+		ShardedStringMatcher<String> loadedMatcher = ShardedStringMatcher.load(folder.getRoot().toPath(), new StringDataCodec(), ShardRouter.byLengthBand(4), executor);
+		
+		assertEquals(4, loadedMatcher.getShardCount());
+		
+		// Rebuilding one shard leaves the results as they were
+		loadedMatcher.rebuild(2, new Random(1));
+		
+		for(int i = 0; i < 100; i++) {
+			assertSameResults(singleMatcher, loadedMatcher, getRandomKeyword(random, keywords), random);
+		}
+	}
+	
+	@Test
+	public void testCaseOnlyDuplicatesGoToOneShard() {
+		ShardedStringMatcher<String> shardedMatcher = new ShardedStringMatcher<String>(8);
+		
+		shardedMatcher.add("Hello World", "First");
+		shardedMatcher.add("hello world", "Second");
+		shardedMatcher.add("HELLO WORLD", "Third");
+		
+		SearchResultList<String> results = shardedMatcher.search("hello world", 0);
+		
+		assertEquals(1, results.size());
+		assertEquals("First", results.get(0).getAssociatedData());
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testRouterOutOfRange() {
+		ShardedStringMatcher<String> shardedMatcher = new ShardedStringMatcher<String>(2, (keyword, shardCount) -> shardCount);
+		
+		// Throws IllegalStateException
+		shardedMatcher.add("Test", "Test");
+	}
+	
+	private void assertSameResults(StringMatcher<String> singleMatcher, ShardedStringMatcher<String> shardedMatcher, String query, Random random) {
+		float matchPercentage = 50.0f + random.nextInt(50);
+		int distanceThreshold = random.nextInt(4);
+		int maxResults = random.nextInt(10);
+		int k = 1 + random.nextInt(10);
+		
+		SearchResultList<String> expected = singleMatcher.search(query, matchPercentage);
+		assertSameResults(expected, shardedMatcher.search(query, matchPercentage));
+		
+		expected = singleMatcher.search(query, distanceThreshold);
+		SearchResultList<String> actual = shardedMatcher.search(query, distanceThreshold);
+		assertSameResults(expected, actual);
+		
+		// The closest maxResults, which can only differ from the single tree's in how ties are broken
+		SearchResultList<String> limited = shardedMatcher.search(query, distanceThreshold, maxResults);
+		assertEquals(Math.min(maxResults, expected.size()), limited.size());
+		
+		for(int i = 0; i < limited.size(); i++) {
+			assertEquals(expected.get(i).getMatchPercentage(), limited.get(i).getMatchPercentage(), 0.0f);
+		}
+		
+		SearchResultList<String> expectedNearest = singleMatcher.searchNearest(query, k);
+		SearchResultList<String> actualNearest = shardedMatcher.searchNearest(query, k);
+		assertEquals(expectedNearest.size(), actualNearest.size());
+		
+		for(int i = 0; i < expectedNearest.size(); i++) {
+			assertEquals(distanceCalculator.calculateEditDistance(query, expectedNearest.get(i).getKeyword()),
+						 distanceCalculator.calculateEditDistance(query, actualNearest.get(i).getKeyword()));
+		}
+	}
+	
+	private void assertSameResults(SearchResultList<String> expected, SearchResultList<String> actual) {
+		assertEquals(expected.size(), actual.size());
+		
+		for(int i = 0; i < expected.size(); i++) {
+			assertTrue(actual.containsKeyword(expected.get(i).getKeyword().toString()));
+			assertEquals(expected.get(i).getMatchPercentage(), actual.get(i).getMatchPercentage(), 0.0f);
+		}
+		
+		for(SearchResult<String> result : actual) {
+			SearchResult<String> expectedResult = expected.get(indexOfKeyword(expected, result.getKeyword()));
+			assertEquals(expectedResult.getAllAssociatedData(), result.getAllAssociatedData());
+		}
+	}
+	
+	private static int indexOfKeyword(SearchResultList<String> results, CharSequence keyword) {
+		for(int i = 0; i < results.size(); i++) {
+			if(results.get(i).getKeyword().equals(keyword)) {
+				return i;
+			}
+		}
+		
+		return -1;
+	}
+	
+	private static ShardRouter getRandomRouter(Random random) {
+		List<ShardRouter> routers = Arrays.asList(ShardRouter.byHash(),
+												  ShardRouter.byLengthBand(1 + random.nextInt(6)),
+												  (keyword, shardCount) -> Character.toLowerCase(keyword.charAt(0)) % shardCount);
+		
+		return routers.get(random.nextInt(routers.size()));
+	}
+	
+	// Either a new random keyword, or a case variant of one that's been used before
+	private static String getRandomKeyword(Random random, List<String> usedKeywords) {
+		if(!usedKeywords.isEmpty() && random.nextInt(4) == 0) {
+			String keyword = usedKeywords.get(random.nextInt(usedKeywords.size()));
+			return random.nextBoolean() ? keyword.toUpperCase() : keyword;
+		}
+		
+		StringBuilder sb = new StringBuilder();
+		int length = 1 + random.nextInt(15);
+		
+		for(int i = 0; i < length; i++) {
+			sb.append((char)('a' + random.nextInt(8)));
+		}
+		
+		return sb.toString();
+	}
+}
@@ -0,0 +1,147 @@
+package com.github.pekoto.fastfuzzystringmatcher;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StringMatcherSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private StringDataCodec codec = new StringDataCodec();
+	
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		StringMatcher<String> stringMatcher = new StringMatcher<String>();
+		Random random = new Random(9);
+		
+		for(int i = 0; i < 2000; i++) {
+			String keyword = getRandomString(random);
+			stringMatcher.add(keyword, "Data for " + keyword);
+		}
+		
+		File file = folder.newFile();
+		stringMatcher.save(file.toPath(), codec);
+		StringMatcher<String> loadedMatcher = StringMatcher.load(file.toPath(), codec);
+		
+		for(int i = 0; i < 200; i++) {
+			String keyword = getRandomString(random);
+			SearchResultList<String> expectedResults = stringMatcher.search(keyword, 70.0f);
+			SearchResultList<String> loadedResults = loadedMatcher.search(keyword, 70.0f);
+			
+			assertEquals(expectedResults.size(), loadedResults.size());
+			
+			for(SearchResult<String> result : loadedResults) {
+				assertTrue(expectedResults.containsKeyword(result.getKeyword().toString()));
+				assertEquals("Data for " + result.getKeyword(), result.getAssociatedData());
+			}
+		}
+		
+		assertEquals(stringMatcher.getRoot().getSubtreeSize(), loadedMatcher.getRoot().getSubtreeSize());
+	}
+	
+	@Test
+	public void testSaveAndLoadKeepsMatchingOption() throws IOException {
+		StringMatcher<String> stringMatcher = new StringMatcher<String>(MatchingOption.REMOVE_SPACING_AND_LINEBREAKS);
+		stringMatcher.add("Hello world", "Greeting");
+		stringMatcher.add("Goodbye", null);
+		
+		File file = folder.newFile();
+		stringMatcher.save(file.toPath(), codec);
+		StringMatcher<String> loadedMatcher = ConcurrentStringMatcher.load(file.toPath(), codec);
+		
+		assertTrue(loadedMatcher instanceof ConcurrentStringMatcher);
+		assertEquals(MatchingOption.REMOVE_SPACING_AND_LINEBREAKS, loadedMatcher.getMatchingOption());
+		
+		SearchResultList<String> results = loadedMatcher.search("Helloworld", 100.0f);
+		assertEquals(1, results.size());
+		assertEquals("Hello world", results.get(0).getKeyword());
+		assertEquals("Greeting", results.get(0).getAssociatedData());
+		
+		results = loadedMatcher.search("Goodbye", 100.0f);
+		assertEquals(1, results.size());
+		assertNull(results.get(0).getAssociatedData());
+	}
+	
+	@Test
+	public void testSaveAndLoadRemovedKeywordsAndValues() throws IOException {
+		StringMatcher<String> stringMatcher = new StringMatcher<String>();
+		stringMatcher.setCompactionThreshold(1.0f);
+		stringMatcher.add("Hat", "Hat");
+		stringMatcher.add("Cat", "Cat");
+		stringMatcher.add("Bat", "Bat");
+		stringMatcher.addValue("Bat", null);
+		stringMatcher.addValue("Bat", "Bat 2");
+		stringMatcher.remove("Hat");
+		
+		File file = folder.newFile();
+		stringMatcher.save(file.toPath(), codec);
+		StringMatcher<String> loadedMatcher = StringMatcher.load(file.toPath(), codec);
+		
+		assertEquals(1, loadedMatcher.getTreeStats().getTombstoneCount());
+		assertEquals(1.0f / 3, loadedMatcher.getTombstoneRatio(), 0.0001f);
+		assertEquals(2, loadedMatcher.search("Hat", 60.0f).size());
+		assertFalse(loadedMatcher.search("Hat", 60.0f).containsKeyword("Hat"));
+		assertEquals(Arrays.asList("Bat", null, "Bat 2"), loadedMatcher.search("Bat", 100.0f).get(0).getAllAssociatedData());
+		
+		// Removed keywords are still routed through, but never returned
+		CompactStringMatcher<String> compactMatcher = new CompactStringMatcher<String>(stringMatcher);
+		assertEquals(2, compactMatcher.search("Hat", 60.0f).size());
+		assertFalse(compactMatcher.search("Hat", 60.0f).containsKeyword("Hat"));
+		assertEquals(Arrays.asList("Bat", null, "Bat 2"), compactMatcher.search("Bat", 100.0f).get(0).getAllAssociatedData());
+	}
+	
+	@Test
+	public void testSaveAndLoadEmptyTree() throws IOException {
+		File file = folder.newFile();
+		new StringMatcher<String>().save(file.toPath(), codec);
+		
+		StringMatcher<String> loadedMatcher = StringMatcher.load(file.toPath(), codec);
+		
+		assertEquals(0, loadedMatcher.search("Anything", 0.0f).size());
+	}
+	
+	@Test(expected = IOException.class)
+	public void testLoadInvalidFile() throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), "Not a snapshot, just some text".getBytes("UTF-8"));
+		
+		// Throws IOException
+		StringMatcher.load(file.toPath(), codec);
+	}
+	
+	@Test(expected = IOException.class)
+	public void testLoadTruncatedFile() throws IOException {
+		StringMatcher<String> stringMatcher = new StringMatcher<String>();
+		stringMatcher.add("Test", "Data");
+		stringMatcher.add("Vest", "Data");
+		
+		File file = folder.newFile();
+		stringMatcher.save(file.toPath(), codec);
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 4));
+		
+		// Throws IOException
+		StringMatcher.load(file.toPath(), codec);
+	}
+	
+	private static String getRandomString(Random random) {
+		StringBuilder sb = new StringBuilder();
+		int length = 3 + random.nextInt(10);
+		
+		for(int i = 0; i < length; i++) {
+			sb.append("abcdeあい".charAt(random.nextInt(7)));
+		}
+		
+		return sb.toString();
+	}
+}
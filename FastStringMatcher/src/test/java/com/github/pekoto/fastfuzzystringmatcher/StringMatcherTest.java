@@ -2,14 +2,30 @@ package com.github.pekoto.fastfuzzystringmatcher;
 
 import static org.junit.Assert.*;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import org.junit.Assume;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.github.pekoto.fastfuzzystringmatcher.StringMatcher;
+import com.github.pekoto.fastfuzzystringmatcher.StringMatcher.Node;
 import com.github.pekoto.fastfuzzystringmatcher.SearchResultList;
 
 public class StringMatcherTest {
-
+	
 	private static StringMatcher<String> stringMatcher = new StringMatcher<String>();
 	
 	@BeforeClass
@@ -79,7 +95,7 @@ public class StringMatcherTest {
 		assertTrue(results.containsKeyword("0123"));
 		assertTrue(results.containsKeyword("012"));
 	}
-
+	
 	@Test
 	public void testEditDistanceMatching() {
 		SearchResultList<String> results = stringMatcher.search("01234", 1);
@@ -107,6 +123,71 @@ public class StringMatcherTest {
 		assertTrue(Math.abs(results.get(1).getMatchPercentage() - 50.0f) < 0.1);
 	}
 	
+	@Test
+	public void testSearchWithConsumer() {
+		SearchResultList<String> results = new SearchResultList<String>();
+		stringMatcher.search("0123456789", 50.0f, results::add);
+		
+		assertEquals(6, results.size());
+		assertTrue(results.containsKeyword("01234"));
+		
+		// Stop after the first result, searching again from inside the consumer
+		List<String> firstResults = new ArrayList<String>();
+		
+		stringMatcher.search("0123456789", 50.0f, result -> {
+			firstResults.add(result.getKeyword().toString());
+			assertEquals(2, stringMatcher.search("Cat", 2).size());
+			return false;
+		});
+		
+		assertEquals(1, firstResults.size());
+		assertTrue(results.containsKeyword(firstResults.get(0)));
+	}
+	
+	@Test
+	public void testSearchStream() {
+		List<SearchResult<String>> results = stringMatcher.searchStream("0123456789", 50.0f).collect(Collectors.toList());
+		
+		assertEquals(6, results.size());
+		assertEquals(2, stringMatcher.searchStream("Cat", 2).count());
+		assertEquals(3, stringMatcher.searchStream("0123456789", 50.0f).limit(3).count());
+		assertFalse(stringMatcher.searchStream("zzzzzz", 90.0f).findAny().isPresent());
+		assertFalse(new StringMatcher<String>().searchStream("Cat", 1).findAny().isPresent());
+	}
+	
+	@Test
+	public void testSearchNearest() {
+		SearchResultList<String> results = stringMatcher.searchNearest("0123456789", 3);
+		
+		assertEquals(3, results.size());
+		assertEquals("0123456789", results.get(0).getKeyword());
+		assertEquals("012345678", results.get(1).getKeyword());
+		assertEquals("01234567", results.get(2).getKeyword());
+	}
+	
+	@Test
+	public void testSearchNearestWithMaxDistance() {
+		SearchResultList<String> results = stringMatcher.searchNearest("Fat", 5, 1);
+		
+		assertEquals(1, results.size());
+		assertEquals("Cat", results.get(0).getKeyword());
+	}
+	
+	@Test
+	public void testSearchNearestMoreThanTreeSize() {
+		SearchResultList<String> results = stringMatcher.searchNearest("Test", 100);
+		
+		// "test" is a duplicate of "Test" (case insensitive)
+		assertEquals(14, results.size());
+		assertEquals("Test", results.get(0).getKeyword());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testSearchNearestZeroResults() {
+		// Throws IllegalArgumentException
+		stringMatcher.searchNearest("Test", 0);
+	}
+	
 	@Test(expected = IllegalArgumentException.class)
 	public void testAddEmptyString() {
 		// Throws IllegalArgumentException
@@ -156,7 +237,7 @@ public class StringMatcherTest {
 	@Test
 	public void testIgnoreTabs() {
 		StringMatcher<String> ignoreTabsMatcher = new StringMatcher<String>(MatchingOption.REMOVE_SPACING_AND_LINEBREAKS);
-
+		
 		ignoreTabsMatcher.add("\t\tThis is some tabbed data", "A string with tabs");
 		
 		SearchResultList<String> results = ignoreTabsMatcher.search("This is some tabbed \tdata", 100.0f);
@@ -176,4 +257,744 @@ public class StringMatcherTest {
 		assertEquals(1, results.size());
 		assertTrue(results.containsKeyword("This has\nsome line\nbreaks."));
 	}
-}
\ No newline at end of file
+	
+	@Test
+	public void testSpacingOnlyDuplicatesAreOneKeyword() {
+		StringMatcher<String> ignoreSpacesMatcher = new StringMatcher<String>(MatchingOption.REMOVE_SPACING_AND_LINEBREAKS);
+		
+		ignoreSpacesMatcher.add("Spacing test", "First");
+		ignoreSpacesMatcher.add("Spacing  test", "Second");
+		ignoreSpacesMatcher.add("SPACING\nTEST", "Third");
+		
+		SearchResultList<String> results = ignoreSpacesMatcher.search("spacingtest", 0);
+		
+		assertEquals(1, results.size());
+		assertEquals("First", results.get(0).getAssociatedData());
+		assertEquals(1, ignoreSpacesMatcher.getTreeStats().getSize());
+	}
+	
+	@Test
+	public void testFoldWidth() {
+		StringMatcher<String> foldWidthMatcher = new StringMatcher<String>(MatchingOption.FOLD_WIDTH);
+		
+		foldWidthMatcher.add("\uFF34\uFF4F\uFF4B\uFF59\uFF4F\u3000\uFF12\uFF10\uFF12\uFF10", "Full width Latin");		// Ｔｏｋｙｏ　２０２０
+		foldWidthMatcher.add("\uFF76\uFF9E\uFF6F\uFF7A\uFF73", "Half width katakana");								// ｶﾞｯｺｳ
+		
+		SearchResultList<String> results = foldWidthMatcher.search("tokyo 2020", 0);
+		
+		assertEquals(1, results.size());
+		assertEquals("Full width Latin", results.get(0).getAssociatedData());
+		
+		results = foldWidthMatcher.search("\u30AC\u30C3\u30B3\u30A6", 0);	// ガッコウ
+		
+		assertEquals(1, results.size());
+		assertEquals("Half width katakana", results.get(0).getAssociatedData());
+	}
+	
+	@Test
+	public void testNormalizersAreIdempotent() {
+		String keyword = "\uFF21 b\tC\u3000\uFF76\uFF9E\u00C9";
+		
+		for(MatchingOption matchingOption : MatchingOption.values()) {
+			String normalizedKeyword = matchingOption.getNormalizer().normalize(keyword);
+			assertEquals(normalizedKeyword, matchingOption.getNormalizer().normalize(normalizedKeyword));
+		}
+		
+		assertEquals("abc\u30AC\u00E9", MatchingOption.FOLD_WIDTH_AND_REMOVE_SPACING.getNormalizer().normalize(keyword));
+	}
+	
+	@Test
+	public void testSearchDoesNotAllocatePerNode() {
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+		
+		StringMatcher<String> largeMatcher = new StringMatcher<String>();
+		Random random = new Random(1);
+		
+		for(int i = 0; i < 20000; i++) {
+			largeMatcher.add(getRandomString(random, 4, 14), "Random string");
+		}
+		
+		// Warm up the per-thread scratch buffers
+		largeMatcher.search("zzzzzzzzzz", 3);
+		
+		// There are no matches, but the wide threshold means thousands of nodes get visited,
+		// so anything allocated per node would show up many times over
+		long threadId = Thread.currentThread().getId();
+		int searchCount = 100;
+		long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+		
+		for(int i = 0; i < searchCount; i++) {
+			largeMatcher.search("zzzzzzzzzz", 3);
+		}
+		
+		long allocatedPerSearch = (threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore) / searchCount;
+		
+		// Only the (empty) result list should be allocated
+		assertTrue("Allocated " + allocatedPerSearch + " bytes per search", allocatedPerSearch < 256);
+	}
+	
+	@Test
+	public void testBestFirstTraversal() {
+		StringMatcher<String> bestFirstMatcher = new StringMatcher<String>();
+		bestFirstMatcher.setTraversalOrder(TraversalOrder.BEST_FIRST);
+		
+		bestFirstMatcher.add("hat", "Root");
+		bestFirstMatcher.add("cat", "Distance 1 from root");
+		bestFirstMatcher.add("kate", "Distance 2 from root");
+		bestFirstMatcher.add("ball", "Distance 3 from root");
+		bestFirstMatcher.add("bat", "Distance 1 from cat");
+		
+		SearchResultList<String> results = bestFirstMatcher.search("zat", 1);
+		
+		assertEquals(3, results.size());
+		assertTrue(results.containsKeyword("hat"));
+		assertTrue(results.containsKeyword("cat"));
+		assertTrue(results.containsKeyword("bat"));
+	}
+	
+	@Test
+	public void testUnboundedAndNegativeThresholds() {
+		StringMatcher<String> singleMatcher = new StringMatcher<String>();
+		singleMatcher.add("cat", "Single node");
+		
+		StringMatcher<String> matcher = new StringMatcher<String>();
+		matcher.add("cat", "Root");
+		matcher.add("bats", "Child");
+		matcher.add("caterpillar", "Further child");
+		
+		for(StringMatcher<String> searched : Arrays.asList(singleMatcher, matcher)) {
+			// Everything is within an unbounded threshold, even though the cap can't be added to it
+			int keywordCount = (searched == matcher) ? 3 : 1;
+			assertEquals(keywordCount, searched.search("dog", Integer.MAX_VALUE).size());
+			assertEquals(keywordCount, searched.search("dog", Integer.MAX_VALUE, ForkJoinPool.commonPool()).size());
+			assertEquals(keywordCount, searched.searchStream("dog", Integer.MAX_VALUE).count());
+			
+			// Nothing is within a negative threshold
+			assertEquals(0, searched.search("cat", -1).size());
+			assertEquals(0, searched.search("cat", 150.0f).size());
+			assertEquals(0, searched.search("cat", -1, ForkJoinPool.commonPool()).size());
+			assertEquals(0, searched.searchStream("cat", 150.0f).count());
+			assertEquals(0, searched.searchAll(Arrays.asList("cat", "bats"), 150.0f).get(0).size());
+			
+			List<SearchResult<String>> consumed = new ArrayList<SearchResult<String>>();
+			searched.search("cat", -1, result -> consumed.add(result));
+			assertEquals(0, consumed.size());
+		}
+	}
+	
+	@Test
+	public void testSearchEmptyTree() {
+		StringMatcher<String> emptyMatcher = new StringMatcher<String>();
+		
+		SearchResultList<String> results = emptyMatcher.search("Test", 1);
+		
+		assertEquals(0, results.size());
+	}
+	
+	@Test
+	public void testDeepTreeSearch() throws InterruptedException {
+		int depth = 1000000;
+		
+		// Chain every node under the last at distance 1. "a" at the bottom is the only match,
+		// and every "b" above it is at distance 1 from "a", so the search has to walk the whole chain.
+		// The chain is built from the bottom up, so each node's prefilter summary covers everything under it.
+		StringMatcher<String> deepMatcher = new StringMatcher<String>();
+		Node<String> node = new Node<String>("a", "a", "Deepest node");
+		
+		for(int i = 1; i < depth; i++) {
+			Node<String> parent = new Node<String>("b", "b", "Chained node");
+			parent.addChild(1, node);
+			node = parent;
+		}
+		
+		deepMatcher.setRoot(node);
+		
+		for(TraversalOrder traversalOrder : TraversalOrder.values()) {
+			deepMatcher.setTraversalOrder(traversalOrder);
+			
+			// Search on a thread with a small stack, which recursion this deep would overflow
+			AtomicReference<SearchResultList<String>> results = new AtomicReference<SearchResultList<String>>();
+			Thread searchThread = new Thread(null, () -> results.set(deepMatcher.search("a", 0)), "deep-tree-search", 128 * 1024);
+			searchThread.start();
+			searchThread.join();
+			
+			assertNotNull(results.get());
+			assertEquals(1, results.get().size());
+			assertEquals("Deepest node", results.get().get(0).getAssociatedData());
+		}
+	}
+	
+	@Test
+	public void testParallelSearchMatchesSequential() {
+		StringMatcher<String> largeMatcher = new StringMatcher<String>();
+		Random random = new Random(2);
+		int size = 0;
+		
+		for(int i = 0; i < 20000; i++) {
+			String keyword = getRandomString(random, 4, 14);
+			
+			if(largeMatcher.search(keyword, 0).isEmpty()) {
+				size++;
+			}
+			
+			largeMatcher.add(keyword, keyword);
+		}
+		
+		assertEquals(size, largeMatcher.getRoot().getSubtreeSize());
+		
+		ForkJoinPool pool = new ForkJoinPool(4);
+		
+		try {
+			for(int i = 0; i < 20; i++) {
+				String keyword = getRandomString(random, 4, 14);
+				
+				SearchResultList<String> sequentialResults = largeMatcher.search(keyword, 60.0f);
+				SearchResultList<String> parallelResults = largeMatcher.search(keyword, 60.0f, pool);
+				
+				assertEquals(sequentialResults.size(), parallelResults.size());
+				
+				for(SearchResult<String> result : sequentialResults) {
+					assertTrue(parallelResults.containsKeyword(result.getKeyword().toString()));
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testPrefilterDoesNotChangeResults() {
+		Random random = new Random(7);
+		Map<String, String> entries = new LinkedHashMap<String, String>();
+		
+		// A wider alphabet and range of lengths than getRandomString, so both halves of the prefilter have something to rule out
+		while(entries.size() < 5000) {
+			StringBuilder sb = new StringBuilder();
+			int length = 2 + random.nextInt(22);
+			
+			for(int i = 0; i < length; i++) {
+				sb.append((char)('a' + random.nextInt(16)));
+			}
+			
+			entries.put(sb.toString(), sb.toString());
+		}
+		
+		StringMatcher<String> addedMatcher = new StringMatcher<String>();
+		
+		for(String keyword : entries.keySet()) {
+			addedMatcher.add(keyword, keyword);
+		}
+		
+		StringMatcher<String> builtMatcher = StringMatcher.build(entries.entrySet(), new BuildOptions().setRandom(new Random(1)));
+		EditDistanceCalculator distanceCalculator = new EditDistanceCalculator();
+		List<String> queries = new ArrayList<String>(entries.keySet()).subList(0, 50);
+		
+		for(StringMatcher<String> matcher : Arrays.asList(addedMatcher, builtMatcher)) {
+			long prefilteredCalculations = 0;
+			long unfilteredCalculations = 0;
+			
+			for(String query : queries) {
+				QueryStats queryStats = new QueryStats();
+				
+				matcher.setPrefiltering(true);
+				SearchResultList<String> prefilteredResults = matcher.search(query, 2, queryStats);
+				SearchResultList<String> prefilteredNearest = matcher.searchNearest(query, 5);
+				prefilteredCalculations += queryStats.getDistanceCalculations();
+				
+				matcher.setPrefiltering(false);
+				SearchResultList<String> unfilteredResults = matcher.search(query, 2, queryStats);
+				SearchResultList<String> unfilteredNearest = matcher.searchNearest(query, 5);
+				unfilteredCalculations += queryStats.getDistanceCalculations();
+				
+				assertEquals(unfilteredResults.size(), prefilteredResults.size());
+				
+				for(SearchResult<String> result : unfilteredResults) {
+					assertTrue(prefilteredResults.containsKeyword(result.getKeyword().toString()));
+				}
+				
+				// Ties can be broken either way, so only the distances have to agree
+				for(int i = 0; i < unfilteredNearest.size(); i++) {
+					assertEquals(distanceCalculator.calculateEditDistance(query, unfilteredNearest.get(i).getKeyword()), 
+								 distanceCalculator.calculateEditDistance(query, prefilteredNearest.get(i).getKeyword()));
+				}
+			}
+			
+			assertTrue(prefilteredCalculations < unfilteredCalculations);
+			
+			matcher.setPrefiltering(true);
+			List<SearchResultList<String>> batchResults = matcher.searchAll(queries, 80.0f);
+			
+			for(int i = 0; i < queries.size(); i++) {
+				assertEquals(matcher.search(queries.get(i), 80.0f).size(), batchResults.get(i).size());
+			}
+		}
+	}
+	
+	@Test
+	public void testSearchAll() {
+		List<String> keywords = Arrays.asList("0123456789", "01234", "Fat", "This is a vest", "Nothing like it");
+		
+		List<SearchResultList<String>> results = stringMatcher.searchAll(keywords, 75.0f);
+		
+		assertEquals(keywords.size(), results.size());
+		
+		for(int i = 0; i < keywords.size(); i++) {
+			SearchResultList<String> expectedResults = stringMatcher.search(keywords.get(i), 75.0f);
+			
+			assertEquals(expectedResults.size(), results.get(i).size());
+			
+			for(SearchResult<String> result : expectedResults) {
+				assertTrue(results.get(i).containsKeyword(result.getKeyword().toString()));
+			}
+		}
+	}
+	
+	@Test
+	public void testSearchAllMultipleBatches() {
+		StringMatcher<String> largeMatcher = new StringMatcher<String>();
+		Random random = new Random(3);
+		List<String> keywords = new ArrayList<String>();
+		
+		for(int i = 0; i < 5000; i++) {
+			largeMatcher.add(getRandomString(random, 4, 14), "Random string");
+		}
+		
+		for(int i = 0; i < 1000; i++) {
+			keywords.add(getRandomString(random, 4, 14));
+		}
+		
+		List<SearchResultList<String>> results = largeMatcher.searchAll(keywords, 70.0f);
+		
+		for(int i = 0; i < keywords.size(); i++) {
+			assertEquals(largeMatcher.search(keywords.get(i), 70.0f).size(), results.get(i).size());
+		}
+	}
+	
+	@Test
+	public void testTreeStats() {
+		StringMatcher<String> smallMatcher = new StringMatcher<String>();
+		smallMatcher.add("hat", "");
+		smallMatcher.add("cat", "");
+		smallMatcher.add("kate", "");
+		smallMatcher.add("ball", "");
+		smallMatcher.add("bat", "");
+		
+		TreeStats treeStats = smallMatcher.getTreeStats();
+		
+		// hat --> (cat --> bat), kate, ball
+		assertEquals(5, treeStats.getSize());
+		assertEquals(2, treeStats.getMaxDepth());
+		assertArrayEquals(new long[] { 1, 3, 1 }, treeStats.getDepthHistogram());
+		assertEquals(3.0, treeStats.getFanOutByDepth()[0], 0.0);
+		assertEquals(1.0/3, treeStats.getFanOutByDepth()[1], 0.0001);
+		assertEquals(3, treeStats.getLeafCount());
+		assertEquals(1.0, treeStats.getAverageDepth(), 0.0001);
+		assertEquals(2.0, treeStats.getAverageSubtreeSize(), 0.0001);
+		
+		assertEquals(-1, new StringMatcher<String>().getTreeStats().getMaxDepth());
+	}
+	
+	@Test
+	public void testRebuildSortedInput() {
+		StringMatcher<String> sortedMatcher = new StringMatcher<String>();
+		Random random = new Random(13);
+		List<String> keywords = new ArrayList<String>();
+		
+		for(int i = 0; i < 5000; i++) {
+			keywords.add(getRandomString(random, 4, 14));
+		}
+		
+		Collections.sort(keywords);
+		
+		for(String keyword : keywords) {
+			sortedMatcher.add(keyword, keyword);
+		}
+		
+		TreeStats sortedStats = sortedMatcher.getTreeStats();
+		List<SearchResultList<String>> sortedResults = new ArrayList<SearchResultList<String>>();
+		
+		for(int i = 0; i < 100; i++) {
+			sortedResults.add(sortedMatcher.search(keywords.get(i * 50), 70.0f));
+		}
+		
+		sortedMatcher.rebuild(new Random(1));
+		TreeStats rebuiltStats = sortedMatcher.getTreeStats();
+		
+		assertEquals(sortedStats.getSize(), rebuiltStats.getSize());
+		assertTrue(rebuiltStats.getAverageDepth() < sortedStats.getAverageDepth());
+		assertEquals(sortedStats.getSize(), sortedMatcher.getRoot().getSubtreeSize());
+		
+		for(int i = 0; i < 100; i++) {
+			SearchResultList<String> results = sortedMatcher.search(keywords.get(i * 50), 70.0f);
+			assertEquals(sortedResults.get(i).size(), results.size());
+			
+			for(SearchResult<String> result : results) {
+				assertTrue(sortedResults.get(i).containsKeyword(result.getKeyword().toString()));
+			}
+		}
+	}
+	
+	@Test
+	public void testBuildMatchesAdd() {
+		StringMatcher<String> addedMatcher = new StringMatcher<String>();
+		Random random = new Random(17);
+		Map<String, String> entries = new LinkedHashMap<String, String>();
+		List<String> keywords = new ArrayList<String>();
+		
+		for(int i = 0; i < 5000; i++) {
+			String keyword = getRandomString(random, 3, 10);
+			keywords.add(keyword);
+			
+			if(!entries.containsKey(keyword)) {
+				entries.put(keyword, "data" + i);
+			}
+			
+			addedMatcher.add(keyword, "data" + i);
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(4);
+		
+		try {
+			// A tiny threshold, so the parallel paths get used
+			BuildOptions options = new BuildOptions().setPool(pool).setRandom(new Random(1)).setParallelThreshold(8);
+			StringMatcher<String> builtMatcher = StringMatcher.build(entries.entrySet(), options);
+			
+			assertEquals(entries.size(), builtMatcher.getTreeStats().getSize());
+			assertEquals(entries.size(), builtMatcher.getRoot().getSubtreeSize());
+			
+			for(int i = 0; i < 200; i++) {
+				String keyword = keywords.get(i * 25);
+				SearchResultList<String> expected = addedMatcher.search(keyword, 60.0f);
+				SearchResultList<String> results = builtMatcher.search(keyword, 60.0f);
+				
+				assertEquals(expected.size(), results.size());
+				
+				for(SearchResult<String> result : results) {
+					assertTrue(expected.containsKeyword(result.getKeyword().toString()));
+					assertEquals(entries.get(result.getKeyword().toString()), result.getAssociatedData());
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testBuildDuplicatesAndOptions() {
+		Map<String, String> entries = new LinkedHashMap<String, String>();
+		entries.put("Hat", "first");
+		entries.put("hat", "second");
+		entries.put("Cat", "cat");
+		entries.put("Bat", "bat");
+		
+		ConcurrentStringMatcher<String> builtMatcher = ConcurrentStringMatcher.build(entries.entrySet(), 
+				new BuildOptions().setMatchingOption(MatchingOption.REMOVE_SPACING_AND_LINEBREAKS));
+		
+		assertEquals(MatchingOption.REMOVE_SPACING_AND_LINEBREAKS, builtMatcher.getMatchingOption());
+		assertEquals(3, builtMatcher.getTreeStats().getSize());
+		
+		SearchResultList<String> results = builtMatcher.search("h a t", 100.0f);
+		assertEquals(1, results.size());
+		assertEquals("first", results.get(0).getAssociatedData());
+		
+		StringMatcher<String> emptyMatcher = StringMatcher.build(Collections.<String, String>emptyMap().entrySet());
+		assertEquals(0, emptyMatcher.search("Hat", 0.0f).size());
+	}
+	
+	@Test
+	public void testPutReplacesData() {
+		StringMatcher<String> putMatcher = new StringMatcher<String>();
+		
+		assertNull(putMatcher.put("Hat", "first"));
+		assertNull(putMatcher.put("Cat", "cat"));
+		
+		// Adding a duplicate keeps the existing data, putting replaces it (including the root)
+		putMatcher.add("Hat", "ignored");
+		assertEquals("first", putMatcher.search("Hat", 100.0f).get(0).getAssociatedData());
+		
+		assertEquals("first", putMatcher.put("hat", "second"));
+		assertEquals("cat", putMatcher.put("Cat", "kitten"));
+		
+		SearchResultList<String> results = putMatcher.search("Hat", 100.0f);
+		assertEquals(1, results.size());
+		assertEquals("Hat", results.get(0).getKeyword());
+		assertEquals("second", results.get(0).getAssociatedData());
+		assertEquals("kitten", putMatcher.search("Cat", 100.0f).get(0).getAssociatedData());
+		assertEquals(2, putMatcher.getTreeStats().getSize());
+	}
+	
+	@Test
+	public void testAddValue() {
+		StringMatcher<String> valueMatcher = new StringMatcher<String>();
+		valueMatcher.addValue("Open", "開く");
+		valueMatcher.addValue("Cat", "猫");
+		valueMatcher.addValue("open", "開ける");
+		
+		for(int i = 0; i < 10; i++) {
+			valueMatcher.addValue("Open", "開" + i);
+		}
+		
+		assertEquals(2, valueMatcher.getTreeStats().getSize());
+		
+		SearchResultList<String> results = valueMatcher.search("Open", 100.0f);
+		assertEquals(1, results.size());
+		assertEquals("開く", results.get(0).getAssociatedData());
+		assertEquals(12, results.get(0).getAllAssociatedData().size());
+		assertEquals("開ける", results.get(0).getAllAssociatedData().get(1));
+		assertEquals(Arrays.asList("猫"), valueMatcher.search("Cat", 100.0f).get(0).getAllAssociatedData());
+		
+		// Put replaces all of the values
+		assertEquals("開く", valueMatcher.put("Open", "オープン"));
+		assertEquals(Arrays.asList("オープン"), valueMatcher.search("Open", 100.0f).get(0).getAllAssociatedData());
+		
+		Map<String, String> entries = new LinkedHashMap<String, String>();
+		entries.put("Open", "開く");
+		entries.put("open", "開ける");
+		
+		StringMatcher<String> builtMatcher = StringMatcher.build(entries.entrySet(), new BuildOptions().setCollectingValues(true));
+		assertEquals(Arrays.asList("開く", "開ける"), builtMatcher.search("OPEN", 100.0f).get(0).getAllAssociatedData());
+	}
+	
+	@Test
+	public void testRemove() {
+		StringMatcher<String> removeMatcher = new ConcurrentStringMatcher<String>();
+		removeMatcher.setCompactionThreshold(1.0f);
+		removeMatcher.add("Hat", "Hat");
+		removeMatcher.add("Cat", "Cat");
+		removeMatcher.add("Bat", "Bat");
+		
+		// Removing the root still leaves it as a waypoint to the others
+		assertTrue(removeMatcher.remove("hat"));
+		assertFalse(removeMatcher.remove("Hat"));
+		assertFalse(removeMatcher.remove("Rat"));
+		
+		assertEquals(0, removeMatcher.search("Hat", 100.0f).size());
+		assertEquals(2, removeMatcher.search("Hat", 50.0f).size());
+		assertEquals(1, removeMatcher.searchNearest("Hat", 1).size());
+		assertEquals(1, removeMatcher.searchAll(Arrays.asList("Cat"), 100.0f).get(0).size());
+		assertEquals(1, removeMatcher.getTreeStats().getTombstoneCount());
+		assertEquals(1.0f / 3, removeMatcher.getTombstoneRatio(), 0.0001f);
+		
+		// Adding it back restores it with the new data
+		removeMatcher.add("Hat", "Restored");
+		assertEquals("Restored", removeMatcher.search("Hat", 100.0f).get(0).getAssociatedData());
+		assertEquals(0.0f, removeMatcher.getTombstoneRatio(), 0.0f);
+	}
+	
+	@Test
+	public void testRemoveAndCompact() {
+		StringMatcher<String> removeMatcher = new StringMatcher<String>();
+		StringMatcher<String> remainingMatcher = new StringMatcher<String>();
+		Random random = new Random(21);
+		Set<String> uniqueKeywords = new LinkedHashSet<String>();
+		
+		while(uniqueKeywords.size() < 3000) {
+			uniqueKeywords.add(getRandomString(random, 4, 10));
+		}
+		
+		List<String> keywords = new ArrayList<String>(uniqueKeywords);
+		
+		for(String keyword : keywords) {
+			removeMatcher.add(keyword, keyword);
+		}
+		
+		removeMatcher.setCompactionThreshold(1.0f);
+		
+		for(int i = 0; i < keywords.size(); i++) {
+			if(i % 3 == 0) {
+				removeMatcher.remove(keywords.get(i));
+			} else {
+				remainingMatcher.add(keywords.get(i), keywords.get(i));
+			}
+		}
+		
+		assertEquals(0, removeMatcher.compact());
+		
+		for(int i = 0; i < 100; i++) {
+			assertSameResults(remainingMatcher, removeMatcher, keywords.get(i * 30));
+		}
+		
+		removeMatcher.setCompactionThreshold(0.0f);
+		int droppedTombstones = removeMatcher.compact();
+		
+		assertEquals(1000, droppedTombstones);
+		assertEquals(0.0f, removeMatcher.getTombstoneRatio(), 0.0f);
+		assertEquals(remainingMatcher.getTreeStats().getSize(), removeMatcher.getTreeStats().getSize());
+		assertEquals(remainingMatcher.getTreeStats().getSize(), removeMatcher.getRoot().getSubtreeSize());
+		
+		for(int i = 0; i < 100; i++) {
+			assertSameResults(remainingMatcher, removeMatcher, keywords.get(i * 30));
+		}
+		
+		// Removing past the default threshold compacts automatically
+		removeMatcher.setCompactionThreshold(0.25f);
+		
+		for(int i = 1; i < keywords.size(); i += 3) {
+			removeMatcher.remove(keywords.get(i));
+			assertTrue(removeMatcher.getTombstoneRatio() <= 0.25f);
+		}
+		
+		assertTrue(removeMatcher.getRoot().getSubtreeSize() < remainingMatcher.getTreeStats().getSize());
+	}
+	
+	@Test
+	public void testQGramIndexingDoesNotChangeResults() {
+		Random random = new Random(11);
+		List<String> keywords = new ArrayList<String>();
+		StringMatcher<String> treeMatcher = new StringMatcher<String>();
+		StringMatcher<String> indexedMatcher = new StringMatcher<String>();
+		indexedMatcher.setQGramIndexing(true);
+		
+		for(int i = 0; i < 3000; i++) {
+			String keyword = getRandomSentence(random);
+			keywords.add(keyword);
+			treeMatcher.add(keyword, keyword);
+			indexedMatcher.add(keyword, keyword);
+		}
+		
+		indexedMatcher.buildQGramIndex();
+		QueryStats treeStats = new QueryStats();
+		QueryStats indexedStats = new QueryStats();
+		
+		for(int i = 0; i < 50; i++) {
+			String keyword = mutate(random, keywords.get(random.nextInt(keywords.size())), 1 + random.nextInt(12));
+			
+			for(float matchPercentage : new float[] { 75.0f, 85.0f, 95.0f }) {
+				assertSameResults(treeMatcher.search(keyword, matchPercentage, treeStats), indexedMatcher.search(keyword, matchPercentage, indexedStats));
+			}
+			
+			// Only the 95% search's threshold is tight enough for the index
+			assertTrue(indexedStats.getDistanceCalculations() < treeStats.getDistanceCalculations());
+			assertSameResults(treeMatcher.search(keyword, 5), indexedMatcher.search(keyword, 5));
+		}
+		
+		// Added, removed and restored keywords are all seen by the next search
+		for(int i = 0; i < 500; i++) {
+			String keyword = (i % 2 == 0) ? mutate(random, keywords.get(i), 3) : keywords.get(i);
+			
+			if(i % 3 == 0) {
+				treeMatcher.remove(keyword);
+				indexedMatcher.remove(keyword);
+			} else {
+				treeMatcher.add(keyword, "New");
+				indexedMatcher.add(keyword, "New");
+			}
+			
+			if(i % 50 == 0) {
+				String searchKeyword = mutate(random, keyword, 4);
+				assertSameResults(treeMatcher.search(searchKeyword, 80.0f), indexedMatcher.search(searchKeyword, 80.0f));
+			}
+		}
+		
+		indexedMatcher.rebuild(new Random(1));
+		
+		for(int i = 0; i < 20; i++) {
+			String keyword = mutate(random, keywords.get(i * 7), 6);
+			assertSameResults(treeMatcher.search(keyword, 80.0f), indexedMatcher.search(keyword, 80.0f));
+		}
+	}
+	
+	@Test
+	public void testQGramIndexIsBuiltInTheBackground() throws InterruptedException {
+		Random random = new Random(12);
+		List<String> keywords = new ArrayList<String>();
+		StringMatcher<String> treeMatcher = new StringMatcher<String>();
+		StringMatcher<String> indexedMatcher = new StringMatcher<String>();
+		indexedMatcher.setQGramIndexing(true);
+		
+		for(int i = 0; i < 2000; i++) {
+			String keyword = getRandomSentence(random);
+			keywords.add(keyword);
+			treeMatcher.add(keyword, keyword);
+			indexedMatcher.add(keyword, keyword);
+		}
+		
+		String keyword = mutate(random, keywords.get(1000), 2);
+		QueryStats treeStats = new QueryStats();
+		QueryStats indexedStats = new QueryStats();
+		SearchResultList<String> treeResults = treeMatcher.search(keyword, 5, treeStats);
+		
+		// The first search starts the build, and walks the tree rather than waiting for it
+		assertSameResults(treeResults, indexedMatcher.search(keyword, 5, indexedStats));
+		assertEquals(treeStats.getDistanceCalculations(), indexedStats.getDistanceCalculations());
+		
+		// Later searches use the index once it's ready
+		long deadline = System.currentTimeMillis() + 10000;
+		
+		do {
+			Thread.sleep(10);
+			assertSameResults(treeResults, indexedMatcher.search(keyword, 5, indexedStats));
+		} while(indexedStats.getDistanceCalculations() >= treeStats.getDistanceCalculations() && System.currentTimeMillis() < deadline);
+		
+		assertTrue(indexedStats.getDistanceCalculations() < treeStats.getDistanceCalculations());
+		
+		// A new keyword is found straight away, before the index has caught up with it
+		String newKeyword = mutate(random, keyword, 1);
+		treeMatcher.add(newKeyword, newKeyword);
+		indexedMatcher.add(newKeyword, newKeyword);
+		assertSameResults(treeMatcher.search(keyword, 5), indexedMatcher.search(keyword, 5));
+	}
+	
+	private static void assertSameResults(SearchResultList<String> expected, SearchResultList<String> results) {
+		assertEquals(expected.size(), results.size());
+		
+		for(int i = 0; i < results.size(); i++) {
+			assertTrue(expected.containsKeyword(results.get(i).getKeyword().toString()));
+			assertEquals(expected.get(i).getMatchPercentage(), results.get(i).getMatchPercentage(), 0.0f);
+		}
+	}
+	
+	// A sentence of short words from a small vocabulary, so unrelated sentences still share plenty of q-grams
+	private static String getRandomSentence(Random random) {
+		String[] words = { "the", "file", "could", "not", "be", "opened", "saved", "please", "try", "again", "later", "settings", "were" };
+		StringBuilder sb = new StringBuilder();
+		
+		while(sb.length() < 40 + random.nextInt(80)) {
+			sb.append(words[random.nextInt(words.length)]).append(' ');
+		}
+		
+		return sb.toString().trim();
+	}
+	
+	// The keyword with up to the given number of random substitutions, insertions and deletions
+	private static String mutate(Random random, String keyword, int edits) {
+		StringBuilder sb = new StringBuilder(keyword);
+		
+		for(int i = 0; i < edits && sb.length() > 1; i++) {
+			int position = random.nextInt(sb.length());
+			char c = (char)('a' + random.nextInt(26));
+			
+			switch(random.nextInt(3)) {
+				case 0: sb.setCharAt(position, c); break;
+				case 1: sb.insert(position, c); break;
+				default: sb.deleteCharAt(position); break;
+			}
+		}
+		
+		return sb.toString();
+	}
+	
+	private static void assertSameResults(StringMatcher<String> expectedMatcher, StringMatcher<String> actualMatcher, String keyword) {
+		SearchResultList<String> expected = expectedMatcher.search(keyword, 60.0f);
+		SearchResultList<String> results = actualMatcher.search(keyword, 60.0f);
+		
+		assertEquals(expected.size(), results.size());
+		
+		for(SearchResult<String> result : results) {
+			assertTrue(expected.containsKeyword(result.getKeyword().toString()));
+		}
+	}
+	
+	private static String getRandomString(Random random, int minLength, int maxLength) {
+		StringBuilder sb = new StringBuilder();
+		int length = minLength + random.nextInt(maxLength - minLength);
+		
+		for(int i = 0; i < length; i++) {
+			sb.append((char)('a' + random.nextInt(6)));
+		}
+		
+		return sb.toString();
+	}
+}
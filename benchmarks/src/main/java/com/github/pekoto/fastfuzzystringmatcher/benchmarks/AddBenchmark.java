@@ -0,0 +1,78 @@
+package com.github.pekoto.fastfuzzystringmatcher.benchmarks;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.pekoto.fastfuzzystringmatcher.BuildOptions;
+import com.github.pekoto.fastfuzzystringmatcher.StringMatcher;
+
+/**
+ * Time to build a whole tree with {@link StringMatcher#add(CharSequence, Object)},
+ * compared with building it all at once in parallel with {@link StringMatcher#build(Iterable, BuildOptions)}.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AddBenchmark {
+	
+	@Param({Corpus.JMDICT, Corpus.SYNTHETIC})
+	public String corpus;
+	
+	@Param({"1000000"})
+	public int size;
+	
+	@Param({"10"})
+	public int meanLength;
+	
+	@Param({"26"})
+	public int alphabetSize;
+	
+	@Param({"2"})
+	public int familyEdits;
+	
+	private List<String> keywords;
+	private List<Map.Entry<String, String>> entries;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		keywords = Corpus.load(corpus, size, meanLength, alphabetSize, familyEdits);
+		entries = new ArrayList<Map.Entry<String, String>>(keywords.size());
+		
+		for(String keyword : keywords) {
+			entries.add(new AbstractMap.SimpleImmutableEntry<String, String>(keyword, keyword));
+		}
+	}
+	
+	@Benchmark
+	public StringMatcher<String> add() {
+		return TreeState.build(keywords);
+	}
+	
+	@Benchmark
+	public StringMatcher<String> build() {
+		return StringMatcher.build(entries, new BuildOptions().setRandom(new Random(1)));
+	}
+}
@@ -0,0 +1,43 @@
+package com.github.pekoto.fastfuzzystringmatcher.benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks, taking the usual JMH command line options.
+ * <p>
+ * Unless another format is asked for with <code>-rf</code>, results are written as JSON to 
+ * <code>jmh-result.json</code> (or the file given with <code>-rff</code>), so runs can be diffed.
+ * <p>
+ * e.g., <code>java -jar benchmarks/target/benchmarks.jar SearchBenchmark -p corpus=synthetic -p size=10000000 -jvmArgsAppend -Xmx16g</code>
+ * 
+ * @author Graham McRobbie
+ *
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+		CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+		
+		if(commandLineOptions.shouldHelp() || commandLineOptions.shouldList() || commandLineOptions.shouldListWithParams() || 
+		   commandLineOptions.shouldListProfilers() || commandLineOptions.shouldListResultFormats()) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions);
+		
+		if(!commandLineOptions.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		
+		new Runner(options.build()).run();
+	}
+}
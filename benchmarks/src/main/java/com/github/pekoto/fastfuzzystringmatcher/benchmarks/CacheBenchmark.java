@@ -0,0 +1,70 @@
+package com.github.pekoto.fastfuzzystringmatcher.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.pekoto.fastfuzzystringmatcher.SearchCache;
+import com.github.pekoto.fastfuzzystringmatcher.SearchResultList;
+
+/**
+ * Search latency on skewed traffic, where a few queries make up most of the searches, with and without a {@link SearchCache}.
+ * The cache's hit ratio is printed at the end of each trial.
+ *
+ * @author Graham McRobbie
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CacheBenchmark {
+	// Larger skews send more of the traffic to the first few queries
+	private static final double SKEW = 4.0;
+
+	@Param({"true", "false"})
+	public boolean cached;
+
+	@Param({"80"})
+	public float matchPercentage;
+
+	@Param({"1048576"})
+	public long cacheBytes;
+
+	private SearchCache<String> cache;
+	private Random random = new Random(1);
+
+	@Setup(Level.Trial)
+	public void setup(TreeState tree) {
+		cache = cached ? new SearchCache<String>(cacheBytes) : null;
+		tree.stringMatcher.setCache(cache);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if(cache != null) {
+			System.out.println(cache);
+		}
+	}
+
+	@Benchmark
+	public SearchResultList<String> search(TreeState tree) {
+		int query = (int)(tree.queries.length * Math.pow(random.nextDouble(), SKEW));
+		return tree.stringMatcher.search(tree.queries[query], matchPercentage);
+	}
+}
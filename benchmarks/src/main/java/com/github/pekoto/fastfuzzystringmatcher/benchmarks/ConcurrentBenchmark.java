@@ -0,0 +1,67 @@
+package com.github.pekoto.fastfuzzystringmatcher.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.pekoto.fastfuzzystringmatcher.ConcurrentStringMatcher;
+
+/**
+ * Throughput of a {@link ConcurrentStringMatcher} under a mix of searches and adds from several threads.
+ * Each operation is an add with probability <code>writePercentage</code>, otherwise a search.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(Threads.MAX)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ConcurrentBenchmark {
+	
+	@Param({"1", "10"})
+	public int writePercentage;
+	
+	@Param({"80"})
+	public float matchPercentage;
+	
+	private ConcurrentStringMatcher<String> stringMatcher;
+	
+	@Setup(Level.Trial)
+	public void setup(TreeState tree) {
+		stringMatcher = new ConcurrentStringMatcher<String>();
+		
+		for(String keyword : tree.keywords) {
+			stringMatcher.add(keyword, keyword);
+		}
+	}
+	
+	@Benchmark
+	public Object mixed(TreeState tree) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		String query = tree.queries[random.nextInt(tree.queries.length)];
+		
+		if(random.nextInt(100) < writePercentage) {
+			stringMatcher.add(Corpus.mutate(random, query, 1, tree.alphabetSize), query);
+			return query;
+		} else {
+			return stringMatcher.search(query, matchPercentage);
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package com.github.pekoto.fastfuzzystringmatcher.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Keyword lists for the benchmarks.
+ * <ul>
+ * <li><strong>jmdict</strong>: the English terms from the bundled JMDict_po.txt (around 50,000 of them)
+ * <li><strong>synthetic</strong>: random keywords, grown in families of near-duplicates, 
+ * so the tree has a realistic mix of close and distant keywords
+ * </ul>
+ * The shape of the synthetic corpus is controlled by its size, mean keyword length, alphabet size 
+ * (smaller alphabets give smaller edit distances), and how many edits separate the members of a family.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+public final class Corpus {
+	public static final String JMDICT = "jmdict";
+	public static final String SYNTHETIC = "synthetic";
+	
+	private static final String JMDICT_RESOURCE = "JMDict_po.txt";
+	private static final int FAMILY_SIZE = 8;
+	private static final long SEED = 20180722L;
+	
+	private Corpus() { }
+	
+	public static List<String> load(String corpus, int size, int meanLength, int alphabetSize, int familyEdits) {
+		if(JMDICT.equals(corpus)) {
+			List<String> keywords = loadJmdict();
+			return (keywords.size() > size) ? keywords.subList(0, size) : keywords;
+		} else if(SYNTHETIC.equals(corpus)) {
+			return generate(size, meanLength, alphabetSize, familyEdits);
+		} else {
+			throw new IllegalArgumentException("Unknown corpus: " + corpus);
+		}
+	}
+	
+	public static List<String> loadJmdict() {
+		List<String> keywords = new ArrayList<String>();
+		InputStream stream = Corpus.class.getClassLoader().getResourceAsStream(JMDICT_RESOURCE);
+		
+		if(stream == null) {
+			throw new IllegalStateException(JMDICT_RESOURCE + " is not on the classpath");
+		}
+		
+		try(BufferedReader br = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+			String line;
+			
+			while((line = br.readLine()) != null) {
+				if(line.startsWith("msgid")) {
+					keywords.add(line.substring(line.indexOf('"') + 1, line.lastIndexOf('"')));
+				}
+			}
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		
+		return keywords;
+	}
+	
+	public static List<String> generate(int size, int meanLength, int alphabetSize, int familyEdits) {
+		Random random = new Random(SEED);
+		List<String> keywords = new ArrayList<String>(size);
+		
+		while(keywords.size() < size) {
+			int length = Math.max(1, meanLength / 2 + random.nextInt(meanLength + 1));
+			String familyKeyword = randomString(random, length, alphabetSize);
+			keywords.add(familyKeyword);
+			
+			for(int i = 1; i < FAMILY_SIZE && keywords.size() < size; i++) {
+				keywords.add(mutate(random, familyKeyword, familyEdits, alphabetSize));
+			}
+		}
+		
+		return keywords;
+	}
+	
+	// Queries are taken from the corpus and then edited, so each one has some near matches
+	public static String[] queries(List<String> keywords, int count, int edits, int alphabetSize) {
+		Random random = new Random(SEED + 1);
+		String[] queries = new String[count];
+		
+		for(int i = 0; i < count; i++) {
+			queries[i] = mutate(random, keywords.get(random.nextInt(keywords.size())), edits, alphabetSize);
+		}
+		
+		return queries;
+	}
+	
+	public static String randomString(Random random, int length, int alphabetSize) {
+		StringBuilder sb = new StringBuilder(length);
+		
+		for(int i = 0; i < length; i++) {
+			sb.append(randomChar(random, alphabetSize));
+		}
+		
+		return sb.toString();
+	}
+	
+	// Applies random substitutions, insertions and deletions
+	public static String mutate(Random random, String keyword, int edits, int alphabetSize) {
+		StringBuilder sb = new StringBuilder(keyword);
+		
+		for(int i = 0; i < edits; i++) {
+			int position = random.nextInt(sb.length() + 1);
+			
+			switch(random.nextInt(3)) {
+				case 0:
+					if(position < sb.length()) {
+						sb.setCharAt(position, randomChar(random, alphabetSize));
+						break;
+					}
+					// Fall through to an insertion at the end
+				case 1:
+					sb.insert(position, randomChar(random, alphabetSize));
+					break;
+				default:
+					if(position < sb.length() && sb.length() > 1) {
+						sb.deleteCharAt(position);
+					}
+			}
+		}
+		
+		return sb.toString();
+	}
+	
+	private static char randomChar(Random random, int alphabetSize) {
+		return (char)('a' + random.nextInt(alphabetSize));
+	}
+}
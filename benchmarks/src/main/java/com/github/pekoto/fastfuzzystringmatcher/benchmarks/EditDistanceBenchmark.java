@@ -0,0 +1,97 @@
+package com.github.pekoto.fastfuzzystringmatcher.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.pekoto.fastfuzzystringmatcher.BitParallelEditDistanceCalculator;
+import com.github.pekoto.fastfuzzystringmatcher.BitParallelEditDistanceCalculator.Pattern;
+import com.github.pekoto.fastfuzzystringmatcher.EditDistanceCalculator;
+
+/**
+ * Edit distance between two random strings, across a grid of string lengths.
+ * <p>
+ * The second string is the first with about 10% of its characters edited,
+ * which is the kind of pair a search spends most of its time on.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EditDistanceBenchmark {
+	
+	@Param({"4", "16", "64", "256", "1024"})
+	public int length1;
+	
+	@Param({"4", "16", "64", "256", "1024"})
+	public int length2;
+	
+	// Threshold for the bounded calculations
+	@Param({"2"})
+	public int maxDistance;
+	
+	private EditDistanceCalculator distanceCalculator = new EditDistanceCalculator();
+	private BitParallelEditDistanceCalculator bitParallelCalculator = new BitParallelEditDistanceCalculator();
+	private String str1;
+	private String str2;
+	private Pattern pattern1;
+	
+	@Setup
+	public void setup() {
+		Random random = new Random(length1 * 31 + length2);
+		str1 = Corpus.randomString(random, length1, 26);
+		
+		// Edit the first string, then pad or trim it to the second length
+		StringBuilder sb = new StringBuilder(Corpus.mutate(random, str1, Math.max(1, length1 / 10), 26));
+		
+		while(sb.length() < length2) {
+			sb.append(Corpus.randomString(random, 1, 26));
+		}
+		
+		sb.setLength(length2);
+		str2 = sb.toString();
+		pattern1 = bitParallelCalculator.compile(str1);
+	}
+	
+	@Benchmark
+	public int dynamicProgramming() {
+		return distanceCalculator.calculateEditDistance(str1, str2);
+	}
+	
+	@Benchmark
+	public int dynamicProgrammingBounded() {
+		return distanceCalculator.calculateEditDistance(str1, str2, maxDistance);
+	}
+	
+	@Benchmark
+	public int bitParallel() {
+		return bitParallelCalculator.calculateEditDistance(str1, str2);
+	}
+	
+	// As used by searches: the keyword is compiled once and compared against many nodes
+	@Benchmark
+	public int bitParallelPrecompiled() {
+		return bitParallelCalculator.calculateEditDistance(pattern1, str2);
+	}
+	
+	@Benchmark
+	public int bitParallelPrecompiledBounded() {
+		return bitParallelCalculator.calculateEditDistance(pattern1, str2, maxDistance);
+	}
+}
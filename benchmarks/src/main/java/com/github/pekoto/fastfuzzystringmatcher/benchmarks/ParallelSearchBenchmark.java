@@ -0,0 +1,65 @@
+package com.github.pekoto.fastfuzzystringmatcher.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.pekoto.fastfuzzystringmatcher.SearchResultList;
+
+/**
+ * A single search run sequentially and split across a fork-join pool,
+ * to find the threshold where forking starts to pay off.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ParallelSearchBenchmark {
+	
+	@Param({"90", "80", "70", "60"})
+	public float matchPercentage;
+	
+	// 0 uses the number of available processors
+	@Param({"0"})
+	public int parallelism;
+	
+	private ForkJoinPool pool;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		pool = new ForkJoinPool((parallelism > 0) ? parallelism : Runtime.getRuntime().availableProcessors());
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		pool.shutdown();
+	}
+	
+	@Benchmark
+	public SearchResultList<String> sequential(TreeState tree) {
+		return tree.stringMatcher.search(tree.nextQuery(), matchPercentage);
+	}
+	
+	@Benchmark
+	public SearchResultList<String> parallel(TreeState tree) {
+		return tree.stringMatcher.search(tree.nextQuery(), matchPercentage, pool);
+	}
+}
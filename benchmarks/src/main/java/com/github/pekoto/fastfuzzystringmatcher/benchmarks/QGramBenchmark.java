@@ -0,0 +1,84 @@
+package com.github.pekoto.fastfuzzystringmatcher.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.pekoto.fastfuzzystringmatcher.QueryStats;
+import com.github.pekoto.fastfuzzystringmatcher.SearchResultList;
+import com.github.pekoto.fastfuzzystringmatcher.StringMatcher;
+
+/**
+ * Search cost on long, translation memory style segments, walking the tree or using the q-gram index.
+ * <p>
+ * The synthetic segments are grown in families that differ by a few edits, so each query has some close matches,
+ * and everything else is a long way off. As in {@link PrefilterBenchmark}, distance calculations per query = distanceCalculations / searches.
+ *
+ * @author Graham McRobbie
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class QGramBenchmark {
+	
+	@Param({"50000"})
+	public int size;
+	
+	@Param({"150"})
+	public int meanLength;
+	
+	@Param({"true", "false"})
+	public boolean qGramIndexing;
+	
+	@Param({"80", "90"})
+	public float matchPercentage;
+	
+	private StringMatcher<String> stringMatcher;
+	private String[] queries;
+	private QueryStats queryStats = new QueryStats();
+	private int nextQuery;
+	
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Counters {
+		public long distanceCalculations;
+		public long searches;
+	}
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		List<String> keywords = Corpus.generate(size, meanLength, 26, 10);
+		queries = Corpus.queries(keywords, 1024, 5, 26);
+		stringMatcher = TreeState.build(keywords);
+		stringMatcher.setQGramIndexing(qGramIndexing);
+		stringMatcher.buildQGramIndex();	// Rather than measuring searches that walk the tree until the background build is done
+	}
+	
+	@Benchmark
+	public SearchResultList<String> search(Counters counters) {
+		SearchResultList<String> results = stringMatcher.search(queries[nextQuery], matchPercentage, queryStats);
+		nextQuery = (nextQuery + 1) % queries.length;
+		
+		counters.distanceCalculations += queryStats.getDistanceCalculations();
+		counters.searches++;
+		
+		return results;
+	}
+}
@@ -0,0 +1,53 @@
+package com.github.pekoto.fastfuzzystringmatcher.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.pekoto.fastfuzzystringmatcher.SearchResultList;
+
+/**
+ * Searching for all of the queries at once with searchAll, against searching for them one at a time.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SearchAllBenchmark {
+	
+	@Param({"80"})
+	public float matchPercentage;
+	
+	@Benchmark
+	public List<SearchResultList<String>> searchAll(TreeState tree) {
+		return tree.stringMatcher.searchAll(Arrays.asList(tree.queries), matchPercentage);
+	}
+	
+	@Benchmark
+	public List<SearchResultList<String>> searchEach(TreeState tree) {
+		List<SearchResultList<String>> results = new ArrayList<SearchResultList<String>>(tree.queries.length);
+		
+		for(String query : tree.queries) {
+			results.add(tree.stringMatcher.search(query, matchPercentage));
+		}
+		
+		return results;
+	}
+}
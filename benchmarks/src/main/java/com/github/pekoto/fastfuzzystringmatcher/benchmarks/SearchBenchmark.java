@@ -0,0 +1,59 @@
+package com.github.pekoto.fastfuzzystringmatcher.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.pekoto.fastfuzzystringmatcher.SearchResultList;
+
+/**
+ * Latency of a single search, by % match and by edit distance, 
+ * and of finding just the first few results with a lazy stream.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SearchBenchmark {
+	private static final int FIRST_RESULTS = 10;
+	
+	@State(Scope.Benchmark)
+	public static class PercentageThreshold {
+		@Param({"70", "80", "90"})
+		public float matchPercentage;
+	}
+	
+	@State(Scope.Benchmark)
+	public static class DistanceThreshold {
+		@Param({"1", "2", "3"})
+		public int distanceThreshold;
+	}
+	
+	@Benchmark
+	public SearchResultList<String> searchByPercentage(TreeState tree, PercentageThreshold threshold) {
+		return tree.stringMatcher.search(tree.nextQuery(), threshold.matchPercentage);
+	}
+	
+	@Benchmark
+	public SearchResultList<String> searchByDistance(TreeState tree, DistanceThreshold threshold) {
+		return tree.stringMatcher.search(tree.nextQuery(), threshold.distanceThreshold);
+	}
+	
+	@Benchmark
+	public long searchFirstResults(TreeState tree, PercentageThreshold threshold) {
+		return tree.stringMatcher.searchStream(tree.nextQuery(), threshold.matchPercentage).limit(FIRST_RESULTS).count();
+	}
+}
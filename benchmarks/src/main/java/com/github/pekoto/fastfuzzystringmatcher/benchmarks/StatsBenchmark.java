@@ -0,0 +1,57 @@
+package com.github.pekoto.fastfuzzystringmatcher.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.pekoto.fastfuzzystringmatcher.MatcherStats;
+import com.github.pekoto.fastfuzzystringmatcher.QueryStats;
+import com.github.pekoto.fastfuzzystringmatcher.SearchResultList;
+
+/**
+ * Cost of collecting search statistics. <code>disabled</code> should match {@link SearchBenchmark}.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StatsBenchmark {
+	
+	@Param({"80"})
+	public float matchPercentage;
+	
+	private MatcherStats matcherStats = new MatcherStats();
+	private QueryStats queryStats = new QueryStats();
+	
+	@Benchmark
+	public SearchResultList<String> disabled(TreeState tree) {
+		tree.stringMatcher.setStats(null);
+		return tree.stringMatcher.search(tree.nextQuery(), matchPercentage);
+	}
+	
+	@Benchmark
+	public SearchResultList<String> matcherStats(TreeState tree) {
+		tree.stringMatcher.setStats(matcherStats);
+		return tree.stringMatcher.search(tree.nextQuery(), matchPercentage);
+	}
+	
+	@Benchmark
+	public SearchResultList<String> queryStats(TreeState tree) {
+		tree.stringMatcher.setStats(null);
+		return tree.stringMatcher.search(tree.nextQuery(), matchPercentage, queryStats);
+	}
+}
@@ -0,0 +1,97 @@
+package com.github.pekoto.fastfuzzystringmatcher.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.pekoto.fastfuzzystringmatcher.QueryStats;
+import com.github.pekoto.fastfuzzystringmatcher.SearchResultList;
+import com.github.pekoto.fastfuzzystringmatcher.StringMatcher;
+
+/**
+ * Search cost on trees built from sorted input, before and after {@link StringMatcher#rebuild()}.
+ * <p>
+ * As well as the search time, the <code>nodesVisited</code> and <code>searches</code> counters are reported,
+ * so nodes visited per query = nodesVisited / searches.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TreeShapeBenchmark {
+	
+	@Param({Corpus.JMDICT, Corpus.SYNTHETIC})
+	public String corpus;
+	
+	@Param({"200000"})
+	public int size;
+	
+	@Param({"true", "false"})
+	public boolean sorted;
+	
+	@Param({"false", "true"})
+	public boolean rebuilt;
+	
+	@Param({"80"})
+	public float matchPercentage;
+	
+	private StringMatcher<String> stringMatcher;
+	private String[] queries;
+	private QueryStats queryStats = new QueryStats();
+	private int nextQuery;
+	
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Counters {
+		public long nodesVisited;
+		public long searches;
+	}
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		List<String> keywords = new ArrayList<String>(Corpus.load(corpus, size, 10, 26, 2));
+		queries = Corpus.queries(keywords, 1024, 1, 26);
+		
+		if(sorted) {
+			Collections.sort(keywords);
+		}
+		
+		stringMatcher = TreeState.build(keywords);
+		
+		if(rebuilt) {
+			stringMatcher.rebuild(new Random(1));
+		}
+	}
+	
+	@Benchmark
+	public SearchResultList<String> search(Counters counters) {
+		SearchResultList<String> results = stringMatcher.search(queries[nextQuery], matchPercentage, queryStats);
+		nextQuery = (nextQuery + 1) % queries.length;
+		
+		counters.nodesVisited += queryStats.getNodesVisited();
+		counters.searches++;
+		
+		return results;
+	}
+}
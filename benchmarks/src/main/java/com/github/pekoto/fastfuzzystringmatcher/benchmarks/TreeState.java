@@ -0,0 +1,76 @@
+package com.github.pekoto.fastfuzzystringmatcher.benchmarks;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.pekoto.fastfuzzystringmatcher.StringMatcher;
+
+/**
+ * A tree built once per trial from one of the {@link Corpus corpora}, plus queries to search it with.
+ * <p>
+ * <code>size</code> caps the JMDict corpus, and sets the size of the synthetic one.
+ * Try <code>-p size=10000000</code> with a large heap for the 10M entry runs.
+ * 
+ * @author Graham McRobbie
+ *
+ */
+@State(Scope.Benchmark)
+public class TreeState {
+	private static final int QUERY_COUNT = 1024;
+	
+	@Param({Corpus.JMDICT, Corpus.SYNTHETIC})
+	public String corpus;
+	
+	@Param({"1000000"})
+	public int size;
+	
+	@Param({"10"})
+	public int meanLength;
+	
+	@Param({"26"})
+	public int alphabetSize;
+	
+	// Edits between the members of each synthetic family of keywords
+	@Param({"2"})
+	public int familyEdits;
+	
+	// Edits between each query and the keyword it was made from
+	@Param({"1"})
+	public int queryEdits;
+	
+	public List<String> keywords;
+	public String[] queries;
+	public StringMatcher<String> stringMatcher;
+	
+	private int nextQuery;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		keywords = Corpus.load(corpus, size, meanLength, alphabetSize, familyEdits);
+		queries = Corpus.queries(keywords, QUERY_COUNT, queryEdits, alphabetSize);
+		stringMatcher = build(keywords);
+	}
+	
+	public static StringMatcher<String> build(List<String> keywords) {
+		StringMatcher<String> stringMatcher = new StringMatcher<String>();
+		
+		for(String keyword : keywords) {
+			stringMatcher.add(keyword, keyword);
+		}
+		
+		return stringMatcher;
+	}
+	
+	// Cycles through the queries. Not thread-safe, but a missed or repeated query doesn't matter
+	public String nextQuery() {
+		String query = queries[nextQuery];
+		nextQuery = (nextQuery + 1) % QUERY_COUNT;
+		
+		return query;
+	}
+}